@@ -0,0 +1,113 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.ai.BasicAI;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * BasicAI placement search at a recorded piece spawn
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AIBenchmark {
+	/** Number of pieces placed before the searched one */
+	@Param({"0", "20", "60"})
+	public int pieceNo;
+
+	/** true to keep the score cache between searches, false to search without it */
+	@Param({"false", "true"})
+	public boolean warmCache;
+
+	/** GameManager */
+	protected GameManager gameManager;
+
+	/** GameEngine stopped at the piece spawn */
+	protected GameEngine engine;
+
+	/** AI */
+	protected BasicAI ai;
+
+	@Setup
+	public void setup() {
+		gameManager = BenchStates.createGame(BenchStates.SEED);
+		engine = gameManager.engine[0];
+
+		// Play up to the piece spawn
+		Piece lastPiece = null;
+		int count = -1;
+		while(count < pieceNo) {
+			if(engine.gameStarted && !engine.gameActive)
+				throw new IllegalStateException("The game ended before piece " + pieceNo);
+
+			gameManager.updateAll();
+			if((engine.stat == GameEngine.Status.MOVE) && (engine.nowPieceObject != null) && (engine.nowPieceObject != lastPiece)) {
+				lastPiece = engine.nowPieceObject;
+				count++;
+			}
+		}
+
+		ai = new BasicAI();
+		engine.aiUseThread = false;
+		ai.init(engine, 0);
+		if(!warmCache) ai.thinkCache = null;
+	}
+
+	@TearDown
+	public void tearDown() {
+		gameManager.shutdown();
+	}
+
+	@Benchmark
+	public int thinkBestPosition() {
+		ai.thinkBestPosition(engine, 0);
+		return ai.bestX;
+	}
+}
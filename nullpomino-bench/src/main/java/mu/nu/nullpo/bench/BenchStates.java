@@ -0,0 +1,186 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.bench;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.component.RuleOptions;
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.ai.BasicAI;
+import mu.nu.nullpo.game.subsystem.mode.MarathonMode;
+import mu.nu.nullpo.tool.simulator.SimulationGame;
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * Recorded game states used as benchmark inputs.
+ * <p>
+ * States are recorded from MARATHON games played by {@link BasicAI} with the
+ * standard rule (Standard.rul, bundled with the benchmarks), from a fixed seed, so every run of a benchmark sees exactly the
+ * same fields and pieces.
+ */
+public class BenchStates {
+	/** Seed of the first recorded game */
+	public static final long SEED = 0;
+
+	/** A field and the piece that is about to be placed on it */
+	public static class PieceState {
+		/** Field */
+		public final Field field;
+
+		/** Current piece */
+		public final Piece piece;
+
+		/** Piece X-coordinate at spawn */
+		public final int x;
+
+		/** Piece Y-coordinate at spawn */
+		public final int y;
+
+		/**
+		 * Constructor
+		 * @param engine GameEngine to copy the state from
+		 */
+		public PieceState(GameEngine engine) {
+			field = new Field(engine.field);
+			piece = new Piece(engine.nowPieceObject);
+			x = engine.nowPieceX;
+			y = engine.nowPieceY;
+		}
+	}
+
+	/** Resource name of the rule the states are recorded with */
+	public static final String RULE = "/Standard.rul";
+
+	/**
+	 * Create the rule the states are recorded with
+	 * @return Rule
+	 */
+	public static RuleOptions createRule() {
+		CustomProperties prop = new CustomProperties();
+		try {
+			InputStream in = BenchStates.class.getResourceAsStream(RULE);
+			if(in == null) throw new IllegalStateException("Rule " + RULE + " is not on the classpath");
+			prop.load(in);
+			in.close();
+		} catch (IOException e) {
+			throw new RuntimeException("Couldn't load the rule " + RULE, e);
+		}
+
+		RuleOptions ruleopt = new RuleOptions();
+		ruleopt.readProperty(prop, 0);
+		return ruleopt;
+	}
+
+	/**
+	 * Create a recorded game
+	 * @param seed Random seed
+	 * @return GameManager (Call shutdown() when finished)
+	 */
+	public static GameManager createGame(long seed) {
+		try {
+			return SimulationGame.createGame(MarathonMode.class, createRule(), BasicAI.class.getName(), 0,
+											 new CustomProperties(), seed);
+		} catch (Exception e) {
+			throw new RuntimeException("Couldn't create the game", e);
+		}
+	}
+
+	/**
+	 * Create a recorded game and play it up to a frame
+	 * @param seed Random seed
+	 * @param frames Number of frames to play
+	 * @return GameManager (Call shutdown() when finished)
+	 */
+	public static GameManager createGame(long seed, int frames) {
+		GameManager gameManager = createGame(seed);
+		for(int i = 0; i < frames; i++) gameManager.updateAll();
+		return gameManager;
+	}
+
+	/**
+	 * Record the state at every piece spawn
+	 * @param count Number of states
+	 * @return States (Games are played from {@link #SEED} on until there are enough states)
+	 */
+	public static PieceState[] recordPieces(int count) {
+		List<PieceState> list = new ArrayList<PieceState>(count);
+		long seed = SEED;
+
+		while(list.size() < count) {
+			GameManager gameManager = createGame(seed++);
+			GameEngine engine = gameManager.engine[0];
+			Piece lastPiece = null;
+
+			while((list.size() < count) && !(engine.gameStarted && !engine.gameActive)) {
+				gameManager.updateAll();
+				if((engine.stat == GameEngine.Status.MOVE) && (engine.nowPieceObject != null) && (engine.nowPieceObject != lastPiece)) {
+					lastPiece = engine.nowPieceObject;
+					list.add(new PieceState(engine));
+				}
+			}
+
+			gameManager.shutdown();
+		}
+
+		return list.toArray(new PieceState[count]);
+	}
+
+	/**
+	 * Record the field at the start of every line clear (The cleared lines are flagged)
+	 * @param count Number of fields
+	 * @return Fields (Games are played from {@link #SEED} on until there are enough fields)
+	 */
+	public static Field[] recordLineClears(int count) {
+		List<Field> list = new ArrayList<Field>(count);
+		long seed = SEED;
+
+		while(list.size() < count) {
+			GameManager gameManager = createGame(seed++);
+			GameEngine engine = gameManager.engine[0];
+			boolean inLineClear = false;
+
+			while((list.size() < count) && !(engine.gameStarted && !engine.gameActive)) {
+				gameManager.updateAll();
+				boolean lineClear = (engine.stat == GameEngine.Status.LINECLEAR);
+				if(lineClear && !inLineClear) list.add(new Field(engine.field));
+				inLineClear = lineClear;
+			}
+
+			gameManager.shutdown();
+		}
+
+		return list.toArray(new Field[count]);
+	}
+}
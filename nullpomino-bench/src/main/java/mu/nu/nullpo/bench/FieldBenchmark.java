@@ -0,0 +1,120 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mu.nu.nullpo.game.component.Field;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Field line clear and hole counting on recorded fields
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FieldBenchmark {
+	/** Number of recorded fields of each kind */
+	public static final int STATES = 64;
+
+	/** Fields at piece spawn */
+	protected Field[] stacks;
+
+	/** Fields at the start of a line clear */
+	protected Field[] clears;
+
+	/** Work field */
+	protected Field work;
+
+	/** Index of the next field */
+	protected int index;
+
+	@Setup
+	public void setup() {
+		BenchStates.PieceState[] states = BenchStates.recordPieces(STATES);
+		stacks = new Field[STATES];
+		for(int i = 0; i < STATES; i++) stacks[i] = states[i].field;
+
+		clears = BenchStates.recordLineClears(STATES);
+		work = new Field(clears[0]);
+	}
+
+	/**
+	 * Get the next field of a set
+	 * @param fields Fields
+	 * @return Field
+	 */
+	protected Field next(Field[] fields) {
+		index = (index + 1) % STATES;
+		return fields[index];
+	}
+
+	@Benchmark
+	public int checkLine() {
+		return next(clears).checkLine();
+	}
+
+	@Benchmark
+	public int checkLineNoFlag() {
+		return next(clears).checkLineNoFlag();
+	}
+
+	/** Baseline for {@link #clearLine()} */
+	@Benchmark
+	public Field copy() {
+		work.copy(next(clears));
+		return work;
+	}
+
+	@Benchmark
+	public Field clearLine() {
+		work.copy(next(clears));
+		work.clearLine();
+		work.downFloatingBlocks();
+		return work;
+	}
+
+	@Benchmark
+	public int getHowManyHoles() {
+		return next(stacks).getHowManyHoles();
+	}
+}
@@ -0,0 +1,107 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mu.nu.nullpo.game.component.Piece;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Piece collision checks on recorded fields
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PieceBenchmark {
+	/** Number of recorded states */
+	public static final int STATES = 64;
+
+	/** Recorded states */
+	protected BenchStates.PieceState[] states;
+
+	/** Index of the next state */
+	protected int index;
+
+	@Setup
+	public void setup() {
+		states = BenchStates.recordPieces(STATES);
+	}
+
+	/**
+	 * Check every direction at every column at the spawn height
+	 * @return Number of positions without collision
+	 */
+	@Benchmark
+	public int checkCollision() {
+		BenchStates.PieceState s = states[index = (index + 1) % STATES];
+		int count = 0;
+
+		for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+			for(int x = -2; x < s.field.getWidth(); x++) {
+				if(!s.piece.checkCollision(x, s.y, rt, s.field)) count++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Drop every direction at every column from the spawn height
+	 * @return Sum of the landing heights
+	 */
+	@Benchmark
+	public int getBottom() {
+		BenchStates.PieceState s = states[index = (index + 1) % STATES];
+		int sum = 0;
+
+		for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+			int minX = s.piece.getMostMovableLeft(s.x, s.y, rt, s.field);
+			int maxX = s.piece.getMostMovableRight(s.x, s.y, rt, s.field);
+			for(int x = minX; x <= maxX; x++) {
+				sum += s.piece.getBottom(x, s.y, rt, s.field);
+			}
+		}
+
+		return sum;
+	}
+}
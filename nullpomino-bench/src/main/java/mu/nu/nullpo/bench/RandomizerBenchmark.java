@@ -0,0 +1,96 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import mu.nu.nullpo.game.component.Piece;
+import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every randomizer generating the standard seven pieces
+ * (FixedSequenceRandomizer is left out because it reads its sequence from a file,
+ * and the BagMinus randomizers because setState leaves their bag length at 0)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RandomizerBenchmark {
+	/** Randomizer class name (config/list/randomizer.lst) */
+	@Param({
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.MemorylessRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.BagRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.BagNoSZORandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.BagBonusRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.BagBonusBagRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.DoubleBagRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.NineBagRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.History4RollsRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.History6RollsRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.StrictHistoryRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.NintendoRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.GameBoyRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.LinearDistWeightRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.QuadraticDistWeightRandomizer",
+		"net.omegaboshi.nullpomino.game.subsystem.randomizer.ExpDistWeightRandomizer"
+	})
+	public String randomizerClass;
+
+	/** Randomizer */
+	protected Randomizer randomizer;
+
+	@Setup
+	public void setup() throws Exception {
+		boolean[] pieceEnable = new boolean[Piece.PIECE_COUNT];
+		for(int i = 0; i < Piece.PIECE_STANDARD_COUNT; i++) pieceEnable[i] = true;
+
+		randomizer = (Randomizer) Class.forName(randomizerClass).newInstance();
+		randomizer.setState(pieceEnable, BenchStates.SEED);
+	}
+
+	@Benchmark
+	public int next() {
+		return randomizer.next();
+	}
+}
@@ -0,0 +1,151 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.component.WallkickResult;
+import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Every wallkick implementation on rotations that collide in recorded states
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WallkickBenchmark {
+	/** Number of recorded states */
+	public static final int STATES = 64;
+
+	/** Wallkick class name (config/list/wallkick.lst) */
+	@Param({
+		"mu.nu.nullpo.game.subsystem.wallkick.StandardWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.StandardMild180Wallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.StandardSymmetricWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.StandardSymmetricMild180Wallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.ClassicWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.ClassicPlusWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.DTETWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.GBCWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.WallOnlyWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.AvalancheWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.AvalancheClassicWallkick",
+		"mu.nu.nullpo.game.subsystem.wallkick.PhysicianWallkick"
+	})
+	public String wallkickClass;
+
+	/** A rotation that collides without a kick */
+	protected static class Kick {
+		/** State */
+		BenchStates.PieceState state;
+
+		/** X-coordinate */
+		int x;
+
+		/** Y-coordinate */
+		int y;
+
+		/** Rotation button used (-1: left rotation, 1: right rotation, 2: 180-degree rotation) */
+		int rtDir;
+
+		/** Direction before rotation */
+		int rtOld;
+
+		/** Direction after rotation */
+		int rtNew;
+	}
+
+	/** Wallkick */
+	protected Wallkick wallkick;
+
+	/** Rotations to kick */
+	protected Kick[] kicks;
+
+	/** Index of the next rotation */
+	protected int index;
+
+	@Setup
+	public void setup() throws Exception {
+		wallkick = (Wallkick) Class.forName(wallkickClass).newInstance();
+
+		// Every rotation of a landed piece that collides
+		List<Kick> list = new ArrayList<Kick>();
+		for(BenchStates.PieceState s : BenchStates.recordPieces(STATES)) {
+			for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
+				int minX = s.piece.getMostMovableLeft(s.x, s.y, rt, s.field);
+				int maxX = s.piece.getMostMovableRight(s.x, s.y, rt, s.field);
+
+				for(int x = minX; x <= maxX; x++) {
+					int y = s.piece.getBottom(x, s.y, rt, s.field);
+
+					for(int rtDir = -1; rtDir <= 2; rtDir++) {
+						if(rtDir == 0) continue;
+						int rtNew = (rt + rtDir + Piece.DIRECTION_COUNT) % Piece.DIRECTION_COUNT;
+
+						if(s.piece.checkCollision(x, y, rtNew, s.field)) {
+							Kick k = new Kick();
+							k.state = s;
+							k.x = x;
+							k.y = y;
+							k.rtDir = rtDir;
+							k.rtOld = rt;
+							k.rtNew = rtNew;
+							list.add(k);
+						}
+					}
+				}
+			}
+		}
+		kicks = list.toArray(new Kick[list.size()]);
+	}
+
+	@Benchmark
+	public WallkickResult executeWallkick() {
+		Kick k = kicks[index = (index + 1) % kicks.length];
+		return wallkick.executeWallkick(k.x, k.y, k.rtDir, k.rtOld, k.rtNew, true, k.state.piece, k.state.field, null);
+	}
+}
@@ -30,6 +30,7 @@ package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 
 import mu.nu.nullpo.game.play.GameEngine;
@@ -123,6 +124,45 @@ public class Field implements Serializable {
 	/** List of last rows cleared in most recent horizontal line clear. */
 	public ArrayList<Block[]> lastLinesCleared;
 
+	/** Cells of the blocks collected by the last markLinkedBlocks call (only the first linkCellCount are used) */
+	protected transient int[] linkCells;
+
+	/** Number of cells in linkCells */
+	protected transient int linkCellCount;
+
+	/** Mark of each cell (the cell is in linkCells when it is the same as linkMarkNow) */
+	protected transient int[] linkMark;
+
+	/** Mark of the last markLinkedBlocks call */
+	protected transient int linkMarkNow;
+
+	/** Cascade state when the fall check of each cell was saved */
+	protected transient int[] cascadeCheckVersion;
+
+	/** Saved fall check of each cell */
+	protected transient boolean[] cascadeCheckFall;
+
+	/** Current cascade state (changes when something falls) */
+	protected transient int cascadeVersion;
+
+	/** Colors of the blocks for countColor (a stand-in for a copy of the field) */
+	protected transient int[] colorScratch;
+
+	/** Hardness of the blocks for countColor */
+	protected transient int[] hardScratch;
+
+	/** Cells still to visit in clearColorGroup */
+	protected transient int[] colorStack;
+
+	/** State of each cell at the last checkForSquares (see getSquareCellState) */
+	protected transient int[] squareCellState;
+
+	/** Rows changed since the last checkForSquares */
+	protected transient boolean[] squareRowChanged;
+
+	/** Bottom of the rows checked by the last checkForSquares */
+	protected transient int squareCheckBottom;
+
 	/** Used for TGM garbage, can later be extended to all types */
 	//public ArrayList<Block[]> pendingGarbage;
 
@@ -197,18 +237,26 @@ public class Field implements Serializable {
 
 	/**
 	 * AnotherFieldCopied from the
+	 * (When the size is the same, the existing Block objects are reused)
 	 * @param f Copy source
 	 */
 	public void copy(Field f) {
+		boolean sameSize = (block_field != null) && (width == f.width) && (height == f.height) && (hidden_height == f.hidden_height);
+
 		width = f.width;
 		height = f.height;
 		hidden_height = f.hidden_height;
 		ceiling = f.ceiling;
 
-		block_field = new Block[height][width];
-		block_hidden = new Block[hidden_height][width];
-		lineflag_field = new boolean[height];
-		lineflag_hidden = new boolean[hidden_height];
+		if(sameSize) {
+			Arrays.fill(lineflag_field, false);
+			Arrays.fill(lineflag_hidden, false);
+		} else {
+			block_field = new Block[height][width];
+			block_hidden = new Block[hidden_height][width];
+			lineflag_field = new boolean[height];
+			lineflag_hidden = new boolean[hidden_height];
+		}
 		hurryupFloorLines = f.hurryupFloorLines;
 
 		colorClearExtraCount = f.colorClearExtraCount;
@@ -218,6 +266,20 @@ public class Field implements Serializable {
 		lastLinesCleared = f.lastLinesCleared;
 		garbageCleared = f.garbageCleared;
 
+		if(f == this) return;
+
+		if(sameSize) {
+			for(int j = 0; j < height; j++) {
+				Block[] src = f.block_field[j], dest = block_field[j];
+				for(int i = 0; i < width; i++) dest[i].copy(src[i]);
+			}
+			for(int j = 0; j < hidden_height; j++) {
+				Block[] src = f.block_hidden[j], dest = block_hidden[j];
+				for(int i = 0; i < width; i++) dest[i].copy(src[i]);
+			}
+			return;
+		}
+
 		for(int i = 0; i < width; i++) {
 			for(int j = 0; j < height; j++) {
 				block_field[j][i] = new Block(f.getBlock(i, j));
@@ -354,6 +416,20 @@ public class Field implements Serializable {
 		}
 	}
 
+	/**
+	 * Puts a row array at a line (the blocks are not copied)
+	 * @param y height of the row in the field
+	 * @param row Row
+	 * @throws ArrayIndexOutOfBoundsException The specified coordinates out of range
+	 */
+	protected void setRowE(int y, Block[] row) throws ArrayIndexOutOfBoundsException {
+		if(y >= 0) {
+			block_field[y] = row;
+		} else {
+			block_hidden[(y * -1) - 1] = row;
+		}
+	}
+
 	/**
 	 * Is located at the specified coordinatesBlockGet the
 	 * @param x X-coordinate
@@ -768,21 +844,11 @@ public class Field implements Serializable {
 			if(getLineFlag(y)) {
 				lines++;
 
-				// BlockA1Copied from the rows above
+				// Move the rows above down 1 line, and reuse the cleared row as the blank top row
 				for(int k = y; k > (hidden_height * -1); k--) {
-					for(int l = 0; l < width; l++) {
-						Block blk = getBlock(l, k - 1);
-						if(blk == null) blk = new Block();
-						setBlock(l, k, blk);
-						setLineFlag(k, getLineFlag(k - 1));
-					}
-				}
-
-				// Blank to the top
-				for(int l = 0; l < width; l++) {
-					Block blk = new Block();
-					setBlock(l, (hidden_height * -1), blk);
+					setLineFlag(k, getLineFlag(k - 1));
 				}
+				rotateRowsDown((hidden_height * -1), y);
 				setLineFlag((hidden_height * -1), false);
 			} else {
 				y--;
@@ -800,21 +866,11 @@ public class Field implements Serializable {
 
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			if(getLineFlag(y)) {
-				// BlockA1Copied from the rows above
+				// Move the rows above down 1 line, and reuse the cleared row as the blank top row
 				for(int k = y; k > (hidden_height * -1); k--) {
-					for(int l = 0; l < width; l++) {
-						Block blk = getBlock(l, k - 1);
-						if(blk == null) blk = new Block();
-						setBlock(l, k, blk);
-						setLineFlag(k, getLineFlag(k - 1));
-					}
-				}
-
-				// Blank to the top
-				for(int l = 0; l < width; l++) {
-					Block blk = new Block();
-					setBlock(l, (hidden_height * -1), blk);
+					setLineFlag(k, getLineFlag(k - 1));
 				}
+				rotateRowsDown((hidden_height * -1), y);
 				setLineFlag((hidden_height * -1), false);
 				return;
 			} else {
@@ -1328,21 +1384,13 @@ public class Field implements Serializable {
 	public void pushUp(int lines) {
 		for(int k = 0; k < lines; k++) {
 			for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor() - 1; i++) {
-				// BlockA1Copy from the bottom stage
-				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i + 1);
-					if(blk == null) blk = new Block();
-					setBlock(j, i, blk);
-					setLineFlag(i, getLineFlag(i + 1));
-				}
+				setLineFlag(i, getLineFlag(i + 1));
 			}
 
-			// Blank to the bottom
-			for(int j = 0; j < width; j++) {
-				int y = getHeightWithoutHurryupFloor() - 1;
-				setBlock(j, y, new Block());
-				setLineFlag(y, false);
-			}
+			// Move the rows up 1 line, and reuse the top row as the blank bottom row
+			int y = getHeightWithoutHurryupFloor() - 1;
+			rotateRowsUp((hidden_height * -1), y);
+			setLineFlag(y, false);
 		}
 	}
 
@@ -1360,20 +1408,12 @@ public class Field implements Serializable {
 	public void pushDown(int lines) {
 		for(int k = 0; k < lines; k++) {
 			for(int i = getHeightWithoutHurryupFloor() - 1; i > (hidden_height * -1); i--) {
-				// BlockA1Copied from the rows above
-				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i - 1);
-					if(blk == null) blk = new Block();
-					setBlock(j, i, blk);
-					setLineFlag(i, getLineFlag(i + 1));
-				}
+				setLineFlag(i, getLineFlag(i + 1));
 			}
 
-			// Blank to the top
-			for(int j = 0; j < width; j++) {
-				setBlock(j, (hidden_height * -1), new Block());
-				setLineFlag((hidden_height * -1), false);
-			}
+			// Move the rows down 1 line, and reuse the bottom row as the blank top row
+			rotateRowsDown((hidden_height * -1), getHeightWithoutHurryupFloor() - 1);
+			setLineFlag((hidden_height * -1), false);
 		}
 	}
 
@@ -1390,20 +1430,57 @@ public class Field implements Serializable {
 	 * @param lines Number of lines to cut
 	 */
 	public void cutLine(int y, int lines) {
+		// A line below the field cuts the bottom row
+		int cutY = Math.max(Math.min(y, height - 1), (hidden_height * -1));
+
 		for(int k = 0; k < lines; k++) {
 			for(int i = y; i > (hidden_height * -1); i--) {
-				for(int j = 0; j < width; j++) {
-					Block blk = getBlock(j, i - 1);
-					if(blk == null) blk = new Block();
-					setBlock(j, i, blk);
-				}
 				setLineFlag(i, getLineFlag(i + 1));
 			}
 
-			for(int j = 0; j < width; j++) {
-				setBlock(j, (hidden_height * -1), new Block());
-				setLineFlag((hidden_height * -1), false);
-			}
+			// Move the rows above down 1 line, and reuse the cut row as the blank top row
+			rotateRowsDown((hidden_height * -1), cutY);
+			setLineFlag((hidden_height * -1), false);
+		}
+	}
+
+	/**
+	 * Moves the rows from top to bottom - 1 down 1 line, and puts the row that was at bottom
+	 * at the top after emptying it. Only the row arrays move, the blocks are not copied.
+	 * @param top Y coord of the top row
+	 * @param bottom Y coord of the bottom row
+	 */
+	protected void rotateRowsDown(int top, int bottom) {
+		if(top > bottom) return;
+
+		Block[] row = getRowE(bottom);
+		for(int i = bottom; i > top; i--) {
+			setRowE(i, getRowE(i - 1));
+		}
+		setRowE(top, row);
+
+		for(int j = 0; j < width; j++) {
+			row[j].reset();
+		}
+	}
+
+	/**
+	 * Moves the rows from top + 1 to bottom up 1 line, and puts the row that was at top
+	 * at the bottom after emptying it. Only the row arrays move, the blocks are not copied.
+	 * @param top Y coord of the top row
+	 * @param bottom Y coord of the bottom row
+	 */
+	protected void rotateRowsUp(int top, int bottom) {
+		if(top > bottom) return;
+
+		Block[] row = getRowE(top);
+		for(int i = top; i < bottom; i++) {
+			setRowE(i, getRowE(i + 1));
+		}
+		setRowE(bottom, row);
+
+		for(int j = 0; j < width; j++) {
+			row[j].reset();
 		}
 	}
 
@@ -1655,8 +1732,14 @@ public class Field implements Serializable {
 	public int[] checkForSquares() {
 		int[] squares = {0,0};
 
+		findSquareRowsChanged();
+
 		// Check for gold squares
 		for (int i = (hidden_height * -1); i < (getHeightWithoutHurryupFloor() - 3); i++) {
+			// Nothing in these rows has changed since the last check, so there is no square here
+			if (!isSquareRowsChanged(i)) {
+				continue;
+			}
 			for (int j = 0; j < (width - 3); j++) {
 				// rootBlk is the upper-left square
 				Block rootBlk = getBlock(j, i);
@@ -1722,6 +1805,7 @@ public class Field implements Serializable {
 							if (l < 3) {
 								blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, true);
 							}
+							squareCellState[getCellIndex(j+l, i+k)] = getSquareCellState(blk);
 						}
 					}
 				}
@@ -1729,6 +1813,9 @@ public class Field implements Serializable {
 		}
 		// Check for silver squares
 		for (int i = (hidden_height * -1); i < (getHeightWithoutHurryupFloor() - 3); i++) {
+			if (!isSquareRowsChanged(i)) {
+				continue;
+			}
 			for (int j = 0; j < (width - 3); j++) {
 				Block rootBlk = getBlock(j, i);
 				boolean squareCheck = false;
@@ -1777,6 +1864,7 @@ public class Field implements Serializable {
 							if (l < 3) {
 								blk.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, true);
 							}
+							squareCellState[getCellIndex(j+l, i+k)] = getSquareCellState(blk);
 						}
 					}
 				}
@@ -1786,6 +1874,67 @@ public class Field implements Serializable {
 		return squares;
 	}
 
+	/**
+	 * Finds the rows that have changed since the last {@link #checkForSquares()}, and remembers their new state.
+	 * The last check left no 4x4 area that could become a square, so only the areas
+	 * that have a changed row need to be checked again.
+	 * Every row counts as changed on the first check or after the hurry-up floor has moved.
+	 */
+	protected void findSquareRowsChanged() {
+		int size = (hidden_height + height) * width;
+		boolean all = false;
+
+		if((squareCellState == null) || (squareCellState.length != size)) {
+			squareCellState = new int[size];
+			squareRowChanged = new boolean[hidden_height + height];
+			all = true;
+		}
+		if(squareCheckBottom != getHeightWithoutHurryupFloor()) {
+			squareCheckBottom = getHeightWithoutHurryupFloor();
+			all = true;
+		}
+
+		for(int i = (hidden_height * -1); i < height; i++) {
+			Block[] row = getRow(i);
+			int cell = getCellIndex(0, i);
+			boolean changed = all;
+
+			for(int j = 0; j < width; j++) {
+				int state = getSquareCellState(row[j]);
+				if(squareCellState[cell + j] != state) {
+					squareCellState[cell + j] = state;
+					changed = true;
+				}
+			}
+
+			squareRowChanged[i + hidden_height] = changed;
+		}
+	}
+
+	/**
+	 * Checks if any of the 4 rows of a 4x4 area has changed since the last {@link #checkForSquares()}
+	 * @param y Y coord of the top row
+	 * @return <code>true</code> if any of the rows has changed
+	 */
+	protected boolean isSquareRowsChanged(int y) {
+		for(int k = 0; k < 4; k++) {
+			if(squareRowChanged[y + k + hidden_height]) return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Gets the part of a block that decides if it can be in a square (color, and the broken, garbage and connection attributes)
+	 * @param blk Block
+	 * @return State of the block
+	 */
+	private static int getSquareCellState(Block blk) {
+		int attr = blk.attribute & (Block.BLOCK_ATTRIBUTE_BROKEN | Block.BLOCK_ATTRIBUTE_GARBAGE |
+				Block.BLOCK_ATTRIBUTE_CONNECT_UP | Block.BLOCK_ATTRIBUTE_CONNECT_DOWN |
+				Block.BLOCK_ATTRIBUTE_CONNECT_LEFT | Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT);
+		return (blk.color << 10) | attr;
+	}
+
 	/**
 	 * Checks the lines that are currently being cleared to see how many strips of squares are present in them.
 	 * @return +1 for every 1x4 strip of gold (index 0) or silver (index 1)
@@ -1957,10 +2106,11 @@ public class Field implements Serializable {
 	 */
 	public int gemClearColor (int size, boolean garbageClear, boolean ignoreHidden)
 	{
-		Field temp = new Field(this);
 		int total = 0;
 		Block b;
 
+		beginColorCount();
+
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
 				b = getBlock(j, i);
@@ -1968,7 +2118,7 @@ public class Field implements Serializable {
 					continue;
 				if (!b.isGemBlock())
 					continue;
-				int clear = temp.clearColor(j, i, false, garbageClear, true, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -1991,11 +2141,13 @@ public class Field implements Serializable {
 	 */
 	public int clearColor (int size, boolean garbageClear, boolean gemSame, boolean ignoreHidden)
 	{
-		Field temp = new Field(this);
 		int total = 0;
+
+		beginColorCount();
+
 		for(int i = ignoreHidden ? 0 : (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				int clear = temp.clearColor(j, i, false, garbageClear, gemSame, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -2042,39 +2194,156 @@ public class Field implements Serializable {
 	private int clearColor (int x, int y, int targetColor, boolean flag, boolean garbageClear,
 			boolean gemSame, boolean ignoreHidden)
 	{
-		if (ignoreHidden && y < 0)
-			return 0;
-		int blockColor = getBlockColor(x, y, gemSame);
-		if (blockColor == Block.BLOCK_COLOR_INVALID)
+		return clearColorGroup(x, y, targetColor, flag, garbageClear, gemSame, ignoreHidden, false);
+	}
+
+	/**
+	 * Gets ready for {@link #countColor(int, int, boolean, boolean)}.
+	 * Copies the colors and hardness of the blocks into the work arrays,
+	 * which then stand in for a copy of the field.
+	 */
+	protected void beginColorCount() {
+		int size = (hidden_height + height) * width;
+
+		if((colorScratch == null) || (colorScratch.length != size)) {
+			colorScratch = new int[size];
+			hardScratch = new int[size];
+		}
+
+		for(int i = (hidden_height * -1); i < height; i++) {
+			for(int j = 0; j < width; j++) {
+				int cell = getCellIndex(j, i);
+				colorScratch[cell] = getBlockColor(j, i, true);
+				hardScratch[cell] = getBlock(j, i).hard;
+			}
+		}
+	}
+
+	/**
+	 * Counts the blocks that {@link #clearColor(int, int, boolean, boolean, boolean, boolean)}
+	 * would clear, clearing them in the work arrays only. The counts are the same as
+	 * clearing a copy of the field made when {@link #beginColorCount()} was called.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param garbageClear <code>true</code> to clear garbage blocks adjacent to cleared clusters
+	 * @param ignoreHidden <code>true</code> to leave out the hidden part of the field
+	 * @return The number of blocks cleared.
+	 */
+	protected int countColor(int x, int y, boolean garbageClear, boolean ignoreHidden) {
+		int blockColor = colorScratch[getCellIndex(x, y)];
+		if (blockColor == Block.BLOCK_COLOR_NONE || blockColor == Block.BLOCK_COLOR_INVALID)
 			return 0;
-		Block b = getBlock(x, y);
-		if (flag && b.getAttribute(Block.BLOCK_ATTRIBUTE_ERASE))
+		if (getBlock(x, y).getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE))
 			return 0;
-		if (garbageClear && b.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE)
-				 && !b.getAttribute(Block.BLOCK_ATTRIBUTE_WALL))
-		{
-			if (flag)
+		return clearColorGroup(x, y, blockColor, false, garbageClear, true, ignoreHidden, true);
+	}
+
+	/**
+	 * Clears a cluster of blocks. This visits the blocks in the same order as a recursive
+	 * flood fill (right, left, down, up), using a stack of the coordinates still to visit.
+	 * A hard block loses one hardness each time it is reached.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param targetColor Color of the cluster
+	 * @param flag <code>true</code> to set BLOCK_ATTRIBUTE_ERASE to true on cleared blocks.
+	 * @param garbageClear <code>true</code> to clear garbage blocks adjacent to cleared clusters
+	 * @param gemSame <code>true</code> to check gem blocks
+	 * @param ignoreHidden <code>true</code> to leave out the hidden part of the field
+	 * @param scratch <code>true</code> to clear the work arrays of countColor instead of the field
+	 * @return The number of blocks cleared.
+	 */
+	protected int clearColorGroup(int x, int y, int targetColor, boolean flag, boolean garbageClear,
+			boolean gemSame, boolean ignoreHidden, boolean scratch)
+	{
+		int total = 0;
+
+		if(colorStack == null) {
+			colorStack = new int[(hidden_height + height) * width * 4];
+		}
+		int stackSize = 0;
+		if(isColorVisitInside(x, y)) {
+			colorStack[stackSize] = getCellIndex(x, y);
+			stackSize++;
+		}
+
+		while(stackSize > 0) {
+			stackSize--;
+			int cell = colorStack[stackSize];
+			int bx = cell % width;
+			int by = (cell / width) - hidden_height;
+
+			if (ignoreHidden && by < 0)
+				continue;
+			int blockColor = scratch ? colorScratch[cell] : getBlockColor(bx, by, gemSame);
+			if (blockColor == Block.BLOCK_COLOR_INVALID)
+				continue;
+			Block b = getBlock(bx, by);
+			if (flag && b.getAttribute(Block.BLOCK_ATTRIBUTE_ERASE))
+				continue;
+			if (garbageClear && b.getAttribute(Block.BLOCK_ATTRIBUTE_GARBAGE)
+					 && !b.getAttribute(Block.BLOCK_ATTRIBUTE_WALL))
 			{
+				if (flag)
+				{
+					b.setAttribute(Block.BLOCK_ATTRIBUTE_ERASE, true);
+					garbageCleared++;
+				}
+				else
+					clearColorBlock(b, bx, by, cell, scratch);
+			}
+			if (blockColor != targetColor)
+				continue;
+			if (flag)
 				b.setAttribute(Block.BLOCK_ATTRIBUTE_ERASE, true);
-				garbageCleared++;
+			else
+				clearColorBlock(b, bx, by, cell, scratch);
+			total++;
+
+			// Pushed in reverse, so the right side is visited first
+			if(stackSize + 4 > colorStack.length) {
+				int[] newStack = new int[colorStack.length * 2];
+				System.arraycopy(colorStack, 0, newStack, 0, stackSize);
+				colorStack = newStack;
 			}
-			else if (b.hard > 0)
+			if(isColorVisitInside(bx, by - 1)) colorStack[stackSize++] = cell - width;
+			if(isColorVisitInside(bx, by + 1)) colorStack[stackSize++] = cell + width;
+			if(isColorVisitInside(bx - 1, by)) colorStack[stackSize++] = cell - 1;
+			if(isColorVisitInside(bx + 1, by)) colorStack[stackSize++] = cell + 1;
+		}
+
+		return total;
+	}
+
+	/**
+	 * Subroutine for clearColorGroup. Takes one hardness away from the block, or clears it if it has none left.
+	 * @param b Block
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @param cell Index of the cell in the work arrays
+	 * @param scratch <code>true</code> to change the work arrays of countColor instead of the block
+	 */
+	private void clearColorBlock(Block b, int x, int y, int cell, boolean scratch) {
+		if(scratch) {
+			if (hardScratch[cell] > 0)
+				hardScratch[cell]--;
+			else
+				colorScratch[cell] = Block.BLOCK_COLOR_NONE;
+		} else {
+			if (b.hard > 0)
 				b.hard--;
 			else
 				setBlockColor(x, y, Block.BLOCK_COLOR_NONE);
 		}
-		if (blockColor != targetColor)
-			return 0;
-		if (flag)
-			b.setAttribute(Block.BLOCK_ATTRIBUTE_ERASE, true);
-		else if (b.hard > 0)
-			b.hard--;
-		else
-			setBlockColor(x, y, Block.BLOCK_COLOR_NONE);
-		return 1 + clearColor(x+1, y, targetColor, flag, garbageClear, gemSame, ignoreHidden)
-				 + clearColor(x-1, y, targetColor, flag, garbageClear, gemSame, ignoreHidden)
-				 + clearColor(x, y+1, targetColor, flag, garbageClear, gemSame, ignoreHidden)
-				 + clearColor(x, y-1, targetColor, flag, garbageClear, gemSame, ignoreHidden);
+	}
+
+	/**
+	 * Subroutine for clearColorGroup. Cells outside the field are never cleared, so they are not visited.
+	 * @param x x-coordinate
+	 * @param y y-coordinate
+	 * @return <code>true</code> if the cell is in the field
+	 */
+	private boolean isColorVisitInside(int x, int y) {
+		return (x >= 0) && (x < width) && (y >= hidden_height * -1) && (y < height);
 	}
 
 	/**
@@ -2120,74 +2389,17 @@ public class Field implements Serializable {
 		boolean result = false;
 
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
+		beginCascadeCheck();
 
 		for(int i = (getHeightWithoutHurryupFloor() - 1); i >= (hidden_height * -1); i--) {
 			for(int j = 0; j < width; j++) {
-				Block blk = getBlock(j, i);
-
-				if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY)) {
-					boolean fall = true;
-					checkBlockLink(j, i);
-
-					for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-						for(int l = 0; l < width; l++) {
-							Block bTemp = getBlock(l, k);
-
-							if( (bTemp != null) && !bTemp.isEmpty() &&
-								bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-							{
-								Block bBelow = getBlock(l, k + 1);
-
-								if( (getCoordAttribute(l, k + 1) == COORD_WALL) ||
-									((bBelow != null) && !bBelow.isEmpty() && !bBelow.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK))
-								  )
-								{
-									fall = false;
-								}
-							}
-						}
-					}
-
-					if(fall) {
-						result = true;
-						for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-							for(int l = 0; l < width; l++) {
-								Block bTemp = getBlock(l, k);
-								Block bBelow = getBlock(l, k + 1);
-
-								if( (getCoordAttribute(l, k + 1) != COORD_WALL) &&
-								    (bTemp != null) && !bTemp.isEmpty() && (bBelow != null) && bBelow.isEmpty() &&
-								    bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-								{
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, true);
-									if (bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK))
-									{
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
-									}
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_LAST_COMMIT, true);
-									setBlock(l, k + 1, bTemp);
-									setBlock(l, k, new Block());
-								}
-							}
-						}
-					}
-				}
+				if(checkCascadeFall(j, i, true)) result = true;
 			}
 		}
 
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
 
-		/*
-		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
-			setLineFlag(i, false);
-		}
-		*/
-
 		return result;
 	}
 
@@ -2199,61 +2411,11 @@ public class Field implements Serializable {
 		boolean result = false;
 
 		setAllAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, false);
+		beginCascadeCheck();
 
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
-				Block blk = getBlock(j, i);
-
-				if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY)) {
-					boolean fall = true;
-					checkBlockLink(j, i);
-
-					for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-						for(int l = 0; l < width; l++) {
-							Block bTemp = getBlock(l, k);
-
-							if( (bTemp != null) && !bTemp.isEmpty() &&
-								bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-							{
-								Block bBelow = getBlock(l, k + 1);
-
-								if( (getCoordAttribute(l, k + 1) == COORD_WALL) ||
-									((bBelow != null) && !bBelow.isEmpty() && !bBelow.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK)) )
-								{
-									fall = false;
-								}
-							}
-						}
-					}
-
-					if(fall) {
-						result = true;
-						for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-							for(int l = 0; l < width; l++) {
-								Block bTemp = getBlock(l, k);
-								Block bBelow = getBlock(l, k + 1);
-
-								if( (getCoordAttribute(l, k + 1) != COORD_WALL) &&
-								    (bTemp != null) && !bTemp.isEmpty() && (bBelow != null) && bBelow.isEmpty() &&
-								    bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-								{
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, true);
-									if (bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK))
-									{
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
-										bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
-									}
-									bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_LAST_COMMIT, true);
-									setBlock(l, k + 1, bTemp);
-									setBlock(l, k, new Block());
-								}
-							}
-						}
-					}
-				}
+				if(checkCascadeFall(j, i, true)) result = true;
 			}
 		}
 
@@ -2292,6 +2454,208 @@ public class Field implements Serializable {
 		}
 	}
 
+	/**
+	 * Gets ready for {@link #checkCascadeFall(int, int, boolean)}.
+	 * Makes the work arrays if needed and forgets the saved results of the last checks.
+	 */
+	protected void beginCascadeCheck() {
+		int size = (hidden_height + height) * width;
+
+		if((linkMark == null) || (linkMark.length != size)) {
+			linkCells = new int[size];
+			linkMark = new int[size];
+			cascadeCheckVersion = new int[size];
+			cascadeCheckFall = new boolean[size];
+			linkMarkNow = 0;
+			cascadeVersion = 0;
+		}
+
+		nextCascadeVersion();
+	}
+
+	/**
+	 * Checks if the block and the blocks linked to it can fall one row, and drops them if asked.
+	 * It gives the same result as marking the blocks with {@link #checkBlockLink(int, int)}
+	 * and looking at the whole field, but only looks at the linked blocks.
+	 * When every link between them goes both ways, each of them is linked to the same blocks,
+	 * so the result is saved for all of them until something falls.
+	 * @param x X coord
+	 * @param y Y coord
+	 * @param drop <code>true</code> to drop the blocks if they can fall
+	 * @return <code>true</code> if the blocks can fall
+	 */
+	protected boolean checkCascadeFall(int x, int y, boolean drop) {
+		Block blk = getBlock(x, y);
+		if((blk == null) || blk.isEmpty() || blk.getAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY)) return false;
+
+		int cell = getCellIndex(x, y);
+		if(cascadeCheckVersion[cell] == cascadeVersion) return cascadeCheckFall[cell];
+
+		boolean mutual = markLinkedBlocks(x, y);
+		boolean fall = isLinkedBlocksFall();
+
+		if(fall && drop && dropLinkedBlocks()) {
+			nextCascadeVersion();
+		} else if(mutual) {
+			for(int i = 0; i < linkCellCount; i++) {
+				cascadeCheckVersion[linkCells[i]] = cascadeVersion;
+				cascadeCheckFall[linkCells[i]] = fall;
+			}
+		}
+
+		return fall;
+	}
+
+	/**
+	 * Collects the blocks that {@link #checkBlockLink(int, int)} would mark into linkCells
+	 * @param x X coord
+	 * @param y Y coord
+	 * @return <code>true</code> if every link between the collected blocks goes both ways
+	 */
+	protected boolean markLinkedBlocks(int x, int y) {
+		boolean mutual = true;
+
+		linkMarkNow++;
+		if(linkMarkNow == 0) {
+			Arrays.fill(linkMark, 0);
+			linkMarkNow = 1;
+		}
+
+		int cell = getCellIndex(x, y);
+		linkMark[cell] = linkMarkNow;
+		linkCells[0] = cell;
+		linkCellCount = 1;
+
+		for(int i = 0; i < linkCellCount; i++) {
+			int bx = linkCells[i] % width;
+			int by = (linkCells[i] / width) - hidden_height;
+			Block blk = getBlock(bx, by);
+
+			if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK)) {
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP))
+					mutual &= markLinkedBlock(bx, by - 1, Block.BLOCK_ATTRIBUTE_CONNECT_DOWN);
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN))
+					mutual &= markLinkedBlock(bx, by + 1, Block.BLOCK_ATTRIBUTE_CONNECT_UP);
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT))
+					mutual &= markLinkedBlock(bx - 1, by, Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT);
+				if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT))
+					mutual &= markLinkedBlock(bx + 1, by, Block.BLOCK_ATTRIBUTE_CONNECT_LEFT);
+			}
+		}
+
+		return mutual;
+	}
+
+	/**
+	 * Subroutine for markLinkedBlocks. Adds the block to linkCells if it is not there yet.
+	 * @param x X coord
+	 * @param y Y coord
+	 * @param linkBack Attribute of the link from this block back to the block that links to it
+	 * @return <code>false</code> if the block is not linked back
+	 */
+	protected boolean markLinkedBlock(int x, int y, int linkBack) {
+		if((x < 0) || (x >= width) || (y < hidden_height * -1) || (y >= height)) return true;
+
+		Block blk = getBlock(x, y);
+		if((blk == null) || blk.isEmpty()) return true;
+
+		int cell = getCellIndex(x, y);
+		if(linkMark[cell] != linkMarkNow) {
+			linkMark[cell] = linkMarkNow;
+			linkCells[linkCellCount] = cell;
+			linkCellCount++;
+		}
+
+		return !blk.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK) && blk.getAttribute(linkBack);
+	}
+
+	/**
+	 * Checks if the blocks in linkCells can fall one row
+	 * @return <code>true</code> if nothing below them stops them
+	 */
+	protected boolean isLinkedBlocksFall() {
+		int bottom = getHeightWithoutHurryupFloor();
+
+		for(int i = 0; i < linkCellCount; i++) {
+			int bx = linkCells[i] % width;
+			int by = (linkCells[i] / width) - hidden_height;
+			if(by >= bottom) continue;
+
+			Block blk = getBlock(bx, by);
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL)) continue;
+
+			if(getCoordAttribute(bx, by + 1) == COORD_WALL) return false;
+
+			Block bBelow = getBlock(bx, by + 1);
+			if((bBelow != null) && !bBelow.isEmpty() && (linkMark[getCellIndex(bx, by + 1)] != linkMarkNow)) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Moves the blocks in linkCells down one row, from the bottom up.
+	 * Blocks that have already fallen in this step stay where they are.
+	 * @return <code>true</code> if any block moved
+	 */
+	protected boolean dropLinkedBlocks() {
+		boolean result = false;
+		int bottom = getHeightWithoutHurryupFloor();
+
+		Arrays.sort(linkCells, 0, linkCellCount);
+
+		for(int i = linkCellCount - 1; i >= 0; i--) {
+			int bx = linkCells[i] % width;
+			int by = (linkCells[i] / width) - hidden_height;
+			if(by >= bottom) continue;
+
+			Block bTemp = getBlock(bx, by);
+			Block bBelow = getBlock(bx, by + 1);
+
+			if( (getCoordAttribute(bx, by + 1) != COORD_WALL) &&
+			    !bTemp.isEmpty() && (bBelow != null) && bBelow.isEmpty() &&
+			    !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
+			{
+				bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK, false);
+				bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL, true);
+				if (bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_IGNORE_BLOCKLINK))
+				{
+					bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT, false);
+					bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN, false);
+					bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP, false);
+					bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT, false);
+				}
+				bTemp.setAttribute(Block.BLOCK_ATTRIBUTE_LAST_COMMIT, true);
+				setBlock(bx, by + 1, bTemp);
+				setBlock(bx, by, new Block());
+				result = true;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Moves on to the next cascade state, so the saved fall checks are no longer used
+	 */
+	protected void nextCascadeVersion() {
+		cascadeVersion++;
+		if(cascadeVersion == 0) {
+			Arrays.fill(cascadeCheckVersion, 0);
+			cascadeVersion = 1;
+		}
+	}
+
+	/**
+	 * Gets the index of a cell in the work arrays of the cascade check
+	 * @param x X coord
+	 * @param y Y coord
+	 * @return Index (0 is the top left cell of the hidden part)
+	 */
+	protected int getCellIndex(int x, int y) {
+		return ((y + hidden_height) * width) + x;
+	}
+
 	/**
 	 * Checks the connection of blocks and set the "broken" flag to each block.
 	 * It only affects to normal blocks. (ex. not square or gems)
@@ -2655,7 +3019,6 @@ public class Field implements Serializable {
 	}
 
 	public int checkColor(int size, boolean flag, boolean garbageClear, boolean gemSame, boolean ignoreHidden) {
-		Field temp = new Field(this);
 		int total = 0;
 		boolean[] colorsClearedArray = new boolean[7];
 		if (flag)
@@ -2668,11 +3031,13 @@ public class Field implements Serializable {
 				colorsClearedArray[i] = false;
 		}
 
+		beginColorCount();
+
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++)
 		{
 			for(int j = 0; j < width; j++)
 			{
-				int clear = temp.clearColor(j, i, false, garbageClear, gemSame, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -2798,37 +3163,29 @@ public class Field implements Serializable {
 	}
 
 	public boolean canCascade() {
+		int lastX = -1;
+		int lastY = 0;
+
+		beginCascadeCheck();
+
 		for(int i = (getHeightWithoutHurryupFloor() - 1); i >= (hidden_height * -1); i--) {
 			for(int j = 0; j < width; j++) {
 				Block blk = getBlock(j, i);
 
 				if((blk != null) && !blk.isEmpty() && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_ANTIGRAVITY)) {
-					boolean fall = true;
-					checkBlockLink(j, i);
-
-					for(int k = (getHeightWithoutHurryupFloor() - 1); k >= (hidden_height * -1); k--) {
-						for(int l = 0; l < width; l++) {
-							Block bTemp = getBlock(l, k);
+					lastX = j;
+					lastY = i;
 
-							if( (bTemp != null) && !bTemp.isEmpty() &&
-								bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK) && !bTemp.getAttribute(Block.BLOCK_ATTRIBUTE_CASCADE_FALL) )
-							{
-								Block bBelow = getBlock(l, k + 1);
-
-								if( (getCoordAttribute(l, k + 1) == COORD_WALL) ||
-									((bBelow != null) && !bBelow.isEmpty() && !bBelow.getAttribute(Block.BLOCK_ATTRIBUTE_TEMP_MARK)) )
-								{
-									fall = false;
-								}
-							}
-						}
-					}
-
-					if(fall)
+					if(checkCascadeFall(j, i, false)) {
+						checkBlockLink(j, i);
 						return true;
+					}
 				}
 			}
 		}
+
+		// checkBlockLink used to leave the last checked blocks marked
+		if(lastX != -1) checkBlockLink(lastX, lastY);
 		return false;
 	}
 
@@ -3155,10 +3512,11 @@ public class Field implements Serializable {
 		if (flag)
 			setAllAttribute(Block.BLOCK_ATTRIBUTE_ERASE, false);
 
-		Field temp = new Field(this);
 		int total = 0;
 		Block b;
 
+		beginColorCount();
+
 		for(int i = (hidden_height * -1); i < getHeightWithoutHurryupFloor(); i++) {
 			for(int j = 0; j < width; j++) {
 				b = getBlock(j, i);
@@ -3166,7 +3524,7 @@ public class Field implements Serializable {
 					continue;
 				if (!b.isGemBlock())
 					continue;
-				int clear = temp.clearColor(j, i, false, garbageClear, true, ignoreHidden);
+				int clear = countColor(j, i, garbageClear, ignoreHidden);
 				if (clear >= size)
 				{
 					total += clear;
@@ -0,0 +1,930 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import java.util.Arrays;
+
+/**
+ * Occupancy layer of a {@link Field} stored as one bit per cell (one long per row).
+ * <p>
+ * Blocks are mutable and handed out by reference, so the layer is not tracked on
+ * every write; call {@link #sync(Field)} to refresh it from the Block grid. A sync
+ * is a single pass over the grid, after which every query below runs on primitive
+ * row masks instead of walking Block objects. Results are identical to the Field
+ * methods of the same name (the BLOCK_ATTRIBUTE_ERASE mark is not tracked).
+ * <p>
+ * The layer can also be used as a scratch field for AI search: pieces can be
+ * placed and lines cleared on it, and {@link #mark()} / {@link #rollback(int)}
+ * restore an earlier state without allocating, so a search only has to sync once
+ * per think instead of copying the whole Field for every candidate. Hard blocks
+ * are tracked with a single level of hardness only, and a hard block left behind
+ * by a line clear counts as a normal block in {@link #isEmpty()}.
+ * <p>
+ * A Zobrist-style hash of the blocks is kept up to date as the layer changes (only
+ * the rows that were touched are rehashed), so search results can be cached by
+ * {@link #getHash()}. Line clear flags are not part of the hash.
+ */
+public class FieldBitboard {
+	/** Maximum field width supported by this layer */
+	public static final int MAX_WIDTH = 64;
+
+	/** Field width */
+	protected int width;
+
+	/** Field height */
+	protected int height;
+
+	/** Height of the hidden part above the field */
+	protected int hidden_height;
+
+	/** Field height excluding the HURRY UP floor */
+	protected int heightWithoutHurryupFloor;
+
+	/** Presence or absence of a ceiling */
+	protected boolean ceiling;
+
+	/** Mask with one bit set for every column */
+	protected long fullMask;
+
+	/** Occupied cells of each row (index 0 is the topmost hidden row) */
+	protected long[] rows;
+
+	/** Wall cells of each row (these rows can never be cleared) */
+	protected long[] walls;
+
+	/** Hard block cells of each row (they survive one line clear) */
+	protected long[] hards;
+
+	/** Line clear flag of each row */
+	protected boolean[] lineflag;
+
+	/** Saved occupied cells for each mark */
+	protected long[][] markRows;
+
+	/** Saved wall cells for each mark */
+	protected long[][] markWalls;
+
+	/** Saved hard block cells for each mark */
+	protected long[][] markHards;
+
+	/** Saved line clear flags for each mark */
+	protected boolean[][] markLineflag;
+
+	/** Saved hash for each mark */
+	protected long[] markHash;
+
+	/** Number of marks currently saved */
+	protected int markCount;
+
+	/** Hash of the current blocks */
+	protected long hash;
+
+	/** Work area for per-column counters */
+	protected int[] columnWork;
+
+	/** Work area for per-column heights */
+	protected int[] heightWork;
+
+	/** Work area for per-column valley depths */
+	protected int[] valleyWork;
+
+	/**
+	 * Default constructor
+	 */
+	public FieldBitboard() {
+		rows = new long[0];
+		walls = new long[0];
+		hards = new long[0];
+		lineflag = new boolean[0];
+		markRows = new long[0][];
+		markWalls = new long[0][];
+		markHards = new long[0][];
+		markLineflag = new boolean[0][];
+		markHash = new long[0];
+	}
+
+	/**
+	 * Constructor that syncs from a field
+	 * @param fld Source field
+	 */
+	public FieldBitboard(Field fld) {
+		this();
+		sync(fld);
+	}
+
+	/**
+	 * Checks if the field can be represented by this layer
+	 * @param fld Field
+	 * @return true if the field is narrow enough
+	 */
+	public static boolean isSupported(Field fld) {
+		return fld.getWidth() <= MAX_WIDTH;
+	}
+
+	/**
+	 * Refresh the occupancy from the Block grid of a field
+	 * @param fld Source field
+	 * @throws IllegalArgumentException When the field is wider than {@link #MAX_WIDTH}
+	 */
+	public void sync(Field fld) {
+		if(!isSupported(fld)) {
+			throw new IllegalArgumentException("Field width " + fld.getWidth() + " exceeds " + MAX_WIDTH);
+		}
+
+		resize(fld.getWidth(), fld.getHeight(), fld.getHiddenHeight());
+		ceiling = fld.ceiling;
+		heightWithoutHurryupFloor = fld.getHeightWithoutHurryupFloor();
+		markCount = 0;
+
+		for(int i = 0; i < rows.length; i++) {
+			Block[] row = fld.getRow(i - hidden_height);
+			long bits = 0;
+			long wallBits = 0;
+			long hardBits = 0;
+
+			if(row != null) {
+				for(int j = 0; j < width; j++) {
+					Block blk = row[j];
+
+					if((blk != null) && !blk.isEmpty()) {
+						bits |= 1L << j;
+						if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_WALL)) wallBits |= 1L << j;
+						if(blk.hard > 0) hardBits |= 1L << j;
+					}
+				}
+			}
+
+			rows[i] = bits;
+			walls[i] = wallBits;
+			hards[i] = hardBits;
+			lineflag[i] = fld.getLineFlag(i - hidden_height);
+		}
+
+		hash = computeHash();
+	}
+
+	/**
+	 * Copy another layer into this one
+	 * @param b Copy source
+	 */
+	public void copy(FieldBitboard b) {
+		resize(b.width, b.height, b.hidden_height);
+		ceiling = b.ceiling;
+		heightWithoutHurryupFloor = b.heightWithoutHurryupFloor;
+		markCount = 0;
+		System.arraycopy(b.rows, 0, rows, 0, rows.length);
+		System.arraycopy(b.walls, 0, walls, 0, walls.length);
+		System.arraycopy(b.hards, 0, hards, 0, hards.length);
+		System.arraycopy(b.lineflag, 0, lineflag, 0, lineflag.length);
+		hash = b.hash;
+	}
+
+	/**
+	 * Allocate the row arrays if the dimensions have changed
+	 * @param w Field width
+	 * @param h Field height
+	 * @param hh Height of the hidden part
+	 */
+	protected void resize(int w, int h, int hh) {
+		if((w != width) || (h != height) || (hh != hidden_height) || (rows.length != h + hh)) {
+			width = w;
+			height = h;
+			hidden_height = hh;
+			fullMask = (w >= MAX_WIDTH) ? -1L : (1L << w) - 1;
+			rows = new long[h + hh];
+			walls = new long[h + hh];
+			hards = new long[h + hh];
+			lineflag = new boolean[h + hh];
+			markCount = 0;
+		}
+		if((columnWork == null) || (columnWork.length != w)) {
+			columnWork = new int[w];
+			heightWork = new int[w];
+			valleyWork = new int[w];
+		}
+	}
+
+	/**
+	 * Save the current state so that it can be restored later
+	 * @return Mark number to pass to {@link #rollback(int)}
+	 */
+	public int mark() {
+		if(markCount >= markRows.length) {
+			int size = Math.max(4, markRows.length * 2);
+			markRows = Arrays.copyOf(markRows, size);
+			markWalls = Arrays.copyOf(markWalls, size);
+			markHards = Arrays.copyOf(markHards, size);
+			markLineflag = Arrays.copyOf(markLineflag, size);
+			markHash = Arrays.copyOf(markHash, size);
+		}
+
+		int m = markCount;
+		if((markRows[m] == null) || (markRows[m].length != rows.length)) {
+			markRows[m] = new long[rows.length];
+			markWalls[m] = new long[rows.length];
+			markHards[m] = new long[rows.length];
+			markLineflag[m] = new boolean[rows.length];
+		}
+
+		System.arraycopy(rows, 0, markRows[m], 0, rows.length);
+		System.arraycopy(walls, 0, markWalls[m], 0, walls.length);
+		System.arraycopy(hards, 0, markHards[m], 0, hards.length);
+		System.arraycopy(lineflag, 0, markLineflag[m], 0, lineflag.length);
+		markHash[m] = hash;
+		markCount++;
+
+		return m;
+	}
+
+	/**
+	 * Restore the state saved by {@link #mark()}.
+	 * The mark stays valid and can be rolled back to again; marks saved after it are discarded.
+	 * @param m Mark number
+	 * @throws IllegalArgumentException When the mark does not exist
+	 */
+	public void rollback(int m) {
+		if((m < 0) || (m >= markCount)) {
+			throw new IllegalArgumentException("Invalid mark " + m + " (" + markCount + " marks)");
+		}
+
+		System.arraycopy(markRows[m], 0, rows, 0, rows.length);
+		System.arraycopy(markWalls[m], 0, walls, 0, walls.length);
+		System.arraycopy(markHards[m], 0, hards, 0, hards.length);
+		System.arraycopy(markLineflag[m], 0, lineflag, 0, lineflag.length);
+		hash = markHash[m];
+		markCount = m + 1;
+	}
+
+	/**
+	 * Discard a mark and every mark saved after it (the current state is kept)
+	 * @param m Mark number
+	 */
+	public void release(int m) {
+		if((m >= 0) && (m < markCount)) markCount = m;
+	}
+
+	/**
+	 * Get the hash of the current blocks.
+	 * Two layers with the same dimensions and the same blocks have the same hash.
+	 * @return Hash
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Compute the hash of the whole layer from scratch
+	 * @return Hash
+	 */
+	protected long computeHash() {
+		long h = mix(width + ((long)height << 8) + ((long)hidden_height << 16) +
+					 ((long)heightWithoutHurryupFloor << 24) + (ceiling ? 1L << 32 : 0));
+		for(int i = 0; i < rows.length; i++) h ^= rowHash(i);
+		return h;
+	}
+
+	/**
+	 * Get the hash contribution of one row
+	 * @param i Row index
+	 * @return Hash of the row
+	 */
+	protected long rowHash(int i) {
+		long salt = (i + 1) * 0x9E3779B97F4A7C15L;
+		long h = mix(rows[i] ^ salt);
+		if(walls[i] != 0) h ^= mix(walls[i] ^ (salt * 3));
+		if(hards[i] != 0) h ^= mix(hards[i] ^ (salt * 5));
+		return h;
+	}
+
+	/**
+	 * Scramble the bits of a value (SplitMix64 finalizer)
+	 * @param z Value
+	 * @return Scrambled value
+	 */
+	protected static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Get the field width
+	 * @return Field width
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * Get the field height
+	 * @return Field height
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * Get the height of the hidden part above the field
+	 * @return Height of the hidden part
+	 */
+	public int getHiddenHeight() {
+		return hidden_height;
+	}
+
+	/**
+	 * Get the field height excluding the HURRY UP floor
+	 * @return Field height excluding the HURRY UP floor
+	 */
+	public int getHeightWithoutHurryupFloor() {
+		return heightWithoutHurryupFloor;
+	}
+
+	/**
+	 * Get the occupied cells of a row
+	 * @param y Y-coordinate
+	 * @return Bit mask of occupied cells (bit 0 is the leftmost column, 0 if out of range)
+	 */
+	public long getRowBits(int y) {
+		int i = y + hidden_height;
+		if((i < 0) || (i >= rows.length)) return 0;
+		return rows[i];
+	}
+
+	/**
+	 * Get the mask with one bit set for every column
+	 * @return Full row mask
+	 */
+	public long getFullMask() {
+		return fullMask;
+	}
+
+	/**
+	 * Gets the attributes of the specified coordinates
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return Attributes of the coordinate (Field.COORD_*)
+	 */
+	public int getCoordAttribute(int x, int y) {
+		if((y < 0) && (ceiling)) return Field.COORD_WALL;
+		if((x < 0) || (x >= width) || (y >= height)) return Field.COORD_WALL;
+		if(y >= 0) return Field.COORD_NORMAL;
+		if(-y - 1 < hidden_height) return Field.COORD_HIDDEN;
+		return Field.COORD_VANISH;
+	}
+
+	/**
+	 * Checks whether a piece block at the specified coordinates would collide
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return true if the cell is a wall, the floor, a ceiling or an occupied cell
+	 */
+	public boolean isCollision(int x, int y) {
+		if((x < 0) || (x >= width) || (y >= height)) return true;
+		if(y < 0) {
+			if(ceiling) return true;
+			if(y < -hidden_height) return false;
+		}
+		return (rows[y + hidden_height] & (1L << x)) != 0;
+	}
+
+	/**
+	 * Determines whether the specified cell is empty
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return true if the cell is empty (true if out of range)
+	 */
+	public boolean getBlockEmpty(int x, int y) {
+		int i = y + hidden_height;
+		if((x < 0) || (x >= width) || (i < 0) || (i >= rows.length)) return true;
+		return (rows[i] & (1L << x)) == 0;
+	}
+
+	/**
+	 * Determines whether the specified cell is empty
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return true if the cell is empty (false if out of range)
+	 */
+	public boolean getBlockEmptyF(int x, int y) {
+		int i = y + hidden_height;
+		if((x < 0) || (x >= width) || (i < 0) || (i >= rows.length)) return false;
+		return (rows[i] & (1L << x)) == 0;
+	}
+
+	/**
+	 * Get the line clear flag
+	 * @param y Y-coordinate
+	 * @return Line clear flag (false if out of range)
+	 */
+	public boolean getLineFlag(int y) {
+		int i = y + hidden_height;
+		if((i < 0) || (i >= lineflag.length)) return false;
+		return lineflag[i];
+	}
+
+	/**
+	 * Checks if a row is complete and can be cleared
+	 * @param y Y-coordinate
+	 * @return true if every cell is occupied and none of them is a wall
+	 */
+	public boolean isLineFull(int y) {
+		int i = y + hidden_height;
+		if((i < 0) || (i >= rows.length)) return false;
+		return (rows[i] == fullMask) && (walls[i] == 0);
+	}
+
+	/**
+	 * Line clear check (Does not set the line clear flags)
+	 * @return Number of lines that would be cleared
+	 */
+	public int checkLineNoFlag() {
+		int lines = 0;
+
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if((rows[i] == fullMask) && (walls[i] == 0)) lines++;
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Fill a cell (a placed block is never a wall or hard block)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @return true if successful, false if out of range
+	 */
+	public boolean setBlock(int x, int y) {
+		int i = y + hidden_height;
+		if((x < 0) || (x >= width) || (i < 0) || (i >= rows.length)) return false;
+		long bit = 1L << x;
+		hash ^= rowHash(i);
+		rows[i] |= bit;
+		walls[i] &= ~bit;
+		hards[i] &= ~bit;
+		hash ^= rowHash(i);
+		return true;
+	}
+
+	/**
+	 * Line clear check (Sets the line clear flags)
+	 * @return Number of lines to be cleared
+	 */
+	public int checkLine() {
+		int lines = 0;
+
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			boolean flag = (rows[i] == fullMask) && (walls[i] == 0);
+			lineflag[i] = flag;
+			if(flag) lines++;
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Empty the rows flagged by {@link #checkLine()}.
+	 * A row that contains hard blocks keeps them and loses its line clear flag.
+	 * @return Number of flagged rows
+	 */
+	public int clearLine() {
+		int lines = 0;
+
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(lineflag[i]) {
+				lines++;
+
+				hash ^= rowHash(i);
+				long hard = rows[i] & hards[i];
+				rows[i] = hard;
+				walls[i] &= hard;
+				hards[i] = 0;
+				if(hard != 0) lineflag[i] = false;
+				hash ^= rowHash(i);
+			}
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Drop every row above a flagged row into its place
+	 * @return Number of rows removed
+	 */
+	public int downFloatingBlocks() {
+		int lines = 0;
+		int y = heightWithoutHurryupFloor + hidden_height - 1;
+
+		// Only the rows from the top down to the lowest flagged row move
+		int bottom = y;
+		while((bottom >= 0) && !lineflag[bottom]) bottom--;
+		if(bottom < 0) return 0;
+		for(int i = 0; i <= bottom; i++) hash ^= rowHash(i);
+
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(lineflag[y]) {
+				lines++;
+
+				// Shift the rows above down by one
+				System.arraycopy(rows, 0, rows, 1, y);
+				System.arraycopy(walls, 0, walls, 1, y);
+				System.arraycopy(hards, 0, hards, 1, y);
+				System.arraycopy(lineflag, 0, lineflag, 1, y);
+
+				// Blank to the top
+				rows[0] = 0;
+				walls[0] = 0;
+				hards[0] = 0;
+				lineflag[0] = false;
+			} else {
+				y--;
+			}
+		}
+
+		for(int i = 0; i <= bottom; i++) hash ^= rowHash(i);
+
+		return lines;
+	}
+
+	/**
+	 * Checks if the field is empty
+	 * @return true if every row that is not being cleared is empty
+	 */
+	public boolean isEmpty() {
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(!lineflag[i] && (rows[i] != 0)) return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Get the number of blocks in the field
+	 * @return Number of blocks (rows being cleared are excluded)
+	 */
+	public int getHowManyBlocks() {
+		int count = 0;
+
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(!lineflag[i]) count += Long.bitCount(rows[i]);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Get the Y-coordinate of the highest block
+	 * @return Y-coordinate of the highest block (field height if empty)
+	 */
+	public int getHighestBlockY() {
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(!lineflag[i] && (rows[i] != 0)) return i - hidden_height;
+		}
+
+		return height;
+	}
+
+	/**
+	 * Get the Y-coordinate of the highest block in a column
+	 * @param x X-coordinate
+	 * @return Y-coordinate of the highest block (field height if empty or out of range)
+	 */
+	public int getHighestBlockY(int x) {
+		if((x < 0) || (x >= width)) return height;
+		long bit = 1L << x;
+
+		for(int i = 0; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(!lineflag[i] && ((rows[i] & bit) != 0)) return i - hidden_height;
+		}
+
+		return height;
+	}
+
+	/**
+	 * Get the Y-coordinate of the highest block of every column at once
+	 * @param result Output array (at least as long as the field width)
+	 * @return result
+	 */
+	public int[] getHighestBlockYAll(int[] result) {
+		long remain = fullMask;
+
+		for(int j = 0; j < width; j++) result[j] = height;
+
+		for(int i = 0; (i < heightWithoutHurryupFloor + hidden_height) && (remain != 0); i++) {
+			if(lineflag[i]) continue;
+			long found = rows[i] & remain;
+
+			while(found != 0) {
+				result[Long.numberOfTrailingZeros(found)] = i - hidden_height;
+				found &= found - 1;
+			}
+			remain &= ~rows[i];
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the number of holes in the field
+	 * @return Number of empty cells that have a block somewhere above them
+	 */
+	public int getHowManyHoles() {
+		int hole = 0;
+		long samehole = 0;
+		int start = getHighestBlockY() + hidden_height;
+
+		for(int i = start; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(lineflag[i]) continue;
+			long row = rows[i];
+			long below = (i + 1 < rows.length) ? rows[i + 1] : 0;
+			long holeBelow = row & ~below;
+
+			hole += Long.bitCount(samehole & ~row);
+			samehole = holeBelow | (samehole & ~row);
+		}
+
+		return hole;
+	}
+
+	/**
+	 * Get the number of blocks stacked on top of holes
+	 * @return Number of stacked blocks
+	 */
+	public int getHowManyLidAboveHoles() {
+		int blocks = 0;
+		int[] count = columnWork;
+		int start = getHighestBlockY() + hidden_height;
+
+		for(int j = 0; j < width; j++) count[j] = 0;
+
+		for(int i = start; i < heightWithoutHurryupFloor + hidden_height - 1; i++) {
+			if(lineflag[i]) continue;
+			long row = rows[i];
+			long holeBelow = row & ~rows[i + 1];
+
+			while(row != 0) {
+				int j = Long.numberOfTrailingZeros(row);
+				count[j]++;
+				if((holeBelow & (1L << j)) != 0) {
+					blocks += count[j];
+					count[j] = 0;
+				}
+				row &= row - 1;
+			}
+		}
+
+		return blocks;
+	}
+
+	/**
+	 * Get the cells of a row that sit between two walls of blocks (or field walls)
+	 * @param i Row index
+	 * @return Bit mask of valley cells
+	 */
+	protected long getValleyMask(int i) {
+		long row = rows[i];
+		long left = (row << 1) | 1L;
+		long right = (row >>> 1) | (1L << (width - 1));
+		return ~row & left & right & fullMask;
+	}
+
+	/**
+	 * Get the depth of a valley
+	 * @param x X-coordinate
+	 * @return Depth of the valley (0 if none)
+	 */
+	public int getValleyDepth(int x) {
+		if((x < 0) || (x >= width)) return 0;
+		int depth = 0;
+		long bit = 1L << x;
+
+		int highest = getHighestBlockY(x - 1);
+		highest = Math.min(highest, getHighestBlockY(x));
+		highest = Math.min(highest, getHighestBlockY(x + 1));
+
+		for(int i = highest + hidden_height; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(!lineflag[i] && ((getValleyMask(i) & bit) != 0)) depth++;
+		}
+
+		return depth;
+	}
+
+	/**
+	 * Compute the depth of the valley in every column
+	 * @param depth Output array (at least as long as the field width)
+	 */
+	protected void getValleyDepthAll(int[] depth) {
+		int[] highest = getHighestBlockYAll(heightWork);
+		int start = heightWithoutHurryupFloor + hidden_height;
+
+		for(int j = 0; j < width; j++) {
+			int h = highest[j];
+			if(j > 0) h = Math.min(h, highest[j - 1]);
+			if(j < width - 1) h = Math.min(h, highest[j + 1]);
+			depth[j] = 0;
+			columnWork[j] = h + hidden_height;
+			start = Math.min(start, columnWork[j]);
+		}
+
+		for(int i = start; i < heightWithoutHurryupFloor + hidden_height; i++) {
+			if(lineflag[i]) continue;
+			long valley = getValleyMask(i);
+
+			while(valley != 0) {
+				int j = Long.numberOfTrailingZeros(valley);
+				if(i >= columnWork[j]) depth[j]++;
+				valley &= valley - 1;
+			}
+		}
+	}
+
+	/**
+	 * Get the total depth of every valley that is at least 2 deep
+	 * @return Total depth of the valleys
+	 */
+	public int getTotalValleyDepth() {
+		int[] depth = valleyWork;
+		int total = 0;
+
+		getValleyDepthAll(depth);
+		for(int j = 0; j < width; j++) {
+			if(depth[j] >= 2) total += depth[j];
+		}
+
+		return total;
+	}
+
+	/**
+	 * Get the number of valleys that need an I piece (depth 3 or more)
+	 * @return Number of valleys that need an I piece
+	 */
+	public int getTotalValleyNeedIPiece() {
+		int[] depth = valleyWork;
+		int count = 0;
+
+		getValleyDepthAll(depth);
+		for(int j = 0; j < width; j++) {
+			if(depth[j] >= 3) count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Checks if the specified position is a T-Spin spot
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param big true if the piece is big
+	 * @return true if 3 or more corners are filled (cells out of range count as filled)
+	 */
+	public boolean isTSpinSpot(int x, int y, boolean big) {
+		int count = 0;
+
+		if(big) {
+			if(!getBlockEmptyF(x + 1, y + 1)) count++;
+			if(!getBlockEmptyF(x + 4, y + 1)) count++;
+			if(!getBlockEmptyF(x + 1, y + 4)) count++;
+			if(!getBlockEmptyF(x + 4, y + 4)) count++;
+		} else {
+			if(!getBlockEmptyF(x, y)) count++;
+			if(!getBlockEmptyF(x + 2, y)) count++;
+			if(!getBlockEmptyF(x, y + 2)) count++;
+			if(!getBlockEmptyF(x + 2, y + 2)) count++;
+		}
+
+		return count >= 3;
+	}
+
+	/**
+	 * Checks if the specified position is a T-Spin slot
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param big true if the piece is big
+	 * @return true if a T piece fits there and exactly 3 corners are filled
+	 */
+	public boolean isTSlot(int x, int y, boolean big) {
+		if(big) {
+			if(!getBlockEmptyF(x + 2, y + 2)) return false;
+		} else {
+			if(!getBlockEmptyF(x + 1, y + 0)) return false;
+			if(!getBlockEmptyF(x + 1, y + 1)) return false;
+			if(!getBlockEmptyF(x + 1, y + 2)) return false;
+			if(!getBlockEmptyF(x + 0, y + 1)) return false;
+			if(!getBlockEmptyF(x + 2, y + 1)) return false;
+			if(!getBlockEmptyF(x + 1, y - 1)) return false;
+		}
+
+		int count = 0;
+
+		if(big) {
+			if(!getBlockEmptyF(x + 1, y + 1)) count++;
+			if(!getBlockEmptyF(x + 4, y + 1)) count++;
+			if(!getBlockEmptyF(x + 1, y + 4)) count++;
+			if(!getBlockEmptyF(x + 4, y + 4)) count++;
+		} else {
+			if(!getBlockEmptyF(x, y)) count++;
+			if(!getBlockEmptyF(x + 2, y)) count++;
+			if(!getBlockEmptyF(x, y + 2)) count++;
+			if(!getBlockEmptyF(x + 2, y + 2)) count++;
+		}
+
+		return count == 3;
+	}
+
+	/**
+	 * Get the number of T-Spin slots in the field
+	 * @param big true if the piece is big
+	 * @return Number of T-Spin slots
+	 */
+	public int getHowManyTSlot(boolean big) {
+		int result = 0;
+
+		for(int j = 0; j < width; j++) {
+			for(int i = 0; i < heightWithoutHurryupFloor - 2; i++) {
+				if(!lineflag[i + hidden_height] && isTSlot(j, i, big)) result++;
+			}
+		}
+
+		return result;
+	}
+
+	/**
+	 * Get the number of lines a T-Spin in the specified slot would clear
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param big true if the piece is big (Not supported)
+	 * @return Number of lines cleared (0 if it is not a T-Spin slot)
+	 */
+	public int getTSlotLineClear(int x, int y, boolean big) {
+		if(!isTSlot(x, y, big)) return 0;
+
+		// The T piece itself fills the 3 columns starting at x
+		long slot = 0;
+		for(int k = x; k < x + 3; k++) {
+			if((k >= 0) && (k < width)) slot |= 1L << k;
+		}
+
+		int lines = 0;
+		for(int i = 1; i <= 2; i++) {
+			int r = y + i + hidden_height;
+			if((r < 0) || (r >= rows.length) || ((rows[r] | slot) == fullMask)) lines++;
+		}
+
+		return lines;
+	}
+
+	/**
+	 * Get the number of lines T-Spins would clear over the whole field
+	 * @param big true if the piece is big (Not supported)
+	 * @return Total number of lines cleared
+	 */
+	public int getTSlotLineClearAll(boolean big) {
+		return getTSlotLineClearAll(big, 0);
+	}
+
+	/**
+	 * Get the number of lines T-Spins would clear over the whole field
+	 * @param big true if the piece is big (Not supported)
+	 * @param minimum Slots that clear fewer lines than this are ignored
+	 * @return Total number of lines cleared
+	 */
+	public int getTSlotLineClearAll(boolean big, int minimum) {
+		int result = 0;
+
+		for(int j = 0; j < width; j++) {
+			for(int i = 0; i < heightWithoutHurryupFloor - 2; i++) {
+				if(!lineflag[i + hidden_height]) {
+					int temp = getTSlotLineClear(j, i, big);
+					if(temp >= minimum) result += temp;
+				}
+			}
+		}
+
+		return result;
+	}
+}
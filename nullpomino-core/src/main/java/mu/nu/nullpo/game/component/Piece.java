@@ -775,6 +775,42 @@ public class Piece implements Serializable {
 		return placeToField(x, y, direction, fld);
 	}
 
+	/**
+	 * fieldPlace the piece to (Bitboard version, the piece itself is not modified)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param fld Occupancy layer of the field
+	 * @return 1One or moreBlockAfieldI was put in the frametrue, Otherwisefalse
+	 */
+	public boolean placeToField(int x, int y, int rt, FieldBitboard fld) {
+		int size = big ? 2 : 1;
+		boolean placed = false;
+
+		for(int i = 0; i < getMaxBlock(); i++) {
+			int x2 = x + dataX[rt][i] * size;
+			int y2 = y + dataY[rt][i] * size;
+
+			for(int k = 0; k < size; k++)for(int l = 0; l < size; l++) {
+				fld.setBlock(x2 + k, y2 + l);
+				if(y2 + l >= 0) placed = true;
+			}
+		}
+
+		return placed;
+	}
+
+	/**
+	 * fieldPlace the piece to (Bitboard version, the piece itself is not modified)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param fld Occupancy layer of the field
+	 * @return 1One or moreBlockAfieldI was put in the frametrue, Otherwisefalse
+	 */
+	public boolean placeToField(int x, int y, FieldBitboard fld) {
+		return placeToField(x, y, direction, fld);
+	}
+
 	/**
 	 * Collision detection of Peace
 	 * @param x X-coordinate
@@ -855,6 +891,40 @@ public class Piece implements Serializable {
 		return false;
 	}
 
+	/**
+	 * Collision detection of Peace (Bitboard version)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param fld Occupancy layer of the field
+	 * @return BlockI was overlaptrue, They do not overlapfalse
+	 */
+	public boolean checkCollision(int x, int y, FieldBitboard fld) {
+		return checkCollision(x, y, direction, fld);
+	}
+
+	/**
+	 * Collision detection of Peace (Bitboard version)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param fld Occupancy layer of the field
+	 * @return BlockI was overlaptrue, They do not overlapfalse
+	 */
+	public boolean checkCollision(int x, int y, int rt, FieldBitboard fld) {
+		int size = big ? 2 : 1;
+
+		for(int i = 0; i < getMaxBlock(); i++) {
+			int x2 = x + dataX[rt][i] * size;
+			int y2 = y + dataY[rt][i] * size;
+
+			for(int k = 0; k < size; k++)for(int l = 0; l < size; l++) {
+				if(fld.isCollision(x2 + k, y2 + l)) return true;
+			}
+		}
+
+		return false;
+	}
+
 	/**
 	 * When I dropped the piece as it isY-coordinateGet the
 	 * @param x X-coordinate
@@ -884,6 +954,35 @@ public class Piece implements Serializable {
 		return getBottom(x, y, direction, fld);
 	}
 
+	/**
+	 * When I dropped the piece as it isY-coordinateGet the (Bitboard version)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param fld Occupancy layer of the field
+	 * @return When I dropped the piece as it isY-coordinate
+	 */
+	public int getBottom(int x, int y, int rt, FieldBitboard fld) {
+		int y2 = y;
+
+		while(checkCollision(x, y2, rt, fld) == false) {
+			y2++;
+		}
+
+		return y2 - 1;
+	}
+
+	/**
+	 * When I dropped the piece as it isY-coordinateGet the (Bitboard version)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param fld Occupancy layer of the field
+	 * @return When I dropped the piece as it isY-coordinate
+	 */
+	public int getBottom(int x, int y, FieldBitboard fld) {
+		return getBottom(x, y, direction, fld);
+	}
+
 	/**
 	 * Gets the width of the piece
 	 * @return The width of the piece
@@ -1030,6 +1129,34 @@ public class Piece implements Serializable {
 		return x;
 	}
 
+	/**
+	 * Determines how far we can move to the left or from the current position (Bitboard version)
+	 * @param nowX CurrentXPosition
+	 * @param nowY CurrentYPosition
+	 * @param rt Of PeaceDirection
+	 * @param fld Occupancy layer of the field
+	 * @return Left-most position of a movable
+	 */
+	public int getMostMovableLeft(int nowX, int nowY, int rt, FieldBitboard fld) {
+		int x = nowX;
+		while(!checkCollision(x - 1, nowY, rt, fld)) x--;
+		return x;
+	}
+
+	/**
+	 * Determines how far you can move from the current position to the right (Bitboard version)
+	 * @param nowX CurrentXPosition
+	 * @param nowY CurrentYPosition
+	 * @param rt Of PeaceDirection
+	 * @param fld Occupancy layer of the field
+	 * @return Rightmost position of movable
+	 */
+	public int getMostMovableRight(int nowX, int nowY, int rt, FieldBitboard fld) {
+		int x = nowX;
+		while(!checkCollision(x + 1, nowY, rt, fld)) x++;
+		return x;
+	}
+
 	/**
 	 * rotation buttonPiece after pressing theDirectionGet the
 	 * @param move rotationDirection (-1:Left 1:Right 2:180Degrees)
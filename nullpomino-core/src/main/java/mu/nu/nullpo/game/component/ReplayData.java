@@ -29,7 +29,7 @@
 package mu.nu.nullpo.game.component;
 
 import java.io.Serializable;
-import java.util.ArrayList;
+import java.util.Arrays;
 
 import mu.nu.nullpo.util.CustomProperties;
 
@@ -40,11 +40,14 @@ public class ReplayData implements Serializable {
 	/** Serial version ID */
 	private static final long serialVersionUID = 737226985994393117L;
 
-	/** Button input dataOf default The length of the */
-	public static final int DEFAULT_ARRAYLIST_SIZE = 60 * 60 * 10;
+	/** Default capacity of the button input data (10 minutes) */
+	public static final int DEFAULT_CAPACITY = 60 * 60 * 10;
 
-	/** Button input data */
-	public ArrayList<Integer> inputDataArray;
+	/** Button input data (Only the first inputDataLength frames are used) */
+	private int[] inputData;
+
+	/** Number of frames in inputData */
+	private int inputDataLength;
 
 	/**
 	 * Default constructor
@@ -65,10 +68,8 @@ public class ReplayData implements Serializable {
 	 * Reset to defaults
 	 */
 	public void reset() {
-		if(inputDataArray == null)
-			inputDataArray = new ArrayList<Integer>(DEFAULT_ARRAYLIST_SIZE);
-		else
-			inputDataArray.clear();
+		if(inputData == null) inputData = new int[DEFAULT_CAPACITY];
+		inputDataLength = 0;
 	}
 
 	/**
@@ -77,10 +78,17 @@ public class ReplayData implements Serializable {
 	 */
 	public void copy(ReplayData r) {
 		reset();
+		ensureCapacity(r.inputDataLength);
+		System.arraycopy(r.inputData, 0, inputData, 0, r.inputDataLength);
+		inputDataLength = r.inputDataLength;
+	}
 
-		for(int i = 0; i < r.inputDataArray.size(); i++) {
-			inputDataArray.add(i, r.inputDataArray.get(i));
-		}
+	/**
+	 * Get the number of recorded frames
+	 * @return Number of frames
+	 */
+	public int getLength() {
+		return inputDataLength;
 	}
 
 	/**
@@ -89,23 +97,45 @@ public class ReplayData implements Serializable {
 	 * @param frame  frame  (Course time)
 	 */
 	public void setInputData(int input, int frame) {
-		if((frame < 0) || (frame >= inputDataArray.size())) {
-			inputDataArray.add(input);
+		if((frame < 0) || (frame >= inputDataLength)) {
+			ensureCapacity(inputDataLength + 1);
+			inputData[inputDataLength++] = input;
 		} else {
-			inputDataArray.set(frame, input);
+			inputData[frame] = input;
 		}
 	}
 
+	/**
+	 * Append the same button input for several frames
+	 * @param input  button inputBit of status flag
+	 * @param frames Number of frames
+	 */
+	public void addInputData(int input, int frames) {
+		ensureCapacity(inputDataLength + frames);
+		Arrays.fill(inputData, inputDataLength, inputDataLength + frames, input);
+		inputDataLength += frames;
+	}
+
 	/**
 	 *  button inputGet status
 	 * @param frame  frame  (Course time)
 	 * @return  button inputBit of status flag
 	 */
 	public int getInputData(int frame) {
-		if((frame < 0) || (frame >= inputDataArray.size())) {
+		if((frame < 0) || (frame >= inputDataLength)) {
 			return 0;
 		}
-		return inputDataArray.get(frame);
+		return inputData[frame];
+	}
+
+	/**
+	 * Grow the buffer (doubling it) so that it can hold the given number of frames
+	 * @param capacity Number of frames
+	 */
+	private void ensureCapacity(int capacity) {
+		if(capacity > inputData.length) {
+			inputData = Arrays.copyOf(inputData, Math.max(capacity, inputData.length * 2));
+		}
 	}
 
 	/**
@@ -116,7 +146,7 @@ public class ReplayData implements Serializable {
 	 */
 	public void writeProperty(CustomProperties p, int id, int maxFrame) {
 		int max = maxFrame;
-		if((maxFrame < 0) || (maxFrame > inputDataArray.size())) max = inputDataArray.size();
+		if((maxFrame < 0) || (maxFrame > inputDataLength)) max = inputDataLength;
 
 		for(int i = 0; i < max; i++) {
 			int input = getInputData(i);
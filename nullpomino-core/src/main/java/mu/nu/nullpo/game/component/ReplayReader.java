@@ -0,0 +1,323 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * Reads replays written by {@link ReplayWriter} one record at a time.
+ * <p>
+ * Call {@link #next()} to move to the next record. Then call {@link #readProperties} or
+ * {@link #readInput} depending on its type. A record that is not read is skipped.
+ */
+public class ReplayReader implements Closeable {
+	/** Source stream */
+	private final DataInputStream in;
+
+	/** Inflater (null if not compressed) */
+	private final Inflater inflater;
+
+	/** Type of the current record */
+	private int type = -1;
+
+	/** Payload of the current record */
+	private byte[] payload = new byte[1024];
+
+	/** Payload length of the current record */
+	private int length;
+
+	/** Read position in the payload */
+	private int pos;
+
+	/** Player ID of the current input record */
+	private int playerID;
+
+	/** First frame of the current input record */
+	private int startFrame;
+
+	/**
+	 * Constructor
+	 * @param in Source stream
+	 * @throws IOException When the stream is not a binary replay
+	 */
+	public ReplayReader(InputStream in) throws IOException {
+		DataInputStream din = new DataInputStream(in);
+		byte[] magic = new byte[ReplayWriter.MAGIC.length];
+		din.readFully(magic);
+		if(!Arrays.equals(magic, ReplayWriter.MAGIC)) throw new IOException("Not a binary replay");
+		int version = din.readUnsignedByte();
+		if(version > ReplayWriter.VERSION) throw new IOException("Unsupported replay version " + version);
+		int flags = din.readUnsignedByte();
+
+		if((flags & ReplayWriter.FLAG_DEFLATE) != 0) {
+			inflater = new Inflater();
+			this.in = new DataInputStream(new InflaterInputStream(in, inflater, 4096));
+		} else {
+			inflater = null;
+			this.in = din;
+		}
+	}
+
+	/**
+	 * Check whether a stream starts with the binary replay signature.
+	 * The stream must support mark/reset, and is left at the same position.
+	 * @param in Source stream
+	 * @return true if the stream is a binary replay
+	 * @throws IOException When an I/O error occurs
+	 */
+	public static boolean isBinaryReplay(InputStream in) throws IOException {
+		in.mark(ReplayWriter.MAGIC.length);
+		try {
+			for(int i = 0; i < ReplayWriter.MAGIC.length; i++) {
+				if(in.read() != (ReplayWriter.MAGIC[i] & 0xFF)) return false;
+			}
+			return true;
+		} finally {
+			in.reset();
+		}
+	}
+
+	/**
+	 * Load a replay file in either the binary or the old properties format.
+	 * The button input of a binary replay is decoded into inputs, and is not added to the properties.
+	 * An old properties file keeps its button input in the properties (read it with {@link ReplayData#readProperty}).
+	 * @param filename Filename
+	 * @param inputs Map to store the button input of each player (null to skip the button input, enough for a replay list)
+	 * @return Replay properties
+	 * @throws IOException When the file couldn't be read
+	 */
+	public static CustomProperties load(String filename, Map<Integer, ReplayData> inputs) throws IOException {
+		CustomProperties prop = new CustomProperties();
+		InputStream in = new BufferedInputStream(new FileInputStream(filename));
+
+		try {
+			if(isBinaryReplay(in)) {
+				ReplayReader reader = new ReplayReader(in);
+				try {
+					reader.readAll(prop, inputs);
+				} finally {
+					reader.close();
+				}
+			} else {
+				prop.load(in);
+			}
+		} finally {
+			in.close();
+		}
+
+		return prop;
+	}
+
+	/**
+	 * Read all the remaining records
+	 * @param prop Properties to store the replay properties
+	 * @param inputs Map to store the button input of each player (null to skip the button input)
+	 * @throws IOException When an I/O error occurs
+	 */
+	public void readAll(CustomProperties prop, Map<Integer, ReplayData> inputs) throws IOException {
+		int t;
+		while((t = next()) != ReplayWriter.RECORD_END) {
+			if(t == ReplayWriter.RECORD_PROPERTIES) {
+				readProperties(prop);
+			} else if((t == ReplayWriter.RECORD_INPUT) && (inputs != null)) {
+				ReplayData data = inputs.get(playerID);
+				if(data == null) {
+					data = new ReplayData();
+					inputs.put(playerID, data);
+				}
+				readInput(data);
+			}
+		}
+	}
+
+	/**
+	 * Move to the next record.
+	 * A file that ends without an end record (such as a truncated one) ends at the last complete record.
+	 * @return Record type ({@link ReplayWriter#RECORD_END} at the end of file)
+	 * @throws IOException When an I/O error occurs
+	 */
+	public int next() throws IOException {
+		if(type == ReplayWriter.RECORD_END) return type;
+
+		int t;
+		try {
+			t = in.read();
+			if(t < 0) return type = ReplayWriter.RECORD_END;
+			length = readVarint(in);
+			if(length > payload.length) payload = new byte[Math.max(length, payload.length * 2)];
+			in.readFully(payload, 0, length);
+		} catch (EOFException e) {
+			return type = ReplayWriter.RECORD_END;
+		}
+		pos = 0;
+		type = t;
+
+		if(type == ReplayWriter.RECORD_INPUT) {
+			playerID = readVarint();
+			startFrame = readVarint();
+		}
+		return type;
+	}
+
+	/**
+	 * Get the type of the current record
+	 * @return Record type (-1 before the first {@link #next()})
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Get the player ID of the current input record
+	 * @return Player ID
+	 */
+	public int getPlayerID() {
+		return playerID;
+	}
+
+	/**
+	 * Get the first frame of the current input record
+	 * @return Frame number
+	 */
+	public int getStartFrame() {
+		return startFrame;
+	}
+
+	/**
+	 * Read the current properties record
+	 * @param prop Properties to store the values
+	 * @throws IOException When the record is broken
+	 */
+	public void readProperties(CustomProperties prop) throws IOException {
+		if(type != ReplayWriter.RECORD_PROPERTIES) throw new IllegalStateException("Not a properties record");
+
+		int count = readVarint();
+		for(int i = 0; i < count; i++) {
+			String key = readString();
+			prop.setProperty(key, readString());
+		}
+	}
+
+	/**
+	 * Read the current input record
+	 * @param data Button input data to store the frames (from {@link #getStartFrame()} onward)
+	 * @throws IOException When the record is broken
+	 */
+	public void readInput(ReplayData data) throws IOException {
+		if(type != ReplayWriter.RECORD_INPUT) throw new IllegalStateException("Not an input record");
+
+		int frame = startFrame;
+		int count = readVarint();
+		for(int i = 0; i < count; i++) {
+			int input = readVarint();
+			int frames = readVarint();
+			if(frame == data.getLength()) {
+				data.addInputData(input, frames);
+				frame += frames;
+			} else {
+				for(int j = 0; j < frames; j++) {
+					data.setInputData(input, frame);
+					frame++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the stream
+	 * @throws IOException When an I/O error occurs
+	 */
+	public void close() throws IOException {
+		try {
+			in.close();
+		} finally {
+			if(inflater != null) inflater.end();
+		}
+	}
+
+	/**
+	 * Read a varint from the current payload
+	 * @return Value
+	 * @throws IOException When the record is broken
+	 */
+	private int readVarint() throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			if(pos >= length) throw new EOFException("Broken replay record");
+			int b = payload[pos++];
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Broken replay record");
+	}
+
+	/**
+	 * Read a string from the current payload
+	 * @return String
+	 * @throws IOException When the record is broken
+	 */
+	private String readString() throws IOException {
+		int len = readVarint();
+		if((len < 0) || (len > length - pos)) throw new EOFException("Broken replay record");
+		String s = new String(payload, pos, len, "UTF-8");
+		pos += len;
+		return s;
+	}
+
+	/**
+	 * Read a varint from a stream
+	 * @param i Source stream
+	 * @return Value
+	 * @throws IOException When an I/O error occurs
+	 */
+	private static int readVarint(DataInputStream i) throws IOException {
+		int value = 0;
+		for(int shift = 0; shift < 35; shift += 7) {
+			int b = i.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				if(value < 0) throw new IOException("Broken replay record");
+				return value;
+			}
+		}
+		throw new IOException("Broken replay record");
+	}
+}
@@ -0,0 +1,313 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import mu.nu.nullpo.util.CustomProperties;
+
+/**
+ * Writes replays in the compact binary format.
+ * <p>
+ * A file starts with {@link #MAGIC}, a version byte and a flags byte.
+ * The rest of the file (deflated if {@link #FLAG_DEFLATE} is set) is a sequence of records.
+ * Each record is a type byte and a varint payload length, followed by the payload:
+ * <ul>
+ * <li>{@link #RECORD_PROPERTIES}: Replay properties (rule, mode, random seed, statistics...) except the button input</li>
+ * <li>{@link #RECORD_INPUT}: Player ID, first frame and a list of (button bits, frame count) runs</li>
+ * <li>{@link #RECORD_END}: End of file</li>
+ * </ul>
+ * The button input of each player is split into records of at most {@link #RUNS_PER_RECORD} runs.
+ * Replays are written in one go when they are saved, after the game ended.
+ */
+public class ReplayWriter implements Closeable {
+	/** File signature */
+	public static final byte[] MAGIC = {(byte)0x89, 'N', 'R', 'P'};
+
+	/** Format version */
+	public static final int VERSION = 1;
+
+	/** Flag: Records are deflated */
+	public static final int FLAG_DEFLATE = 1;
+
+	/** Record type: End of file */
+	public static final int RECORD_END = 0;
+
+	/** Record type: Properties */
+	public static final int RECORD_PROPERTIES = 1;
+
+	/** Record type: Button input runs */
+	public static final int RECORD_INPUT = 2;
+
+	/** Maximum number of runs in one input record */
+	public static final int RUNS_PER_RECORD = 256;
+
+	/** Button input of one player */
+	private static class Track {
+		/** Player ID */
+		final int playerID;
+		/** First frame of the buffered runs */
+		int startFrame;
+		/** Buffered runs (button bits and frame count in turn) */
+		final int[] runs = new int[RUNS_PER_RECORD * 2];
+		/** Number of buffered runs */
+		int runCount;
+		/** Button bits of the open run */
+		int input;
+		/** Frame count of the open run */
+		int length;
+
+		Track(int playerID) {
+			this.playerID = playerID;
+		}
+	}
+
+	/** Destination stream */
+	private final OutputStream out;
+
+	/** Deflater (null if not compressed) */
+	private final Deflater deflater;
+
+	/** Payload of the record being written */
+	private final ByteArrayOutputStream record = new ByteArrayOutputStream(1024);
+
+	/** Button input of each player */
+	private final Map<Integer, Track> tracks = new TreeMap<Integer, Track>();
+
+	/**
+	 * Constructor
+	 * @param out Destination stream
+	 * @param compress true to deflate the records
+	 * @throws IOException When the header couldn't be written
+	 */
+	public ReplayWriter(OutputStream out, boolean compress) throws IOException {
+		out.write(MAGIC);
+		out.write(VERSION);
+		out.write(compress ? FLAG_DEFLATE : 0);
+
+		if(compress) {
+			deflater = new Deflater(Deflater.BEST_COMPRESSION);
+			this.out = new DeflaterOutputStream(out, deflater, 4096, true);
+		} else {
+			deflater = null;
+			this.out = out;
+		}
+	}
+
+	/**
+	 * Check whether a property key is one of the button input keys written by {@link ReplayData#writeProperty}
+	 * @param key Property key
+	 * @return true if the key has the form "(Player ID).r.*"
+	 */
+	public static boolean isInputKey(String key) {
+		int dot = key.indexOf('.');
+		if((dot <= 0) || !key.startsWith(".r.", dot)) return false;
+		for(int i = 0; i < dot; i++) {
+			if(!Character.isDigit(key.charAt(i))) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write the properties except the button input keys
+	 * @param prop Replay properties
+	 * @throws IOException When an I/O error occurs
+	 */
+	public void writeProperties(CustomProperties prop) throws IOException {
+		TreeSet<String> keys = new TreeSet<String>();
+		for(String key: prop.stringPropertyNames()) {
+			if(!isInputKey(key)) keys.add(key);
+		}
+
+		writeVarint(record, keys.size());
+		for(String key: keys) {
+			writeString(record, key);
+			writeString(record, prop.getProperty(key));
+		}
+		writeRecord(RECORD_PROPERTIES);
+	}
+
+	/**
+	 * Append the button input stored in a ReplayData
+	 * @param playerID Player ID
+	 * @param data Button input data
+	 * @param maxFrame Number of frames to write (-1 for all)
+	 * @throws IOException When an I/O error occurs
+	 */
+	public void writeReplayData(int playerID, ReplayData data, int maxFrame) throws IOException {
+		int max = maxFrame;
+		if((maxFrame < 0) || (maxFrame > data.getLength())) max = data.getLength();
+
+		Track t = getTrack(playerID);
+		for(int i = 0; i < max; i++) {
+			append(t, data.getInputData(i), 1);
+		}
+	}
+
+	/**
+	 * Write a replay stored in the old properties format
+	 * @param prop Replay properties, including the button input keys
+	 * @throws IOException When an I/O error occurs
+	 */
+	public void writeReplay(CustomProperties prop) throws IOException {
+		writeProperties(prop);
+
+		TreeSet<Integer> players = new TreeSet<Integer>();
+		for(String key: prop.stringPropertyNames()) {
+			if(isInputKey(key) && key.endsWith(".r.max")) players.add(Integer.valueOf(key.substring(0, key.indexOf('.'))));
+		}
+		for(int playerID: players) {
+			ReplayData data = new ReplayData();
+			data.readProperty(prop, playerID);
+			writeReplayData(playerID, data, -1);
+		}
+	}
+
+	/**
+	 * Write the remaining button input and the end of file, and close the stream
+	 * @throws IOException When an I/O error occurs
+	 */
+	public void close() throws IOException {
+		try {
+			for(Track t: tracks.values()) {
+				if(t.length > 0) closeRun(t);
+				if(t.runCount > 0) writeTrack(t);
+			}
+			writeRecord(RECORD_END);
+			out.close();
+		} finally {
+			if(deflater != null) deflater.end();
+		}
+	}
+
+	/**
+	 * Get the input track of a player
+	 * @param playerID Player ID
+	 * @return Input track
+	 */
+	private Track getTrack(int playerID) {
+		Track t = tracks.get(playerID);
+		if(t == null) {
+			t = new Track(playerID);
+			tracks.put(playerID, t);
+		}
+		return t;
+	}
+
+	/**
+	 * Append frames to a track
+	 * @param t Track
+	 * @param input Button input bits
+	 * @param frames Frame count
+	 * @throws IOException When an I/O error occurs
+	 */
+	private void append(Track t, int input, int frames) throws IOException {
+		if((t.length > 0) && (t.input != input)) closeRun(t);
+		t.input = input;
+		t.length += frames;
+	}
+
+	/**
+	 * Move the open run of a track to the buffer
+	 * @param t Track
+	 * @throws IOException When an I/O error occurs
+	 */
+	private void closeRun(Track t) throws IOException {
+		t.runs[t.runCount * 2] = t.input;
+		t.runs[t.runCount * 2 + 1] = t.length;
+		t.runCount++;
+		t.length = 0;
+		if(t.runCount >= RUNS_PER_RECORD) writeTrack(t);
+	}
+
+	/**
+	 * Write the buffered runs of a track as one input record
+	 * @param t Track
+	 * @throws IOException When an I/O error occurs
+	 */
+	private void writeTrack(Track t) throws IOException {
+		writeVarint(record, t.playerID);
+		writeVarint(record, t.startFrame);
+		writeVarint(record, t.runCount);
+		for(int i = 0; i < t.runCount; i++) {
+			writeVarint(record, t.runs[i * 2]);
+			writeVarint(record, t.runs[i * 2 + 1]);
+			t.startFrame += t.runs[i * 2 + 1];
+		}
+		t.runCount = 0;
+		writeRecord(RECORD_INPUT);
+	}
+
+	/**
+	 * Write the record payload built so far
+	 * @param type Record type
+	 * @throws IOException When an I/O error occurs
+	 */
+	private void writeRecord(int type) throws IOException {
+		out.write(type);
+		writeVarint(out, record.size());
+		record.writeTo(out);
+		record.reset();
+	}
+
+	/**
+	 * Write an unsigned LEB128 varint
+	 * @param o Destination stream
+	 * @param value Value (treated as unsigned)
+	 * @throws IOException When an I/O error occurs
+	 */
+	static void writeVarint(OutputStream o, int value) throws IOException {
+		int v = value;
+		while((v & ~0x7F) != 0) {
+			o.write((v & 0x7F) | 0x80);
+			v >>>= 7;
+		}
+		o.write(v);
+	}
+
+	/**
+	 * Write a string as its UTF-8 byte count and bytes
+	 * @param o Destination stream
+	 * @param s String
+	 * @throws IOException When an I/O error occurs
+	 */
+	static void writeString(OutputStream o, String s) throws IOException {
+		byte[] b = s.getBytes("UTF-8");
+		writeVarint(o, b.length);
+		o.write(b);
+	}
+}
@@ -39,6 +39,16 @@ public class Statistics implements Serializable {
 	/** Serial version ID */
 	private static final long serialVersionUID = -499640168205398295L;
 
+	/** Names of the values returned by {@link #exportStringArray()}, in the same order */
+	public static final String[] EXPORT_NAMES = {
+		"score", "scoreFromLineClear", "scoreFromSoftDrop", "scoreFromHardDrop", "scoreFromOtherBonus",
+		"lines", "time", "level", "levelDispAdd", "totalPieceLocked", "totalPieceActiveTime", "totalPieceMove",
+		"totalPieceRotate", "totalSingle", "totalDouble", "totalTriple", "totalFour", "totalTSpinZeroMini",
+		"totalTSpinZero", "totalTSpinSingleMini", "totalTSpinSingle", "totalTSpinDoubleMini", "totalTSpinDouble",
+		"totalTSpinTriple", "totalB2BFour", "totalB2BTSpin", "totalHoldUsed", "maxCombo", "spl", "spm", "sps",
+		"lpm", "lps", "ppm", "pps", "gamerate", "maxChain", "rollclear"
+	};
+
 	/** Total score */
 	public int score;
 
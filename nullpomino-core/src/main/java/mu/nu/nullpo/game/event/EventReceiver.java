@@ -28,14 +28,17 @@
 */
 package mu.nu.nullpo.game.event;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 import org.apache.log4j.Logger;
 
 import mu.nu.nullpo.game.component.Block;
+import mu.nu.nullpo.game.component.ReplayWriter;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.util.CustomProperties;
@@ -1231,6 +1234,18 @@ public class EventReceiver {
 	 * @param foldername Replay folder name
 	 */
 	public void saveReplay(GameManager owner, CustomProperties prop, String foldername) {
+		saveReplay(owner, prop, foldername, true, true);
+	}
+
+	/**
+	 * Called when saving replay (This is main body)
+	 * @param owner GameManager
+	 * @param prop CustomProperties where the replay is going to stored
+	 * @param foldername Replay folder name
+	 * @param binary true to save in the binary format ({@link ReplayWriter}), false to save as a properties file
+	 * @param compress true to deflate the binary format
+	 */
+	public void saveReplay(GameManager owner, CustomProperties prop, String foldername, boolean binary, boolean compress) {
 		if(owner.mode.isNetplayMode()) return;
 
 		String filename = foldername + "/" + GeneralUtil.getReplayFilename();
@@ -1244,9 +1259,19 @@ public class EventReceiver {
 				}
 			}
 
-			FileOutputStream out = new FileOutputStream(filename);
-			prop.store(new FileOutputStream(filename), "NullpoMino Replay");
-			out.close();
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(filename));
+			if(binary) {
+				// The button input is taken from the engines instead of the ".r." keys of prop
+				ReplayWriter writer = new ReplayWriter(out, compress);
+				writer.writeProperties(prop);
+				for(int i = 0; i < owner.engine.length; i++) {
+					writer.writeReplayData(i, owner.engine[i].replayData, owner.engine[i].replayTimer);
+				}
+				writer.close();
+			} else {
+				prop.store(out, "NullpoMino Replay");
+				out.close();
+			}
 			log.info("Saved replay file: " + filename);
 		} catch(IOException e) {
 			log.error("Couldn't save replay file to " + filename, e);
@@ -29,7 +29,6 @@
 package mu.nu.nullpo.game.net;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.Socket;
 import java.util.LinkedList;
 import java.util.Timer;
@@ -74,8 +73,17 @@ public class NetBaseClient extends Thread {
 	/** IP address */
 	protected String ip;
 
-	/** Previous incomplete packet */
-	protected StringBuilder notCompletePacketBuffer;
+	/** Received bytes that are not processed yet */
+	protected NetPacketBuffer packetBuffer;
+
+	/** true to ask the server for {@link NetBinaryProtocol} */
+	protected boolean useBinaryProtocol = true;
+
+	/** true after the server accepted {@link NetBinaryProtocol} (Messages are sent as frames) */
+	protected volatile boolean binaryProtocol;
+
+	/** Lock for writing to the socket */
+	protected final Object sendLock = new Object();
 
 	/** Interface receiving messages */
 	protected LinkedList<NetMessageListener> listeners = new LinkedList<NetMessageListener>();
@@ -132,6 +140,8 @@ public class NetBaseClient extends Thread {
 
 		try {
 			// Connection
+			packetBuffer = new NetPacketBuffer();
+			binaryProtocol = false;
 			socket = new Socket(host, port);
 			connectedFlag = true;
 			ip = socket.getInetAddress().getHostAddress();
@@ -144,30 +154,14 @@ public class NetBaseClient extends Thread {
 			int size;
 
 			while( (threadRunning) && ((size = socket.getInputStream().read(buf)) > 0) ) {
-				String message = new String(buf, 0, size, "UTF-8");
-				//log.debug(message);
+				packetBuffer.append(buf, 0, size);
 
 				// The various processing depending on the received message
-				StringBuilder packetBuffer = new StringBuilder();
-				if(notCompletePacketBuffer != null) packetBuffer.append(notCompletePacketBuffer);
-				packetBuffer.append(message);
-
-				int index;
-				while((index = packetBuffer.indexOf("\n")) != -1) {
-					String msgNow = packetBuffer.substring(0, index);
-					processPacket(msgNow);
-					packetBuffer = packetBuffer.replace(0, index+1, "");
-				}
-
-				// If there is an incomplete packet
-				if(packetBuffer.length() > 0) {
-					notCompletePacketBuffer = packetBuffer;
-				} else {
-					notCompletePacketBuffer = null;
+				String[] message;
+				while((message = packetBuffer.next()) != null) {
+					processPacket(message);
 				}
 			}
-		} catch (UnsupportedEncodingException e) {
-			throw new Error("UTF-8 Not Supported", e);
 		} catch (Exception e) {
 			log.info("Socket disconnected", e);
 			exDisconnectReason = e;
@@ -189,11 +183,24 @@ public class NetBaseClient extends Thread {
 
 	/**
 	 * The various processing depending on the received message
-	 * @param fullMessage Received Messages
+	 * @param message Received message (Tab delimited fields)
 	 * @throws IOException If there are any errors
 	 */
-	protected void processPacket(String fullMessage) throws IOException {
-		String[] message = fullMessage.split("\t");	// Tab delimited
+	protected void processPacket(String[] message) throws IOException {
+		// Ask for the binary protocol (Servers that don't support it ignore this)
+		if(message[0].equals("welcome") && useBinaryProtocol) {
+			send("binary\t" + NetBinaryProtocol.VERSION + "\n");
+		}
+		// Binary protocol accepted. Everything after this message is framed in both directions.
+		if(message[0].equals("binaryok")) {
+			//binaryok\t[VERSION]
+			packetBuffer.setBinary(true);
+			synchronized(sendLock) {
+				send("binarystart\n");
+				binaryProtocol = true;
+			}
+			log.debug("Binary protocol enabled");
+		}
 
 		// pingReply
 		if(message[0].equals("pong")) {
@@ -220,7 +227,13 @@ public class NetBaseClient extends Thread {
 	 */
 	public boolean send(byte[] bytes) {
 		try {
-			socket.getOutputStream().write(bytes);
+			synchronized(sendLock) {
+				if(binaryProtocol) {
+					socket.getOutputStream().write(NetBinaryProtocol.encode(NetUtil.bytesToString(bytes)));
+				} else {
+					socket.getOutputStream().write(bytes);
+				}
+			}
 		} catch (Exception e) {
 			log.error("Failed to send message", e);
 			return false;
@@ -235,7 +248,13 @@ public class NetBaseClient extends Thread {
 	 */
 	public boolean send(String msg) {
 		try {
-			socket.getOutputStream().write(NetUtil.stringToBytes(msg));
+			synchronized(sendLock) {
+				if(binaryProtocol) {
+					socket.getOutputStream().write(NetBinaryProtocol.encode(msg));
+				} else {
+					socket.getOutputStream().write(NetUtil.stringToBytes(msg));
+				}
+			}
 		} catch (Exception e) {
 			log.error("Failed to send message (" + msg + ")", e);
 			return false;
@@ -250,6 +269,21 @@ public class NetBaseClient extends Thread {
 		return (socket == null) ? false : (socket.isConnected() && connectedFlag);
 	}
 
+	/**
+	 * Choose whether to ask the server for the binary protocol (Call before start)
+	 * @param useBinaryProtocol true to ask for it (default), false to always use the text protocol
+	 */
+	public void setUseBinaryProtocol(boolean useBinaryProtocol) {
+		this.useBinaryProtocol = useBinaryProtocol;
+	}
+
+	/**
+	 * @return true if messages are exchanged with the binary protocol
+	 */
+	public boolean isBinaryProtocol() {
+		return binaryProtocol;
+	}
+
 	/**
 	 * @return Destination host
 	 */
@@ -0,0 +1,271 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import biz.source_code.base64Coder.Base64Coder;
+
+/**
+ * Binary framed protocol<br>
+ * <br>
+ * A client that wants it sends <code>binary\t[VERSION]</code> as a normal text message.
+ * A server that supports it replies <code>binaryok\t[VERSION]</code>, and everything it sends after that reply is framed.
+ * The client then sends <code>binarystart</code>, and everything it sends after that is framed too.
+ * Servers that don't know the command ignore it, and clients that never ask keep using the text protocol.<br>
+ * <br>
+ * A frame is one text message without the trailing newline:
+ * a varint payload length, then a varint field count and the fields.
+ * Every field begins with a varint header <code>(n &lt;&lt; 2) | kind</code>:
+ * <ul>
+ * <li>{@link #KIND_STRING}: n is the length of the UTF-8 bytes that follow</li>
+ * <li>{@link #KIND_INT}: n is the zigzag-encoded value of a decimal integer field</li>
+ * <li>{@link #KIND_BOOLEAN}: n is 1 for "true" and 0 for "false"</li>
+ * <li>{@link #KIND_BASE64}: n is the length of the raw bytes of a Base64 field (such as compressed field data) that follow</li>
+ * </ul>
+ * Decoding a frame gives exactly the fields <code>String.split("\t")</code> gives for the text message,
+ * so receivers don't care which protocol a message came in.
+ */
+public class NetBinaryProtocol {
+	/** Protocol version */
+	public static final int VERSION = 1;
+
+	/** Largest frame payload accepted (Anything bigger is treated as a broken stream) */
+	public static final int MAX_FRAME_SIZE = 16 * 1024 * 1024;
+
+	/** Field kind: UTF-8 string */
+	public static final int KIND_STRING = 0;
+
+	/** Field kind: Decimal integer */
+	public static final int KIND_INT = 1;
+
+	/** Field kind: "true" or "false" */
+	public static final int KIND_BOOLEAN = 2;
+
+	/** Field kind: Base64 string shipped as raw bytes */
+	public static final int KIND_BASE64 = 3;
+
+	/** Shortest string that is tried as Base64 */
+	public static final int BASE64_MIN_LENGTH = 16;
+
+	/** Most digits a {@link #KIND_INT} field can have (Keeps the header in 63 bits) */
+	public static final int INT_MAX_DIGITS = 17;
+
+	/**
+	 * Convert text protocol message(s) to frames
+	 * @param msg Message(s) in the text protocol (Each one ends with a newline)
+	 * @return Frames
+	 */
+	public static byte[] encode(String msg) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(msg.length());
+		ByteArrayOutputStream payload = new ByteArrayOutputStream(msg.length());
+
+		int start = 0;
+		while(start < msg.length()) {
+			int end = msg.indexOf('\n', start);
+			if(end == -1) end = msg.length();
+
+			payload.reset();
+			encodeMessage(msg.substring(start, end), payload);
+			writeVarLong(out, payload.size());
+			out.write(payload.toByteArray(), 0, payload.size());
+
+			start = end + 1;
+		}
+
+		return out.toByteArray();
+	}
+
+	/**
+	 * Write the payload of one message
+	 * @param line Message without the newline
+	 * @param out Output
+	 */
+	protected static void encodeMessage(String line, ByteArrayOutputStream out) {
+		String[] fields = line.split("\t", -1);
+		writeVarLong(out, fields.length);
+
+		for(String field: fields) {
+			if(isInt(field)) {
+				long value = Long.parseLong(field);
+				writeVarLong(out, (((value << 1) ^ (value >> 63)) << 2) | KIND_INT);
+			} else if(field.equals("true") || field.equals("false")) {
+				writeVarLong(out, ((field.equals("true") ? 1L : 0L) << 2) | KIND_BOOLEAN);
+			} else if(isBase64(field)) {
+				byte[] bytes = Base64Coder.decode(field);
+				writeVarLong(out, ((long)bytes.length << 2) | KIND_BASE64);
+				out.write(bytes, 0, bytes.length);
+			} else {
+				byte[] bytes = NetUtil.stringToBytes(field);
+				writeVarLong(out, ((long)bytes.length << 2) | KIND_STRING);
+				out.write(bytes, 0, bytes.length);
+			}
+		}
+	}
+
+	/**
+	 * Decode the payload of one frame
+	 * @param buf Buffer
+	 * @param offset Start of the payload
+	 * @param length Payload length
+	 * @return Fields (Same as <code>String.split("\t")</code> of the text message)
+	 * @throws IOException If the payload is broken
+	 */
+	public static String[] decode(byte[] buf, int offset, int length) throws IOException {
+		int[] pos = {offset};
+		int end = offset + length;
+
+		long count = readVarLong(buf, pos, end);
+		if((count < 0) || (count > length)) throw new IOException("Broken frame (field count " + count + ")");
+
+		List<String> fields = new ArrayList<String>((int)count);
+		for(long i = 0; i < count; i++) {
+			long header = readVarLong(buf, pos, end);
+			int kind = (int)(header & 3);
+			long n = header >>> 2;
+
+			if(kind == KIND_INT) {
+				fields.add(Long.toString((n >>> 1) ^ -(n & 1)));
+			} else if(kind == KIND_BOOLEAN) {
+				fields.add(Boolean.toString(n != 0));
+			} else {
+				if(n > end - pos[0]) throw new IOException("Broken frame (field length " + n + ")");
+				int len = (int)n;
+
+				if(kind == KIND_BASE64) {
+					fields.add(new String(Base64Coder.encode(subArray(buf, pos[0], len))));
+				} else {
+					fields.add(NetUtil.bytesToString(subArray(buf, pos[0], len)));
+				}
+				pos[0] += len;
+			}
+		}
+
+		// Drop trailing empty fields like String.split does
+		int size = fields.size();
+		while((size > 1) && fields.get(size - 1).isEmpty()) size--;
+		if((size == 1) && (fields.size() > 1) && fields.get(0).isEmpty()) size = 0;
+
+		return fields.subList(0, size).toArray(new String[size]);
+	}
+
+	/**
+	 * Check if a field can be shipped as {@link #KIND_INT} and decoded to the same string
+	 * @param s Field
+	 * @return true if s is a decimal integer without extra signs or leading zeros
+	 */
+	protected static boolean isInt(String s) {
+		int len = s.length();
+		int start = (len > 0) && (s.charAt(0) == '-') ? 1 : 0;
+		if((len == start) || (len - start > INT_MAX_DIGITS)) return false;
+		if((s.charAt(start) == '0') && ((len - start > 1) || (start == 1))) return false;
+
+		for(int i = start; i < len; i++) {
+			char c = s.charAt(i);
+			if((c < '0') || (c > '9')) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Check if a field can be shipped as {@link #KIND_BASE64} and decoded to the same string
+	 * @param s Field
+	 * @return true if s is padded Base64 that encodes back to itself
+	 */
+	protected static boolean isBase64(String s) {
+		int len = s.length();
+		if((len < BASE64_MIN_LENGTH) || (len % 4 != 0)) return false;
+
+		int pad = 0;
+		if(s.charAt(len - 1) == '=') pad++;
+		if(s.charAt(len - 2) == '=') pad++;
+
+		for(int i = 0; i < len - pad; i++) {
+			char c = s.charAt(i);
+			if(!(((c >= 'A') && (c <= 'Z')) || ((c >= 'a') && (c <= 'z')) || ((c >= '0') && (c <= '9')) || (c == '+') || (c == '/')))
+				return false;
+		}
+
+		// The unused bits of the last character must be zero, or it won't encode back to the same string
+		if(pad > 0) {
+			char c = s.charAt(len - pad - 1);
+			int v = (c >= 'a') ? (c - 'a' + 26) : (c >= 'A') ? (c - 'A') : (c >= '0') ? (c - '0' + 52) : (c == '+') ? 62 : 63;
+			if((v & ((pad == 1) ? 3 : 15)) != 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write an unsigned varint
+	 * @param out Output
+	 * @param value Value (Treated as unsigned)
+	 */
+	protected static void writeVarLong(ByteArrayOutputStream out, long value) {
+		while((value & ~0x7FL) != 0) {
+			out.write((int)((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.write((int)value);
+	}
+
+	/**
+	 * Read an unsigned varint
+	 * @param buf Buffer
+	 * @param pos Read position (Updated)
+	 * @param end End of the readable bytes
+	 * @return Value, or -1 if the varint isn't complete yet
+	 * @throws IOException If the varint is too long
+	 */
+	protected static long readVarLong(byte[] buf, int[] pos, int end) throws IOException {
+		long value = 0;
+		for(int shift = 0; shift < 64; shift += 7) {
+			if(pos[0] >= end) return -1;
+			int b = buf[pos[0]++];
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) return value;
+		}
+		throw new IOException("Broken varint");
+	}
+
+	/**
+	 * Copy a part of an array
+	 * @param buf Array
+	 * @param offset Start
+	 * @param length Length
+	 * @return Copy
+	 */
+	private static byte[] subArray(byte[] buf, int offset, int length) {
+		byte[] result = new byte[length];
+		System.arraycopy(buf, offset, result, 0, length);
+		return result;
+	}
+}
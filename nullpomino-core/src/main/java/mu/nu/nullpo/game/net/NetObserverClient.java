@@ -78,9 +78,7 @@ public class NetObserverClient extends NetBaseClient {
 	 * The various processing depending on the received message
 	 */
 	@Override
-	protected void processPacket(String fullMessage) throws IOException {
-		String[] message = fullMessage.split("\t");	// Tab delimited
-
+	protected void processPacket(String[] message) throws IOException {
 		// Connection completion
 		if(message[0].equals("welcome")) {
 			//welcome\t[VERSION]\t[PLAYERS]\t[OBSERVERS]\t[VERSION MINOR]\t[VERSION STRING]\t[PING INTERVAL]\t[DEV BUILD]
@@ -102,7 +100,7 @@ public class NetObserverClient extends NetBaseClient {
 			observerCount = Integer.parseInt(message[2]);
 		}
 
-		super.processPacket(fullMessage);
+		super.processPacket(message);
 	}
 
 	public float getServerVersion() {
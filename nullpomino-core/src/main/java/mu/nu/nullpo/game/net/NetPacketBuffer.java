@@ -0,0 +1,149 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Receive buffer of one connection. Splits the received bytes into messages,
+ * either newline-terminated text or {@link NetBinaryProtocol} frames.
+ */
+public class NetPacketBuffer {
+	/** Default buffer size */
+	public static final int DEFAULT_SIZE = 2048;
+
+	/** Received bytes */
+	protected byte[] buf;
+
+	/** Start of the unprocessed bytes */
+	protected int start;
+
+	/** End of the unprocessed bytes */
+	protected int end;
+
+	/** true if the bytes are frames, false if they are text */
+	protected boolean binary;
+
+	/**
+	 * Constructor
+	 */
+	public NetPacketBuffer() {
+		buf = new byte[DEFAULT_SIZE];
+	}
+
+	/**
+	 * Add received bytes
+	 * @param b Bytes
+	 * @param off Start
+	 * @param len Length
+	 */
+	public void append(byte[] b, int off, int len) {
+		reserve(len);
+		System.arraycopy(b, off, buf, end, len);
+		end += len;
+	}
+
+	/**
+	 * Add received bytes
+	 * @param src Bytes (from position to limit)
+	 */
+	public void append(ByteBuffer src) {
+		int len = src.remaining();
+		reserve(len);
+		src.get(buf, end, len);
+		end += len;
+	}
+
+	/**
+	 * Get the next complete message. Switching {@link #setBinary(boolean)} between calls changes how the rest is read.
+	 * @return Fields of the message (Same as <code>String.split("\t")</code> of a text message), or null if there are no complete messages
+	 * @throws IOException If a frame is broken
+	 */
+	public String[] next() throws IOException {
+		if(binary) {
+			int[] pos = {start};
+			long length = NetBinaryProtocol.readVarLong(buf, pos, end);
+			if(length < 0) return null;
+			if(length > NetBinaryProtocol.MAX_FRAME_SIZE) throw new IOException("Frame too large (" + length + " bytes)");
+			if(pos[0] + length > end) return null;
+
+			String[] message = NetBinaryProtocol.decode(buf, pos[0], (int)length);
+			start = pos[0] + (int)length;
+			return message;
+		}
+
+		for(int i = start; i < end; i++) {
+			if(buf[i] == '\n') {
+				String line = new String(buf, start, i - start, "UTF-8");
+				start = i + 1;
+				return line.split("\t");
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return true if the bytes are read as frames
+	 */
+	public boolean isBinary() {
+		return binary;
+	}
+
+	/**
+	 * @param binary true to read the bytes after the current message as frames
+	 */
+	public void setBinary(boolean binary) {
+		this.binary = binary;
+	}
+
+	/**
+	 * @return Number of unprocessed bytes
+	 */
+	public int size() {
+		return end - start;
+	}
+
+	/**
+	 * Make room for more bytes
+	 * @param len Number of bytes to add
+	 */
+	protected void reserve(int len) {
+		if(start > 0) {
+			System.arraycopy(buf, start, buf, 0, end - start);
+			end -= start;
+			start = 0;
+		}
+		if(end + len > buf.length) {
+			byte[] newBuf = new byte[Math.max(buf.length * 2, end + len)];
+			System.arraycopy(buf, 0, newBuf, 0, end);
+			buf = newBuf;
+		}
+	}
+}
@@ -124,9 +124,7 @@ public class NetPlayerClient extends NetBaseClient {
 	 * The various processing depending on the received message
 	 */
 	@Override
-	protected void processPacket(String fullMessage) throws IOException {
-		String[] message = fullMessage.split("\t");	// Tab delimited
-
+	protected void processPacket(String[] message) throws IOException {
 		// Connection completion
 		if(message[0].equals("welcome")) {
 			//welcome\t[VERSION]\t[PLAYERS]\t[OBSERVERS]\t[VERSION MINOR]\t[VERSION STRING]\t[PING INTERVAL]\t[DEV BUILD]
@@ -138,6 +136,9 @@ public class NetPlayerClient extends NetBaseClient {
 				startPingTask(pingInterval);
 			}
 
+			// Tell the server which optional game messages this client understands
+			send("features\tfielddelta\n");
+
 			send("login\t" + GameManager.getVersionMajor() + "\t" + NetUtil.urlEncode(playerName) + "\t" + Locale.getDefault().getCountry() + "\t" +
 				 NetUtil.urlEncode(playerTeam) + "\t" + GameManager.getVersionMinor() + "\t" + GameManager.isDevBuild() + "\n");
 		}
@@ -246,7 +247,7 @@ public class NetPlayerClient extends NetBaseClient {
 		}
 
 		// ListenerCall
-		super.processPacket(fullMessage);
+		super.processPacket(message);
 	}
 
 	/**
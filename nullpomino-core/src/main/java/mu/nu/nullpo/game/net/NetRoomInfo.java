@@ -191,6 +191,9 @@ public class NetRoomInfo implements Serializable {
 	/** Game style */
 	public int style = 0;
 
+	/** true if everyone in the room supports "fielddelta" messages (Set by the server) */
+	public boolean fieldDelta = false;
+
 	/** Map list */
 	public LinkedList<String> mapList = new LinkedList<String>();
 
@@ -311,6 +314,7 @@ public class NetRoomInfo implements Serializable {
 		rated = n.rated;
 		customRated = n.customRated;
 		style = n.style;
+		fieldDelta = n.fieldDelta;
 
 		mapList.clear();
 		mapList.addAll(n.mapList);
@@ -332,7 +336,7 @@ public class NetRoomInfo implements Serializable {
 	 * StringFrom an array of dataAssignment(PlayerExcept list)
 	 *
 	 * @param rdata
-	 *            StringAn array of(String[43])
+	 *            StringAn array of(String[44])
 	 */
 	public void importStringArray(String[] rdata) {
 		roomID = Integer.parseInt(rdata[0]);
@@ -378,7 +382,8 @@ public class NetRoomInfo implements Serializable {
 		divideChangeRateByPlayers = Boolean.parseBoolean(rdata[40]);
 		if(rdata.length > 41) isTarget = Boolean.parseBoolean(rdata[41]);
 		if(rdata.length > 42) targetTimer = Integer.parseInt(rdata[42]);
-		//useTankMode = Boolean.parseBoolean(rdata[43]);
+		if(rdata.length > 43) fieldDelta = Boolean.parseBoolean(rdata[43]);
+		//useTankMode = Boolean.parseBoolean(rdata[44]);
 	}
 
 	/**
@@ -394,10 +399,10 @@ public class NetRoomInfo implements Serializable {
 	/**
 	 * StringConverts an array of(PlayerExcept list)
 	 *
-	 * @return StringAn array of(String[43])
+	 * @return StringAn array of(String[44])
 	 */
 	public String[] exportStringArray() {
-		String[] rdata = new String[43];
+		String[] rdata = new String[44];
 		rdata[0] = Integer.toString(roomID);
 		rdata[1] = NetUtil.urlEncode(strName);
 		rdata[2] = Integer.toString(maxPlayers);
@@ -441,7 +446,8 @@ public class NetRoomInfo implements Serializable {
 		rdata[40] = Boolean.toString(divideChangeRateByPlayers);
 		rdata[41] = Boolean.toString(isTarget);
 		rdata[42] = Integer.toString(targetTimer);
-		//rdata[43] = Boolean.toString(useTankMode);
+		rdata[43] = Boolean.toString(fieldDelta);
+		//rdata[44] = Boolean.toString(useTankMode);
 
 		return rdata;
 	}
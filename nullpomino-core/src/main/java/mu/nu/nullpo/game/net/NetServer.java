@@ -37,7 +37,6 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
-import java.nio.channels.CancelledKeyException;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
@@ -46,14 +45,24 @@ import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.SelectorProvider;
 import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Random;
+import java.util.Set;
 import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.Adler32;
 
 import mu.nu.nullpo.game.component.RuleOptions;
@@ -63,6 +72,7 @@ import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
 import net.clarenceho.crypto.RC4;
 
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 import org.cacas.java.gnu.tools.Crypt;
@@ -140,6 +150,15 @@ public class NetServer {
 	/** Client's ping interval */
 	private static long clientPingInterval;
 
+	/** True to accept clients asking for the binary protocol */
+	private static boolean allowBinaryProtocol;
+
+	/** Number of threads processing packets (0:Number of CPUs) */
+	private static int workerThreads;
+
+	/** Writes data files in the background so slow disks don't hold up the clients */
+	private static final ExecutorService fileWriteExecutor = Executors.newSingleThreadExecutor();
+
 	/** Default rating */
 	private static int ratingDefault;
 
@@ -209,27 +228,54 @@ public class NetServer {
 	/** Lobby chat message history */
 	private static LinkedList<NetChatMessage> lobbyChatList = new LinkedList<NetChatMessage>();
 
-	/** List of SocketChannel */
-	private LinkedList<SocketChannel> channelList = new LinkedList<SocketChannel>();
+	/** All connected SocketChannels */
+	private Set<SocketChannel> channelSet = newChannelSet();
 
 	/** Last communication time */
-	private Map<SocketChannel, Long> lastCommTimeMap = new HashMap<SocketChannel, Long>();
+	private Map<SocketChannel, Long> lastCommTimeMap = new ConcurrentHashMap<SocketChannel, Long>();
+
+	/** Received bytes that are not processed yet */
+	private Map<SocketChannel, NetPacketBuffer> packetBufferMap = new ConcurrentHashMap<SocketChannel, NetPacketBuffer>();
+
+	/** Tasks waiting to be processed for each client */
+	private Map<SocketChannel, ClientTaskQueue> taskQueueMap = new ConcurrentHashMap<SocketChannel, ClientTaskQueue>();
+
+	/** Threads processing packets */
+	private ExecutorService workerPool;
+
+	/**
+	 * Guards the lobby, room and ranking state.
+	 * "game" messages are only relayed, so they take the read lock and are processed in parallel;
+	 * everything else takes the write lock.
+	 */
+	private ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
 
-	/** Incomplete packet buffer */
-	private Map<SocketChannel, StringBuilder> notCompletePacketMap = new HashMap<SocketChannel, StringBuilder>();
+	/** Clients that are sent {@link NetBinaryProtocol} frames */
+	private Set<SocketChannel> binaryChannelSet = newChannelSet();
+
+	/** Clients that can receive "fielddelta" game messages */
+	private Set<SocketChannel> fieldDeltaChannelSet = newChannelSet();
 
 	/** Player info */
-	private Map<SocketChannel, NetPlayerInfo> playerInfoMap = new HashMap<SocketChannel, NetPlayerInfo>();
+	private Map<SocketChannel, NetPlayerInfo> playerInfoMap = new ConcurrentHashMap<SocketChannel, NetPlayerInfo>();
+
+	/** Player ID to SocketChannel */
+	private Map<Integer, SocketChannel> playerChannelMap = new ConcurrentHashMap<Integer, SocketChannel>();
 
+	/** Player name to SocketChannel */
+	private Map<String, SocketChannel> playerNameMap = new ConcurrentHashMap<String, SocketChannel>();
 
-	/** Room info list */
-	private LinkedList<NetRoomInfo> roomInfoList = new LinkedList<NetRoomInfo>();
+	/** Room ID to the SocketChannels of the players in that room (-1:Lobby) */
+	private Map<Integer, Set<SocketChannel>> roomMemberMap = new ConcurrentHashMap<Integer, Set<SocketChannel>>();
 
-	/** Observer list */
-	private LinkedList<SocketChannel> observerList = new LinkedList<SocketChannel>();
+	/** Room info (Sorted by room ID) */
+	private Map<Integer, NetRoomInfo> roomInfoMap = new ConcurrentSkipListMap<Integer, NetRoomInfo>();
 
-	/** Admin list */
-	private LinkedList<SocketChannel> adminList = new LinkedList<SocketChannel>();
+	/** Observers */
+	private Set<SocketChannel> observerSet = newChannelSet();
+
+	/** Admins */
+	private Set<SocketChannel> adminSet = newChannelSet();
 
 	/** Number of players connected so far (Used for assigning player ID) */
 	private int playerCount = 0;
@@ -241,7 +287,7 @@ public class NetServer {
 	private Random rand = new Random();
 
 	/** true if shutdown is requested by the admin */
-	private boolean shutdownRequested = false;
+	private volatile boolean shutdownRequested = false;
 
 	/** The port to listen on */
 	private int port;
@@ -516,13 +562,8 @@ public class NetServer {
 			}
 		}
 
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_mpranking.cfg");
-			propMPRanking.store(out, "NullpoMino NetServer Multiplayer Leaderboard");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write multiplayer ranking data", e);
-		}
+		writePropertiesLater(propMPRanking, "config/setting/netserver_mpranking.cfg",
+				"NullpoMino NetServer Multiplayer Leaderboard", "Failed to write multiplayer ranking data");
 	}
 
 	/**
@@ -713,25 +754,15 @@ public class NetServer {
 		for(NetSPRanking r: spRankingListAlltime) {
 			r.writeProperty(propSPRankingAlltime);
 		}
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_spranking.cfg");
-			propSPRankingAlltime.store(out, "NullpoMino NetServer Single Player All-time Leaderboard");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write single player all-time ranking data", e);
-		}
+		writePropertiesLater(propSPRankingAlltime, "config/setting/netserver_spranking.cfg",
+				"NullpoMino NetServer Single Player All-time Leaderboard", "Failed to write single player all-time ranking data");
 
 		// Daily
 		for(NetSPRanking r: spRankingListDaily) {
 			r.writeProperty(propSPRankingDaily);
 		}
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_spranking_daily.cfg");
-			propSPRankingDaily.store(out, "NullpoMino NetServer Single Player Daily Leaderboard");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write single player daily ranking data", e);
-		}
+		writePropertiesLater(propSPRankingDaily, "config/setting/netserver_spranking_daily.cfg",
+				"NullpoMino NetServer Single Player Daily Leaderboard", "Failed to write single player daily ranking data");
 	}
 
 	/**
@@ -777,13 +808,76 @@ public class NetServer {
 	 * Write player data properties (propPlayerData) to a file
 	 */
 	private static void writePlayerDataToFile() {
-		try {
-			FileOutputStream out = new FileOutputStream("config/setting/netserver_playerdata.cfg");
-			propPlayerData.store(out, "NullpoMino NetServer PlayerData");
-			out.close();
-		} catch (IOException e) {
-			log.error("Failed to write player data", e);
-		}
+		writePropertiesLater(propPlayerData, "config/setting/netserver_playerdata.cfg",
+				"NullpoMino NetServer PlayerData", "Failed to write player data");
+	}
+
+	/**
+	 * Write a properties file on the file writer thread
+	 * @param prop Properties (A copy is written, so it can be changed right after this call)
+	 * @param filename Filename
+	 * @param comment Comment written at the top of the file
+	 * @param errorMessage Log message when it fails
+	 */
+	private static void writePropertiesLater(CustomProperties prop, final String filename, final String comment,
+											 final String errorMessage)
+	{
+		final Properties copy = (Properties)prop.clone();
+
+		fileWriteExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					FileOutputStream out = new FileOutputStream(filename);
+					copy.store(out, comment);
+					out.close();
+				} catch (IOException e) {
+					log.error(errorMessage, e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Write a text file on the file writer thread
+	 * @param lines Lines to write
+	 * @param filename Filename
+	 * @param errorMessage Log message when it fails
+	 */
+	private static void writeLinesLater(List<String> lines, String filename, String errorMessage) {
+		writeLinesLater(lines, filename, errorMessage, null, null);
+	}
+
+	/**
+	 * Write a text file on the file writer thread
+	 * @param lines Lines to write
+	 * @param filename Filename
+	 * @param errorMessage Log message when it fails
+	 * @param successLevel Log level of successMessage
+	 * @param successMessage Log message once the file is written (null for none)
+	 */
+	private static void writeLinesLater(final List<String> lines, final String filename, final String errorMessage,
+			final Level successLevel, final String successMessage)
+	{
+		fileWriteExecutor.execute(new Runnable() {
+			public void run() {
+				try {
+					FileWriter outFile = new FileWriter(filename);
+					PrintWriter out = new PrintWriter(outFile);
+
+					for(String str: lines) {
+						out.println(str);
+					}
+
+					out.flush();
+					out.close();
+					if(out.checkError()) throw new IOException("Write error: " + filename);
+
+					if(successMessage != null) log.log(successLevel, successMessage);
+				} catch (Exception e) {
+					log.error(errorMessage, e);
+				}
+			}
+		});
 	}
 
 	/**
@@ -814,21 +908,12 @@ public class NetServer {
 	 * Write ban list to a file
 	 */
 	private static void saveBanList() {
-		try {
-			FileWriter outFile = new FileWriter("config/setting/netserver_banlist.cfg");
-			PrintWriter out = new PrintWriter(outFile);
-
-			for(NetServerBan ban: banList) {
-				out.println(ban.exportString());
-			}
-
-			out.flush();
-			out.close();
-
-			log.info("Ban list saved");
-		} catch (Exception e) {
-			log.error("Failed to save ban list", e);
+		List<String> lines = new ArrayList<String>(banList.size());
+		for(NetServerBan ban: banList) {
+			lines.add(ban.exportString());
 		}
+
+		writeLinesLater(lines, "config/setting/netserver_banlist.cfg", "Failed to save ban list", Level.INFO, "Ban list saved");
 	}
 
 	/**
@@ -862,23 +947,15 @@ public class NetServer {
 	 * Save lobby chat history file
 	 */
 	private static void saveLobbyChatHistory() {
-		try {
-			FileWriter outFile = new FileWriter("config/setting/netserver_lobbychat.cfg");
-			PrintWriter out = new PrintWriter(outFile);
-
-			while(lobbyChatList.size() > maxLobbyChatHistory) lobbyChatList.removeFirst();
-
-			for(NetChatMessage chat: lobbyChatList) {
-				out.println(chat.exportString());
-			}
-
-			out.flush();
-			out.close();
+		while(lobbyChatList.size() > maxLobbyChatHistory) lobbyChatList.removeFirst();
 
-			log.debug("Lobby chat history saved");
-		} catch (Exception e) {
-			log.error("Failed to save lobby chat history file", e);
+		List<String> lines = new ArrayList<String>(lobbyChatList.size());
+		for(NetChatMessage chat: lobbyChatList) {
+			lines.add(chat.exportString());
 		}
+
+		writeLinesLater(lines, "config/setting/netserver_lobbychat.cfg", "Failed to save lobby chat history file",
+				Level.DEBUG, "Lobby chat history saved");
 	}
 
 	/**
@@ -1022,6 +1099,9 @@ public class NetServer {
 		allowDNSAccess = propServer.getProperty("netserver.allowDNSAccess", true);
 		timeoutTime = propServer.getProperty("netserver.timeoutTime", DEFAULT_TIMEOUT_TIME);
 		clientPingInterval = propServer.getProperty("netserver.clientPingInterval", (long)(5 * 1000));
+		allowBinaryProtocol = propServer.getProperty("netserver.allowBinaryProtocol", true);
+		workerThreads = propServer.getProperty("netserver.workerThreads", 0);
+		if(workerThreads <= 0) workerThreads = Runtime.getRuntime().availableProcessors();
 		ratingDefault = propServer.getProperty("netserver.ratingDefault", NetPlayerInfo.DEFAULT_MULTIPLAYER_RATING);
 		ratingNormalMaxDiff = propServer.getProperty("netserver.ratingNormalMaxDiff", NORMAL_MAX_DIFF);
 		ratingProvisionalGames = propServer.getProperty("netserver.ratingProvisionalGames", PROVISIONAL_GAMES);
@@ -1094,6 +1174,8 @@ public class NetServer {
 			log.fatal("Failed to startup the server", e);
 			return;
 		}
+		workerPool = Executors.newFixedThreadPool(workerThreads);
+		log.info("Using " + workerThreads + " worker thread(s)");
 
 		// Mainloop
 		while(!shutdownRequested) {
@@ -1106,7 +1188,7 @@ public class NetServer {
 							ChangeRequest change = (ChangeRequest) changes.next();
 							SelectionKey key = change.socket.keyFor(this.selector);
 
-							if(key.isValid()) {
+							if((key != null) && key.isValid()) {
 								switch (change.type) {
 								case ChangeRequest.DISCONNECT:
 									// Delayed disconnect
@@ -1179,6 +1261,16 @@ public class NetServer {
 		}
 
 		log.warn("Server Shutdown!");
+
+		// Let the workers and the file writer finish what they are doing
+		workerPool.shutdown();
+		fileWriteExecutor.shutdown();
+		try {
+			workerPool.awaitTermination(10, TimeUnit.SECONDS);
+			fileWriteExecutor.awaitTermination(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			log.warn("Interrupted while waiting for the worker threads", e);
+		}
 	}
 
 	/**
@@ -1197,9 +1289,30 @@ public class NetServer {
 		// Register the new SocketChannel with our Selector, indicating
 		// we'd like to be notified when there's data waiting to be read
 		socketChannel.register(this.selector, SelectionKey.OP_READ);
+		packetBufferMap.put(socketChannel, new NetPacketBuffer());
+		taskQueueMap.put(socketChannel, new ClientTaskQueue());
+
+		// The rest is done by the workers, before any packet from this client
+		final SocketChannel client = socketChannel;
+		addClientTask(client, new Runnable() {
+			public void run() {
+				stateLock.writeLock().lock();
+				try {
+					onAccept(client);
+				} finally {
+					stateLock.writeLock().unlock();
+				}
+			}
+		});
+	}
 
+	/**
+	 * Add a new client to the lists and send the welcome message (Called from a worker thread)
+	 * @param socketChannel SocketChannel
+	 */
+	private void onAccept(SocketChannel socketChannel) {
 		// Add to list
-		channelList.add(socketChannel);
+		channelSet.add(socketChannel);
 		lastCommTimeMap.put(socketChannel, System.currentTimeMillis());
 		adminSendClientList();
 
@@ -1217,7 +1330,7 @@ public class NetServer {
 		} else {
 			// Send welcome message
 			log.debug("Accept:" + getHostName(socketChannel));
-			send(socketChannel, "welcome\t" + GameManager.getVersionMajor() + "\t" + playerInfoMap.size() + "\t" + observerList.size() + "\t" +
+			send(socketChannel, "welcome\t" + GameManager.getVersionMajor() + "\t" + playerInfoMap.size() + "\t" + observerSet.size() + "\t" +
 				GameManager.getVersionMinor() + "\t" + GameManager.getVersionString() + "\t" + clientPingInterval + "\t" +
 				GameManager.isDevBuild() + "\n");
 		}
@@ -1257,32 +1370,81 @@ public class NetServer {
 		// Process the packet
 		readBuffer.flip();
 
-		byte[] bytes = new byte[readBuffer.limit()];
-		readBuffer.get(bytes);
+		NetPacketBuffer packetBuffer = packetBufferMap.get(socketChannel);
+		if(packetBuffer == null) {
+			packetBuffer = new NetPacketBuffer();
+			packetBufferMap.put(socketChannel, packetBuffer);
+		}
+		packetBuffer.append(readBuffer);
 
-		String message = NetUtil.bytesToString(bytes);
+		String[] message;
+		while((message = packetBuffer.next()) != null) {
+			// Binary protocol start. Everything received from the client after this is framed, including the rest of this buffer.
+			if(message[0].equals("binarystart")) {
+				if(binaryChannelSet.contains(socketChannel)) packetBuffer.setBinary(true);
+				continue;
+			}
 
-		// Previous incomplete packet buffer (null if none are present)
-		StringBuilder notCompletePacketBuffer = notCompletePacketMap.remove(socketChannel);
+			final SocketChannel client = socketChannel;
+			final String[] packet = message;
+			addClientTask(client, new Runnable() {
+				public void run() {
+					processPacketTask(client, packet);
+				}
+			});
+		}
+	}
 
-		// The new packet buffer
-		StringBuilder packetBuffer = new StringBuilder();
-		if(notCompletePacketBuffer != null) packetBuffer.append(notCompletePacketBuffer);
-		packetBuffer.append(message);
+	/**
+	 * Process a packet on a worker thread
+	 * @param client The SocketChannel who sent this packet
+	 * @param message The packet split by \t
+	 */
+	private void processPacketTask(SocketChannel client, String[] message) {
+		Lock lock = message[0].equals("game") ? stateLock.readLock() : stateLock.writeLock();
+		boolean disconnect = false;
 
-		int index;
-		while((index = packetBuffer.indexOf("\n")) != -1) {
-			String msgNow = packetBuffer.substring(0, index);
-			processPacket(socketChannel, msgNow);
-			packetBuffer = packetBuffer.replace(0, index+1, "");
+		lock.lock();
+		try {
+			// Ignore packets that were already queued when the client logged out
+			if(!channelSet.contains(client)) return;
+
+			processPacket(client, message);
+		} catch (NetServerDisconnectRequestedException e) {
+			// Intended Disconnect
+			log.debug("Socket disconnected by NetServerDisconnectRequestedException");
+			disconnect = true;
+		} catch (IOException e) {
+			// Disconnect when something bad happens
+			log.info("Socket disconnected by IOException", e);
+			disconnect = true;
+		} catch (Exception e) {
+			log.warn("Socket disconnected by Non-IOException", e);
+			disconnect = true;
+		} finally {
+			lock.unlock();
 		}
 
-		// Place new incomplete packet buffer
-		if(packetBuffer.length() > 0) {
-			notCompletePacketMap.put(socketChannel, packetBuffer);
+		if(disconnect) {
+			stateLock.writeLock().lock();
+			try {
+				logout(client);
+			} finally {
+				stateLock.writeLock().unlock();
+			}
 		}
 	}
 
+	/**
+	 * Queue a task for a client. Tasks of the same client are run on the worker pool one at a time, in order.
+	 * @param client SocketChannel
+	 * @param task Task
+	 */
+	private void addClientTask(SocketChannel client, Runnable task) {
+		ClientTaskQueue queue = taskQueueMap.get(client);
+		if(queue != null) queue.add(task);
+	}
+
 	/**
 	 * Write message(s) to client
 	 * @param key SelectionKey
@@ -1323,12 +1485,23 @@ public class NetServer {
 
 		SelectableChannel ch = key.channel();
 		if(ch instanceof SocketChannel) {
-			logout((SocketChannel)ch);
+			// Logout after the packets that are already queued
+			final SocketChannel client = (SocketChannel)ch;
+			addClientTask(client, new Runnable() {
+				public void run() {
+					stateLock.writeLock().lock();
+					try {
+						logout(client);
+					} finally {
+						stateLock.writeLock().unlock();
+					}
+				}
+			});
 		}
 	}
 
 	/**
-	 * Logout
+	 * Logout (Called from a worker thread holding the write lock)
 	 * @param channel SocketChannel
 	 */
 	private void logout(SocketChannel channel) {
@@ -1337,13 +1510,8 @@ public class NetServer {
 		String remoteAddr = getHostFull(channel);
 		log.info("Logout: " + remoteAddr);
 
-		try {
-			channel.register(selector, 0);
-		} catch (CancelledKeyException e) {
-			// CancelledKeyException. This is normal
-		} catch (Exception e) {
-			log.debug("Exception throwed on logout (channel.register)", e);
-		}
+		SelectionKey key = channel.keyFor(selector);
+		if(key != null) key.cancel();
 		try {
 			channel.finishConnect();
 		} catch (Exception e) {
@@ -1356,33 +1524,37 @@ public class NetServer {
 		}
 
 		try {
-			channelList.remove(channel);
+			channelSet.remove(channel);
 			lastCommTimeMap.remove(channel);
-			notCompletePacketMap.remove(channel);
+			packetBufferMap.remove(channel);
+			taskQueueMap.remove(channel);
+			binaryChannelSet.remove(channel);
+			fieldDeltaChannelSet.remove(channel);
 
-			List<ByteBuffer> queue = (List<ByteBuffer>) this.pendingData.get(channel);
-			if(queue != null) queue.clear();
+			synchronized (this.pendingData) {
+				List<ByteBuffer> queue = (List<ByteBuffer>) this.pendingData.get(channel);
+				if(queue != null) queue.clear();
+			}
 
 			NetPlayerInfo pInfo = playerInfoMap.remove(channel);
 			if(pInfo != null) {
 				log.info(pInfo.strName + " has logged out");
 
+				playerChannelMap.remove(pInfo.uid, channel);
+				playerNameMap.remove(pInfo.strName, channel);
+				removeRoomMember(pInfo.roomID, channel);
+
 				playerDead(pInfo);
 				pInfo.connected = false;
 				pInfo.ready = false;
 
-				LinkedList<NetRoomInfo> deleteList = new LinkedList<NetRoomInfo>();	// Room delete check list
+				// A player is in one room at most
+				NetRoomInfo roomInfo = getRoomInfo(pInfo.roomID);
 
-				for(NetRoomInfo roomInfo: roomInfoList) {
-					if(roomInfo.playerList.contains(pInfo)) {
-						roomInfo.playerList.remove(pInfo);
-						roomInfo.playerQueue.remove(pInfo);
-						roomInfo.exitSeat(pInfo);
-						deleteList.add(roomInfo);
-					}
-				}
+				if((roomInfo != null) && roomInfo.playerList.remove(pInfo)) {
+					roomInfo.playerQueue.remove(pInfo);
+					roomInfo.exitSeat(pInfo);
 
-				for(NetRoomInfo roomInfo: deleteList) {
 					if(!deleteRoom(roomInfo)) {
 						joinAllQueuePlayers(roomInfo);
 
@@ -1395,10 +1567,10 @@ public class NetServer {
 					}
 				}
 			}
-			if(observerList.remove(channel) == true) {
+			if(observerSet.remove(channel) == true) {
 				log.info("Observer logout (" + remoteAddr + ")");
 			}
-			if(adminList.remove(channel) == true) {
+			if(adminSet.remove(channel) == true) {
 				log.info("Admin logout (" + remoteAddr + ")");
 			}
 
@@ -1414,10 +1586,10 @@ public class NetServer {
 			log.warn("Exception throwed on logout", e);
 		}
 
-		if(channelList.isEmpty()) {
+		if(channelSet.isEmpty()) {
 			cleanup();
 		} else if(playerInfoMap.isEmpty()) {
-			roomInfoList.clear();
+			roomInfoMap.clear();
 		}
 	}
 
@@ -1427,17 +1599,21 @@ public class NetServer {
 	private void cleanup() {
 		log.info("Cleanup");
 
-		channelList.clear();
+		channelSet.clear();
 		lastCommTimeMap.clear();
-		notCompletePacketMap.clear();
-		observerList.clear();
-		adminList.clear();
+		packetBufferMap.clear();
+		binaryChannelSet.clear();
+		fieldDeltaChannelSet.clear();
+		observerSet.clear();
+		adminSet.clear();
 		playerInfoMap.clear();
-		roomInfoList.clear();
+		playerChannelMap.clear();
+		playerNameMap.clear();
+		roomMemberMap.clear();
+		roomInfoMap.clear();
 		synchronized (this.pendingData) {
 		  this.pendingData.clear();
 		}
-		if(this.readBuffer != null) this.readBuffer.clear();
 
 		System.gc();
 	}
@@ -1450,7 +1626,7 @@ public class NetServer {
 	private int killTimeoutConnections(long timeout) {
 		if(timeout <= 0) return 0;
 
-		LinkedList<SocketChannel> clients = new LinkedList<SocketChannel>(channelList);
+		LinkedList<SocketChannel> clients = new LinkedList<SocketChannel>(channelSet);
 		int killCount = 0;
 
 		for(SocketChannel client: clients) {
@@ -1478,6 +1654,19 @@ public class NetServer {
 	 * @param bytes Message to send (byte[])
 	 */
 	public void send(SocketChannel client, byte[] bytes) {
+		if(binaryChannelSet.contains(client)) {
+			sendRaw(client, NetBinaryProtocol.encode(NetUtil.bytesToString(bytes)));
+		} else {
+			sendRaw(client, bytes);
+		}
+	}
+
+	/**
+	 * Queue bytes that are already encoded for the client's protocol
+	 * @param client SocketChannel
+	 * @param bytes Bytes to send
+	 */
+	private void sendRaw(SocketChannel client, byte[] bytes) {
 		synchronized (this.pendingChanges) {
 			// Indicate we want the interest ops set changed
 			this.pendingChanges.add(new ChangeRequest(client, ChangeRequest.CHANGEOPS, SelectionKey.OP_WRITE));
@@ -1503,7 +1692,34 @@ public class NetServer {
 	 * @param msg Message to send (String)
 	 */
 	public void send(SocketChannel client, String msg)  {
-		send(client, NetUtil.stringToBytes(msg));
+		if(binaryChannelSet.contains(client)) {
+			sendRaw(client, NetBinaryProtocol.encode(msg));
+		} else {
+			sendRaw(client, NetUtil.stringToBytes(msg));
+		}
+	}
+
+	/**
+	 * Send a message to many clients. The message is encoded at most once per protocol.
+	 * @param clients Clients
+	 * @param msg Message to send (String)
+	 * @param except Client to skip (null to send to all)
+	 */
+	private void send(Iterable<SocketChannel> clients, String msg, SocketChannel except) {
+		byte[] textBytes = null;
+		byte[] binaryBytes = null;
+
+		for(SocketChannel ch: clients) {
+			if(ch == except) continue;
+
+			if(binaryChannelSet.contains(ch)) {
+				if(binaryBytes == null) binaryBytes = NetBinaryProtocol.encode(msg);
+				sendRaw(ch, binaryBytes);
+			} else {
+				if(textBytes == null) textBytes = NetUtil.stringToBytes(msg);
+				sendRaw(ch, textBytes);
+			}
+		}
 	}
 
 	/**
@@ -1525,7 +1741,7 @@ public class NetServer {
 	public void send(NetPlayerInfo pInfo, String msg) {
 		SocketChannel ch = getSocketChannelByPlayer(pInfo);
 		if(ch == null) return;
-		send(ch, NetUtil.stringToBytes(msg));
+		send(ch, msg);
 	}
 
 	/**
@@ -1533,15 +1749,7 @@ public class NetServer {
 	 * @param msg Message to send (String)
 	 */
 	public void broadcast(String msg) {
-		synchronized(channelList) {
-			for(SocketChannel ch: channelList) {
-				NetPlayerInfo p = playerInfoMap.get(ch);
-
-				if(p != null) {
-					send(ch, msg);
-				}
-			}
-		}
+		send(playerInfoMap.keySet(), msg, null);
 	}
 
 	/**
@@ -1550,15 +1758,10 @@ public class NetServer {
 	 * @param roomID Room ID (-1:Lobby)
 	 */
 	public void broadcast(String msg, int roomID) {
-		synchronized(channelList) {
-			for(SocketChannel ch: channelList) {
-				NetPlayerInfo p = playerInfoMap.get(ch);
+		Set<SocketChannel> members = roomMemberMap.get(roomID);
+		if(members == null) return;
 
-				if((p != null) && (roomID == p.roomID)) {
-					send(ch, msg);
-				}
-			}
-		}
+		send(members, msg, null);
 	}
 
 	/**
@@ -1568,15 +1771,10 @@ public class NetServer {
 	 * @param pInfo The player to avoid sending message
 	 */
 	public void broadcast(String msg, int roomID, NetPlayerInfo pInfo) {
-		synchronized(channelList) {
-			for(SocketChannel ch: channelList) {
-				NetPlayerInfo p = playerInfoMap.get(ch);
+		Set<SocketChannel> members = roomMemberMap.get(roomID);
+		if(members == null) return;
 
-				if((p != null) && (p.uid != pInfo.uid) && (roomID == p.roomID)) {
-					send(ch, msg);
-				}
-			}
-		}
+		send(members, msg, playerChannelMap.get(pInfo.uid));
 	}
 
 	/**
@@ -1584,16 +1782,14 @@ public class NetServer {
 	 * @param msg Message to send (String)
 	 */
 	public void broadcastObserver(String msg) {
-		for(SocketChannel ch: observerList) {
-			send(ch, msg);
-		}
+		send(observerSet, msg, null);
 	}
 
 	/**
 	 * Broadcast client count (observers and players) to everyone
 	 */
 	public void broadcastUserCountToAll() {
-		String msg = "observerupdate\t" + playerInfoMap.size() + "\t" + observerList.size() + "\n";
+		String msg = "observerupdate\t" + playerInfoMap.size() + "\t" + observerSet.size() + "\n";
 		broadcast(msg);
 		broadcastObserver(msg);
 		writeServerStatusFile();
@@ -1604,9 +1800,7 @@ public class NetServer {
 	 * @param msg Message to send (String)
 	 */
 	public void broadcastAdmin(String msg) {
-		for(SocketChannel ch: adminList) {
-			send(ch, msg);
-		}
+		send(adminSet, msg, null);
 	}
 
 	/**
@@ -1615,16 +1809,55 @@ public class NetServer {
 	 * @return SocketChannel (null if not found)
 	 */
 	public SocketChannel getSocketChannelByPlayer(NetPlayerInfo pInfo) {
-		synchronized(channelList) {
-			for(SocketChannel ch: channelList) {
-				NetPlayerInfo p = playerInfoMap.get(ch);
+		return playerChannelMap.get(pInfo.uid);
+	}
 
-				if((p != null) && (p.uid == pInfo.uid)) {
-					return ch;
-				}
-			}
+	/**
+	 * Create an empty set of SocketChannels that can be iterated while other threads modify it
+	 * @return Set of SocketChannel
+	 */
+	private static Set<SocketChannel> newChannelSet() {
+		return Collections.newSetFromMap(new ConcurrentHashMap<SocketChannel, Boolean>());
+	}
+
+	/**
+	 * Move a player to another room and keep the room member index up to date
+	 * @param pInfo Player (Must be logged in)
+	 * @param roomID New room ID (-1:Lobby)
+	 */
+	private void setPlayerRoom(NetPlayerInfo pInfo, int roomID) {
+		SocketChannel ch = playerChannelMap.get(pInfo.uid);
+
+		if(ch != null) {
+			removeRoomMember(pInfo.roomID, ch);
+			addRoomMember(roomID, ch);
 		}
-		return null;
+		pInfo.roomID = roomID;
+	}
+
+	/**
+	 * Add a SocketChannel to the member index of a room
+	 * @param roomID Room ID (-1:Lobby)
+	 * @param ch SocketChannel
+	 */
+	private void addRoomMember(int roomID, SocketChannel ch) {
+		Set<SocketChannel> members = roomMemberMap.get(roomID);
+		if(members == null) {
+			members = newChannelSet();
+			Set<SocketChannel> prev = roomMemberMap.putIfAbsent(roomID, members);
+			if(prev != null) members = prev;
+		}
+		members.add(ch);
+	}
+
+	/**
+	 * Remove a SocketChannel from the member index of a room
+	 * @param roomID Room ID (-1:Lobby)
+	 * @param ch SocketChannel
+	 */
+	private void removeRoomMember(int roomID, SocketChannel ch) {
+		Set<SocketChannel> members = roomMemberMap.get(roomID);
+		if(members != null) members.remove(ch);
 	}
 
 	/**
@@ -1637,27 +1870,27 @@ public class NetServer {
 	 */
 	public SocketChannel findPlayerByMsg(String msg) {
 		// Added to support temporary private messaging code, but might be useful even so?
-		synchronized(channelList) {
-			int maxLen = 0, len = 0;
-			String player;
-			SocketChannel chMatch = null;
-			for(SocketChannel ch: channelList) {
-				NetPlayerInfo p = playerInfoMap.get(ch);
-				len = p.strName.length();
-				player = p.strName;
-				if(p.isTripUse) {
-					len -= 12;
-					player = player.substring(0, len);
-				}
-				if(len+1 < msg.length()) {
-					if ((msg.substring(0, len+1).equals(player + " ")) && (len > maxLen)) {
-						chMatch = ch;
-						maxLen = len;
-					}
+		// Names are matched without their trip codes, so this can't use playerNameMap
+		int maxLen = 0, len = 0;
+		String player;
+		SocketChannel chMatch = null;
+		for(Map.Entry<SocketChannel, NetPlayerInfo> entry: playerInfoMap.entrySet()) {
+			SocketChannel ch = entry.getKey();
+			NetPlayerInfo p = entry.getValue();
+			len = p.strName.length();
+			player = p.strName;
+			if(p.isTripUse) {
+				len -= 12;
+				player = player.substring(0, len);
+			}
+			if(len+1 < msg.length()) {
+				if ((msg.substring(0, len+1).equals(player + " ")) && (len > maxLen)) {
+					chMatch = ch;
+					maxLen = len;
 				}
 			}
-			return chMatch;
 		}
+		return chMatch;
 	}
 
 	/**
@@ -1667,13 +1900,22 @@ public class NetServer {
 	 * @throws IOException When something bad happens
 	 */
 	private void processPacket(SocketChannel client, String fullMessage) throws IOException {
+		processPacket(client, fullMessage.split("\t"));	// Split by \t
+	}
+
+	/**
+	 * Process a packet.
+	 * @param client The SocketChannel who sent this packet
+	 * @param message The packet split by \t
+	 * @throws IOException When something bad happens
+	 */
+	private void processPacket(SocketChannel client, String[] message) throws IOException {
 		// Check ban
 		if(checkConnectionOnBanlist(client)) {
 			throw new NetServerDisconnectRequestedException("Connection banned");
 		}
 
 		// Setup Variables
-		String[] message = fullMessage.split("\t");	// Split by \t
 		NetPlayerInfo pInfo = playerInfoMap.get(client);	// NetPlayerInfo of this client. null if not logged in.
 
 		// Update last communication time
@@ -1682,10 +1924,31 @@ public class NetServer {
 		// Get information of this server.
 		if(message[0].equals("getinfo")) {
 			int loggedInUsersCount = playerInfoMap.size();
-			int observerCount = observerList.size();
+			int observerCount = observerSet.size();
 			send(client, "getinfo\t" + GameManager.getVersionMajor() + "\t" + loggedInUsersCount + "\t" + observerCount + "\n");
 			return;
 		}
+		// Binary protocol request. Everything sent to the client after the reply is framed.
+		if(message[0].equals("binary")) {
+			//binary\t[VERSION]
+			if(allowBinaryProtocol && (message.length > 1) && !binaryChannelSet.contains(client)) {
+				int version = Math.min(Integer.parseInt(message[1]), NetBinaryProtocol.VERSION);
+				if(version >= 1) {
+					// The reply itself is still text. Add the client first, so its "binarystart" can't arrive before that.
+					binaryChannelSet.add(client);
+					sendRaw(client, NetUtil.stringToBytes("binaryok\t" + version + "\n"));
+				}
+			}
+			return;
+		}
+		// Optional features the client supports (Older clients never send this)
+		if(message[0].equals("features")) {
+			//features\t[FEATURE]\t[FEATURE]...
+			for(int i = 1; i < message.length; i++) {
+				if(message[i].equals("fielddelta")) fieldDeltaChannelSet.add(client);
+			}
+			return;
+		}
 		// Disconnect request.
 		if(message[0].equals("disconnect")) {
 			throw new NetServerDisconnectRequestedException("Disconnect requested by the client (this is normal)");
@@ -1710,8 +1973,8 @@ public class NetServer {
 			//observer\t[MAJOR VERSION]\t[MINOR VERSION]\t[DEV BUILD]
 
 			// Ignore it if already logged in
-			if(observerList.contains(client)) return;
-			if(adminList.contains(client)) return;
+			if(observerSet.contains(client)) return;
+			if(adminSet.contains(client)) return;
 			if(playerInfoMap.containsKey(client)) return;
 
 			// Version check
@@ -1741,7 +2004,7 @@ public class NetServer {
 			killTimeoutConnections(timeoutTime);
 
 			// Success
-			observerList.add(client);
+			observerSet.add(client);
 			send(client, "observerloginsuccess\n");
 			broadcastUserCountToAll();
 			adminSendClientList();
@@ -1754,8 +2017,8 @@ public class NetServer {
 			//login\t[MAJOR VERSION]\t[NAME]\t[COUNTRY]\t[TEAM]\t[MINOR VERSION]\t[DEV BUILD]
 
 			// Ignore it if already logged in
-			if(observerList.contains(client)) return;
-			if(adminList.contains(client)) return;
+			if(observerSet.contains(client)) return;
+			if(adminSet.contains(client)) return;
 			if(playerInfoMap.containsKey(client)) return;
 
 			// Version check
@@ -1864,6 +2127,9 @@ public class NetServer {
 
 			// Success
 			playerInfoMap.put(client, pInfo);
+			playerChannelMap.put(pInfo.uid, client);
+			playerNameMap.put(pInfo.strName, client);
+			addRoomMember(pInfo.roomID, client);
 			playerCount++;
 			send(client, "loginsuccess\t" + NetUtil.urlEncode(pInfo.strName) + "\t" + pInfo.uid + "\n");
 			log.info(pInfo.strName + " has logged in (Host:" + getHostName(client) + " Team:" + pInfo.strTeam + ")");
@@ -2108,9 +2374,9 @@ public class NetServer {
 				roomCount++;
 				if(roomCount == -1) roomCount = 0;
 
-				roomInfoList.add(roomInfo);
+				roomInfoMap.put(roomInfo.roomID, roomInfo);
 
-				pInfo.roomID = roomInfo.roomID;
+				setPlayerRoom(pInfo, roomInfo.roomID);
 				pInfo.resetPlayState();
 				pInfo.playCountNow = 0;
 				pInfo.winCountNow = 0;
@@ -2180,9 +2446,9 @@ public class NetServer {
 				roomCount++;
 				if(roomCount == -1) roomCount = 0;
 
-				roomInfoList.add(roomInfo);
+				roomInfoMap.put(roomInfo.roomID, roomInfo);
 
-				pInfo.roomID = roomInfo.roomID;
+				setPlayerRoom(pInfo, roomInfo.roomID);
 				pInfo.resetPlayState();
 				pInfo.playCountNow = 0;
 				pInfo.winCountNow = 0;
@@ -2232,9 +2498,9 @@ public class NetServer {
 				roomCount++;
 				if(roomCount == -1) roomCount = 0;
 
-				roomInfoList.add(roomInfo);
+				roomInfoMap.put(roomInfo.roomID, roomInfo);
 
-				pInfo.roomID = roomInfo.roomID;
+				setPlayerRoom(pInfo, roomInfo.roomID);
 				pInfo.resetPlayState();
 				pInfo.playCountNow = 0;
 				pInfo.winCountNow = 0;
@@ -2283,7 +2549,7 @@ public class NetServer {
 							}
 						}
 					}
-					pInfo.roomID = -1;
+					setPlayerRoom(pInfo, -1);
 					pInfo.seatID = -1;
 					pInfo.queueID = -1;
 					pInfo.resetPlayState();
@@ -2314,7 +2580,7 @@ public class NetServer {
 							}
 						}
 					}
-					pInfo.roomID = newRoom.roomID;
+					setPlayerRoom(pInfo, newRoom.roomID);
 					pInfo.resetPlayState();
 					pInfo.playCountNow = 0;
 					pInfo.winCountNow = 0;
@@ -2754,7 +3020,8 @@ public class NetServer {
 				if(roomInfo != null) {
 					int seat = roomInfo.getPlayerSeatNumber(pInfo);
 
-					if(seat != -1) {
+					// Spectators can only ask for a field keyframe
+					if((seat != -1) || ((message.length > 1) && message[1].equals("fieldrequest"))) {
 						String msg = "game\t" + pInfo.uid + "\t" + seat + "\t";
 						for(int i = 1; i < message.length; i++) {
 							msg += message[i];
@@ -2769,8 +3036,8 @@ public class NetServer {
 		// ADMIN: Admin Login
 		if(message[0].equals("adminlogin")) {
 			// Ignore it if already logged in
-			if(observerList.contains(client)) return;
-			if(adminList.contains(client)) return;
+			if(observerSet.contains(client)) return;
+			if(adminSet.contains(client)) return;
 			if(playerInfoMap.containsKey(client)) return;
 
 			String strRemoteAddr = getHostFull(client);
@@ -2823,7 +3090,7 @@ public class NetServer {
 			killTimeoutConnections(timeoutTime);
 
 			// Login successful
-			adminList.add(client);
+			adminSet.add(client);
 			send(client, "adminloginsuccess\t" + getHostAddress(client) + "\t" + getHostName(client) + "\n");
 			adminSendClientList();
 			sendRoomList(client);
@@ -2831,7 +3098,7 @@ public class NetServer {
 		}
 		// ADMIN: Admin commands
 		if(message[0].equals("admin")) {
-			if(adminList.contains(client)) {
+			if(adminSet.contains(client)) {
 				String strAdminCommandTemp = NetUtil.decompressString(message[1]);
 				String[] strAdminCommandArray = strAdminCommandTemp.split("\t");
 				processAdminCommand(client, strAdminCommandArray);
@@ -3026,15 +3293,15 @@ public class NetServer {
 	private void adminSendClientList(SocketChannel client) {
 		String strMsg = "clientlist";
 
-		for(SocketChannel ch: channelList) {
+		for(SocketChannel ch: channelSet) {
 			String strIP = getHostAddress(ch);
 			String strHost = getHostName(ch);
 			NetPlayerInfo pInfo = playerInfoMap.get(ch);
 
 			int type = 0;	// Type of client. 0:Not logged in
 			if(pInfo != null) type = 1;	// 1:Player
-			else if(observerList.contains(ch)) type = 2;	// 2:Observer
-			else if(adminList.contains(ch)) type = 3;	// 3:Admin
+			else if(observerSet.contains(ch)) type = 2;	// 2:Observer
+			else if(adminSet.contains(ch)) type = 3;	// 3:Admin
 
 			String strClientData = strIP + "|" + strHost + "|" + type;
 			if(pInfo != null) {
@@ -3058,14 +3325,7 @@ public class NetServer {
 	 */
 	private NetRoomInfo getRoomInfo(int roomID) {
 		if(roomID == -1) return null;
-
-		for(NetRoomInfo roomInfo: roomInfoList) {
-			if(roomID == roomInfo.roomID) {
-				return roomInfo;
-			}
-		}
-
-		return null;
+		return roomInfoMap.get(roomID);
 	}
 
 	/**
@@ -3073,9 +3333,9 @@ public class NetServer {
 	 * @param client Client to send
 	 */
 	private void sendRoomList(SocketChannel client) {
-		String msg = "roomlist\t" + roomInfoList.size();
+		String msg = "roomlist\t" + roomInfoMap.size();
 
-		for(NetRoomInfo roomInfo: roomInfoList) {
+		for(NetRoomInfo roomInfo: roomInfoMap.values()) {
 			msg += "\t";
 			msg += roomInfo.exportString();
 		}
@@ -3093,7 +3353,8 @@ public class NetServer {
 		if((roomInfo != null) && (roomInfo.playerList.isEmpty())) {
 			log.info("RoomDelete ID:" + roomInfo.roomID + " Title:" + roomInfo.strName);
 			broadcastRoomInfoUpdate(roomInfo, "roomdelete");
-			roomInfoList.remove(roomInfo);
+			roomInfoMap.remove(roomInfo.roomID);
+			roomMemberMap.remove(roomInfo.roomID);
 			roomInfo.delete();
 			return true;
 		}
@@ -3354,6 +3615,7 @@ public class NetServer {
 	 */
 	private void broadcastRoomInfoUpdate(NetRoomInfo roomInfo, String command) {
 		roomInfo.updatePlayerCount();
+		updateRoomFieldDelta(roomInfo);
 		String msg = command + "\t";
 		msg += roomInfo.exportString();
 		msg += "\n";
@@ -3361,6 +3623,21 @@ public class NetServer {
 		broadcastAdmin(msg);
 	}
 
+	/**
+	 * Check if everyone in the room can receive "fielddelta" messages
+	 * @param roomInfo The room
+	 */
+	private void updateRoomFieldDelta(NetRoomInfo roomInfo) {
+		boolean fieldDelta = !roomInfo.playerList.isEmpty();
+		for(NetPlayerInfo pInfo: roomInfo.playerList) {
+			if((pInfo.channel == null) || !fieldDeltaChannelSet.contains(pInfo.channel)) {
+				fieldDelta = false;
+				break;
+			}
+		}
+		roomInfo.fieldDelta = fieldDelta;
+	}
+
 	/**
 	 * Send player list to specified client
 	 * @param client Client to send
@@ -3368,13 +3645,9 @@ public class NetServer {
 	private void sendPlayerList(SocketChannel client) {
 		String msg = "playerlist\t" + playerInfoMap.size();
 
-		for(SocketChannel ch: channelList) {
-			NetPlayerInfo pInfo = playerInfoMap.get(ch);
-
-			if(pInfo != null) {
-				msg += "\t";
-				msg += pInfo.exportString();
-			}
+		for(NetPlayerInfo pInfo: playerInfoMap.values()) {
+			msg += "\t";
+			msg += pInfo.exportString();
 		}
 
 		msg += "\n";
@@ -3407,13 +3680,8 @@ public class NetServer {
 	 * @return NetPlayerInfo (null if not found)
 	 */
 	private NetPlayerInfo searchPlayerByName(String name) {
-		for(SocketChannel ch: channelList) {
-			NetPlayerInfo pInfo = playerInfoMap.get(ch);
-			if((pInfo != null) && (pInfo.strName.equals(name))) {
-				return pInfo;
-			}
-		}
-		return null;
+		SocketChannel ch = playerNameMap.get(name);
+		return (ch == null) ? null : playerInfoMap.get(ch);
 	}
 
 	/**
@@ -3422,13 +3690,8 @@ public class NetServer {
 	 * @return NetPlayerInfo (null if not found)
 	 */
 	private NetPlayerInfo searchPlayerByUID(int uid) {
-		for(SocketChannel ch: channelList) {
-			NetPlayerInfo pInfo = playerInfoMap.get(ch);
-			if((pInfo != null) && (pInfo.uid == uid)) {
-				return pInfo;
-			}
-		}
-		return null;
+		SocketChannel ch = playerChannelMap.get(uid);
+		return (ch == null) ? null : playerInfoMap.get(ch);
 	}
 
 	/**
@@ -3501,7 +3764,7 @@ public class NetServer {
 	private int ban(String strIP, int banLength) {
 		LinkedList<SocketChannel> banChannels = new LinkedList<SocketChannel>();
 
-		for(SocketChannel ch: channelList) {
+		for(SocketChannel ch: channelSet) {
 			String ip = getHostAddress(ch);
 			if(ip.equals(strIP)) {
 				banChannels.add(ch);
@@ -3679,18 +3942,59 @@ public class NetServer {
 				"$observers/$players");
 
 		status = status.replaceAll("\\$version", Float.toString(GameManager.VERSION_MAJOR));
-		status = status.replaceAll("\\$observers", Integer.toString(observerList.size()));
+		status = status.replaceAll("\\$observers", Integer.toString(observerSet.size()));
 		status = status.replaceAll("\\$players", Integer.toString(playerInfoMap.size()));
-		status = status.replaceAll("\\$clients", Integer.toString(observerList.size() + playerInfoMap.size()));
-		status = status.replaceAll("\\$rooms", Integer.toString(roomInfoList.size()));
+		status = status.replaceAll("\\$clients", Integer.toString(observerSet.size() + playerInfoMap.size()));
+		status = status.replaceAll("\\$rooms", Integer.toString(roomInfoMap.size()));
 
-		try {
-			FileWriter outFile = new FileWriter(propServer.getProperty("netserver.statusfilename", "status.txt"));
-			PrintWriter out = new PrintWriter(outFile);
-			out.println(status);
-			out.close();
-		} catch (IOException e) {
-			e.printStackTrace();
+		writeLinesLater(Collections.singletonList(status), propServer.getProperty("netserver.statusfilename", "status.txt"),
+				"Failed to write server status file");
+	}
+
+	/**
+	 * Tasks of one client. They are run on the worker pool one at a time, in the order they were added,
+	 * so each client's packets are processed in order while different clients use different threads.
+	 */
+	private class ClientTaskQueue implements Runnable {
+		/** Tasks not started yet */
+		private LinkedList<Runnable> tasks = new LinkedList<Runnable>();
+
+		/** true if this queue is on the worker pool */
+		private boolean running = false;
+
+		/**
+		 * Add a task
+		 * @param task Task
+		 */
+		public void add(Runnable task) {
+			synchronized(this) {
+				tasks.add(task);
+				if(running) return;
+				running = true;
+			}
+			workerPool.execute(this);
+		}
+
+		/**
+		 * Run the tasks until the queue is empty
+		 */
+		public void run() {
+			while(true) {
+				Runnable task;
+				synchronized(this) {
+					task = tasks.poll();
+					if(task == null) {
+						running = false;
+						return;
+					}
+				}
+
+				try {
+					task.run();
+				} catch (Throwable e) {
+					log.error("Uncaught exception in a client task", e);
+				}
+			}
 		}
 	}
 
@@ -198,6 +198,9 @@ public class GameEngine {
 	/** Use thread for AI */
 	public boolean aiUseThread;
 
+	/** Evaluate AI candidates in parallel on the AI pool of the GameManager */
+	public boolean aiParallel;
+
 	/** Show Hint with AI */
 	public boolean aiShowHint;
 
@@ -721,7 +724,9 @@ public class GameEngine {
 			versionMinorOld = owner.replayProp.getProperty("version.core.minor", 0f);
 			versionIsDevBuild = owner.replayProp.getProperty("version.core.dev", false);
 
-			replayData.readProperty(owner.replayProp, playerID);
+			ReplayData input = (owner.replayInput != null) ? owner.replayInput.get(playerID) : null;
+			if(input != null) replayData.copy(input);
+			else replayData.readProperty(owner.replayProp, playerID);
 
 			String tempRand = owner.replayProp.getProperty(playerID + ".replay.randSeed", "0");
 			randSeed = Long.parseLong(tempRand, 16);
@@ -28,8 +28,12 @@
 */
 package mu.nu.nullpo.game.play;
 
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
 import mu.nu.nullpo.game.component.BGMStatus;
 import mu.nu.nullpo.game.component.BackgroundStatus;
+import mu.nu.nullpo.game.component.ReplayData;
 import mu.nu.nullpo.game.event.EventReceiver;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.util.CustomProperties;
@@ -61,6 +65,9 @@ public class GameManager {
 	/** Properties for replay file */
 	public CustomProperties replayProp;
 
+	/** Button input of each player loaded from a binary replay (If null or a player is missing, it is read from replayProp) */
+	public Map<Integer, ReplayData> replayInput;
+
 	/** true if replay mode */
 	public boolean replayMode;
 
@@ -82,12 +89,18 @@ public class GameManager {
 	/** GameEngine: This is where the most action takes place */
 	public GameEngine[] engine;
 
+	/** Seeks in the replay and keeps its snapshots (null if seeking is not used) */
+	public ReplaySeeker replaySeeker;
+
 	/** true to show invisible blocks in replay */
 	public boolean replayShowInvisible;
 
 	/** Show input */
 	public boolean showInput;
 
+	/** Thread pool shared by the AI players (created on first use) */
+	protected ForkJoinPool aiPool;
+
 	/**
 	 * Get major version
 	 * @return Major version
@@ -174,6 +187,7 @@ public class GameManager {
 
 		if(replayProp == null) {
 			replayProp = new CustomProperties();
+			replayInput = null;
 			replayMode = false;
 		}
 
@@ -202,6 +216,7 @@ public class GameManager {
 		bgmStatus.reset();
 		backgroundStatus.reset();
 		if(!replayMode) replayProp = new CustomProperties();
+		if(replaySeeker != null) replaySeeker.clear();
 		for(int i = 0; i < engine.length; i++) engine[i].init();
 	}
 
@@ -220,14 +235,33 @@ public class GameManager {
 			mode = null;
 			modeConfig = null;
 			replayProp = null;
+			replayInput = null;
+			replaySeeker = null;
 			receiver = null;
 			bgmStatus = null;
 			backgroundStatus = null;
+			synchronized(this) {
+				if(aiPool != null) {
+					aiPool.shutdownNow();
+					aiPool = null;
+				}
+			}
 		} catch (Throwable e) {
 			log.debug("Caught Throwable on shutdown", e);
 		}
 	}
 
+	/**
+	 * Get the thread pool shared by every AI player of this game
+	 * @return Thread pool (one worker per available processor)
+	 */
+	public synchronized ForkJoinPool getAIPool() {
+		if(aiPool == null) {
+			aiPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+		}
+		return aiPool;
+	}
+
 	/**
 	 * Get number of players
 	 * @return Number of players
@@ -286,6 +320,7 @@ public class GameManager {
 	 * Update every GameEngine
 	 */
 	public void updateAll() {
+		if((replaySeeker != null) && replayMode && !replayRerecord) replaySeeker.update();
 		for(int i = 0; i < engine.length; i++) {
 			engine[i].update();
 		}
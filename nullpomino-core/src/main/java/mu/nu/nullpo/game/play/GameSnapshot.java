@@ -0,0 +1,607 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import mu.nu.nullpo.game.component.ReplayData;
+import mu.nu.nullpo.game.event.EventReceiver;
+import mu.nu.nullpo.game.subsystem.ai.AIPlayer;
+
+/**
+ * Saved simulation state of a GameManager, used to seek in replays.
+ * <p>
+ * The state is everything reachable from the engines, the mode, and the BGM and background status.
+ * Game objects are not copied. Instead, the snapshot stores their field values and the contents
+ * of their arrays and lists, and {@link #restore()} writes them back into the same objects.
+ * That way no constructor is needed, and every reference the GUI holds to an engine or a mode stays valid.
+ * Objects that did not change since the previous snapshot share its saved contents,
+ * so most of a snapshot (such as the pregenerated NEXT pieces) is stored only once.
+ * <p>
+ * Not saved: the GameManager itself, EventReceiver (fields pointing to it are never written, since
+ * ReplaySeeker switches them while seeking), AI players, ReplayData (the input never changes
+ * while watching a replay), and objects from outside the game packages other than
+ * lists, maps and java.util.Random.
+ */
+public class GameSnapshot {
+	/** Package prefixes of the classes whose fields are saved */
+	private static final String[] GAME_PACKAGES = {"mu.nu.nullpo.game.", "net.omegaboshi.nullpomino.game."};
+
+	/** Classes whose instances are shared instead of saved */
+	private static final Class<?>[] SHARED_CLASSES = {GameManager.class, EventReceiver.class, AIPlayer.class, ReplayData.class};
+
+	/** List and set classes that are saved as their elements */
+	private static final Set<Class<?>> COLLECTION_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+		ArrayList.class, LinkedList.class, ArrayDeque.class, HashSet.class, LinkedHashSet.class, TreeSet.class));
+
+	/** Map classes that are saved as their entries */
+	private static final Set<Class<?>> MAP_CLASSES = new HashSet<Class<?>>(Arrays.<Class<?>>asList(
+		HashMap.class, LinkedHashMap.class, TreeMap.class));
+
+	/** How an object is saved */
+	private static final int KIND_SHARED = 0, KIND_OBJECT = 1, KIND_ARRAY = 2, KIND_COLLECTION = 3, KIND_MAP = 4, KIND_VALUE = 5;
+
+	/** Primitive field types */
+	private static final int TYPE_INT = 0, TYPE_LONG = 1, TYPE_SHORT = 2, TYPE_BYTE = 3, TYPE_CHAR = 4,
+							 TYPE_BOOLEAN = 5, TYPE_FLOAT = 6, TYPE_DOUBLE = 7;
+
+	/** How each class is saved */
+	private static final ClassValue<Layout> layouts = new ClassValue<Layout>() {
+		@Override
+		protected Layout computeValue(Class<?> c) {
+			return createLayout(c);
+		}
+	};
+
+	/** How a class is saved, and its saved fields (including its superclasses) */
+	private static class Layout {
+		/** KIND_ constant */
+		int kind;
+		/** Non-final primitive fields */
+		Field[] prims;
+		/** Types of prims */
+		int[] primTypes;
+		/** Non-final reference fields */
+		Field[] refs;
+		/** Final reference fields (the objects they point to are saved, but the fields are never written) */
+		Field[] finalRefs;
+	}
+
+	/** Copy of an object that can't be restored in place (java.util.Random) */
+	private static class ValueCopy {
+		/** Serialized object */
+		final byte[] data;
+
+		ValueCopy(byte[] data) {
+			this.data = data;
+		}
+	}
+
+	/** Saved objects in the order they were visited */
+	private final Object[] objects;
+
+	/** How each object in objects is saved */
+	private final byte[] kinds;
+
+	/** Primitive field values of each object (null if it is not a game object) */
+	private final long[][] prims;
+
+	/**
+	 * Saved contents of each object: reference field values of a game object,
+	 * a copy of an array, or the elements (keys and values in turn for a map) of a collection
+	 */
+	private final Object[] contents;
+
+	/**
+	 * Save the current state of a game
+	 * @param owner GameManager
+	 */
+	public GameSnapshot(GameManager owner) {
+		this(owner, null);
+	}
+
+	/**
+	 * Save the current state of a game, sharing the saved contents of the objects
+	 * that did not change since an earlier snapshot
+	 * @param owner GameManager
+	 * @param previous Earlier snapshot of the same game (null if none)
+	 */
+	public GameSnapshot(GameManager owner, GameSnapshot previous) {
+		int expectedSize = (previous != null) ? previous.objects.length + 256 : 1024;
+		IdentityHashMap<Object, Object> visited = new IdentityHashMap<Object, Object>(expectedSize);
+		ArrayList<Object> objectList = new ArrayList<Object>(expectedSize);
+		ArrayList<long[]> primList = new ArrayList<long[]>(expectedSize);
+		ArrayList<Object> contentList = new ArrayList<Object>(expectedSize);
+		ByteArrayOutputStream kindList = new ByteArrayOutputStream();
+
+		// Objects are usually visited in the same order as last time, so the index map is only made when they are not
+		IdentityHashMap<Object, Integer> previousIndex = null;
+		boolean sameOrder = (previous != null);
+
+		for(int i = 0; i < owner.engine.length; i++) visit(owner.engine[i], visited, objectList);
+		visit(owner.mode, visited, objectList);
+		visit(owner.bgmStatus, visited, objectList);
+		visit(owner.backgroundStatus, visited, objectList);
+
+		long[] primBuf = new long[64];
+		Object[] refBuf = new Object[64];
+
+		// objectList grows while this loop runs
+		for(int i = 0; i < objectList.size(); i++) {
+			Object o = objectList.get(i);
+			Layout layout = getLayout(o.getClass());
+			int kind = layout.kind;
+			kindList.write(kind);
+
+			Integer p = null;
+			if(previous != null) {
+				if((i < previous.objects.length) && (previous.objects[i] == o)) {
+					p = i;
+				} else {
+					sameOrder = false;
+					if(previousIndex == null) {
+						previousIndex = new IdentityHashMap<Object, Integer>(previous.objects.length);
+						for(int j = 0; j < previous.objects.length; j++) previousIndex.put(previous.objects[j], j);
+					}
+					p = previousIndex.get(o);
+				}
+			}
+			long[] oldPrims = (p != null) ? previous.prims[p] : null;
+			Object oldContents = (p != null) ? previous.contents[p] : null;
+			long[] newPrims = null;
+			Object newContents;
+
+			if((kind == KIND_ARRAY) && o.getClass().getComponentType().isPrimitive()) {
+				if((oldContents != null) && primitiveArrayEquals(o, oldContents)) {
+					newContents = oldContents;
+				} else {
+					int length = Array.getLength(o);
+					newContents = Array.newInstance(o.getClass().getComponentType(), length);
+					System.arraycopy(o, 0, newContents, 0, length);
+				}
+			} else if(kind == KIND_OBJECT) {
+				if(primBuf.length < layout.prims.length) primBuf = new long[layout.prims.length];
+				if(refBuf.length < layout.refs.length) refBuf = new Object[layout.refs.length];
+
+				try {
+					for(int j = 0; j < layout.prims.length; j++) {
+						primBuf[j] = getPrimitive(layout.prims[j], layout.primTypes[j], o);
+					}
+					for(int j = 0; j < layout.refs.length; j++) {
+						refBuf[j] = save(layout.refs[j].get(o), visited, objectList);
+					}
+					for(Field f: layout.finalRefs) {
+						visit(f.get(o), visited, objectList);
+					}
+				} catch (IllegalAccessException e) {
+					throw new IllegalStateException(e);
+				}
+
+				newPrims = ((oldPrims != null) && rangeEquals(primBuf, oldPrims, layout.prims.length)) ?
+						   oldPrims : Arrays.copyOf(primBuf, layout.prims.length);
+				newContents = ((oldContents != null) && rangeEquals(refBuf, (Object[])oldContents, layout.refs.length)) ?
+							  oldContents : Arrays.copyOf(refBuf, layout.refs.length);
+			} else {
+				Object[] copy;
+				if(kind == KIND_ARRAY) {
+					copy = new Object[Array.getLength(o)];
+					for(int j = 0; j < copy.length; j++) copy[j] = save(Array.get(o, j), visited, objectList);
+				} else if(kind == KIND_COLLECTION) {
+					copy = ((Collection<?>)o).toArray();
+					for(int j = 0; j < copy.length; j++) copy[j] = save(copy[j], visited, objectList);
+				} else {
+					Map<?, ?> map = (Map<?, ?>)o;
+					copy = new Object[map.size() * 2];
+					int j = 0;
+					for(Map.Entry<?, ?> e: map.entrySet()) {
+						copy[j++] = save(e.getKey(), visited, objectList);
+						copy[j++] = save(e.getValue(), visited, objectList);
+					}
+				}
+				newContents = ((oldContents != null) && rangeEquals(copy, (Object[])oldContents, copy.length)) ?
+							  oldContents : copy;
+			}
+
+			primList.add(newPrims);
+			contentList.add(newContents);
+		}
+
+		if(sameOrder && (objectList.size() == previous.objects.length)) {
+			objects = previous.objects;
+			kinds = previous.kinds;
+		} else {
+			objects = objectList.toArray();
+			kinds = kindList.toByteArray();
+		}
+		prims = primList.toArray(new long[primList.size()][]);
+		contents = contentList.toArray();
+	}
+
+	/**
+	 * Put every saved object back into the state it had when this snapshot was made.
+	 * The snapshot itself is not changed, so it can be restored any number of times.
+	 */
+	public void restore() {
+		IdentityHashMap<ValueCopy, Object> copies = new IdentityHashMap<ValueCopy, Object>();
+
+		try {
+			for(int i = 0; i < objects.length; i++) {
+				Object o = objects[i];
+
+				if(kinds[i] == KIND_ARRAY) {
+					if(contents[i] instanceof Object[]) {
+						Object[] a = (Object[])contents[i];
+						Object[] dest = (Object[])o;
+						for(int j = 0; j < a.length; j++) dest[j] = load(a[j], copies);
+					} else {
+						System.arraycopy(contents[i], 0, o, 0, Array.getLength(o));
+					}
+				} else if(kinds[i] == KIND_OBJECT) {
+					Layout layout = getLayout(o.getClass());
+					Object[] r = (Object[])contents[i];
+					for(int j = 0; j < layout.prims.length; j++) {
+						setPrimitive(layout.prims[j], layout.primTypes[j], o, prims[i][j]);
+					}
+					for(int j = 0; j < layout.refs.length; j++) {
+						layout.refs[j].set(o, load(r[j], copies));
+					}
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+
+		// Collections last, because sets and maps may hash their elements
+		for(int i = 0; i < objects.length; i++) {
+			if(kinds[i] == KIND_COLLECTION) {
+				@SuppressWarnings("unchecked")
+				Collection<Object> c = (Collection<Object>)objects[i];
+				c.clear();
+				for(Object e: (Object[])contents[i]) c.add(load(e, copies));
+			} else if(kinds[i] == KIND_MAP) {
+				@SuppressWarnings("unchecked")
+				Map<Object, Object> m = (Map<Object, Object>)objects[i];
+				Object[] a = (Object[])contents[i];
+				m.clear();
+				for(int j = 0; j < a.length; j += 2) m.put(load(a[j], copies), load(a[j + 1], copies));
+			}
+		}
+	}
+
+	/**
+	 * Get the number of saved objects
+	 * @return Number of objects
+	 */
+	public int getObjectCount() {
+		return objects.length;
+	}
+
+	/**
+	 * Get the value to store for a reference, and queue the object it points to
+	 * @param o Referenced object
+	 * @param visited Objects already queued
+	 * @param objectList Queue
+	 * @return Value to store
+	 */
+	private static Object save(Object o, IdentityHashMap<Object, Object> visited, List<Object> objectList) {
+		if((o != null) && (getKind(o) == KIND_VALUE)) {
+			Object copy = visited.get(o);
+			if(copy == null) {
+				copy = new ValueCopy(serialize(o));
+				visited.put(o, copy);
+			}
+			return copy;
+		}
+		visit(o, visited, objectList);
+		return o;
+	}
+
+	/**
+	 * Queue an object if it is saved and not queued yet
+	 * @param o Object
+	 * @param visited Objects already queued
+	 * @param objectList Queue
+	 */
+	private static void visit(Object o, IdentityHashMap<Object, Object> visited, List<Object> objectList) {
+		if((o == null) || visited.containsKey(o)) return;
+		int kind = getKind(o);
+		if((kind == KIND_SHARED) || (kind == KIND_VALUE)) return;
+		visited.put(o, o);
+		objectList.add(o);
+	}
+
+	/**
+	 * Get the object to write back for a stored value
+	 * @param value Stored value
+	 * @param copies Objects already made from ValueCopies during this restore
+	 * @return Object
+	 */
+	private static Object load(Object value, IdentityHashMap<ValueCopy, Object> copies) {
+		if(!(value instanceof ValueCopy)) return value;
+
+		Object o = copies.get(value);
+		if(o == null) {
+			try {
+				ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(((ValueCopy)value).data));
+				o = in.readObject();
+				in.close();
+			} catch (Exception e) {
+				throw new IllegalStateException("Couldn't restore a saved object", e);
+			}
+			copies.put((ValueCopy)value, o);
+		}
+		return o;
+	}
+
+	/**
+	 * Serialize an object
+	 * @param o Object
+	 * @return Serialized data
+	 */
+	private static byte[] serialize(Object o) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+			ObjectOutputStream out = new ObjectOutputStream(bytes);
+			out.writeObject(o);
+			out.close();
+			return bytes.toByteArray();
+		} catch (IOException e) {
+			throw new IllegalStateException("Couldn't save " + o.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * Compare the first elements of two arrays
+	 * @param a Array
+	 * @param b Array (at least length long)
+	 * @param length Number of elements to compare
+	 * @return true if b has exactly length elements and they are the same as in a
+	 */
+	private static boolean rangeEquals(long[] a, long[] b, int length) {
+		if(b.length != length) return false;
+		for(int i = 0; i < length; i++) {
+			if(a[i] != b[i]) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compare the first elements of two arrays of saved references
+	 * @param a Array
+	 * @param b Array
+	 * @param length Number of elements to compare
+	 * @return true if b has exactly length elements and they are the same (or equal copies) as in a
+	 */
+	private static boolean rangeEquals(Object[] a, Object[] b, int length) {
+		if(b.length != length) return false;
+		for(int i = 0; i < length; i++) {
+			if(a[i] == b[i]) continue;
+			if(!(a[i] instanceof ValueCopy) || !(b[i] instanceof ValueCopy)) return false;
+			if(!Arrays.equals(((ValueCopy)a[i]).data, ((ValueCopy)b[i]).data)) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Compare two primitive arrays of the same type
+	 * @param a Array
+	 * @param b Array
+	 * @return true if they have the same contents
+	 */
+	private static boolean primitiveArrayEquals(Object a, Object b) {
+		if(a.getClass() != b.getClass()) return false;
+		if(a instanceof int[]) return Arrays.equals((int[])a, (int[])b);
+		if(a instanceof boolean[]) return Arrays.equals((boolean[])a, (boolean[])b);
+		if(a instanceof long[]) return Arrays.equals((long[])a, (long[])b);
+		if(a instanceof float[]) return Arrays.equals((float[])a, (float[])b);
+		if(a instanceof double[]) return Arrays.equals((double[])a, (double[])b);
+		if(a instanceof byte[]) return Arrays.equals((byte[])a, (byte[])b);
+		if(a instanceof short[]) return Arrays.equals((short[])a, (short[])b);
+		return Arrays.equals((char[])a, (char[])b);
+	}
+
+	/**
+	 * Decide how an object is saved
+	 * @param o Object (not null)
+	 * @return One of the KIND_ constants
+	 */
+	private static int getKind(Object o) {
+		return layouts.get(o.getClass()).kind;
+	}
+
+	/**
+	 * Decide how the instances of a class are saved
+	 * @param c Class
+	 * @return One of the KIND_ constants
+	 */
+	private static int getKind(Class<?> c) {
+		if(c.isArray()) return KIND_ARRAY;
+		if(c.isEnum() || ((c.getSuperclass() != null) && c.getSuperclass().isEnum())) return KIND_SHARED;
+		for(Class<?> s: SHARED_CLASSES) {
+			if(s.isAssignableFrom(c)) return KIND_SHARED;
+		}
+
+		String name = c.getName();
+		for(String p: GAME_PACKAGES) {
+			if(name.startsWith(p)) return name.startsWith("mu.nu.nullpo.game.net.") ? KIND_SHARED : KIND_OBJECT;
+		}
+
+		if(COLLECTION_CLASSES.contains(c)) return KIND_COLLECTION;
+		if(MAP_CLASSES.contains(c)) return KIND_MAP;
+		if(Random.class.isAssignableFrom(c) && Serializable.class.isAssignableFrom(c)) return KIND_VALUE;
+		return KIND_SHARED;
+	}
+
+	/**
+	 * Get the saved fields of a class
+	 * @param c Class
+	 * @return Layout
+	 */
+	private static Layout getLayout(Class<?> c) {
+		return layouts.get(c);
+	}
+
+	/**
+	 * Find out how a class is saved
+	 * @param c Class
+	 * @return Layout (The field lists are empty unless it is KIND_OBJECT)
+	 */
+	private static Layout createLayout(Class<?> c) {
+		ArrayList<Field> prims = new ArrayList<Field>();
+		ArrayList<Field> refs = new ArrayList<Field>();
+		ArrayList<Field> finalRefs = new ArrayList<Field>();
+		int kind = getKind(c);
+
+		if(kind == KIND_OBJECT) {
+			for(Class<?> k = c; (k != null) && (k != Object.class); k = k.getSuperclass()) {
+				for(Field f: k.getDeclaredFields()) {
+					int mod = f.getModifiers();
+					if(Modifier.isStatic(mod) || EventReceiver.class.isAssignableFrom(f.getType())) continue;
+					boolean isFinal = Modifier.isFinal(mod);
+					if(f.getType().isPrimitive()) {
+						if(isFinal) continue;
+						f.setAccessible(true);
+						prims.add(f);
+					} else {
+						f.setAccessible(true);
+						if(isFinal) finalRefs.add(f);
+						else refs.add(f);
+					}
+				}
+			}
+		}
+
+		Layout layout = new Layout();
+		layout.kind = kind;
+		layout.prims = prims.toArray(new Field[prims.size()]);
+		layout.primTypes = new int[layout.prims.length];
+		for(int i = 0; i < layout.prims.length; i++) layout.primTypes[i] = getPrimitiveType(layout.prims[i].getType());
+		layout.refs = refs.toArray(new Field[refs.size()]);
+		layout.finalRefs = finalRefs.toArray(new Field[finalRefs.size()]);
+		return layout;
+	}
+
+	/**
+	 * Get the TYPE_ constant of a primitive type
+	 * @param t Primitive type
+	 * @return TYPE_ constant
+	 */
+	private static int getPrimitiveType(Class<?> t) {
+		if(t == int.class) return TYPE_INT;
+		if(t == long.class) return TYPE_LONG;
+		if(t == short.class) return TYPE_SHORT;
+		if(t == byte.class) return TYPE_BYTE;
+		if(t == char.class) return TYPE_CHAR;
+		if(t == boolean.class) return TYPE_BOOLEAN;
+		if(t == float.class) return TYPE_FLOAT;
+		return TYPE_DOUBLE;
+	}
+
+	/**
+	 * Read a primitive field as a long
+	 * @param f Field
+	 * @param type TYPE_ constant
+	 * @param o Object
+	 * @return Value
+	 * @throws IllegalAccessException Shouldn't happen
+	 */
+	private static long getPrimitive(Field f, int type, Object o) throws IllegalAccessException {
+		switch(type) {
+		case TYPE_BOOLEAN:
+			return f.getBoolean(o) ? 1 : 0;
+		case TYPE_FLOAT:
+			return Float.floatToRawIntBits(f.getFloat(o));
+		case TYPE_DOUBLE:
+			return Double.doubleToRawLongBits(f.getDouble(o));
+		default:
+			return f.getLong(o);
+		}
+	}
+
+	/**
+	 * Write a primitive field from a long
+	 * @param f Field
+	 * @param type TYPE_ constant
+	 * @param o Object
+	 * @param value Value
+	 * @throws IllegalAccessException Shouldn't happen
+	 */
+	private static void setPrimitive(Field f, int type, Object o, long value) throws IllegalAccessException {
+		switch(type) {
+		case TYPE_INT:
+			f.setInt(o, (int)value);
+			break;
+		case TYPE_LONG:
+			f.setLong(o, value);
+			break;
+		case TYPE_SHORT:
+			f.setShort(o, (short)value);
+			break;
+		case TYPE_BYTE:
+			f.setByte(o, (byte)value);
+			break;
+		case TYPE_CHAR:
+			f.setChar(o, (char)value);
+			break;
+		case TYPE_BOOLEAN:
+			f.setBoolean(o, value != 0);
+			break;
+		case TYPE_FLOAT:
+			f.setFloat(o, Float.intBitsToFloat((int)value));
+			break;
+		default:
+			f.setDouble(o, Double.longBitsToDouble(value));
+			break;
+		}
+	}
+}
@@ -0,0 +1,215 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.play;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.TreeMap;
+
+import mu.nu.nullpo.game.event.EventReceiver;
+
+/**
+ * Jumps to any frame of a replay being watched.
+ * <p>
+ * While the replay plays, a {@link GameSnapshot} is kept every {@link #getInterval()} frames,
+ * starting with the state before the first update, so the start of the replay can always be reached.
+ * To seek, the last snapshot before the target frame is restored, and then the game is
+ * run (without sound or effects) up to the target. Snapshots are also made while running
+ * forward, so the first jump past the played part computes them as it goes.
+ * <p>
+ * While seeking, the events go to a receiver that ignores them. Modes keep their own reference
+ * to the receiver from init, so their receiver fields are switched as well.
+ * Frames are counted by the replay timer of the first player.
+ */
+public class ReplaySeeker {
+	/** Default number of frames between snapshots (10 seconds) */
+	public static final int DEFAULT_INTERVAL = 60 * 10;
+
+	/** Frames skipped by one press of the seek keys in the GUI (5 seconds) */
+	public static final int SEEK_FRAMES = 60 * 5;
+
+	/** Maximum number of updates without the replay timer moving before seeking gives up */
+	protected static final int MAX_IDLE_FRAMES = 60 * 60;
+
+	/** GameManager */
+	protected GameManager owner;
+
+	/** Frames between snapshots */
+	protected int interval;
+
+	/** Snapshots by frame */
+	protected TreeMap<Integer, GameSnapshot> snapshots = new TreeMap<Integer, GameSnapshot>();
+
+	/** Receives the events while seeking */
+	protected EventReceiver silentReceiver = new EventReceiver();
+
+	/** true while seeking */
+	protected boolean seeking;
+
+	/**
+	 * Constructor
+	 * @param owner GameManager (in replay mode)
+	 */
+	public ReplaySeeker(GameManager owner) {
+		this(owner, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Constructor
+	 * @param owner GameManager (in replay mode)
+	 * @param interval Frames between snapshots
+	 */
+	public ReplaySeeker(GameManager owner, int interval) {
+		this.owner = owner;
+		this.interval = interval;
+	}
+
+	/**
+	 * Get the number of frames between snapshots
+	 * @return Frames between snapshots
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Get the number of snapshots kept
+	 * @return Number of snapshots
+	 */
+	public int getSnapshotCount() {
+		return snapshots.size();
+	}
+
+	/**
+	 * Get the current frame
+	 * @return Replay timer of the first player
+	 */
+	public int getFrame() {
+		return owner.engine[0].replayTimer;
+	}
+
+	/**
+	 * Get the length of the replay
+	 * @return Number of recorded frames of the first player
+	 */
+	public int getLength() {
+		return owner.engine[0].replayData.getLength();
+	}
+
+	/**
+	 * Called before every update. Makes a snapshot if the current frame needs one
+	 * (or if there is none yet).
+	 */
+	public void update() {
+		int frame = getFrame();
+		if(((frame % interval == 0) || snapshots.isEmpty()) && !snapshots.containsKey(frame)) {
+			// The closest earlier snapshot shares the most unchanged objects
+			Map.Entry<Integer, GameSnapshot> previous = snapshots.lowerEntry(frame);
+			snapshots.put(frame, new GameSnapshot(owner, (previous != null) ? previous.getValue() : null));
+		}
+	}
+
+	/**
+	 * Forget every snapshot (call this when the game is restarted)
+	 */
+	public void clear() {
+		snapshots.clear();
+	}
+
+	/**
+	 * Jump to a frame
+	 * @param frame Target frame (clamped to the replay)
+	 * @return Frame reached (earlier than the target if the replay ended first)
+	 */
+	public int seek(int frame) {
+		if(seeking) return getFrame();
+
+		int target = Math.max(0, Math.min(frame, getLength()));
+		int now = getFrame();
+		Map.Entry<Integer, GameSnapshot> e = snapshots.floorEntry(target);
+
+		// Only happens if the seeker was added after the replay started: go back as far as possible
+		if((e == null) && (target < now)) e = snapshots.firstEntry();
+
+		// Restore a snapshot if going back, or if one is closer than the current frame
+		if((e != null) && ((target < now) || (e.getKey() > now))) {
+			e.getValue().restore();
+		}
+
+		EventReceiver receiver = owner.receiver;
+		setReceiver(receiver, silentReceiver);
+		seeking = true;
+		try {
+			GameEngine engine = owner.engine[0];
+			int idle = 0;
+			int last = getFrame();
+
+			while((getFrame() < target) && (idle < MAX_IDLE_FRAMES)) {
+				if((engine.gameStarted && !engine.gameActive) || owner.getQuitFlag()) break;
+				owner.updateAll();
+
+				if(getFrame() == last) {
+					idle++;
+				} else {
+					idle = 0;
+					last = getFrame();
+				}
+			}
+		} finally {
+			setReceiver(silentReceiver, receiver);
+			seeking = false;
+		}
+
+		return getFrame();
+	}
+
+	/**
+	 * Replace the receiver of the GameManager and the mode's own references to it
+	 * @param from Receiver to replace
+	 * @param to New receiver
+	 */
+	protected void setReceiver(EventReceiver from, EventReceiver to) {
+		if(owner.receiver == from) owner.receiver = to;
+		if(owner.mode == null) return;
+
+		try {
+			for(Class<?> c = owner.mode.getClass(); (c != null) && (c != Object.class); c = c.getSuperclass()) {
+				for(Field f: c.getDeclaredFields()) {
+					int mod = f.getModifiers();
+					if(Modifier.isStatic(mod) || Modifier.isFinal(mod) || !f.getType().isInstance(to)) continue;
+					f.setAccessible(true);
+					if(f.get(owner.mode) == from) f.set(owner.mode, to);
+				}
+			}
+		} catch (IllegalAccessException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
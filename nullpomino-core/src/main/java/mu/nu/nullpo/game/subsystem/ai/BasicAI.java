@@ -28,8 +28,14 @@
 */
 package mu.nu.nullpo.game.subsystem.ai;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
 import mu.nu.nullpo.game.component.Controller;
 import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.FieldBitboard;
 import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.component.WallkickResult;
 import mu.nu.nullpo.game.play.GameEngine;
@@ -80,6 +86,18 @@ public class BasicAI extends DummyAI implements Runnable {
 	/** Thread for executing the think routine */
 	public Thread thread;
 
+	/** Scratch field for the think routine (reused for every think) */
+	public FieldBitboard searchField = new FieldBitboard();
+
+	/** true if this AI still overrides the Field version of thinkMain */
+	protected final boolean legacyThinkMain = overridesFieldThinkMain();
+
+	/** Field before placement (for the Field version of thinkMain) */
+	protected Field thinkField;
+
+	/** Field given to the Field version of thinkMain */
+	protected Field thinkWorkField;
+
 	/*
 	 * AIOfName
 	 */
@@ -100,6 +118,9 @@ public class BasicAI extends DummyAI implements Runnable {
 		thinking = false;
 		threadRunning = false;
 
+		if(thinkCache == null) thinkCache = createThinkCache();
+		else thinkCache.clear();
+
 		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
 			thread = new Thread(this, "AI_" + playerID);
 			thread.setDaemon(true);
@@ -272,173 +293,26 @@ public class BasicAI extends DummyAI implements Runnable {
 			holdEmpty = true;
 		}
 		Field fld = new Field(engine.field);
+		FieldBitboard sfld = searchField;
+		sfld.sync(fld);
+		int base = sfld.mark();
+		if(legacyThinkMain) {
+			thinkField = fld;
+			if(thinkWorkField == null) thinkWorkField = new Field(fld);
+		}
+		ForkJoinPool pool = isThinkParallelSafe() ? getThinkPool(engine) : null;
+		List<ThinkCandidate> candidates = new ArrayList<ThinkCandidate>();
 
 		for(int depth = 0; depth < getMaxThinkDepth(); depth++) {
+			candidates.clear();
+
 			for(int rt = 0; rt < Piece.DIRECTION_COUNT; rt++) {
 				// Peace for now
-				int minX = pieceNow.getMostMovableLeft(nowX, nowY, rt, engine.field);
-				int maxX = pieceNow.getMostMovableRight(nowX, nowY, rt, engine.field);
+				int minX = pieceNow.getMostMovableLeft(nowX, nowY, rt, fld);
+				int maxX = pieceNow.getMostMovableRight(nowX, nowY, rt, fld);
 
 				for(int x = minX; x <= maxX; x++) {
-					fld.copy(engine.field);
-					int y = pieceNow.getBottom(x, nowY, rt, fld);
-
-					if(!pieceNow.checkCollision(x, y, rt, fld)) {
-						// As it is
-						int pts = thinkMain(engine, x, y, rt, -1, fld, pieceNow, pieceNext, pieceHold, depth);
-
-						if(pts >= bestPts) {
-							bestHold = false;
-							bestX = x;
-							bestY = y;
-							bestRt = rt;
-							bestXSub = x;
-							bestYSub = y;
-							bestRtSub = -1;
-							bestPts = pts;
-						}
-
-						if((depth > 0) || (bestPts <= 10) || (pieceNow.id == Piece.PIECE_T)) {
-							// Left shift
-							fld.copy(engine.field);
-							if(!pieceNow.checkCollision(x - 1, y, rt, fld) && pieceNow.checkCollision(x - 1, y - 1, rt, fld)) {
-								pts = thinkMain(engine, x - 1, y, rt, -1, fld, pieceNow, pieceNext, pieceHold, depth);
-
-								if(pts > bestPts) {
-									bestHold = false;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = x - 1;
-									bestYSub = y;
-									bestRtSub = -1;
-									bestPts = pts;
-								}
-							}
-
-							// Right shift
-							fld.copy(engine.field);
-							if(!pieceNow.checkCollision(x + 1, y, rt, fld) && pieceNow.checkCollision(x + 1, y - 1, rt, fld)) {
-								pts = thinkMain(engine, x + 1, y, rt, -1, fld, pieceNow, pieceNext, pieceHold, depth);
-
-								if(pts > bestPts) {
-									bestHold = false;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = x + 1;
-									bestYSub = y;
-									bestRtSub = -1;
-									bestPts = pts;
-								}
-							}
-
-							// Leftrotation
-							if(!engine.isRotateButtonDefaultRight() || engine.ruleopt.rotateButtonAllowReverse) {
-								int rot = pieceNow.getRotateDirection(-1, rt);
-								int newX = x;
-								int newY = y;
-								fld.copy(engine.field);
-								pts = 0;
-
-								if(!pieceNow.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(engine, x, y, rot, rt, fld, pieceNow, pieceNext, pieceHold, depth);
-								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-									WallkickResult kick = engine.wallkick.executeWallkick(x, y, -1, rt, rot,
-														  allowUpward, pieceNow, fld, null);
-
-									if(kick != null) {
-										newX = x + kick.offsetX;
-										newY = y + kick.offsetY;
-										pts = thinkMain(engine, newX, newY, rot, rt, fld, pieceNow, pieceNext, pieceHold, depth);
-									}
-								}
-
-								if(pts > bestPts) {
-									bestHold = false;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = newX;
-									bestYSub = newY;
-									bestRtSub = rot;
-									bestPts = pts;
-								}
-							}
-
-							// Rightrotation
-							if(engine.isRotateButtonDefaultRight() || engine.ruleopt.rotateButtonAllowReverse) {
-								int rot = pieceNow.getRotateDirection(1, rt);
-								int newX = x;
-								int newY = y;
-								fld.copy(engine.field);
-								pts = 0;
-
-								if(!pieceNow.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(engine, x, y, rot, rt, fld, pieceNow, pieceNext, pieceHold, depth);
-								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-									WallkickResult kick = engine.wallkick.executeWallkick(x, y, 1, rt, rot,
-														  allowUpward, pieceNow, fld, null);
-
-									if(kick != null) {
-										newX = x + kick.offsetX;
-										newY = y + kick.offsetY;
-										pts = thinkMain(engine, newX, newY, rot, rt, fld, pieceNow, pieceNext, pieceHold, depth);
-									}
-								}
-
-								if(pts > bestPts) {
-									bestHold = false;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = newX;
-									bestYSub = newY;
-									bestRtSub = rot;
-									bestPts = pts;
-								}
-							}
-
-							// 180-degree rotation
-							if(engine.ruleopt.rotateButtonAllowDouble) {
-								int rot = pieceNow.getRotateDirection(2, rt);
-								int newX = x;
-								int newY = y;
-								fld.copy(engine.field);
-								pts = 0;
-
-								if(!pieceNow.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(engine, x, y, rot, rt, fld, pieceNow, pieceNext, pieceHold, depth);
-								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-									WallkickResult kick = engine.wallkick.executeWallkick(x, y, 2, rt, rot,
-														  allowUpward, pieceNow, fld, null);
-
-									if(kick != null) {
-										newX = x + kick.offsetX;
-										newY = y + kick.offsetY;
-										pts = thinkMain(engine, newX, newY, rot, rt, fld, pieceNow, pieceNext, pieceHold, depth);
-									}
-								}
-
-								if(pts > bestPts) {
-									bestHold = false;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = newX;
-									bestYSub = newY;
-									bestRtSub = rot;
-									bestPts = pts;
-								}
-							}
-						}
-					}
+					candidates.add(new ThinkCandidate(pieceNow, x, nowY, rt, pieceNext, pieceHold, false));
 				}
 
 				if(pieceHold == null) {
@@ -448,27 +322,82 @@ public class BasicAI extends DummyAI implements Runnable {
 				if((holdOK == true) && (pieceHold != null) && (depth == 0)) {
 					int spawnX = engine.getSpawnPosX(engine.field, pieceHold);
 					int spawnY = engine.getSpawnPosY(pieceHold);
-					int minHoldX = pieceHold.getMostMovableLeft(spawnX, spawnY, rt, engine.field);
-					int maxHoldX = pieceHold.getMostMovableRight(spawnX, spawnY, rt, engine.field);
+					int minHoldX = pieceHold.getMostMovableLeft(spawnX, spawnY, rt, fld);
+					int maxHoldX = pieceHold.getMostMovableRight(spawnX, spawnY, rt, fld);
+					Piece pieceNext2 = engine.getNextObject(engine.nextPieceCount);
+					if(holdEmpty) pieceNext2 = engine.getNextObject(engine.nextPieceCount + 1);
 
 					for(int x = minHoldX; x <= maxHoldX; x++) {
-						fld.copy(engine.field);
-						int y = pieceHold.getBottom(x, spawnY, rt, fld);
-
-						if(!pieceHold.checkCollision(x, y, rt, fld)) {
-							Piece pieceNext2 = engine.getNextObject(engine.nextPieceCount);
-							if(holdEmpty) pieceNext2 = engine.getNextObject(engine.nextPieceCount + 1);
-
-							int pts = thinkMain(engine, x, y, rt, -1, fld, pieceHold, pieceNext2, null, depth);
-
-							if(pts > bestPts) {
-								bestHold = true;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestRtSub = -1;
-								bestPts = pts;
-							}
+						candidates.add(new ThinkCandidate(pieceHold, x, spawnY, rt, pieceNext2, null, true));
+					}
+				}
+			}
+
+			// Score everything up front on the AI pool, the choice below stays sequential
+			if(pool != null) {
+				sfld.rollback(base);
+				try {
+					thinkParallel(engine, pool, candidates, fld, sfld, depth, false);
+
+					// The best score never drops, so candidates past the first drop above 10 never need their moves
+					List<ThinkCandidate> movesNeeded = new ArrayList<ThinkCandidate>();
+					int maxPts = bestPts;
+					for(ThinkCandidate c : candidates) {
+						if(!c.valid) continue;
+						maxPts = Math.max(maxPts, c.pts[ThinkCandidate.MOVE_DROP]);
+						if(!c.hold && ((depth > 0) || (maxPts <= 10) || (pieceNow.id == Piece.PIECE_T))) {
+							movesNeeded.add(c);
+						}
+					}
+					thinkParallel(engine, pool, movesNeeded, fld, sfld, depth, true);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+
+			for(ThinkCandidate c : candidates) {
+				if(pool == null) thinkDrop(engine, c, sfld, base, depth);
+				if(!c.valid) continue;
+
+				if(c.hold) {
+					if(c.pts[ThinkCandidate.MOVE_DROP] > bestPts) {
+						bestHold = true;
+						bestX = c.x;
+						bestY = c.y;
+						bestRt = c.rt;
+						bestRtSub = -1;
+						bestPts = c.pts[ThinkCandidate.MOVE_DROP];
+					}
+					continue;
+				}
+
+				// As it is
+				if(c.pts[ThinkCandidate.MOVE_DROP] >= bestPts) {
+					bestHold = false;
+					bestX = c.x;
+					bestY = c.y;
+					bestRt = c.rt;
+					bestXSub = c.x;
+					bestYSub = c.y;
+					bestRtSub = -1;
+					bestPts = c.pts[ThinkCandidate.MOVE_DROP];
+				}
+
+				if((depth > 0) || (bestPts <= 10) || (pieceNow.id == Piece.PIECE_T)) {
+					// Shifts and rotations after landing
+					if(!c.movesDone) thinkMoves(engine, c, fld, sfld, base, depth);
+
+					for(int move = ThinkCandidate.MOVE_SHIFT_LEFT; move < ThinkCandidate.MOVE_COUNT; move++) {
+						if(c.pts[move] > bestPts) {
+							bestHold = false;
+							bestX = c.x;
+							bestY = c.y;
+							bestRt = c.rt;
+							bestXSub = c.subX[move];
+							bestYSub = c.subY[move];
+							bestRtSub = c.subRt[move];
+							bestPts = c.pts[move];
 						}
 					}
 				}
@@ -483,7 +412,204 @@ public class BasicAI extends DummyAI implements Runnable {
 	}
 
 	/**
-	 * Think routine
+	 * Score candidates of one compromise level on the AI pool
+	 * @param engine GameEngine
+	 * @param pool AI pool
+	 * @param candidates Candidates
+	 * @param fldKick Field for wallkick checks
+	 * @param sfld Search field (Copied by each task, not modified)
+	 * @param depth Compromise level
+	 * @param moves false to drop the candidates, true to score the moves after landing of dropped candidates
+	 * @throws InterruptedException When interrupted while waiting
+	 */
+	protected void thinkParallel(final GameEngine engine, ForkJoinPool pool, List<ThinkCandidate> candidates,
+			final Field fldKick, final FieldBitboard sfld, final int depth, final boolean moves) throws InterruptedException
+	{
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		int size = getThinkTaskSize(pool, candidates.size());
+
+		for(int i = 0; i < candidates.size(); i += size) {
+			final List<ThinkCandidate> part = candidates.subList(i, Math.min(i + size, candidates.size()));
+
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					FieldBitboard fld = workerSearchField.get();
+					fld.copy(sfld);
+					int base = fld.mark();
+
+					for(ThinkCandidate c : part) {
+						if(moves) thinkMoves(engine, c, fldKick, fld, base, depth);
+						else thinkDrop(engine, c, fld, base, depth);
+					}
+					return null;
+				}
+			});
+		}
+
+		invokeThinkTasks(pool, tasks);
+	}
+
+	/**
+	 * Drop a candidate and score it as it is
+	 * @param engine GameEngine
+	 * @param c Candidate
+	 * @param fld Search field
+	 * @param base Mark of the field before placement
+	 * @param depth Compromise level
+	 */
+	protected void thinkDrop(GameEngine engine, ThinkCandidate c, FieldBitboard fld, int base, int depth) {
+		fld.rollback(base);
+		c.y = c.piece.getBottom(c.x, c.startY, c.rt, fld);
+		c.valid = !c.piece.checkCollision(c.x, c.y, c.rt, fld);
+
+		if(c.valid) {
+			int pts = thinkMainCached(engine, c.x, c.y, c.rt, -1, fld, c.piece, c.nextpiece, c.holdpiece, depth);
+			c.setMove(ThinkCandidate.MOVE_DROP, pts, c.x, c.y, -1);
+		}
+	}
+
+	/**
+	 * Score the shifts and rotations that can be made after a candidate lands
+	 * @param engine GameEngine
+	 * @param c Candidate (Already dropped)
+	 * @param fldKick Field for wallkick checks
+	 * @param fld Search field
+	 * @param base Mark of the field before placement
+	 * @param depth Compromise level
+	 */
+	protected void thinkMoves(GameEngine engine, ThinkCandidate c, Field fldKick, FieldBitboard fld, int base, int depth) {
+		Piece piece = c.piece;
+		int x = c.x;
+		int y = c.y;
+		int rt = c.rt;
+		c.movesDone = true;
+
+		// Left shift
+		fld.rollback(base);
+		if(!piece.checkCollision(x - 1, y, rt, fld) && piece.checkCollision(x - 1, y - 1, rt, fld)) {
+			int pts = thinkMainCached(engine, x - 1, y, rt, -1, fld, piece, c.nextpiece, c.holdpiece, depth);
+			c.setMove(ThinkCandidate.MOVE_SHIFT_LEFT, pts, x - 1, y, -1);
+		}
+
+		// Right shift
+		fld.rollback(base);
+		if(!piece.checkCollision(x + 1, y, rt, fld) && piece.checkCollision(x + 1, y - 1, rt, fld)) {
+			int pts = thinkMainCached(engine, x + 1, y, rt, -1, fld, piece, c.nextpiece, c.holdpiece, depth);
+			c.setMove(ThinkCandidate.MOVE_SHIFT_RIGHT, pts, x + 1, y, -1);
+		}
+
+		// Leftrotation
+		if(!engine.isRotateButtonDefaultRight() || engine.ruleopt.rotateButtonAllowReverse) {
+			thinkRotation(engine, c, -1, ThinkCandidate.MOVE_ROTATE_LEFT, fldKick, fld, base, depth);
+		}
+
+		// Rightrotation
+		if(engine.isRotateButtonDefaultRight() || engine.ruleopt.rotateButtonAllowReverse) {
+			thinkRotation(engine, c, 1, ThinkCandidate.MOVE_ROTATE_RIGHT, fldKick, fld, base, depth);
+		}
+
+		// 180-degree rotation
+		if(engine.ruleopt.rotateButtonAllowDouble) {
+			thinkRotation(engine, c, 2, ThinkCandidate.MOVE_ROTATE_180, fldKick, fld, base, depth);
+		}
+	}
+
+	/**
+	 * Score a rotation (with wallkick) after a candidate lands
+	 * @param engine GameEngine
+	 * @param c Candidate (Already dropped)
+	 * @param dir Rotation direction (-1: Left 1: Right 2: 180 degrees)
+	 * @param move Move to record the result as (ThinkCandidate.MOVE_*)
+	 * @param fldKick Field for wallkick checks
+	 * @param fld Search field
+	 * @param base Mark of the field before placement
+	 * @param depth Compromise level
+	 */
+	protected void thinkRotation(GameEngine engine, ThinkCandidate c, int dir, int move, Field fldKick, FieldBitboard fld, int base, int depth) {
+		Piece piece = c.piece;
+		int rot = piece.getRotateDirection(dir, c.rt);
+		int newX = c.x;
+		int newY = c.y;
+		int pts = 0;
+		fld.rollback(base);
+
+		if(!piece.checkCollision(c.x, c.y, rot, fld)) {
+			pts = thinkMainCached(engine, c.x, c.y, rot, c.rt, fld, piece, c.nextpiece, c.holdpiece, depth);
+		} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
+			boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
+								  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
+			WallkickResult kick = engine.wallkick.executeWallkick(c.x, c.y, dir, c.rt, rot,
+								  allowUpward, piece, fldKick, null);
+
+			if(kick != null) {
+				newX = c.x + kick.offsetX;
+				newY = c.y + kick.offsetY;
+				pts = thinkMainCached(engine, newX, newY, rot, c.rt, fld, piece, c.nextpiece, c.holdpiece, depth);
+			}
+		}
+
+		c.setMove(move, pts, newX, newY, rot);
+	}
+
+	/**
+	 * Check if candidates can be scored on the AI pool. The pool scores more candidates than
+	 * the sequential search, on other threads, so thinkMain must not change the state of the AI.
+	 * AIs that still override the Field version of thinkMain are always searched sequentially.
+	 * @return true if {@link #thinkMain} only returns a score
+	 */
+	protected boolean isThinkParallelSafe() {
+		return !legacyThinkMain;
+	}
+
+	/**
+	 * Check if a subclass overrides the Field version of thinkMain
+	 * @return true if thinkMain(..., Field, ...) is overridden
+	 */
+	private boolean overridesFieldThinkMain() {
+		try {
+			return getClass().getMethod("thinkMain", GameEngine.class, int.class, int.class, int.class, int.class,
+					Field.class, Piece.class, Piece.class, Piece.class, int.class).getDeclaringClass() != BasicAI.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Create the cache of think scores
+	 * @return Cache, or null if {@link #thinkMain} must not be cached
+	 */
+	protected TranspositionTable createThinkCache() {
+		return new TranspositionTable(THINK_CACHE_SIZE);
+	}
+
+	/**
+	 * Call {@link #thinkMain} through {@link #thinkCache}
+	 * (Same parameters and return value as thinkMain)
+	 */
+	protected int thinkMainCached(GameEngine engine, int x, int y, int rt, int rtOld, FieldBitboard fld, Piece piece, Piece nextpiece, Piece holdpiece, int depth) {
+		// Older AIs get a fresh copy of the field before placement, and are never cached
+		if(legacyThinkMain) {
+			thinkWorkField.copy(thinkField);
+			return thinkMain(engine, x, y, rt, rtOld, thinkWorkField, piece, nextpiece, holdpiece, depth);
+		}
+
+		TranspositionTable cache = thinkCache;
+		if(cache == null) return thinkMain(engine, x, y, rt, rtOld, fld, piece, nextpiece, holdpiece, depth);
+
+		// The score also depends on the current combo
+		long key = getThinkKey(fld, x, y, rt, rtOld, piece, depth);
+		key = TranspositionTable.combine(key, (engine.comboType == GameEngine.COMBO_TYPE_DISABLE) ? -1 : engine.combo);
+
+		long cached = cache.get(key);
+		if(cached != TranspositionTable.MISS) return (int)cached;
+
+		int pts = thinkMain(engine, x, y, rt, rtOld, fld, piece, nextpiece, holdpiece, depth);
+		cache.put(key, pts);
+		return pts;
+	}
+
+	/**
+	 * Think routine on a Field
 	 * @param engine GameEngine
 	 * @param x X-coordinate
 	 * @param y Y-coordinate
@@ -495,8 +621,29 @@ public class BasicAI extends DummyAI implements Runnable {
 	 * @param holdpiece HOLDPeace(nullMay be)
 	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
 	 * @return Evaluation score
+	 * @deprecated Override the {@link FieldBitboard} version instead.
+	 * AIs that still override this one are searched without the cache and the AI pool.
 	 */
+	@Deprecated
 	public int thinkMain(GameEngine engine, int x, int y, int rt, int rtOld, Field fld, Piece piece, Piece nextpiece, Piece holdpiece, int depth) {
+		return thinkMain(engine, x, y, rt, rtOld, new FieldBitboard(fld), piece, nextpiece, holdpiece, depth);
+	}
+
+	/**
+	 * Think routine
+	 * @param engine GameEngine
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param rtOld Direction before rotation (-1: None)
+	 * @param fld Search field (Can be modified without problems)
+	 * @param piece Piece
+	 * @param nextpiece NEXTPeace
+	 * @param holdpiece HOLDPeace(nullMay be)
+	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
+	 * @return Evaluation score
+	 */
+	public int thinkMain(GameEngine engine, int x, int y, int rt, int rtOld, FieldBitboard fld, Piece piece, Piece nextpiece, Piece holdpiece, int depth) {
 		int pts = 0;
 
 		// Add points for being adjacent to other blocks
@@ -28,7 +28,15 @@
 */
 package mu.nu.nullpo.game.subsystem.ai;
 
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
 import mu.nu.nullpo.game.component.Controller;
+import mu.nu.nullpo.game.component.FieldBitboard;
+import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.play.GameEngine;
 
 /**
@@ -59,6 +67,78 @@ public class DummyAI implements AIPlayer {
 	/** Did the thinking thread finish successfully? */
 	public boolean thinkComplete;
 
+	/** Default number of entries of {@link #thinkCache} */
+	public static final int THINK_CACHE_SIZE = 1 << 15;
+
+	/** Cache of think scores (null if this AI does not cache them) */
+	public TranspositionTable thinkCache;
+
+	/** Scratch search field of each worker thread of the AI pool */
+	protected static final ThreadLocal<FieldBitboard> workerSearchField = new ThreadLocal<FieldBitboard>() {
+		@Override
+		protected FieldBitboard initialValue() {
+			return new FieldBitboard();
+		}
+	};
+
+	/**
+	 * Get the pool to evaluate candidates on
+	 * @param engine GameEngine
+	 * @return The AI pool of the GameManager, or null to think on the calling thread
+	 */
+	protected static ForkJoinPool getThinkPool(GameEngine engine) {
+		if(!engine.aiParallel || (engine.owner == null)) return null;
+		ForkJoinPool pool = engine.owner.getAIPool();
+		// A single worker only adds overhead
+		return (pool.getParallelism() > 1) ? pool : null;
+	}
+
+	/**
+	 * Get the number of candidates each think task should take
+	 * @param pool Pool
+	 * @param count Number of candidates
+	 * @return Number of candidates per task
+	 */
+	protected static int getThinkTaskSize(ForkJoinPool pool, int count) {
+		int tasks = pool.getParallelism() * 2;
+		return Math.max(1, (count + tasks - 1) / tasks);
+	}
+
+	/**
+	 * Run think tasks on a pool and wait until all of them have finished
+	 * @param pool Pool
+	 * @param tasks Tasks
+	 * @throws InterruptedException When interrupted while waiting
+	 */
+	protected static void invokeThinkTasks(ForkJoinPool pool, List<Callable<Object>> tasks) throws InterruptedException {
+		for(Future<Object> f : pool.invokeAll(tasks)) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				throw new RuntimeException("Think task failed", e.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Get the cache key of one thinkMain call: the blocks of the field before
+	 * placement, the piece and the placement.
+	 * @param fld Field before placement
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param rtOld Direction before rotation (-1: None)
+	 * @param piece Piece
+	 * @param depth Compromise level
+	 * @return Key
+	 */
+	protected static long getThinkKey(FieldBitboard fld, int x, int y, int rt, int rtOld, Piece piece, int depth) {
+		long place = (x & 0xFFFL) | ((y & 0xFFFL) << 12) | ((long)(rt & 3) << 24) | ((long)(piece.direction & 3) << 26) |
+					 ((rtOld != -1) ? 1L << 28 : 0) | (piece.big ? 1L << 29 : 0) | ((long)(piece.id & 0xFF) << 30) |
+					 ((long)(depth & 0xFFFF) << 38);
+		return TranspositionTable.combine(fld.getHash(), place);
+	}
+
 	public String getName() {
 		return "DummyAI";
 	}
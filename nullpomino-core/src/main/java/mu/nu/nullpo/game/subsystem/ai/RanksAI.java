@@ -31,7 +31,6 @@ package mu.nu.nullpo.game.subsystem.ai;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Arrays;
 
 import mu.nu.nullpo.game.component.Controller;
@@ -40,6 +39,7 @@ import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.tool.airankstool.Ranks;
+import mu.nu.nullpo.tool.airankstool.RanksFile;
 import mu.nu.nullpo.tool.airankstool.AIRanksConstants;
 import mu.nu.nullpo.util.CustomProperties;
 
@@ -211,26 +211,17 @@ public class RanksAI extends DummyAI implements Runnable {
 			if (file!=null && file.trim().length()>0){
 			 inputFile=AIRanksConstants.RANKSAI_DIR+currentRanksFile;
 			}
-			FileInputStream fis = null;
-			ObjectInputStream in = null;
-
 			if (inputFile.trim().length() == 0)
 				ranks=new Ranks(4,9);
 			else {
 				try {
-					fis = new FileInputStream(inputFile);
-					in = new ObjectInputStream(fis);
-					ranks = (Ranks)in.readObject();
-					in.close();
+					ranks = RanksFile.load(inputFile);
 
 				} catch (FileNotFoundException e) {
 					ranks=new Ranks(4,9);
 				} catch (IOException e) {
 					// TODO Auto-generated catch block
 					e.printStackTrace();
-				} catch (ClassNotFoundException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
 				}
 			}
 		}
@@ -239,6 +230,28 @@ public class RanksAI extends DummyAI implements Runnable {
 		gameOver=false;
 	}
 
+	/**
+	 * Init for fictitious games with the given settings instead of the ones of the config file
+	 * @param ranks Ranks (they are only read, so several AIs can share them)
+	 * @param numPreviews Number of previews used to think
+	 * @param allowHold true to use the hold
+	 */
+	public void initRanks(Ranks ranks, int numPreviews, boolean allowHold){
+		delay = 0;
+
+		thinkRequest = false;
+		thinking = false;
+		threadRunning = false;
+		MAX_PREVIEWS=numPreviews;
+		this.allowHold=allowHold;
+		speedLimit=0;
+
+		this.ranks=ranks;
+		currentRanksFile="";
+		heights=new int [ranks.getStackWidth()];
+		gameOver=false;
+	}
+
 	@Override
 	public void init(GameEngine engine, int playerID) {
 		gEngine = engine;
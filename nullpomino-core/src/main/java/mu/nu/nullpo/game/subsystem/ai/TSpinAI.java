@@ -28,7 +28,7 @@
 */
 package mu.nu.nullpo.game.subsystem.ai;
 
-import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.FieldBitboard;
 import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.play.GameEngine;
 
@@ -41,8 +41,24 @@ public class TSpinAI extends BasicAI {
 		return "T-SPIN";
 	}
 
+	/*
+	 * thinkMain sets forceHold, so its scores cannot be cached
+	 */
 	@Override
-	public int thinkMain(GameEngine engine, int x, int y, int rt, int rtOld, Field fld, Piece piece, Piece nextpiece, Piece holdpiece, int depth) {
+	protected TranspositionTable createThinkCache() {
+		return null;
+	}
+
+	/*
+	 * thinkMain sets forceHold, so only the candidates of the sequential search may be scored
+	 */
+	@Override
+	protected boolean isThinkParallelSafe() {
+		return false;
+	}
+
+	@Override
+	public int thinkMain(GameEngine engine, int x, int y, int rt, int rtOld, FieldBitboard fld, Piece piece, Piece nextpiece, Piece holdpiece, int depth) {
 		int pts = 0;
 
 		// Add points for being adjacent to other blocks
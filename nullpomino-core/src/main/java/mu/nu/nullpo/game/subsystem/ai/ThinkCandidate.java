@@ -0,0 +1,140 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.subsystem.ai;
+
+import mu.nu.nullpo.game.component.Piece;
+
+/**
+ * A drop position examined by the think routine, together with the scores of the
+ * moves that can be made after the piece lands there.
+ * <p>
+ * The think routines fill a list of candidates in search order, score them (one
+ * after another, or all at once on the AI pool) and then pick the best one by
+ * walking the list in that same order, so both ways give the same result.
+ */
+public class ThinkCandidate {
+	/** Move: Drop as it is */
+	public static final int MOVE_DROP = 0;
+
+	/** Move: Shift left after landing */
+	public static final int MOVE_SHIFT_LEFT = 1;
+
+	/** Move: Shift right after landing */
+	public static final int MOVE_SHIFT_RIGHT = 2;
+
+	/** Move: Rotate left after landing */
+	public static final int MOVE_ROTATE_LEFT = 3;
+
+	/** Move: Rotate right after landing */
+	public static final int MOVE_ROTATE_RIGHT = 4;
+
+	/** Move: 180-degree rotation after landing */
+	public static final int MOVE_ROTATE_180 = 5;
+
+	/** Number of moves */
+	public static final int MOVE_COUNT = 6;
+
+	/** Piece to drop */
+	public Piece piece;
+
+	/** NEXT piece passed to the think routine */
+	public Piece nextpiece;
+
+	/** HOLD piece passed to the think routine (null may be) */
+	public Piece holdpiece;
+
+	/** true if the piece comes from the hold */
+	public boolean hold;
+
+	/** X-coordinate */
+	public int x;
+
+	/** Y-coordinate the piece is dropped from */
+	public int startY;
+
+	/** Direction */
+	public int rt;
+
+	/** Y-coordinate after the drop */
+	public int y;
+
+	/** true if the piece can be dropped at this position */
+	public boolean valid;
+
+	/** true if the moves after landing have been scored */
+	public boolean movesDone;
+
+	/** Score of each move (Integer.MIN_VALUE if the move is not possible) */
+	public int[] pts = new int[MOVE_COUNT];
+
+	/** X-coordinate after each move */
+	public int[] subX = new int[MOVE_COUNT];
+
+	/** Y-coordinate after each move */
+	public int[] subY = new int[MOVE_COUNT];
+
+	/** Direction after each move (-1: Unchanged) */
+	public int[] subRt = new int[MOVE_COUNT];
+
+	/**
+	 * Constructor
+	 * @param piece Piece to drop
+	 * @param x X-coordinate
+	 * @param startY Y-coordinate the piece is dropped from
+	 * @param rt Direction
+	 * @param nextpiece NEXT piece passed to the think routine
+	 * @param holdpiece HOLD piece passed to the think routine (null may be)
+	 * @param hold true if the piece comes from the hold
+	 */
+	public ThinkCandidate(Piece piece, int x, int startY, int rt, Piece nextpiece, Piece holdpiece, boolean hold) {
+		this.piece = piece;
+		this.x = x;
+		this.startY = startY;
+		this.rt = rt;
+		this.nextpiece = nextpiece;
+		this.holdpiece = holdpiece;
+		this.hold = hold;
+		for(int i = 0; i < MOVE_COUNT; i++) pts[i] = Integer.MIN_VALUE;
+	}
+
+	/**
+	 * Record the result of a move
+	 * @param move Move (MOVE_*)
+	 * @param score Evaluation score
+	 * @param newX X-coordinate after the move
+	 * @param newY Y-coordinate after the move
+	 * @param newRt Direction after the move (-1: Unchanged)
+	 */
+	public void setMove(int move, int score, int newX, int newY, int newRt) {
+		pts[move] = score;
+		subX[move] = newX;
+		subY[move] = newY;
+		subRt[move] = newRt;
+	}
+}
@@ -0,0 +1,251 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.game.subsystem.ai;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size cache of think scores keyed by a 64-bit hash.
+ * <p>
+ * Different move paths of the think routines often end up scoring the same
+ * placement on the same field, and the same field is thought about again when a
+ * piece is re-thought or comes out of hold. The table is split into small buckets
+ * and a full bucket evicts with the clock algorithm: an entry that has been read
+ * since the hand last passed it gets a second chance. Keys are stored in full,
+ * so only a collision of the whole 64-bit hash can return a wrong score.
+ * <p>
+ * The table is safe to use from the worker threads of the AI pool.
+ */
+public class TranspositionTable {
+	/** Returned by {@link #get(long)} when the key is not cached */
+	public static final long MISS = Long.MIN_VALUE;
+
+	/** Number of entries in a bucket */
+	public static final int BUCKET_SIZE = 4;
+
+	/** Number of locks (Power of two) */
+	protected static final int LOCK_COUNT = 64;
+
+	/** Slot state: Empty */
+	protected static final byte SLOT_EMPTY = 0;
+
+	/** Slot state: Used, not read since the clock hand passed */
+	protected static final byte SLOT_USED = 1;
+
+	/** Slot state: Used and read since the clock hand passed */
+	protected static final byte SLOT_REFERENCED = 2;
+
+	/** Mask to get a bucket number from a key */
+	protected final int bucketMask;
+
+	/** Key of each slot */
+	protected final long[] keys;
+
+	/** Score of each slot */
+	protected final int[] values;
+
+	/** State of each slot */
+	protected final byte[] states;
+
+	/** Clock hand of each bucket */
+	protected final byte[] hands;
+
+	/** Locks shared by the buckets */
+	protected final Object[] locks;
+
+	/** Number of lookups that found their key */
+	protected final AtomicLong hits = new AtomicLong();
+
+	/** Number of lookups that did not find their key */
+	protected final AtomicLong misses = new AtomicLong();
+
+	/** Number of entries dropped to make room */
+	protected final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Constructor
+	 * @param capacity Maximum number of entries (Rounded up to a power of two)
+	 */
+	public TranspositionTable(int capacity) {
+		int want = Math.max(1, (capacity + BUCKET_SIZE - 1) / BUCKET_SIZE);
+		int buckets = Integer.highestOneBit(want);
+		if(buckets < want) buckets <<= 1;
+		bucketMask = buckets - 1;
+		keys = new long[buckets * BUCKET_SIZE];
+		values = new int[buckets * BUCKET_SIZE];
+		states = new byte[buckets * BUCKET_SIZE];
+		hands = new byte[buckets];
+		locks = new Object[LOCK_COUNT];
+		for(int i = 0; i < LOCK_COUNT; i++) locks[i] = new Object();
+	}
+
+	/**
+	 * Combine a value into a key
+	 * @param key Key so far
+	 * @param value Value to add
+	 * @return New key
+	 */
+	public static long combine(long key, long value) {
+		long z = key ^ (value * 0x9E3779B97F4A7C15L);
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Get a cached score
+	 * @param key Key
+	 * @return Score, or {@link #MISS} if the key is not cached
+	 */
+	public long get(long key) {
+		int b = (int)key & bucketMask;
+		int first = b * BUCKET_SIZE;
+
+		synchronized(locks[b & (LOCK_COUNT - 1)]) {
+			for(int i = first; i < first + BUCKET_SIZE; i++) {
+				if((states[i] != SLOT_EMPTY) && (keys[i] == key)) {
+					states[i] = SLOT_REFERENCED;
+					hits.incrementAndGet();
+					return values[i];
+				}
+			}
+		}
+
+		misses.incrementAndGet();
+		return MISS;
+	}
+
+	/**
+	 * Cache a score
+	 * @param key Key
+	 * @param value Score
+	 */
+	public void put(long key, int value) {
+		int b = (int)key & bucketMask;
+		int first = b * BUCKET_SIZE;
+
+		synchronized(locks[b & (LOCK_COUNT - 1)]) {
+			int slot = -1;
+
+			for(int i = first; i < first + BUCKET_SIZE; i++) {
+				if(states[i] == SLOT_EMPTY) {
+					if(slot == -1) slot = i;
+				} else if(keys[i] == key) {
+					values[i] = value;
+					return;
+				}
+			}
+
+			if(slot == -1) {
+				// Clock eviction: skip (and clear) entries that were read recently
+				int hand = hands[b];
+				while(states[first + hand] == SLOT_REFERENCED) {
+					states[first + hand] = SLOT_USED;
+					hand = (hand + 1) % BUCKET_SIZE;
+				}
+				slot = first + hand;
+				hands[b] = (byte)((hand + 1) % BUCKET_SIZE);
+				evictions.incrementAndGet();
+			}
+
+			keys[slot] = key;
+			values[slot] = value;
+			states[slot] = SLOT_USED;
+		}
+	}
+
+	/**
+	 * Remove every entry (The counters are kept)
+	 */
+	public void clear() {
+		for(int b = 0; b <= bucketMask; b++) {
+			synchronized(locks[b & (LOCK_COUNT - 1)]) {
+				for(int i = b * BUCKET_SIZE; i < (b + 1) * BUCKET_SIZE; i++) states[i] = SLOT_EMPTY;
+				hands[b] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Reset the hit, miss and eviction counters
+	 */
+	public void resetStats() {
+		hits.set(0);
+		misses.set(0);
+		evictions.set(0);
+	}
+
+	/**
+	 * Get the maximum number of entries
+	 * @return Capacity
+	 */
+	public int getCapacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Get the number of lookups that found their key
+	 * @return Hit count
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Get the number of lookups that did not find their key
+	 * @return Miss count
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Get the number of entries dropped to make room
+	 * @return Eviction count
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Get the ratio of lookups that found their key
+	 * @return Hit rate (0 to 1, 0 if nothing was looked up yet)
+	 */
+	public double getHitRate() {
+		long h = getHits();
+		long total = h + getMisses();
+		return (total == 0) ? 0 : (double)h / total;
+	}
+
+	@Override
+	public String toString() {
+		return "TranspositionTable[capacity=" + getCapacity() + ", hits=" + getHits() + ", misses=" + getMisses() +
+			   ", evictions=" + getEvictions() + "]";
+	}
+}
@@ -37,6 +37,9 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 	/** Log (Declared in NetDummyMode) */
 	static Logger log = Logger.getLogger(NetDummyMode.class);
 
+	/** NET: Number of field messages between full field keyframes (Declared in NetDummyMode) */
+	protected static final int NET_FIELD_KEYFRAME_INTERVAL = 20;
+
 	/** NET: Lobby (Declared in NetDummyMode) */
 	protected NetLobbyFrame netLobby;
 
@@ -67,6 +70,43 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 	/** NET: If true, NetDummyMode will always send attributes when sending the field (Declared in NetDummyMode) */
 	protected boolean netAlwaysSendFieldAttributes;
 
+	/**
+	 * NET: If true, only changed rows are sent between field keyframes (Declared in NetDummyMode).
+	 * Deltas are still only sent while the server reports that everyone in the room supports them.
+	 */
+	protected boolean netUseFieldDelta;
+
+	/** NET: true if the server reported that everyone in the room supports field deltas (Declared in NetDummyMode) */
+	protected volatile boolean netRoomFieldDelta;
+
+	/** NET: Revision number of the last field message sent (Declared in NetDummyMode) */
+	protected int netFieldSendRevision;
+
+	/** NET: Rows of the last field message sent, from y=-1 downwards (Declared in NetDummyMode) */
+	protected String[] netFieldSentRows;
+
+	/** NET: Attribute flag, skin and hurry-up wall position of the last field message sent (Declared in NetDummyMode) */
+	protected boolean netFieldSentAttr;
+	protected int netFieldSentSkin, netFieldSentWallY;
+
+	/** NET: True if someone asked for a full field keyframe (Declared in NetDummyMode) */
+	protected volatile boolean netFieldKeyframeRequested;
+
+	/** NET: Received field rows for each player, null if out of sync (Declared in NetDummyMode) */
+	protected String[][] netFieldRecvRows;
+
+	/** NET: Revision number of the received field for each player (Declared in NetDummyMode) */
+	protected int[] netFieldRecvRevision;
+
+	/** NET: Sender UID of the received field for each player (Declared in NetDummyMode) */
+	protected int[] netFieldRecvUID;
+
+	/** NET: Attribute flag of the received field for each player (Declared in NetDummyMode) */
+	protected boolean[] netFieldRecvAttr;
+
+	/** NET: True if a keyframe has been requested and not received yet, for each player (Declared in NetDummyMode) */
+	protected boolean[] netFieldRecvRequested;
+
 	/** NET: Player name (Declared in NetDummyMode) */
 	protected String netPlayerName;
 
@@ -202,6 +242,16 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 		netRankingLines = new LinkedList[2];
 		netRankingSPL = new LinkedList[2];
 		netRankingRollclear = new LinkedList[2];
+		netUseFieldDelta = true;
+		netRoomFieldDelta = false;
+		netFieldSendRevision = 0;
+		netFieldSentRows = null;
+		netFieldKeyframeRequested = false;
+		netFieldRecvRows = new String[getPlayers()][];
+		netFieldRecvRevision = new int[getPlayers()];
+		netFieldRecvUID = new int[getPlayers()];
+		netFieldRecvAttr = new boolean[getPlayers()];
+		netFieldRecvRequested = new boolean[getPlayers()];
 	}
 
 	/**
@@ -487,6 +537,14 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 		if(message[0].equals("playerupdate")) {
 			netUpdatePlayerExist();
 		}
+		// Room information update
+		if(message[0].equals("roomupdate")) {
+			NetRoomInfo roomInfo = new NetRoomInfo(message[1]);
+
+			if((netCurrentRoomInfo != null) && (roomInfo.roomID == netCurrentRoomInfo.roomID)) {
+				netRoomFieldDelta = roomInfo.fieldDelta;
+			}
+		}
 		// When someone logout
 		if(message[0].equals("playerlogout")) {
 			NetPlayerInfo pInfo = new NetPlayerInfo(message[1]);
@@ -542,6 +600,10 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 		}
 		// Game messages
 		if(message[0].equals("game")) {
+			// Field keyframe request
+			if(message[3].equals("fieldrequest")) {
+				netRecvFieldRequest(message);
+			}
 			if(netIsWatch) {
 				GameEngine engine = owner.engine[0];
 				if(engine.field == null) {
@@ -560,7 +622,7 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 					netRecvOptions(engine, message);
 				}
 				// Field
-				if(message[3].equals("field") || message[3].equals("fieldattr")) {
+				if(message[3].equals("field") || message[3].equals("fieldattr") || message[3].equals("fielddelta")) {
 					netRecvField(engine, message);
 				}
 				// Stats
@@ -626,6 +688,7 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 		log.debug("onJoin on NetDummyMode");
 
 		netCurrentRoomInfo = roomInfo;
+		netRoomFieldDelta = (roomInfo != null) && roomInfo.fieldDelta;
 		netIsNetPlay = true;
 		netIsWatch = (netLobby.netPlayerClient.getYourPlayerInfo().seatID == -1);
 		netNumSpectators = 0;
@@ -835,11 +898,74 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 	}
 
 	/**
-	 * NET: Send field to all spectators
+	 * NET: Check if field deltas can be sent. Everyone in the room has to understand "fielddelta" messages,
+	 * otherwise only full "field" messages are sent.
+	 * @return true if netUseFieldDelta is true and the server reported that the whole room supports field deltas
+	 */
+	protected boolean netIsFieldDeltaEnabled() {
+		return netUseFieldDelta && netRoomFieldDelta;
+	}
+
+	/**
+	 * NET: Send field to all spectators.
+	 * Only the rows changed since the previous message are sent, except every NET_FIELD_KEYFRAME_INTERVAL messages
+	 * or when someone asked for a keyframe; then the whole field is sent.
 	 * @param engine GameEngine
 	 */
 	protected void netSendField(GameEngine engine) {
-		if(owner.receiver.isStickySkin(engine) || netAlwaysSendFieldAttributes) {
+		boolean isAttr = owner.receiver.isStickySkin(engine) || netAlwaysSendFieldAttributes;
+		int skin = engine.getSkin();
+		int highestWallY = engine.field.getHeightWithoutHurryupFloor();
+		String[] rows = netFieldToRows(engine.field, isAttr);
+		int baseRevision = netFieldSendRevision;
+		netFieldSendRevision++;
+
+		String strDelta = null;
+		if(netIsFieldDeltaEnabled() && !netFieldKeyframeRequested && (netFieldSendRevision % NET_FIELD_KEYFRAME_INTERVAL != 0) &&
+		   (netFieldSentRows != null) && (netFieldSentRows.length == rows.length) && (netFieldSentAttr == isAttr) &&
+		   (netFieldSentSkin == skin) && (netFieldSentWallY == highestWallY))
+		{
+			StringBuilder sb = new StringBuilder();
+			int numChangedRows = 0;
+			for(int i = 0; i < rows.length; i++) {
+				if(!rows[i].equals(netFieldSentRows[i])) {
+					if(numChangedRows > 0) sb.append(",");
+					sb.append(i - 1).append(":").append(rows[i]);
+					numChangedRows++;
+				}
+			}
+			// Fall back to a keyframe if most of the field has changed
+			if(numChangedRows <= rows.length / 2) strDelta = sb.toString();
+		}
+
+		netFieldSentRows = rows;
+		netFieldSentAttr = isAttr;
+		netFieldSentSkin = skin;
+		netFieldSentWallY = highestWallY;
+
+		if(strDelta != null) {
+			// Send only changed rows
+			String strFieldData = strDelta;
+			boolean isCompressed = false;
+			if(strDelta.length() > 0) {
+				String strCompFieldData = NetUtil.compressString(strDelta);
+				if(strCompFieldData.length() < strDelta.length()) {
+					strFieldData = strCompFieldData;
+					isCompressed = true;
+				}
+			}
+
+			String msg = "game\tfielddelta\t";
+			msg += netFieldSendRevision + "\t" + baseRevision + "\t";
+			msg += skin + "\t" + highestWallY + "\t" + isAttr + "\t";
+			msg += strFieldData + "\t" + isCompressed + "\n";
+			netLobby.netPlayerClient.send(msg);
+			return;
+		}
+
+		netFieldKeyframeRequested = false;
+
+		if(isAttr) {
 			// Send with attributes
 			String strSrcFieldData = engine.field.attrFieldToString();
 			int nocompSize = strSrcFieldData.length();
@@ -856,7 +982,7 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 
 			String msg = "game\tfieldattr\t";
 			msg += engine.getSkin() + "\t";
-			msg += strFieldData + "\t" + isCompressed + "\n";
+			msg += strFieldData + "\t" + isCompressed + "\t" + netFieldSendRevision + "\n";
 			netLobby.netPlayerClient.send(msg);
 		} else {
 			// Send without attributes
@@ -876,18 +1002,113 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 			String msg = "game\tfield\t";
 			msg += engine.getSkin() + "\t";
 			msg += engine.field.getHeightWithoutHurryupFloor() + "\t";
-			msg += strFieldData + "\t" + isCompressed + "\n";
+			msg += strFieldData + "\t" + isCompressed + "\t" + netFieldSendRevision + "\n";
 			netLobby.netPlayerClient.send(msg);
 		}
 	}
 
+	/**
+	 * NET: Convert each row of the field (from y=-1 to the bottom) to a String, without the trailing empty blocks
+	 * @param field Field
+	 * @param isAttr true to include block attributes
+	 * @return Row strings. Row y is stored at index y+1.
+	 */
+	protected String[] netFieldToRows(Field field, boolean isAttr) {
+		String[] rows = new String[field.getHeight() + 1];
+
+		for(int i = 0; i < rows.length; i++) {
+			Block[] row = field.getRow(i - 1);
+			String strRow;
+			if(isAttr) {
+				strRow = field.attrRowToString(row);
+				while(strRow.endsWith("0/0;")) strRow = strRow.substring(0, strRow.length() - 4);
+			} else {
+				strRow = field.rowToString(row);
+				while(strRow.endsWith("0")) strRow = strRow.substring(0, strRow.length() - 1);
+			}
+			rows[i] = strRow;
+		}
+
+		return rows;
+	}
+
+	/**
+	 * NET: Ask the player who sent a field delta we can't apply for a full field keyframe
+	 * @param engine GameEngine
+	 * @param uid UID of the player
+	 */
+	protected void netSendFieldRequest(GameEngine engine, int uid) {
+		if(netFieldRecvRequested[engine.playerID]) return;
+		netFieldRecvRequested[engine.playerID] = true;
+		netLobby.netPlayerClient.send("game\tfieldrequest\t" + uid + "\n");
+	}
+
+	/**
+	 * NET: Receive field keyframe request
+	 * @param message Message array
+	 */
+	protected void netRecvFieldRequest(String[] message) {
+		if((message.length > 4) && (Integer.parseInt(message[4]) == netLobby.netPlayerClient.getPlayerUID())) {
+			netFieldKeyframeRequested = true;
+		}
+	}
+
 	/**
 	 * NET: Receive field message
 	 * @param engine GameEngine
 	 * @param message Message array
 	 */
 	protected void netRecvField(GameEngine engine, String[] message) {
-		if(message[3].equals("fieldattr")) {
+		int playerID = engine.playerID;
+		int uid = Integer.parseInt(message[1]);
+
+		if(message[3].equals("fielddelta")) {
+			// Changed rows only
+			if(message.length > 10) {
+				engine.nowPieceObject = null;
+				engine.holdDisable = false;
+				if(engine.stat == GameEngine.Status.SETTING) engine.stat = GameEngine.Status.MOVE;
+				int revision = Integer.parseInt(message[4]);
+				int baseRevision = Integer.parseInt(message[5]);
+				int skin = Integer.parseInt(message[6]);
+				int highestWallY = Integer.parseInt(message[7]);
+				boolean isAttr = Boolean.parseBoolean(message[8]);
+				netPlayerSkin = skin;
+
+				String[] rows = netFieldRecvRows[playerID];
+				if((rows == null) || (rows.length != engine.field.getHeight() + 1) || (netFieldRecvUID[playerID] != uid) ||
+				   (netFieldRecvRevision[playerID] != baseRevision) || (netFieldRecvAttr[playerID] != isAttr))
+				{
+					// Missed a message; wait for the next keyframe
+					netFieldRecvRows[playerID] = null;
+					netSendFieldRequest(engine, uid);
+					return;
+				}
+
+				String strFieldData = message[9];
+				if(Boolean.parseBoolean(message[10])) {
+					strFieldData = NetUtil.decompressString(strFieldData);
+				}
+				if(strFieldData.length() > 0) {
+					for(String strRow: strFieldData.split(",")) {
+						int sep = strRow.indexOf(':');
+						int y = Integer.parseInt(strRow.substring(0, sep));
+						if((y >= -1) && (y < rows.length - 1)) rows[y + 1] = strRow.substring(sep + 1);
+					}
+				}
+				netFieldRecvRevision[playerID] = revision;
+
+				// Rebuild the whole field so local changes can't leave it out of sync
+				for(int i = 0; i < rows.length; i++) {
+					Block[] row;
+					if(isAttr) row = engine.field.attrStringToRow(rows[i], skin);
+					else row = engine.field.stringToRow(rows[i], skin, (i - 1 >= highestWallY), (i - 1 >= highestWallY));
+					for(int j = 0; j < engine.field.getWidth(); j++) {
+						engine.field.setBlock(j, i - 1, row[j]);
+					}
+				}
+			}
+		} else if(message[3].equals("fieldattr")) {
 			// With attributes
 			if(message.length > 4) {
 				engine.nowPieceObject = null;
@@ -903,6 +1124,7 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 					}
 					engine.field.attrStringToField(strFieldData, skin);
 				}
+				netStoreFieldKeyframe(engine, uid, true, (message.length > 7) ? Integer.parseInt(message[7]) : -1);
 			}
 		} else {
 			// Without attributes
@@ -923,10 +1145,27 @@ public class NetDummyMode extends AbstractMode implements NetLobbyListener {
 				} else {
 					engine.field.reset();
 				}
+				netStoreFieldKeyframe(engine, uid, false, (message.length > 8) ? Integer.parseInt(message[8]) : -1);
 			}
 		}
 	}
 
+	/**
+	 * NET: Remember the field we just received as a keyframe so later deltas can be applied to it
+	 * @param engine GameEngine
+	 * @param uid UID of the player who sent the field
+	 * @param isAttr true if the field was sent with attributes
+	 * @param revision Revision number of the field (-1 if the sender doesn't send deltas)
+	 */
+	protected void netStoreFieldKeyframe(GameEngine engine, int uid, boolean isAttr, int revision) {
+		int playerID = engine.playerID;
+		netFieldRecvRows[playerID] = (revision != -1) ? netFieldToRows(engine.field, isAttr) : null;
+		netFieldRecvRevision[playerID] = revision;
+		netFieldRecvUID[playerID] = uid;
+		netFieldRecvAttr[playerID] = isAttr;
+		netFieldRecvRequested[playerID] = false;
+	}
+
 	/**
 	 * NET: Send next and hold piece informations to all spectators
 	 * @param engine GameEngine
@@ -334,6 +334,7 @@ public class NetDummyVSMode extends NetDummyMode {
 		log.debug("netOnJoin() on NetDummyVSMode");
 
 		netCurrentRoomInfo = roomInfo;
+		netRoomFieldDelta = (roomInfo != null) && roomInfo.fieldDelta;
 		netIsNetPlay = true;
 		netvsIsNewcomer = netCurrentRoomInfo.playing;
 
@@ -1209,6 +1210,14 @@ public class NetDummyVSMode extends NetDummyMode {
 	 */
 	@Override
 	public void netlobbyOnMessage(NetLobbyFrame lobby, NetPlayerClient client, String[] message) throws IOException {
+		// Room information update
+		if(message[0].equals("roomupdate")) {
+			NetRoomInfo roomInfo = new NetRoomInfo(message[1]);
+
+			if((netCurrentRoomInfo != null) && (roomInfo.roomID == netCurrentRoomInfo.roomID)) {
+				netRoomFieldDelta = roomInfo.fieldDelta;
+			}
+		}
 		// Player status update
 		if(message[0].equals("playerupdate")) {
 			NetPlayerInfo pInfo = new NetPlayerInfo(message[1]);
@@ -1460,6 +1469,12 @@ public class NetDummyVSMode extends NetDummyMode {
 		}
 		// Game messages
 		if(message[0].equals("game")) {
+			// Field keyframe request (may come from a spectator)
+			if(message[3].equals("fieldrequest")) {
+				netRecvFieldRequest(message);
+				return;
+			}
+
 			//int uid = Integer.parseInt(message[1]);
 			int seatID = Integer.parseInt(message[2]);
 			int playerID = netvsGetPlayerIDbySeatID(seatID);
@@ -1470,7 +1485,7 @@ public class NetDummyVSMode extends NetDummyMode {
 			}
 
 			// Field
-			if(message[3].equals("field") || message[3].equals("fieldattr")) {
+			if(message[3].equals("field") || message[3].equals("fieldattr") || message[3].equals("fielddelta")) {
 				netRecvField(engine, message);
 			}
 			// Stats
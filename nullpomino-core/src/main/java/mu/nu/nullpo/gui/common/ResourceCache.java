@@ -0,0 +1,203 @@
+package mu.nu.nullpo.gui.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Images (block skins, backgrounds) that are loaded the first time they're used.<br>
+ * At most maxSize images are kept; the least recently used one is disposed when another one is loaded.
+ * Loading is split in two steps: decode reads the file and may run on the preload thread,
+ * create makes the image used for drawing and always runs on the thread that calls get.
+ * @param <D> Decoded data
+ * @param <V> Image
+ */
+public abstract class ResourceCache<D, V> {
+	/** Log */
+	static Logger log = Logger.getLogger(ResourceCache.class);
+
+	/** Thread that decodes the preloaded images (shared by all the caches) */
+	private static ExecutorService preloader;
+
+	/** Maximum number of images kept */
+	protected int maxSize;
+
+	/** Loaded images (in order of use, least recently used first) */
+	protected LinkedHashMap<Integer, V> cache;
+
+	/** Images being decoded by the preload thread */
+	protected HashMap<Integer, Future<D>> pending;
+
+	/**
+	 * Constructor
+	 * @param maxSize Maximum number of images kept
+	 */
+	public ResourceCache(int maxSize) {
+		this.maxSize = Math.max(1, maxSize);
+		cache = new LinkedHashMap<Integer, V>(16, 0.75f, true);
+		pending = new HashMap<Integer, Future<D>>();
+	}
+
+	/**
+	 * Decode an image. Called from the preload thread too, so it must not use anything else of the cache.
+	 * @param id Image number
+	 * @return Decoded data
+	 */
+	protected abstract D decode(int id);
+
+	/**
+	 * Make the image used for drawing
+	 * @param id Image number
+	 * @param data Decoded data
+	 * @return Image
+	 */
+	protected abstract V create(int id, D data);
+
+	/**
+	 * Free an image that has been removed from the cache
+	 * @param id Image number
+	 * @param value Image
+	 */
+	protected void dispose(int id, V value) {
+	}
+
+	/**
+	 * Get an image, loading it if needed
+	 * @param id Image number
+	 * @return Image
+	 */
+	public synchronized V get(int id) {
+		V value = cache.get(id);
+		if(value != null) return value;
+
+		D data = null;
+		boolean decoded = false;
+		Future<D> future = pending.remove(id);
+		if(future != null) {
+			try {
+				data = future.get();
+				decoded = true;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			} catch (ExecutionException e) {
+				log.warn("Preloading image " + id + " failed", e.getCause());
+			}
+		}
+		if(!decoded) data = decode(id);
+
+		value = create(id, data);
+		if(value != null) {
+			cache.put(id, value);
+			removeEldest();
+		}
+		return value;
+	}
+
+	/**
+	 * Start decoding an image on the preload thread, so that get doesn't have to wait for it
+	 * @param id Image number
+	 */
+	public synchronized void preload(final int id) {
+		if(cache.containsKey(id) || pending.containsKey(id)) return;
+
+		pending.put(id, getPreloader().submit(new Callable<D>() {
+			public D call() {
+				return decode(id);
+			}
+		}));
+	}
+
+	/**
+	 * @param id Image number
+	 * @return true if the image is loaded
+	 */
+	public synchronized boolean isLoaded(int id) {
+		return cache.containsKey(id);
+	}
+
+	/**
+	 * Dispose all the images
+	 */
+	public synchronized void clear() {
+		for(Future<D> future: pending.values()) {
+			future.cancel(false);
+		}
+		pending.clear();
+		for(Map.Entry<Integer, V> entry: cache.entrySet()) {
+			dispose(entry.getKey(), entry.getValue());
+		}
+		cache.clear();
+	}
+
+	/**
+	 * Remove the least recently used images until there are at most maxSize
+	 */
+	protected void removeEldest() {
+		Iterator<Map.Entry<Integer, V>> it = cache.entrySet().iterator();
+		while((cache.size() > maxSize) && it.hasNext()) {
+			Map.Entry<Integer, V> entry = it.next();
+			it.remove();
+			dispose(entry.getKey(), entry.getValue());
+		}
+	}
+
+	private static synchronized ExecutorService getPreloader() {
+		if(preloader == null) {
+			preloader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ResourcePreloader");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+			});
+		}
+		return preloader;
+	}
+
+	/**
+	 * Read the size of an image without decoding it
+	 * @param file Image file
+	 * @return Width and height, or null if it can't be read
+	 */
+	public static int[] readImageSize(File file) {
+		ImageInputStream in = null;
+		try {
+			in = ImageIO.createImageInputStream(file);
+			if(in == null) return null;
+			Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if(!readers.hasNext()) return null;
+			ImageReader reader = readers.next();
+			try {
+				reader.setInput(in);
+				return new int[] {reader.getWidth(0), reader.getHeight(0)};
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException e) {
+			log.debug("Couldn't read the size of " + file, e);
+			return null;
+		} finally {
+			if(in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {}
+			}
+		}
+	}
+}
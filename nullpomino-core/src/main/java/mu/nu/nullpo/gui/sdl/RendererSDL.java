@@ -348,7 +348,9 @@ public class RendererSDL extends EventReceiver {
 	public void saveReplay(GameManager owner, CustomProperties prop) {
 		if(owner.mode.isNetplayMode()) return;
 
-		saveReplay(owner, prop, NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay"));
+		saveReplay(owner, prop, NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay"),
+				   NullpoMinoSDL.propGlobal.getProperty("custom.replay.binary", true),
+				   NullpoMinoSDL.propGlobal.getProperty("custom.replay.compress", true));
 	}
 
 	/*
@@ -380,19 +382,13 @@ public class RendererSDL extends EventReceiver {
 		if(graphics == null) return;
 
 		if(color <= Block.BLOCK_COLOR_INVALID) return;
-		if(skin >= ResourceHolderSDL.imgNormalBlockList.size()) skin = 0;
+		if(skin >= ResourceHolderSDL.getBlockSkinCount()) skin = 0;
 
 		boolean isSpecialBlocks = (color >= Block.BLOCK_COLOR_COUNT);
 		boolean isSticky = ResourceHolderSDL.blockStickyFlagList.get(skin);
 
 		int size = (int)(16 * scale);
-		SDLSurface img = null;
-		if(scale == 0.5f)
-			img = ResourceHolderSDL.imgSmallBlockList.get(skin);
-		else if(scale == 2.0f)
-			img = ResourceHolderSDL.imgBigBlockList.get(skin);
-		else
-			img = ResourceHolderSDL.imgNormalBlockList.get(skin);
+		SDLSurface img = ResourceHolderSDL.getBlockImage(skin, scale);
 
 		int sx = color * size;
 		if(bone) sx += 9 * size;
@@ -1406,8 +1402,12 @@ public class RendererSDL extends EventReceiver {
 						bg = engine.owner.backgroundStatus.fadebg;
 					}
 
-					if((ResourceHolderSDL.imgPlayBG != null) && (bg >= 0) && (bg < ResourceHolderSDL.imgPlayBG.length) && (showbg == true)) {
-						ResourceHolderSDL.imgPlayBG[bg].blitSurface(graphics);
+					SDLSurface imgBG = showbg ? ResourceHolderSDL.getBackgroundImage(bg) : null;
+					// Modes usually go to the next background
+					if(showbg) ResourceHolderSDL.preloadBackground(bg + 1);
+
+					if(imgBG != null) {
+						imgBG.blitSurface(graphics);
 
 						if(engine.owner.backgroundStatus.fadesw && heavyeffect) {
 							int alphalv = engine.owner.backgroundStatus.fadestat ? (100 - engine.owner.backgroundStatus.fadecount) : engine.owner.backgroundStatus.fadecount;
@@ -29,9 +29,14 @@
 package mu.nu.nullpo.gui.sdl;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 import java.util.LinkedList;
 
 import mu.nu.nullpo.game.component.BGMStatus;
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.gui.common.ResourceCache;
 
 import org.apache.log4j.Logger;
 
@@ -62,10 +67,15 @@ public class ResourceHolderSDL {
 
 	/** Number of gem block clear effects */
 	public static final int PERASE_MAX = 7;
-	
 
-	/** Block images */
-	public static LinkedList<SDLSurface> imgNormalBlockList, imgSmallBlockList, imgBigBlockList;
+	/** Default number of loaded skins of each block size */
+	public static final int SKIN_CACHE_SIZE = 8;
+
+	/** Default number of loaded backgrounds */
+	public static final int BACKGROUND_CACHE_SIZE = 4;
+
+	/** Block images (loaded when used) */
+	public static ImageCache imgNormalBlock, imgSmallBlock, imgBigBlock;
 
 	/** Block sticky flag */
 	public static LinkedList<Boolean> blockStickyFlagList;
@@ -97,8 +107,8 @@ public class ResourceHolderSDL {
 	/** Effects for clearing gem blocks */
 	public static SDLSurface[] imgPErase;
 
-	/** In playBackground */
-	public static SDLSurface[] imgPlayBG;
+	/** In playBackground (loaded when used, null if backgrounds are disabled) */
+	public static ImageCache imgPlayBG;
 
 	/** TTF font */
 	public static SDLTrueTypeFont ttfFont;
@@ -134,18 +144,17 @@ public class ResourceHolderSDL {
 		}
 		log.debug(numBlocks + " block skins found");
 
-		imgNormalBlockList = new LinkedList<SDLSurface>();
-		imgSmallBlockList = new LinkedList<SDLSurface>();
-		imgBigBlockList = new LinkedList<SDLSurface>();
+		// The skins are loaded the first time they're drawn; only the sizes are read here
+		int skinCacheSize = NullpoMinoSDL.propConfig.getProperty("option.skincachesize", SKIN_CACHE_SIZE);
+		imgNormalBlock = new ImageCache(skindir + "/graphics/blockskin/normal/n", skinCacheSize);
+		imgSmallBlock = new ImageCache(skindir + "/graphics/blockskin/small/s", skinCacheSize);
+		imgBigBlock = new ImageCache(skindir + "/graphics/blockskin/big/b", skinCacheSize);
 		blockStickyFlagList = new LinkedList<Boolean>();
 
 		for(int i = 0; i < numBlocks; i++) {
-			SDLSurface imgNormal = loadImage(skindir + "/graphics/blockskin/normal/n" + i + ".png");
-			imgNormalBlockList.add(imgNormal);
-			imgSmallBlockList.add(loadImage(skindir + "/graphics/blockskin/small/s" + i + ".png"));
-			imgBigBlockList.add(loadImage(skindir + "/graphics/blockskin/big/b" + i + ".png"));
+			int[] size = ResourceCache.readImageSize(new File(skindir + "/graphics/blockskin/normal/n" + i + ".png"));
 
-			if((imgNormal.getWidth() >= 400) && (imgNormal.getHeight() >= 304)) {
+			if((size != null) && (size[0] >= 400) && (size[1] >= 304)) {
 				blockStickyFlagList.add(Boolean.TRUE);
 			} else {
 				blockStickyFlagList.add(Boolean.FALSE);
@@ -266,16 +275,69 @@ public class ResourceHolderSDL {
 	}
 
 	/**
-	 * Load background images.
+	 * Enable background images. They're loaded the first time they're drawn.
 	 */
 	public static void loadBackgroundImages() {
 		if(imgPlayBG == null) {
-			imgPlayBG = new SDLSurface[BACKGROUND_MAX];
-
 			String skindir = NullpoMinoSDL.propConfig.getProperty("custom.skin.directory", "res");
-			for(int i = 0; i < imgPlayBG.length; i++) {
-				imgPlayBG[i] = loadImage(skindir + "/graphics/back" + i + ".png");
-			}
+			imgPlayBG = new ImageCache(skindir + "/graphics/back",
+					NullpoMinoSDL.propConfig.getProperty("option.bgcachesize", BACKGROUND_CACHE_SIZE));
+		}
+	}
+
+	/**
+	 * @return Number of block skins
+	 */
+	public static int getBlockSkinCount() {
+		return blockStickyFlagList.size();
+	}
+
+	/**
+	 * Get a block skin image
+	 * @param skin Skin number
+	 * @param scale Size (0.5f, 1.0f, 2.0f)
+	 * @return Block skin image
+	 */
+	public static SDLSurface getBlockImage(int skin, float scale) {
+		if(scale == 0.5f) return imgSmallBlock.get(skin);
+		if(scale == 2.0f) return imgBigBlock.get(skin);
+		return imgNormalBlock.get(skin);
+	}
+
+	/**
+	 * Get a background image
+	 * @param bg Background number
+	 * @return Background image (null if backgrounds are disabled or there's no such background)
+	 */
+	public static SDLSurface getBackgroundImage(int bg) {
+		if((imgPlayBG == null) || (bg < 0) || (bg >= BACKGROUND_MAX)) return null;
+		return imgPlayBG.get(bg);
+	}
+
+	/**
+	 * Start loading a background in the background thread
+	 * @param bg Background number
+	 */
+	public static void preloadBackground(int bg) {
+		if((imgPlayBG != null) && (bg >= 0) && (bg < BACKGROUND_MAX)) imgPlayBG.preload(bg);
+	}
+
+	/**
+	 * Start loading the skins and backgrounds that a new game will use first in the background thread
+	 * @param manager GameManager of the game
+	 */
+	public static void preload(GameManager manager) {
+		for(int i = 0; i < manager.getPlayers(); i++) {
+			GameEngine engine = manager.engine[i];
+			int skin = engine.getSkin();
+			if((skin < 0) || (skin >= getBlockSkinCount())) skin = 0;
+			if(engine.displaysize == 1) imgBigBlock.preload(skin);
+			else imgNormalBlock.preload(skin);
+			imgSmallBlock.preload(skin);
+		}
+		if(manager.backgroundStatus != null) {
+			preloadBackground(manager.backgroundStatus.bg);
+			preloadBackground(manager.backgroundStatus.bg + 1);
 		}
 	}
 
@@ -425,4 +487,56 @@ public class ResourceHolderSDL {
 			log.debug("BGM stop failed", e);
 		}
 	}
+
+	/**
+	 * Images numbered from 0 that are loaded when used.<br>
+	 * The file is read on the preload thread; the surface is made on the thread that draws it.
+	 */
+	public static class ImageCache extends ResourceCache<byte[], SDLSurface> {
+		/** Filename without the number and ".png" */
+		protected String prefix;
+
+		/**
+		 * Constructor
+		 * @param prefix Filename without the number and ".png"
+		 * @param maxSize Maximum number of images kept
+		 */
+		public ImageCache(String prefix, int maxSize) {
+			super(maxSize);
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected byte[] decode(int id) {
+			String filename = prefix + id + ".png";
+			try {
+				return Files.readAllBytes(new File(filename).toPath());
+			} catch (IOException e) {
+				log.debug("Failed to read image " + filename, e);
+				return null;
+			}
+		}
+
+		@Override
+		protected SDLSurface create(int id, byte[] data) {
+			String filename = prefix + id + ".png";
+			if(data != null) {
+				try {
+					return SDLImage.load(data);
+				} catch (Throwable e) {
+					log.error("Failed to load image from " + filename, e);
+				}
+			}
+			return loadImage(filename);
+		}
+
+		@Override
+		protected void dispose(int id, SDLSurface value) {
+			try {
+				value.freeSurface();
+			} catch (SDLException e) {
+				log.debug("Failed to free image " + prefix + id + ".png", e);
+			}
+		}
+	}
 }
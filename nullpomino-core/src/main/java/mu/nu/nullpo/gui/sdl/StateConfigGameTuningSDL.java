@@ -229,6 +229,7 @@ public class StateConfigGameTuningSDL extends BaseStateSDL {
 				gameManager.engine[i].aiMoveDelay = NullpoMinoSDL.propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = NullpoMinoSDL.propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = NullpoMinoSDL.propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowState", false);
@@ -287,8 +288,8 @@ public class StateConfigGameTuningSDL extends BaseStateSDL {
 			NormalFontSDL.printFontGrid(2, 3, "A BUTTON ROTATE:" + strTemp, (cursor == 0));
 
 			NormalFontSDL.printFontGrid(2, 4, "BLOCK SKIN:" + ((owSkin == -1) ? "AUTO": String.valueOf(owSkin)), (cursor == 1));
-			if((owSkin >= 0) && (owSkin < ResourceHolderSDL.imgNormalBlockList.size())) {
-				SDLSurface imgBlock = ResourceHolderSDL.imgNormalBlockList.get(owSkin);
+			if((owSkin >= 0) && (owSkin < ResourceHolderSDL.getBlockSkinCount())) {
+				SDLSurface imgBlock = ResourceHolderSDL.getBlockImage(owSkin, 1.0f);
 
 				if(ResourceHolderSDL.blockStickyFlagList.get(owSkin) == true) {
 					for(int j = 0; j < 9; j++) {
@@ -401,8 +402,8 @@ public class StateConfigGameTuningSDL extends BaseStateSDL {
 					break;
 				case 1:
 					owSkin += change;
-					if(owSkin < -1) owSkin = ResourceHolderSDL.imgNormalBlockList.size() - 1;
-					if(owSkin > ResourceHolderSDL.imgNormalBlockList.size() - 1) owSkin = -1;
+					if(owSkin < -1) owSkin = ResourceHolderSDL.getBlockSkinCount() - 1;
+					if(owSkin > ResourceHolderSDL.getBlockSkinCount() - 1) owSkin = -1;
 					break;
 				case 2:
 					owMinDAS += change;
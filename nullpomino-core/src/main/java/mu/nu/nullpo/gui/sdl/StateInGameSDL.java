@@ -28,10 +28,14 @@
 */
 package mu.nu.nullpo.gui.sdl;
 
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 
+import mu.nu.nullpo.game.component.ReplayData;
 import mu.nu.nullpo.game.component.RuleOptions;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplaySeeker;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
@@ -175,6 +179,7 @@ public class StateInGameSDL extends BaseStateSDL {
 				gameManager.engine[i].aiMoveDelay = NullpoMinoSDL.propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = NullpoMinoSDL.propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = NullpoMinoSDL.propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowState", false);
@@ -185,6 +190,7 @@ public class StateInGameSDL extends BaseStateSDL {
 			gameManager.engine[i].init();
 		}
 
+		ResourceHolderSDL.preload(gameManager);
 		updateTitleBarCaption();
 	}
 
@@ -192,10 +198,11 @@ public class StateInGameSDL extends BaseStateSDL {
 	 * Load and play the replay
 	 * @param prop Replay dataProperty set that contains the
 	 */
-	public void startReplayGame(CustomProperties prop) {
+	public void startReplayGame(CustomProperties prop, Map<Integer, ReplayData> input) {
 		gameManager = new GameManager(new RendererSDL());
 		gameManager.replayMode = true;
 		gameManager.replayProp = prop;
+		gameManager.replayInput = input;
 		pause = false;
 
 		try {
@@ -214,6 +221,7 @@ public class StateInGameSDL extends BaseStateSDL {
 		}
 
 		gameManager.init();
+		gameManager.replaySeeker = new ReplaySeeker(gameManager);
 
 		// Initialization for each player
 		for(int i = 0; i < gameManager.getPlayers(); i++) {
@@ -242,6 +250,7 @@ public class StateInGameSDL extends BaseStateSDL {
 				gameManager.engine[i].aiMoveDelay = NullpoMinoSDL.propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = NullpoMinoSDL.propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = NullpoMinoSDL.propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = NullpoMinoSDL.propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSDL.propGlobal.getProperty(i + ".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSDL.propGlobal.getProperty(i + ".aiShowState", false);
@@ -252,6 +261,7 @@ public class StateInGameSDL extends BaseStateSDL {
 			gameManager.engine[i].init();
 		}
 
+		ResourceHolderSDL.preload(gameManager);
 		updateTitleBarCaption();
 	}
 
@@ -439,6 +449,16 @@ public class StateInGameSDL extends BaseStateSDL {
 		// Hide pause menu
 		pauseMessageHide = GameKeySDL.gamekey[0].isPressKey(GameKeySDL.BUTTON_C);
 
+		// Replay seek
+		if(gameManager.replayMode && !gameManager.replayRerecord && (gameManager.replaySeeker != null) && !pause) {
+			if(GameKeySDL.gamekey[0].isMenuRepeatKey(GameKeySDL.BUTTON_UP)) {
+				gameManager.replaySeeker.seek(gameManager.replaySeeker.getFrame() - ReplaySeeker.SEEK_FRAMES);
+			}
+			if(GameKeySDL.gamekey[0].isMenuRepeatKey(GameKeySDL.BUTTON_DOWN)) {
+				gameManager.replaySeeker.seek(gameManager.replaySeeker.getFrame() + ReplaySeeker.SEEK_FRAMES);
+			}
+		}
+
 		if(gameManager.replayMode && !gameManager.replayRerecord && gameManager.engine[0].gameActive) {
 			// Replay speed
 			if(GameKeySDL.gamekey[0].isMenuRepeatKey(GameKeySDL.BUTTON_LEFT)) {
@@ -29,11 +29,14 @@
 package mu.nu.nullpo.gui.sdl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
+import mu.nu.nullpo.game.component.ReplayData;
+import mu.nu.nullpo.game.component.ReplayReader;
 import mu.nu.nullpo.game.component.Statistics;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
@@ -117,9 +120,8 @@ public class StateReplaySelectSDL extends DummyMenuScrollStateSDL {
 			CustomProperties prop = new CustomProperties();
 
 			try {
-				FileInputStream in = new FileInputStream(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[i]);
-				prop.load(in);
-				in.close();
+				// The button input isn't needed for the list
+				prop = ReplayReader.load(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[i], null);
 			} catch (IOException e) {
 				log.warn("Failed to load replay file from " + list[i], e);
 			}
@@ -159,19 +161,18 @@ public class StateReplaySelectSDL extends DummyMenuScrollStateSDL {
 	protected boolean onDecide() throws SDLException {
 		ResourceHolderSDL.soundManager.play("decide");
 
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop;
+		Map<Integer, ReplayData> input = new TreeMap<Integer, ReplayData>();
 
 		try {
-			FileInputStream in = new FileInputStream(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[cursor]);
-			prop.load(in);
-			in.close();
+			prop = ReplayReader.load(NullpoMinoSDL.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[cursor], input);
 		} catch (IOException e) {
 			log.error("Failed to load replay file from " + list[cursor], e);
 			return true;
 		}
 
 		StateInGameSDL s = (StateInGameSDL)NullpoMinoSDL.gameStates[NullpoMinoSDL.STATE_INGAME];
-		s.startReplayGame(prop);
+		s.startReplayGame(prop, input);
 
 		NullpoMinoSDL.enterState(NullpoMinoSDL.STATE_INGAME);
 
@@ -0,0 +1,264 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.gui.slick;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import javax.imageio.ImageIO;
+
+import org.apache.log4j.Logger;
+import org.lwjgl.opengl.GL11;
+import org.newdawn.slick.Image;
+import org.newdawn.slick.opengl.Texture;
+import org.newdawn.slick.util.BufferedImageUtil;
+
+/**
+ * Block skins of one size packed into a single texture (atlas).<br>
+ * All the blocks are drawn from the same texture, so a whole field can be drawn with one texture bind and one draw call.
+ */
+public class BlockAtlas {
+	/** Log */
+	static Logger log = Logger.getLogger(BlockAtlas.class);
+
+	/** Space between two skins (pixels), so that the linear filter never reads the next skin */
+	protected static final int PADDING = 2;
+
+	/** Size of the white square (used for the outlines and the brightness filter) */
+	protected static final int WHITE_SIZE = 4;
+
+	/** Atlas image */
+	protected Image image;
+
+	/** Texture of the atlas */
+	protected Texture texture;
+
+	/** Texture size (power of 2) */
+	protected int textureWidth, textureHeight;
+
+	/** Position and size of each skin in the atlas */
+	protected int[] skinX, skinY, skinWidth, skinHeight;
+
+	/** Position of the white square */
+	protected int whiteX, whiteY;
+
+	/**
+	 * Create an atlas
+	 * @param filenames Image file of each skin
+	 * @param maxTextureSize Maximum texture width and height
+	 * @return Atlas, or null if the skins don't fit in a texture or can't be loaded
+	 */
+	public static BlockAtlas create(String[] filenames, int maxTextureSize) {
+		try {
+			BufferedImage[] skins = new BufferedImage[filenames.length];
+			int[] widths = new int[filenames.length + 1];
+			int[] heights = new int[filenames.length + 1];
+			for(int i = 0; i < filenames.length; i++) {
+				skins[i] = ImageIO.read(new File(filenames[i]));
+				widths[i] = skins[i].getWidth();
+				heights[i] = skins[i].getHeight();
+			}
+			widths[filenames.length] = WHITE_SIZE;
+			heights[filenames.length] = WHITE_SIZE;
+
+			int[] size = new int[2];
+			int[] pos = pack(widths, heights, maxTextureSize, size);
+			if(pos == null) {
+				log.info("Block skins don't fit in a " + maxTextureSize + "x" + maxTextureSize + " texture");
+				return null;
+			}
+
+			BlockAtlas atlas = new BlockAtlas();
+			atlas.textureWidth = size[0];
+			atlas.textureHeight = size[1];
+			atlas.skinX = new int[skins.length];
+			atlas.skinY = new int[skins.length];
+			atlas.skinWidth = Arrays.copyOf(widths, skins.length);
+			atlas.skinHeight = Arrays.copyOf(heights, skins.length);
+
+			BufferedImage buffer = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_ARGB);
+			for(int i = 0; i < skins.length; i++) {
+				atlas.skinX[i] = pos[i * 2];
+				atlas.skinY[i] = pos[(i * 2) + 1];
+				int[] pixels = skins[i].getRGB(0, 0, widths[i], heights[i], null, 0, widths[i]);
+				buffer.setRGB(atlas.skinX[i], atlas.skinY[i], widths[i], heights[i], pixels, 0, widths[i]);
+			}
+			atlas.whiteX = pos[skins.length * 2];
+			atlas.whiteY = pos[(skins.length * 2) + 1];
+			for(int y = 0; y < WHITE_SIZE; y++) {
+				for(int x = 0; x < WHITE_SIZE; x++) {
+					buffer.setRGB(atlas.whiteX + x, atlas.whiteY + y, 0xFFFFFFFF);
+				}
+			}
+
+			atlas.texture = BufferedImageUtil.getTexture(filenames.length > 0 ? filenames[0] : "atlas", buffer);
+			atlas.image = new Image(atlas.texture);
+			log.debug("Block atlas " + size[0] + "x" + size[1] + " for " + skins.length + " skins");
+			return atlas;
+		} catch (IOException e) {
+			log.warn("Block atlas could not be created", e);
+		} catch (RuntimeException e) {
+			log.warn("Block atlas could not be created", e);
+		}
+		return null;
+	}
+
+	/**
+	 * Get the maximum texture size of the video card
+	 * @return Maximum texture size (1024 if it can't be read)
+	 */
+	public static int getMaxTextureSize() {
+		try {
+			int size = GL11.glGetInteger(GL11.GL_MAX_TEXTURE_SIZE);
+			if(size > 0) return size;
+		} catch (Throwable e) {
+			log.debug("Couldn't get the maximum texture size", e);
+		}
+		return 1024;
+	}
+
+	/**
+	 * Pack rectangles in shelves (rows of rectangles sorted by height), trying every power of 2 width
+	 * and keeping the smallest texture.
+	 * @param widths Widths of the rectangles
+	 * @param heights Heights of the rectangles
+	 * @param maxSize Maximum texture width and height
+	 * @param size Receives the texture width and height
+	 * @return X and Y of each rectangle, or null if they don't fit
+	 */
+	public static int[] pack(int[] widths, int[] heights, int maxSize, int[] size) {
+		Integer[] order = new Integer[widths.length];
+		int maxWidth = 1;
+		for(int i = 0; i < widths.length; i++) {
+			order[i] = i;
+			maxWidth = Math.max(maxWidth, widths[i] + PADDING);
+		}
+		final int[] h = heights;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				return h[b] - h[a];
+			}
+		});
+
+		int[] best = null;
+		long bestArea = Long.MAX_VALUE;
+		for(int width = nextPowerOf2(maxWidth); width <= maxSize; width *= 2) {
+			int[] pos = new int[widths.length * 2];
+			int x = 0, y = 0, shelfHeight = 0;
+			for(int i : order) {
+				if(x + widths[i] + PADDING > width) {
+					x = 0;
+					y += shelfHeight;
+					shelfHeight = 0;
+				}
+				pos[i * 2] = x;
+				pos[(i * 2) + 1] = y;
+				x += widths[i] + PADDING;
+				shelfHeight = Math.max(shelfHeight, heights[i] + PADDING);
+			}
+			int height = nextPowerOf2(y + shelfHeight);
+			if((height <= maxSize) && ((long)width * height < bestArea)) {
+				best = pos;
+				bestArea = (long)width * height;
+				size[0] = width;
+				size[1] = height;
+			}
+		}
+		return best;
+	}
+
+	private static int nextPowerOf2(int n) {
+		int p = 1;
+		while(p < n) p *= 2;
+		return p;
+	}
+
+	public Image getImage() {
+		return image;
+	}
+
+	public Texture getTexture() {
+		return texture;
+	}
+
+	public int getNumSkins() {
+		return skinX.length;
+	}
+
+	public int getSkinX(int skin) {
+		return skinX[skin];
+	}
+
+	public int getSkinY(int skin) {
+		return skinY[skin];
+	}
+
+	public int getSkinWidth(int skin) {
+		return skinWidth[skin];
+	}
+
+	public int getSkinHeight(int skin) {
+		return skinHeight[skin];
+	}
+
+	/**
+	 * @return X of the center of the white square
+	 */
+	public int getWhiteX() {
+		return whiteX + (WHITE_SIZE / 2);
+	}
+
+	/**
+	 * @return Y of the center of the white square
+	 */
+	public int getWhiteY() {
+		return whiteY + (WHITE_SIZE / 2);
+	}
+
+	/**
+	 * Convert an X position in the atlas to a texture coordinate
+	 * @param x X position (pixels)
+	 * @return Texture coordinate
+	 */
+	public float u(float x) {
+		return x / textureWidth;
+	}
+
+	/**
+	 * Convert a Y position in the atlas to a texture coordinate
+	 * @param y Y position (pixels)
+	 * @return Texture coordinate
+	 */
+	public float v(float y) {
+		return y / textureHeight;
+	}
+}
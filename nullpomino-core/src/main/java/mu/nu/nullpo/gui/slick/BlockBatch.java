@@ -0,0 +1,138 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.gui.slick;
+
+import java.nio.FloatBuffer;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.newdawn.slick.Color;
+import org.newdawn.slick.opengl.Texture;
+
+/**
+ * Textured quads collected in a vertex buffer and drawn with a single draw call.<br>
+ * Quads are only collected between {@link #begin()} and {@link #end()}; the buffer is drawn when it's full,
+ * when the texture changes and at the end. Nothing else may be drawn in between: it would be drawn below the quads.
+ */
+public class BlockBatch {
+	/** Maximum number of quads in the buffer */
+	public static final int MAX_QUADS = 2048;
+
+	/** Number of floats of a vertex (X, Y, U, V, R, G, B, A) */
+	protected static final int VERTEX_SIZE = 8;
+
+	/** Vertex buffer */
+	protected FloatBuffer vertices = BufferUtils.createFloatBuffer(MAX_QUADS * 4 * VERTEX_SIZE);
+
+	/** Texture of the quads in the buffer */
+	protected Texture texture;
+
+	/** Number of quads in the buffer */
+	protected int numQuads;
+
+	/** true between begin and end */
+	protected boolean active;
+
+	/**
+	 * Start collecting quads
+	 */
+	public void begin() {
+		active = true;
+	}
+
+	/**
+	 * Draw the collected quads and stop collecting
+	 */
+	public void end() {
+		flush();
+		active = false;
+	}
+
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Add a quad
+	 * @param texture Texture
+	 * @param x X-coordinate of the top-left corner
+	 * @param y Y-coordinate of the top-left corner
+	 * @param x2 X-coordinate of the bottom-right corner
+	 * @param y2 Y-coordinate of the bottom-right corner
+	 * @param u Texture coordinate of the top-left corner
+	 * @param v Texture coordinate of the top-left corner
+	 * @param u2 Texture coordinate of the bottom-right corner
+	 * @param v2 Texture coordinate of the bottom-right corner
+	 * @param color Color (multiplied with the texture)
+	 */
+	public void add(Texture texture, float x, float y, float x2, float y2, float u, float v, float u2, float v2, Color color) {
+		if((texture != this.texture) || (numQuads >= MAX_QUADS)) {
+			flush();
+			this.texture = texture;
+		}
+		putVertex(x, y, u, v, color);
+		putVertex(x2, y, u2, v, color);
+		putVertex(x2, y2, u2, v2, color);
+		putVertex(x, y2, u, v2, color);
+		numQuads++;
+	}
+
+	protected void putVertex(float x, float y, float u, float v, Color color) {
+		vertices.put(x).put(y).put(u).put(v).put(color.r).put(color.g).put(color.b).put(color.a);
+	}
+
+	/**
+	 * Draw the collected quads
+	 */
+	public void flush() {
+		if(numQuads == 0) return;
+
+		texture.bind();
+		int stride = VERTEX_SIZE * 4;
+		GL11.glEnableClientState(GL11.GL_VERTEX_ARRAY);
+		GL11.glEnableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glEnableClientState(GL11.GL_COLOR_ARRAY);
+		vertices.position(0);
+		GL11.glVertexPointer(2, stride, vertices);
+		vertices.position(2);
+		GL11.glTexCoordPointer(2, stride, vertices);
+		vertices.position(4);
+		GL11.glColorPointer(4, stride, vertices);
+		GL11.glDrawArrays(GL11.GL_QUADS, 0, numQuads * 4);
+		GL11.glDisableClientState(GL11.GL_COLOR_ARRAY);
+		GL11.glDisableClientState(GL11.GL_TEXTURE_COORD_ARRAY);
+		GL11.glDisableClientState(GL11.GL_VERTEX_ARRAY);
+
+		// The current color is undefined after drawing with a color array
+		Color.white.bind();
+
+		vertices.clear();
+		numQuads = 0;
+	}
+}
@@ -78,6 +78,9 @@ public class RendererSlick extends EventReceiver {
 	/** Line clear effect speed */
 	protected int lineeffectspeed;
 
+	/** Batch of the blocks drawn from the block atlases */
+	protected BlockBatch blockBatch = new BlockBatch();
+
 	/**
 	 * Block colorIDDepending onSlickUseColorObjects created or received
 	 * @param colorID Block colorID
@@ -303,7 +306,9 @@ public class RendererSlick extends EventReceiver {
 	public void saveReplay(GameManager owner, CustomProperties prop) {
 		if(owner.mode.isNetplayMode()) return;
 
-		saveReplay(owner, prop, NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay"));
+		saveReplay(owner, prop, NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay"),
+				   NullpoMinoSlick.propGlobal.getProperty("custom.replay.binary", true),
+				   NullpoMinoSlick.propGlobal.getProperty("custom.replay.compress", true));
 	}
 
 	/*
@@ -330,19 +335,19 @@ public class RendererSlick extends EventReceiver {
 		if(graphics == null) return;
 
 		if((color <= Block.BLOCK_COLOR_INVALID)) return;
-		if(skin >= ResourceHolderSlick.imgNormalBlockList.size()) skin = 0;
+		if(skin >= ResourceHolderSlick.getBlockSkinCount()) skin = 0;
 
 		boolean isSpecialBlocks = (color >= Block.BLOCK_COLOR_COUNT);
 		boolean isSticky = ResourceHolderSlick.blockStickyFlagList.get(skin);
 
 		int size = (int)(16 * scale);
 		Image img = null;
-		if(scale == 0.5f)
-			img = ResourceHolderSlick.imgSmallBlockList.get(skin);
-		else if(scale == 2.0f)
-			img = ResourceHolderSlick.imgBigBlockList.get(skin);
+		BlockAtlas atlas = getBlockAtlas(scale);
+		if((atlas != null) && (skin >= atlas.getNumSkins())) atlas = null;
+		if(atlas != null)
+			img = atlas.getImage();
 		else
-			img = ResourceHolderSlick.imgNormalBlockList.get(skin);
+			img = ResourceHolderSlick.getBlockImage(skin, scale);
 
 		int sx = color * size;
 		if(bone) sx += 9 * size;
@@ -365,41 +370,136 @@ public class RendererSlick extends EventReceiver {
 			}
 		}
 
-		int imageWidth = img.getWidth();
+		int imageWidth = (atlas != null) ? atlas.getSkinWidth(skin) : img.getWidth();
 		if((sx >= imageWidth) && (imageWidth != -1)) sx = 0;
-		int imageHeight = img.getHeight();
+		int imageHeight = (atlas != null) ? atlas.getSkinHeight(skin) : img.getHeight();
 		if((sy >= imageHeight) && (imageHeight != -1)) sy = 0;
 
+		// Position of the skin in the image
+		int ox = 0;
+		int oy = 0;
+		if(atlas != null) {
+			ox = atlas.getSkinX(skin);
+			oy = atlas.getSkinY(skin);
+		} else if(blockBatch.isActive()) {
+			blockBatch.flush();
+		}
+
 		Color filter = new Color(Color.white);
 		filter.a = alpha;
 		if(darkness > 0) {
 			filter = filter.darker(darkness);
 		}
 
-		graphics.drawImage(img, x, y, x + size, y + size, sx, sy, sx + size, sy + size, filter);
+		drawBlockImage(img, atlas, x, y, x + size, y + size, ox + sx, oy + sy, ox + sx + size, oy + sy + size, filter);
 
 		if(isSticky && !isSpecialBlocks) {
-			int d = 16 * size;
+			int d = ox + (16 * size);
 			int h = (size/2);
+			sy += oy;
 
 			if( ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_UP) != 0) && ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_LEFT) != 0) )
-				graphics.drawImage(img, x, y, x + h, y + h, d, sy, d + h, sy + h, filter);
+				drawBlockImage(img, atlas, x, y, x + h, y + h, d, sy, d + h, sy + h, filter);
 			if( ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_UP) != 0) && ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT) != 0) )
-				graphics.drawImage(img, x + h, y, x + h + h, y + h, d + h, sy, d + h + h, sy + h, filter);
+				drawBlockImage(img, atlas, x + h, y, x + h + h, y + h, d + h, sy, d + h + h, sy + h, filter);
 			if( ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_DOWN) != 0) && ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_LEFT) != 0) )
-				graphics.drawImage(img, x, y + h, x + h, y + h + h, d, sy + h, d + h, sy + h + h, filter);
+				drawBlockImage(img, atlas, x, y + h, x + h, y + h + h, d, sy + h, d + h, sy + h + h, filter);
 			if( ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_DOWN) != 0) && ((attr & Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT) != 0) )
-				graphics.drawImage(img, x + h, y + h, x + h + h, y + h + h, d + h, sy + h, d + h + h, sy + h + h, filter);
+				drawBlockImage(img, atlas, x + h, y + h, x + h + h, y + h + h, d + h, sy + h, d + h + h, sy + h + h, filter);
 		}
 
 		if(darkness < 0) {
 			Color brightfilter = new Color(Color.white);
 			brightfilter.a = -darkness;
-			graphics.setColor(brightfilter);
-			graphics.fillRect(x, y, size, size);
+			fillBlockRect(atlas, x, y, size, size, brightfilter);
+		}
+	}
+
+	/**
+	 * Draw a part of a block image
+	 * @param img Image
+	 * @param atlas Block atlas if img is the image of it (otherwise null)
+	 * @param x X-coordinate of the top-left corner
+	 * @param y Y-coordinate of the top-left corner
+	 * @param x2 X-coordinate of the bottom-right corner
+	 * @param y2 Y-coordinate of the bottom-right corner
+	 * @param srcx X-coordinate of the top-left corner in the image
+	 * @param srcy Y-coordinate of the top-left corner in the image
+	 * @param srcx2 X-coordinate of the bottom-right corner in the image
+	 * @param srcy2 Y-coordinate of the bottom-right corner in the image
+	 * @param filter Color
+	 */
+	protected void drawBlockImage(Image img, BlockAtlas atlas, int x, int y, int x2, int y2, int srcx, int srcy, int srcx2, int srcy2,
+								  Color filter)
+	{
+		if((atlas != null) && blockBatch.isActive()) {
+			blockBatch.add(atlas.getTexture(), x, y, x2, y2, atlas.u(srcx), atlas.v(srcy), atlas.u(srcx2), atlas.v(srcy2), filter);
+		} else {
+			graphics.drawImage(img, x, y, x2, y2, srcx, srcy, srcx2, srcy2, filter);
+		}
+	}
+
+	/**
+	 * Fill a rectangle over the blocks (with the white square of the atlas while batching)
+	 * @param atlas Block atlas of the blocks (null if they aren't drawn from an atlas)
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param width Width
+	 * @param height Height
+	 * @param color Color
+	 */
+	protected void fillBlockRect(BlockAtlas atlas, int x, int y, int width, int height, Color color) {
+		if((atlas != null) && blockBatch.isActive()) {
+			float u = atlas.u(atlas.getWhiteX());
+			float v = atlas.v(atlas.getWhiteY());
+			blockBatch.add(atlas.getTexture(), x, y, x + width, y + height, u, v, u, v, color);
+		} else {
+			graphics.setColor(color);
+			graphics.fillRect(x, y, width, height);
 		}
 	}
 
+	/**
+	 * Draw a horizontal or vertical line over the blocks (with the white square of the atlas while batching)
+	 * @param atlas Block atlas of the blocks (null if they aren't drawn from an atlas)
+	 * @param x X-coordinate of the start
+	 * @param y Y-coordinate of the start
+	 * @param x2 X-coordinate of the end
+	 * @param y2 Y-coordinate of the end
+	 * @param color Color
+	 */
+	protected void drawBlockLine(BlockAtlas atlas, int x, int y, int x2, int y2, Color color) {
+		if((atlas != null) && blockBatch.isActive()) {
+			fillBlockRect(atlas, x, y, x2 - x + 1, y2 - y + 1, color);
+		} else {
+			graphics.setColor(color);
+			graphics.drawLine(x, y, x2, y2);
+		}
+	}
+
+	/**
+	 * Get the block atlas of a size
+	 * @param scale Size (0.5f, 1.0f, 2.0f)
+	 * @return Block atlas (null if the blocks of this size are drawn from the skin images)
+	 */
+	protected BlockAtlas getBlockAtlas(float scale) {
+		if(scale == 0.5f) return ResourceHolderSlick.atlasSmallBlock;
+		if(scale == 2.0f) return ResourceHolderSlick.atlasBigBlock;
+		return ResourceHolderSlick.atlasNormalBlock;
+	}
+
+	/**
+	 * Start collecting the blocks of a size in the batch if they're drawn from an atlas.<br>
+	 * Only blocks may be drawn until the batch is ended with blockBatch.end().
+	 * @param scale Size (0.5f, 1.0f, 2.0f)
+	 * @return true if the batch has been started (false if it's already active or there's no atlas)
+	 */
+	protected boolean beginBlockBatch(float scale) {
+		if(blockBatch.isActive() || (getBlockAtlas(scale) == null)) return false;
+		blockBatch.begin();
+		return true;
+	}
+
 	/**
 	 * BlockDraw a
 	 * @param x X-coordinate
@@ -483,6 +583,8 @@ public class RendererSlick extends EventReceiver {
 	 * @param darkness Lightness or darkness
 	 */
 	protected void drawPiece(int x, int y, Piece piece, float scale, float darkness) {
+		boolean batch = beginBlockBatch(scale);
+
 		for(int i = 0; i < piece.getMaxBlock(); i++) {
 			int x2 = x + (int)(piece.dataX[piece.direction][i] * 16 * scale);
 			int y2 = y + (int)(piece.dataY[piece.direction][i] * 16 * scale);
@@ -492,6 +594,8 @@ public class RendererSlick extends EventReceiver {
 
 			drawBlock(x2, y2, blkTemp, scale);
 		}
+
+		if(batch) blockBatch.end();
 	}
 
 	/**
@@ -506,6 +610,8 @@ public class RendererSlick extends EventReceiver {
 		int blksize = (int)(16 * scale);
 
 		if(piece != null) {
+			boolean batch = beginBlockBatch(piece.big ? scale * 2.0f : scale);
+
 			for(int i = 0; i < piece.getMaxBlock(); i++) {
 				if(!piece.big) {
 					int x2 = engine.nowPieceX + piece.dataX[piece.direction][i];
@@ -531,6 +637,8 @@ public class RendererSlick extends EventReceiver {
 					drawBlock(x + (x2 * blksize), y + (y2 * blksize), blkTemp, scale * 2.0f);
 				}
 			}
+
+			if(batch) blockBatch.end();
 		}
 	}
 
@@ -546,6 +654,9 @@ public class RendererSlick extends EventReceiver {
 		int blksize = (int)(16 * scale);
 
 		if(piece != null) {
+			// The outline ghost is drawn with lines, so only the block ghost is batched
+			boolean batch = !outlineghost && beginBlockBatch(piece.big ? scale * 2.0f : scale);
+
 			for(int i = 0; i < piece.getMaxBlock(); i++) {
 				if(!piece.big) {
 					int x2 = engine.nowPieceX + piece.dataX[piece.direction][i];
@@ -667,6 +778,8 @@ public class RendererSlick extends EventReceiver {
 					}
 				}
 			}
+
+			if(batch) blockBatch.end();
 		}
 	}
 
@@ -803,6 +916,10 @@ public class RendererSlick extends EventReceiver {
 		int outlineType = engine.blockOutlineType;
 		if(engine.owBlockOutlineType != -1) outlineType = engine.owBlockOutlineType;
 
+		// All the blocks and outlines go to the batch
+		BlockAtlas atlas = getBlockAtlas(scale);
+		boolean batch = beginBlockBatch(scale);
+
 		for(int i = 0; i < viewHeight; i++) {
 			for(int j = 0; j < width; j++) {
 				int x2 = x + (j * blksize);
@@ -824,23 +941,22 @@ public class RendererSlick extends EventReceiver {
 					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_OUTLINE) && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_BONE)) {
 						Color filter = new Color(Color.white);
 						filter.a = blk.alpha;
-						graphics.setColor(filter);
 						int ls = (blksize-1);
 						if(outlineType == GameEngine.BLOCK_OUTLINE_NORMAL) {
-							if(field.getBlockColor(j, i - 1) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2, x2 + ls, y2);
-							if(field.getBlockColor(j, i + 1) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
-							if(field.getBlockColor(j - 1, i) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2, x2, y2 + ls);
-							if(field.getBlockColor(j + 1, i) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
+							if(field.getBlockColor(j, i - 1) == Block.BLOCK_COLOR_NONE) drawBlockLine(atlas, x2, y2, x2 + ls, y2, filter);
+							if(field.getBlockColor(j, i + 1) == Block.BLOCK_COLOR_NONE) drawBlockLine(atlas, x2, y2 + ls, x2 + ls, y2 + ls, filter);
+							if(field.getBlockColor(j - 1, i) == Block.BLOCK_COLOR_NONE) drawBlockLine(atlas, x2, y2, x2, y2 + ls, filter);
+							if(field.getBlockColor(j + 1, i) == Block.BLOCK_COLOR_NONE) drawBlockLine(atlas, x2 + ls, y2, x2 + ls, y2 + ls, filter);
 						} else if(outlineType == GameEngine.BLOCK_OUTLINE_CONNECT) {
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP))     graphics.drawLine(x2, y2, x2 + ls, y2);
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN))   graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT))   graphics.drawLine(x2, y2, x2, y2 + ls);
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT))  graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
+							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP))     drawBlockLine(atlas, x2, y2, x2 + ls, y2, filter);
+							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN))   drawBlockLine(atlas, x2, y2 + ls, x2 + ls, y2 + ls, filter);
+							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT))   drawBlockLine(atlas, x2, y2, x2, y2 + ls, filter);
+							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT))  drawBlockLine(atlas, x2 + ls, y2, x2 + ls, y2 + ls, filter);
 						} else if(outlineType == GameEngine.BLOCK_OUTLINE_SAMECOLOR) {
-							if(field.getBlockColor(j, i - 1) != blk.color) graphics.drawLine(x2, y2, x2 + ls, y2);
-							if(field.getBlockColor(j, i + 1) != blk.color) graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
-							if(field.getBlockColor(j - 1, i) != blk.color) graphics.drawLine(x2, y2, x2, y2 + ls);
-							if(field.getBlockColor(j + 1, i) != blk.color) graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
+							if(field.getBlockColor(j, i - 1) != blk.color) drawBlockLine(atlas, x2, y2, x2 + ls, y2, filter);
+							if(field.getBlockColor(j, i + 1) != blk.color) drawBlockLine(atlas, x2, y2 + ls, x2 + ls, y2 + ls, filter);
+							if(field.getBlockColor(j - 1, i) != blk.color) drawBlockLine(atlas, x2, y2, x2, y2 + ls, filter);
+							if(field.getBlockColor(j + 1, i) != blk.color) drawBlockLine(atlas, x2 + ls, y2, x2 + ls, y2 + ls, filter);
 						}
 					}
 
@@ -859,6 +975,8 @@ public class RendererSlick extends EventReceiver {
 				}
 			}
 		}
+
+		if(batch) blockBatch.end();
 	}
 
 	/**
@@ -1146,6 +1264,7 @@ public class RendererSlick extends EventReceiver {
 					int x2 = x + 8 + (fldWidth * fldBlkSize) + meterWidth;
 					NormalFontSlick.printFont(x2 + 16, y + 40, NullpoMinoSlick.getUIText("InGame_Next"), COLOR_ORANGE, 0.5f);
 
+					boolean batch = beginBlockBatch(1.0f);
 					for(int i = 0; i < engine.ruleopt.nextDisplay; i++) {
 						Piece piece = engine.getNextObject(engine.nextPieceCount + i);
 
@@ -1155,12 +1274,14 @@ public class RendererSlick extends EventReceiver {
 							drawPiece(x2 + centerX, y + 48 + (i * 64) + centerY, piece, 1.0f);
 						}
 					}
+					if(batch) blockBatch.end();
 				}
 			} else if(getNextDisplayType() == 1) {
 				if(engine.ruleopt.nextDisplay >= 1) {
 					int x2 = x + 8 + (fldWidth * fldBlkSize) + meterWidth;
 					NormalFontSlick.printFont(x2, y + 40, NullpoMinoSlick.getUIText("InGame_Next"), COLOR_ORANGE, 0.5f);
 
+					boolean batch = beginBlockBatch(0.5f);
 					for(int i = 0; i < engine.ruleopt.nextDisplay; i++) {
 						Piece piece = engine.getNextObject(engine.nextPieceCount + i);
 
@@ -1170,6 +1291,7 @@ public class RendererSlick extends EventReceiver {
 							drawPiece(x2 + centerX, y + 48 + (i * 32) + centerY, piece, 0.5f);
 						}
 					}
+					if(batch) blockBatch.end();
 				}
 			} else {
 				// NEXT1
@@ -1185,6 +1307,8 @@ public class RendererSlick extends EventReceiver {
 					}
 				}
 
+				boolean batch = beginBlockBatch(0.5f);
+
 				// NEXT2·3
 				for(int i = 0; i < engine.ruleopt.nextDisplay - 1; i++) {
 					if(i >= 2) break;
@@ -1207,6 +1331,8 @@ public class RendererSlick extends EventReceiver {
 							drawPiece(x + 168, y + (i * 40) + 88 - ((piece.getMaximumBlockY() + 1) * 8), piece, 0.5f);
 					}
 				}
+
+				if(batch) blockBatch.end();
 			}
 		}
 
@@ -1312,9 +1438,13 @@ public class RendererSlick extends EventReceiver {
 					bg = engine.owner.backgroundStatus.fadebg;
 				}
 
-				if((ResourceHolderSlick.imgPlayBG != null) && (bg >= 0) && (bg < ResourceHolderSlick.imgPlayBG.length) && (showbg == true)) {
+				Image imgBG = showbg ? ResourceHolderSlick.getBackgroundImage(bg) : null;
+				// Modes usually go to the next background
+				if(showbg) ResourceHolderSlick.preloadBackground(bg + 1);
+
+				if(imgBG != null) {
 					graphics.setColor(Color.white);
-					graphics.drawImage(ResourceHolderSlick.imgPlayBG[bg], 0, 0);
+					graphics.drawImage(imgBG, 0, 0);
 
 					if(engine.owner.backgroundStatus.fadesw && heavyeffect) {
 						Color filter = new Color(Color.black);
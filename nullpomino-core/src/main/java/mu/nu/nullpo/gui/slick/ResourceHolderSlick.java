@@ -33,6 +33,9 @@ import java.io.File;
 import java.util.LinkedList;
 
 import mu.nu.nullpo.game.component.BGMStatus;
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.gui.common.ResourceCache;
 
 import org.apache.log4j.Logger;
 import org.newdawn.slick.BigImage;
@@ -43,6 +46,9 @@ import org.newdawn.slick.UnicodeFont;
 import org.newdawn.slick.font.effects.ColorEffect;
 import org.newdawn.slick.font.effects.ShadowEffect;
 import org.newdawn.slick.openal.SoundStore;
+import org.newdawn.slick.opengl.ImageDataFactory;
+import org.newdawn.slick.opengl.LoadableImageData;
+import org.newdawn.slick.util.ResourceLoader;
 
 /**
  * Class to the management of image and sound
@@ -63,12 +69,21 @@ public class ResourceHolderSlick {
 	/** Number of gem block clear effects */
 	public static final int PERASE_MAX = 7;
 
-	/** Block images */
-	public static LinkedList<Image> imgNormalBlockList, imgSmallBlockList, imgBigBlockList;
+	/** Default number of loaded skins of each block size */
+	public static final int SKIN_CACHE_SIZE = 8;
+
+	/** Default number of loaded backgrounds */
+	public static final int BACKGROUND_CACHE_SIZE = 4;
+
+	/** Block images (loaded when used) */
+	public static ImageCache imgNormalBlock, imgSmallBlock, imgBigBlock;
 
 	/** Block sticky flag */
 	public static LinkedList<Boolean> blockStickyFlagList;
 
+	/** Block skin atlases (null if the blocks of that size are drawn from the images above) */
+	public static BlockAtlas atlasNormalBlock, atlasSmallBlock, atlasBigBlock;
+
 	/** Regular font */
 	public static Image imgFont, imgFontSmall;
 
@@ -94,8 +109,8 @@ public class ResourceHolderSlick {
 	/** Effects for clearing gem blocks */
 	public static Image[] imgPErase;
 
-	/** In playBackground */
-	public static Image[] imgPlayBG;
+	/** In playBackground (loaded when used, null if backgrounds are disabled) */
+	public static ImageCache imgPlayBG;
 
 	/** TTF font */
 	public static UnicodeFont ttfFont;
@@ -131,24 +146,44 @@ public class ResourceHolderSlick {
 		}
 		log.debug(numBlocks + " block skins found");
 
-		imgNormalBlockList = new LinkedList<Image>();
-		imgSmallBlockList = new LinkedList<Image>();
-		imgBigBlockList = new LinkedList<Image>();
+		// The skins are loaded the first time they're drawn; only the sizes are read here
+		int skinCacheSize = NullpoMinoSlick.propConfig.getProperty("option.skincachesize", SKIN_CACHE_SIZE);
+		imgNormalBlock = new ImageCache(skindir + "/graphics/blockskin/normal/n", skinCacheSize);
+		imgSmallBlock = new ImageCache(skindir + "/graphics/blockskin/small/s", skinCacheSize);
+		imgBigBlock = new ImageCache(skindir + "/graphics/blockskin/big/b", skinCacheSize);
 		blockStickyFlagList = new LinkedList<Boolean>();
 
 		for(int i = 0; i < numBlocks; i++) {
-			Image imgNormal = loadImage(skindir + "/graphics/blockskin/normal/n" + i + ".png");
-			imgNormalBlockList.add(imgNormal);
-			imgSmallBlockList.add(loadImage(skindir + "/graphics/blockskin/small/s" + i + ".png"));
-			imgBigBlockList.add(loadImage(skindir + "/graphics/blockskin/big/b" + i + ".png"));
+			int[] size = ResourceCache.readImageSize(new File(skindir + "/graphics/blockskin/normal/n" + i + ".png"));
 
-			if((imgNormal.getWidth() >= 400) && (imgNormal.getHeight() >= 304)) {
+			if((size != null) && (size[0] >= 400) && (size[1] >= 304)) {
 				blockStickyFlagList.add(Boolean.TRUE);
 			} else {
 				blockStickyFlagList.add(Boolean.FALSE);
 			}
 		}
 
+		// Block atlases
+		atlasNormalBlock = null;
+		atlasSmallBlock = null;
+		atlasBigBlock = null;
+		if(!NullpoMinoSlick.useBigImageTextureLoad && (numBlocks > 0) &&
+		   (NullpoMinoSlick.propConfig.getProperty("option.blockatlas", true) == true))
+		{
+			String[] normalFiles = new String[numBlocks];
+			String[] smallFiles = new String[numBlocks];
+			String[] bigFiles = new String[numBlocks];
+			for(int i = 0; i < numBlocks; i++) {
+				normalFiles[i] = skindir + "/graphics/blockskin/normal/n" + i + ".png";
+				smallFiles[i] = skindir + "/graphics/blockskin/small/s" + i + ".png";
+				bigFiles[i] = skindir + "/graphics/blockskin/big/b" + i + ".png";
+			}
+			int maxTextureSize = BlockAtlas.getMaxTextureSize();
+			atlasNormalBlock = BlockAtlas.create(normalFiles, maxTextureSize);
+			atlasSmallBlock = BlockAtlas.create(smallFiles, maxTextureSize);
+			atlasBigBlock = BlockAtlas.create(bigFiles, maxTextureSize);
+		}
+
 		// Other images
 		imgFont = loadImage(skindir + "/graphics/font.png");
 		imgFontSmall = loadImage(skindir + "/graphics/font_small.png");
@@ -266,15 +301,73 @@ public class ResourceHolderSlick {
 	}
 
 	/**
-	 * Load background images.
+	 * Enable background images. They're loaded the first time they're drawn.
 	 */
 	public static void loadBackgroundImages() {
 		if(imgPlayBG == null) {
-			imgPlayBG = new Image[BACKGROUND_MAX];
-
 			String skindir = NullpoMinoSlick.propConfig.getProperty("custom.skin.directory", "res");
-			for(int i = 0; i < imgPlayBG.length; i++)
-				imgPlayBG[i] = loadImage(skindir + "/graphics/back" + i + ".png");
+			imgPlayBG = new ImageCache(skindir + "/graphics/back",
+					NullpoMinoSlick.propConfig.getProperty("option.bgcachesize", BACKGROUND_CACHE_SIZE));
+		}
+	}
+
+	/**
+	 * @return Number of block skins
+	 */
+	public static int getBlockSkinCount() {
+		return blockStickyFlagList.size();
+	}
+
+	/**
+	 * Get a block skin image
+	 * @param skin Skin number
+	 * @param scale Size (0.5f, 1.0f, 2.0f)
+	 * @return Block skin image
+	 */
+	public static Image getBlockImage(int skin, float scale) {
+		if(scale == 0.5f) return imgSmallBlock.get(skin);
+		if(scale == 2.0f) return imgBigBlock.get(skin);
+		return imgNormalBlock.get(skin);
+	}
+
+	/**
+	 * Get a background image
+	 * @param bg Background number
+	 * @return Background image (null if backgrounds are disabled or there's no such background)
+	 */
+	public static Image getBackgroundImage(int bg) {
+		if((imgPlayBG == null) || (bg < 0) || (bg >= BACKGROUND_MAX)) return null;
+		return imgPlayBG.get(bg);
+	}
+
+	/**
+	 * Start loading a background in the background thread
+	 * @param bg Background number
+	 */
+	public static void preloadBackground(int bg) {
+		if((imgPlayBG != null) && (bg >= 0) && (bg < BACKGROUND_MAX)) imgPlayBG.preload(bg);
+	}
+
+	/**
+	 * Start loading the skins and backgrounds that a new game will use first in the background thread
+	 * (skins of the sizes drawn from a block atlas aren't needed)
+	 * @param manager GameManager of the game
+	 */
+	public static void preload(GameManager manager) {
+		for(int i = 0; i < manager.getPlayers(); i++) {
+			GameEngine engine = manager.engine[i];
+			int skin = engine.getSkin();
+			if((skin < 0) || (skin >= getBlockSkinCount())) skin = 0;
+			if(engine.displaysize == 1) {
+				if(atlasBigBlock == null) imgBigBlock.preload(skin);
+			} else {
+				if(atlasNormalBlock == null) imgNormalBlock.preload(skin);
+			}
+			if(atlasSmallBlock == null) imgSmallBlock.preload(skin);
+		}
+		if(manager.backgroundStatus != null) {
+			preloadBackground(manager.backgroundStatus.bg);
+			preloadBackground(manager.backgroundStatus.bg + 1);
 		}
 	}
 
@@ -479,4 +572,62 @@ public class ResourceHolderSlick {
 			}
 		}
 	}
+
+	/**
+	 * Images numbered from 0 that are loaded when used.<br>
+	 * The file is decoded on the preload thread; the texture is made on the GL thread.
+	 */
+	public static class ImageCache extends ResourceCache<LoadableImageData, Image> {
+		/** Filename without the number and ".png" */
+		protected String prefix;
+
+		/**
+		 * Constructor
+		 * @param prefix Filename without the number and ".png"
+		 * @param maxSize Maximum number of images kept
+		 */
+		public ImageCache(String prefix, int maxSize) {
+			super(maxSize);
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected LoadableImageData decode(int id) {
+			// BigImage is made from the file on the GL thread
+			if(NullpoMinoSlick.useBigImageTextureLoad) return null;
+
+			String filename = prefix + id + ".png";
+			try {
+				LoadableImageData data = ImageDataFactory.getImageDataFor(filename);
+				data.loadImage(ResourceLoader.getResourceAsStream(filename), false, null);
+				return data;
+			} catch (Throwable e) {
+				log.debug("Failed to decode image " + filename, e);
+				return null;
+			}
+		}
+
+		@Override
+		protected Image create(int id, LoadableImageData data) {
+			String filename = prefix + id + ".png";
+			if(data != null) {
+				log.debug("Loading image from " + filename);
+				try {
+					return new Image(data);
+				} catch (Throwable e) {
+					log.error("Failed to load image from " + filename, e);
+				}
+			}
+			return loadImage(filename);
+		}
+
+		@Override
+		protected void dispose(int id, Image value) {
+			try {
+				value.destroy();
+			} catch (SlickException e) {
+				log.debug("Failed to destroy image " + prefix + id + ".png", e);
+			}
+		}
+	}
 }
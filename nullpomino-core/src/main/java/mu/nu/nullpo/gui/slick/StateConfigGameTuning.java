@@ -242,6 +242,7 @@ public class StateConfigGameTuning extends BaseGameState {
 				gameManager.engine[i].aiMoveDelay = NullpoMinoSlick.propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = NullpoMinoSlick.propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = NullpoMinoSlick.propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowState", false);
@@ -299,9 +300,9 @@ public class StateConfigGameTuning extends BaseGameState {
 			NormalFontSlick.printFontGrid(2, 3, "A BUTTON ROTATE:" + strTemp, (cursor == 0));
 
 			NormalFontSlick.printFontGrid(2, 4, "BLOCK SKIN:" + ((owSkin == -1) ? "AUTO": String.valueOf(owSkin)), (cursor == 1));
-			if((owSkin >= 0) && (owSkin < ResourceHolderSlick.imgNormalBlockList.size())) {
+			if((owSkin >= 0) && (owSkin < ResourceHolderSlick.getBlockSkinCount())) {
 				//ResourceHolder.imgBlock.draw(256, 64, 256 + 144, 64 + 16, 0, owSkin * 16, 144, (owSkin * 16) + 16);
-				Image imgBlock = ResourceHolderSlick.imgNormalBlockList.get(owSkin);
+				Image imgBlock = ResourceHolderSlick.getBlockImage(owSkin, 1.0f);
 
 				if(ResourceHolderSlick.blockStickyFlagList.get(owSkin) == true) {
 					for(int j = 0; j < 9; j++) {
@@ -399,8 +400,8 @@ public class StateConfigGameTuning extends BaseGameState {
 					break;
 				case 1:
 					owSkin += change;
-					if(owSkin < -1) owSkin = ResourceHolderSlick.imgNormalBlockList.size() - 1;
-					if(owSkin > ResourceHolderSlick.imgNormalBlockList.size() - 1) owSkin = -1;
+					if(owSkin < -1) owSkin = ResourceHolderSlick.getBlockSkinCount() - 1;
+					if(owSkin > ResourceHolderSlick.getBlockSkinCount() - 1) owSkin = -1;
 					break;
 				case 2:
 					owMinDAS += change;
@@ -28,10 +28,14 @@
 */
 package mu.nu.nullpo.gui.slick;
 
+import java.util.Map;
+
 import org.apache.log4j.Logger;
 
+import mu.nu.nullpo.game.component.ReplayData;
 import mu.nu.nullpo.game.component.RuleOptions;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplaySeeker;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.game.subsystem.wallkick.Wallkick;
@@ -199,6 +203,7 @@ public class StateInGame extends BasicGameState {
 				gameManager.engine[i].aiMoveDelay = NullpoMinoSlick.propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = NullpoMinoSlick.propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = NullpoMinoSlick.propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowState", false);
@@ -209,6 +214,7 @@ public class StateInGame extends BasicGameState {
 			gameManager.engine[i].init();
 		}
 
+		ResourceHolderSlick.preload(gameManager);
 		updateTitleBarCaption();
 	}
 
@@ -216,10 +222,11 @@ public class StateInGame extends BasicGameState {
 	 * Start Replay game
 	 * @param prop CustomProperties with replay data in it
 	 */
-	public void startReplayGame(CustomProperties prop) {
+	public void startReplayGame(CustomProperties prop, Map<Integer, ReplayData> input) {
 		gameManager = new GameManager(new RendererSlick());
 		gameManager.replayMode = true;
 		gameManager.replayProp = prop;
+		gameManager.replayInput = input;
 		pause = false;
 
 		gameManager.receiver.setGraphics(appContainer.getGraphics());
@@ -234,6 +241,7 @@ public class StateInGame extends BasicGameState {
 		}
 
 		gameManager.init();
+		gameManager.replaySeeker = new ReplaySeeker(gameManager);
 
 		// Initialization for each player
 		for(int i = 0; i < gameManager.getPlayers(); i++) {
@@ -262,6 +270,7 @@ public class StateInGame extends BasicGameState {
 				gameManager.engine[i].aiMoveDelay = NullpoMinoSlick.propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = NullpoMinoSlick.propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = NullpoMinoSlick.propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = NullpoMinoSlick.propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = NullpoMinoSlick.propGlobal.getProperty(i + ".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSlick.propGlobal.getProperty(i + ".aiShowState", false);
@@ -272,6 +281,7 @@ public class StateInGame extends BasicGameState {
 			gameManager.engine[i].init();
 		}
 
+		ResourceHolderSlick.preload(gameManager);
 		updateTitleBarCaption();
 	}
 
@@ -482,6 +492,16 @@ public class StateInGame extends BasicGameState {
 		// Hide pause menu
 		pauseMessageHide = GameKeySlick.gamekey[0].isPressKey(GameKeySlick.BUTTON_C);
 
+		// Replay seek
+		if(gameManager.replayMode && !gameManager.replayRerecord && (gameManager.replaySeeker != null) && !pause) {
+			if(GameKeySlick.gamekey[0].isMenuRepeatKey(GameKeySlick.BUTTON_UP)) {
+				gameManager.replaySeeker.seek(gameManager.replaySeeker.getFrame() - ReplaySeeker.SEEK_FRAMES);
+			}
+			if(GameKeySlick.gamekey[0].isMenuRepeatKey(GameKeySlick.BUTTON_DOWN)) {
+				gameManager.replaySeeker.seek(gameManager.replaySeeker.getFrame() + ReplaySeeker.SEEK_FRAMES);
+			}
+		}
+
 		if(gameManager.replayMode && !gameManager.replayRerecord && gameManager.engine[0].gameActive) {
 			// Replay speed
 			if(GameKeySlick.gamekey[0].isMenuRepeatKey(GameKeySlick.BUTTON_LEFT)) {
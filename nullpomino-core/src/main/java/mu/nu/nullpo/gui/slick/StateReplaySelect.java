@@ -29,11 +29,14 @@
 package mu.nu.nullpo.gui.slick;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
 
+import mu.nu.nullpo.game.component.ReplayData;
+import mu.nu.nullpo.game.component.ReplayReader;
 import mu.nu.nullpo.game.component.Statistics;
 import mu.nu.nullpo.util.CustomProperties;
 import mu.nu.nullpo.util.GeneralUtil;
@@ -137,9 +140,8 @@ public class StateReplaySelect extends DummyMenuScrollState {
 			CustomProperties prop = new CustomProperties();
 
 			try {
-				FileInputStream in = new FileInputStream(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[i]);
-				prop.load(in);
-				in.close();
+				// The button input isn't needed for the list
+				prop = ReplayReader.load(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[i], null);
 			} catch (IOException e) {
 				log.error("Failed to load replay file (" + list[i] + ")", e);
 			}
@@ -175,18 +177,17 @@ public class StateReplaySelect extends DummyMenuScrollState {
 	protected boolean onDecide(GameContainer container, StateBasedGame game, int delta) {
 		ResourceHolderSlick.soundManager.play("decide");
 
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop;
+		Map<Integer, ReplayData> input = new TreeMap<Integer, ReplayData>();
 
 		try {
-			FileInputStream in = new FileInputStream(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[cursor]);
-			prop.load(in);
-			in.close();
+			prop = ReplayReader.load(NullpoMinoSlick.propGlobal.getProperty("custom.replay.directory", "replay") + "/" + list[cursor], input);
 		} catch (IOException e) {
 			log.error("Failed to load replay file from " + list[cursor], e);
 			return true;
 		}
 
-		NullpoMinoSlick.stateInGame.startReplayGame(prop);
+		NullpoMinoSlick.stateInGame.startReplayGame(prop, input);
 
 		game.enterState(StateInGame.ID);
 		return false;
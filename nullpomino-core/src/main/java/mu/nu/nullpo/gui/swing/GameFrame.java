@@ -50,6 +50,7 @@ import javax.swing.JFrame;
 
 import mu.nu.nullpo.game.net.NetObserverClient;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplaySeeker;
 
 import org.apache.log4j.Logger;
 
@@ -458,6 +459,16 @@ public class GameFrame extends JFrame implements Runnable {
 		// Hide pause menu
 		pauseMessageHide = GameKeySwing.gamekey[0].isPressKey(GameKeySwing.BUTTON_C);
 
+		// Replay seek
+		if(NullpoMinoSwing.gameManager.replayMode && !NullpoMinoSwing.gameManager.replayRerecord && (NullpoMinoSwing.gameManager.replaySeeker != null) && !pause) {
+			if(GameKeySwing.gamekey[0].isMenuRepeatKey(GameKeySwing.BUTTON_UP)) {
+				NullpoMinoSwing.gameManager.replaySeeker.seek(NullpoMinoSwing.gameManager.replaySeeker.getFrame() - ReplaySeeker.SEEK_FRAMES);
+			}
+			if(GameKeySwing.gamekey[0].isMenuRepeatKey(GameKeySwing.BUTTON_DOWN)) {
+				NullpoMinoSwing.gameManager.replaySeeker.seek(NullpoMinoSwing.gameManager.replaySeeker.getFrame() + ReplaySeeker.SEEK_FRAMES);
+			}
+		}
+
 		if(NullpoMinoSwing.gameManager.replayMode && !NullpoMinoSwing.gameManager.replayRerecord && NullpoMinoSwing.gameManager.engine[0].gameActive) {
 			// Replay speed
 			if(GameKeySwing.gamekey[0].isMenuRepeatKey(GameKeySwing.BUTTON_LEFT)) {
@@ -308,11 +308,11 @@ public class GameTuningFrame extends JFrame implements ActionListener {
 	 * BlockLoad an image
 	 */
 	protected void loadBlockSkins() {
-		int numSkins = ResourceHolderSwing.imgNormalBlockList.size();
+		int numSkins = ResourceHolderSwing.getBlockSkinCount();
 		imgBlockSkins = new BufferedImage[numSkins];
 
 		for(int i = 0; i < numSkins; i++) {
-			BufferedImage imgBlock = (BufferedImage) ResourceHolderSwing.imgNormalBlockList.get(i);
+			BufferedImage imgBlock = (BufferedImage) ResourceHolderSwing.getBlockImage(i, 1.0f);
 			boolean isSticky = ResourceHolderSwing.blockStickyFlagList.get(i);
 
 			imgBlockSkins[i] = new BufferedImage(144, 16, BufferedImage.TYPE_INT_RGB);
@@ -47,6 +47,8 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
 
 import javax.swing.BoxLayout;
 import javax.swing.DefaultListModel;
@@ -69,12 +71,15 @@ import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.filechooser.FileFilter;
 
+import mu.nu.nullpo.game.component.ReplayData;
+import mu.nu.nullpo.game.component.ReplayReader;
 import mu.nu.nullpo.game.component.RuleOptions;
 import mu.nu.nullpo.game.net.NetObserverClient;
 import mu.nu.nullpo.game.net.NetPlayerClient;
 import mu.nu.nullpo.game.net.NetRoomInfo;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.play.ReplaySeeker;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
 import mu.nu.nullpo.game.subsystem.mode.GameMode;
 import mu.nu.nullpo.game.subsystem.mode.NetDummyMode;
@@ -1022,6 +1027,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 				gameManager.engine[i].aiMoveDelay = propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = propGlobal.getProperty(i+".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = propGlobal.getProperty(i+".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSwing.propGlobal.getProperty(i+".aiShowState", false);
@@ -1031,6 +1037,8 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 			// Called at initialization
 			gameManager.engine[i].init();
 		}
+
+		ResourceHolderSwing.preload(gameManager);
 	}
 
 	/**
@@ -1039,12 +1047,11 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 	 */
 	public void startReplayGame(String filename) {
 		log.info("Loading Replay:" + filename);
-		CustomProperties prop = new CustomProperties();
+		CustomProperties prop;
+		Map<Integer, ReplayData> input = new TreeMap<Integer, ReplayData>();
 
 		try {
-			FileInputStream stream = new FileInputStream(filename);
-			prop.load(stream);
-			stream.close();
+			prop = ReplayReader.load(filename, input);
 		} catch (IOException e) {
 			log.error("Couldn't load replay file from " + filename, e);
 			return;
@@ -1054,6 +1061,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 		gameManager = new GameManager(rendererSwing);
 		gameManager.replayMode = true;
 		gameManager.replayProp = prop;
+		gameManager.replayInput = input;
 
 		// Mode
 		String modeName = prop.getProperty("name.mode", "");
@@ -1065,6 +1073,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 		}
 
 		gameManager.init();
+		gameManager.replaySeeker = new ReplaySeeker(gameManager);
 
 		// Initialization for each player
 		for(int i = 0; i < gameManager.getPlayers(); i++) {
@@ -1093,6 +1102,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 				gameManager.engine[i].aiMoveDelay = propGlobal.getProperty(i + ".aiMoveDelay", 0);
 				gameManager.engine[i].aiThinkDelay = propGlobal.getProperty(i + ".aiThinkDelay", 0);
 				gameManager.engine[i].aiUseThread = propGlobal.getProperty(i + ".aiUseThread", true);
+				gameManager.engine[i].aiParallel = propGlobal.getProperty(i + ".aiParallel", false);
 				gameManager.engine[i].aiShowHint = propGlobal.getProperty(i+".aiShowHint", false);
 				gameManager.engine[i].aiPrethink = propGlobal.getProperty(i+".aiPrethink", false);
 				gameManager.engine[i].aiShowState = NullpoMinoSwing.propGlobal.getProperty(i+".aiShowState", false);
@@ -1102,6 +1112,8 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 			// Called at initialization
 			gameManager.engine[i].init();
 		}
+
+		ResourceHolderSwing.preload(gameManager);
 	}
 
 	/**
@@ -1197,6 +1209,7 @@ public class NullpoMinoSwing extends JFrame implements ActionListener, NetLobbyL
 				gameManager.engine[0].aiMoveDelay = NullpoMinoSwing.propGlobal.getProperty(0 + ".aiMoveDelay", 0);
 				gameManager.engine[0].aiThinkDelay = NullpoMinoSwing.propGlobal.getProperty(0 + ".aiThinkDelay", 0);
 				gameManager.engine[0].aiUseThread = NullpoMinoSwing.propGlobal.getProperty(0 + ".aiUseThread", true);
+				gameManager.engine[0].aiParallel = NullpoMinoSwing.propGlobal.getProperty(0 + ".aiParallel", false);
 				gameManager.engine[0].aiShowHint = NullpoMinoSwing.propGlobal.getProperty(0+".aiShowHint", false);
 				gameManager.engine[0].aiPrethink = NullpoMinoSwing.propGlobal.getProperty(0+".aiPrethink", false);
 				gameManager.engine[0].aiShowState = NullpoMinoSwing.propGlobal.getProperty(0+".aiShowState", false);
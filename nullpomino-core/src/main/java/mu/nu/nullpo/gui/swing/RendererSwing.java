@@ -33,8 +33,11 @@ import java.awt.Color;
 import java.awt.Composite;
 import java.awt.Graphics2D;
 import java.awt.Image;
+import java.awt.Transparency;
 import java.awt.event.KeyEvent;
+import java.awt.image.BufferedImage;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import mu.nu.nullpo.game.component.Block;
 import mu.nu.nullpo.game.component.Field;
@@ -81,6 +84,114 @@ public class RendererSwing extends EventReceiver {
 	/** Line clear effect speed */
 	protected int lineeffectspeed;
 
+	/** Cached field block layer of each player */
+	protected FieldLayer[] fieldLayers = new FieldLayer[0];
+
+	/**
+	 * Field blocks drawn to an image, which is only drawn again where the field changed.
+	 * The state of every cell at the last draw is kept to find the cells that changed.
+	 */
+	protected static class FieldLayer {
+		/** Number of ints of the state of a cell */
+		protected static final int STATE_SIZE = 6;
+
+		/** Image (Transparent where there is no block) */
+		protected BufferedImage image;
+
+		/** Graphics of the image */
+		protected Graphics2D graphics;
+
+		/** Settings the whole layer depends on */
+		protected int width, height, blksize, outlineType;
+		protected boolean showInvisible;
+
+		/** State of every cell at the last draw (from the hidden row above the field: the outlines of the top row depend on it) */
+		protected int[] states;
+
+		/** Cells changed since the last draw (The state of the cell or of a neighbor changed) */
+		protected boolean[] dirty;
+
+		/**
+		 * Update the settings, and create the image if they changed
+		 * @param width Field width
+		 * @param height Field height
+		 * @param blksize Block size
+		 * @param outlineType Block outline type
+		 * @param showInvisible true if invisible blocks are shown
+		 * @param device Graphics of the screen (used to create a compatible image)
+		 * @return true if the whole layer has to be drawn again
+		 */
+		protected boolean update(int width, int height, int blksize, int outlineType, boolean showInvisible, Graphics2D device) {
+			if((image != null) && (width == this.width) && (height == this.height) && (blksize == this.blksize) &&
+			   (outlineType == this.outlineType) && (showInvisible == this.showInvisible))
+			{
+				return false;
+			}
+
+			if((image == null) || (width != this.width) || (height != this.height) || (blksize != this.blksize)) {
+				if(graphics != null) graphics.dispose();
+				image = device.getDeviceConfiguration().createCompatibleImage(width * blksize, height * blksize, Transparency.TRANSLUCENT);
+				graphics = image.createGraphics();
+				states = new int[width * (height + 1) * STATE_SIZE];
+				dirty = new boolean[width * height];
+			}
+			this.width = width;
+			this.height = height;
+			this.blksize = blksize;
+			this.outlineType = outlineType;
+			this.showInvisible = showInvisible;
+			return true;
+		}
+
+		/**
+		 * Compare the field with the state of the last draw
+		 * @param field Field (can be null)
+		 * @param viewHeight Number of visible rows
+		 * @param redrawAll true to mark every cell as changed
+		 * @return Cells to draw again
+		 */
+		protected boolean[] updateCells(Field field, int viewHeight, boolean redrawAll) {
+			Arrays.fill(dirty, redrawAll);
+
+			for(int i = -1; i < height; i++) {
+				for(int j = 0; j < width; j++) {
+					int index = ((i + 1) * width + j) * STATE_SIZE;
+					Block blk = ((field != null) && (i < viewHeight)) ? field.getBlock(j, i) : null;
+
+					int color = Block.BLOCK_COLOR_NONE, drawColor = 0, skin = 0, attribute = 0, darkness = 0, alpha = 0;
+					if(blk != null) {
+						color = blk.color;
+						drawColor = blk.getDrawColor();
+						skin = blk.skin;
+						attribute = blk.attribute;
+						darkness = Float.floatToIntBits(blk.darkness);
+						alpha = Float.floatToIntBits(blk.alpha);
+					}
+
+					if((states[index] != color) || (states[index + 1] != drawColor) || (states[index + 2] != skin) ||
+					   (states[index + 3] != attribute) || (states[index + 4] != darkness) || (states[index + 5] != alpha))
+					{
+						states[index] = color;
+						states[index + 1] = drawColor;
+						states[index + 2] = skin;
+						states[index + 3] = attribute;
+						states[index + 4] = darkness;
+						states[index + 5] = alpha;
+
+						// The outlines of the neighbors depend on this cell
+						if(i >= 0) dirty[(i * width) + j] = true;
+						if(i - 1 >= 0) dirty[((i - 1) * width) + j] = true;
+						if(i + 1 < height) dirty[((i + 1) * width) + j] = true;
+						if((i >= 0) && (j - 1 >= 0)) dirty[(i * width) + j - 1] = true;
+						if((i >= 0) && (j + 1 < width)) dirty[(i * width) + j + 1] = true;
+					}
+				}
+			}
+
+			return dirty;
+		}
+	}
+
 	public static Color getMeterColorAsColor(int meterColor) {
 		switch(meterColor) {
 		case GameEngine.METER_COLOR_PINK:		return new Color(255,  0,255);
@@ -340,7 +451,9 @@ public class RendererSwing extends EventReceiver {
 	public void saveReplay(GameManager owner, CustomProperties prop) {
 		if(owner.mode.isNetplayMode()) return;
 
-		saveReplay(owner, prop, NullpoMinoSwing.propGlobal.getProperty("custom.replay.directory", "replay"));
+		saveReplay(owner, prop, NullpoMinoSwing.propGlobal.getProperty("custom.replay.directory", "replay"),
+				   NullpoMinoSwing.propGlobal.getProperty("custom.replay.binary", true),
+				   NullpoMinoSwing.propGlobal.getProperty("custom.replay.compress", true));
 	}
 
 	/*
@@ -367,19 +480,13 @@ public class RendererSwing extends EventReceiver {
 		if(graphics == null) return;
 
 		if((color <= Block.BLOCK_COLOR_INVALID)) return;
-		if(skin >= ResourceHolderSwing.imgNormalBlockList.size()) skin = 0;
+		if(skin >= ResourceHolderSwing.getBlockSkinCount()) skin = 0;
 
 		boolean isSpecialBlocks = (color >= Block.BLOCK_COLOR_COUNT);
 		boolean isSticky = ResourceHolderSwing.blockStickyFlagList.get(skin);
 
 		int size = (int)(16 * scale);
-		Image img = null;
-		if(scale == 0.5f)
-			img = ResourceHolderSwing.imgSmallBlockList.get(skin);
-		else if(scale == 2.0f)
-			img = ResourceHolderSwing.imgBigBlockList.get(skin);
-		else
-			img = ResourceHolderSwing.imgNormalBlockList.get(skin);
+		Image img = ResourceHolderSwing.getBlockImage(skin, scale);
 
 		int sx = color * size;
 		if(bone) sx += 9 * size;
@@ -872,54 +979,29 @@ public class RendererSwing extends EventReceiver {
 
 		int outlineType = engine.blockOutlineType;
 		if(engine.owBlockOutlineType != -1) outlineType = engine.owBlockOutlineType;
+		boolean showInvisible = engine.owner.replayMode && engine.owner.replayShowInvisible;
 
-		for(int i = 0; i < viewHeight; i++) {
-			for(int j = 0; j < width; j++) {
-				int x2 = x + (j * blksize);
-				int y2 = y + (i * blksize);
-
-				Block blk = null;
-				if(field != null) blk = field.getBlock(j, i);
-
-				if((field != null) && (blk != null) && (blk.color > Block.BLOCK_COLOR_NONE)) {
-					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_WALL)) {
-						drawBlock(x2, y2, Block.BLOCK_COLOR_NONE, blk.skin, blk.getAttribute(Block.BLOCK_ATTRIBUTE_BONE),
-								  blk.darkness, blk.alpha, scale, blk.attribute);
-					} else if (showfieldblockgraphics && engine.owner.replayMode && engine.owner.replayShowInvisible) {
-						drawBlockForceVisible(x2, y2, blk, scale);
-					} else if(showfieldblockgraphics && blk.getAttribute(Block.BLOCK_ATTRIBUTE_VISIBLE)) {
-						drawBlock(x2, y2, blk, scale);
-					} else if( ((width > 10) && (height > 20)) || (!showfieldbggrid) ) {
-						int sx = (((i % 2 == 0) && (j % 2 == 0)) || ((i % 2 != 0) && (j % 2 != 0))) ? 0 : 16;
-						graphics.drawImage(ResourceHolderSwing.imgFieldbg, x2, y2, x2+blksize, y2+blksize, sx, 0, sx+16, 16, null);
-					}
+		// The blocks are drawn to a cached layer, and only the cells that changed since the last frame are drawn again
+		FieldLayer layer = getFieldLayer(engine.playerID);
+		boolean redrawAll = layer.update(width, height, blksize, outlineType, showInvisible, graphics);
+		boolean[] dirty = layer.updateCells(field, viewHeight, redrawAll);
 
-					if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_OUTLINE) && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_BONE)) {
-						graphics.setColor(Color.white);
-						int ls = (blksize-1);
-						if(outlineType == GameEngine.BLOCK_OUTLINE_NORMAL) {
-							if(field.getBlockColor(j, i - 1) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2, x2 + ls, y2);
-							if(field.getBlockColor(j, i + 1) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
-							if(field.getBlockColor(j - 1, i) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2, x2, y2 + ls);
-							if(field.getBlockColor(j + 1, i) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
-						} else if(outlineType == GameEngine.BLOCK_OUTLINE_CONNECT) {
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP))     graphics.drawLine(x2, y2, x2 + ls, y2);
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN))   graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT))   graphics.drawLine(x2, y2, x2, y2 + ls);
-							if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT))  graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
-						} else if(outlineType == GameEngine.BLOCK_OUTLINE_SAMECOLOR) {
-							if(field.getBlockColor(j, i - 1) != blk.color) graphics.drawLine(x2, y2, x2 + ls, y2);
-							if(field.getBlockColor(j, i + 1) != blk.color) graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
-							if(field.getBlockColor(j - 1, i) != blk.color) graphics.drawLine(x2, y2, x2, y2 + ls);
-							if(field.getBlockColor(j + 1, i) != blk.color) graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
-						}
-					}
-				} else if( ((width > 10) && (height > 20)) || (!showfieldbggrid) ) {
-					int sx = (((i % 2 == 0) && (j % 2 == 0)) || ((i % 2 != 0) && (j % 2 != 0))) ? 0 : 16;
-					graphics.drawImage(ResourceHolderSwing.imgFieldbg, x2, y2, x2+blksize, y2+blksize, sx, 0, sx+16, 16, null);
-				}
+		Graphics2D backupGraphics = graphics;
+		graphics = layer.graphics;
+		for(int i = 0; i < height; i++) {
+			for(int j = 0; j < width; j++) {
+				if(!dirty[(i * width) + j]) continue;
+
+				int x2 = j * blksize;
+				int y2 = i * blksize;
+				graphics.setComposite(AlphaComposite.Clear);
+				graphics.fillRect(x2, y2, blksize, blksize);
+				graphics.setComposite(AlphaComposite.SrcOver);
+				if(i < viewHeight) drawFieldCell(x2, y2, j, i, engine, field, width, height, blksize, scale, outlineType);
 			}
 		}
+		graphics = backupGraphics;
+		graphics.drawImage(layer.image, x, y, null);
 
 		// BunglerHIDDEN
 		if((engine.heboHiddenEnable) && (engine.gameActive) && (field != null)) {
@@ -933,6 +1015,80 @@ public class RendererSwing extends EventReceiver {
 		}
 	}
 
+	/**
+	 * Get the cached field layer of a player
+	 * @param playerID Player ID
+	 * @return Field layer
+	 */
+	protected FieldLayer getFieldLayer(int playerID) {
+		if(playerID >= fieldLayers.length) {
+			fieldLayers = Arrays.copyOf(fieldLayers, playerID + 1);
+		}
+		if(fieldLayers[playerID] == null) {
+			fieldLayers[playerID] = new FieldLayer();
+		}
+		return fieldLayers[playerID];
+	}
+
+	/**
+	 * Draw a cell of the field
+	 * @param x2 X-coordinate of the cell
+	 * @param y2 Y-coordinate of the cell
+	 * @param j X position in the field
+	 * @param i Y position in the field
+	 * @param engine GameEngineInstance of
+	 * @param field Field (can be null)
+	 * @param width Field width
+	 * @param height Field height
+	 * @param blksize Block size
+	 * @param scale Enlargement factor
+	 * @param outlineType Block outline type
+	 */
+	protected void drawFieldCell(int x2, int y2, int j, int i, GameEngine engine, Field field, int width, int height,
+		int blksize, float scale, int outlineType)
+	{
+		Block blk = null;
+		if(field != null) blk = field.getBlock(j, i);
+
+		if((field != null) && (blk != null) && (blk.color > Block.BLOCK_COLOR_NONE)) {
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_WALL)) {
+				drawBlock(x2, y2, Block.BLOCK_COLOR_NONE, blk.skin, blk.getAttribute(Block.BLOCK_ATTRIBUTE_BONE),
+						  blk.darkness, blk.alpha, scale, blk.attribute);
+			} else if (showfieldblockgraphics && engine.owner.replayMode && engine.owner.replayShowInvisible) {
+				drawBlockForceVisible(x2, y2, blk, scale);
+			} else if(showfieldblockgraphics && blk.getAttribute(Block.BLOCK_ATTRIBUTE_VISIBLE)) {
+				drawBlock(x2, y2, blk, scale);
+			} else if( ((width > 10) && (height > 20)) || (!showfieldbggrid) ) {
+				int sx = (((i % 2 == 0) && (j % 2 == 0)) || ((i % 2 != 0) && (j % 2 != 0))) ? 0 : 16;
+				graphics.drawImage(ResourceHolderSwing.imgFieldbg, x2, y2, x2+blksize, y2+blksize, sx, 0, sx+16, 16, null);
+			}
+
+			if(blk.getAttribute(Block.BLOCK_ATTRIBUTE_OUTLINE) && !blk.getAttribute(Block.BLOCK_ATTRIBUTE_BONE)) {
+				graphics.setColor(Color.white);
+				int ls = (blksize-1);
+				if(outlineType == GameEngine.BLOCK_OUTLINE_NORMAL) {
+					if(field.getBlockColor(j, i - 1) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2, x2 + ls, y2);
+					if(field.getBlockColor(j, i + 1) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
+					if(field.getBlockColor(j - 1, i) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2, y2, x2, y2 + ls);
+					if(field.getBlockColor(j + 1, i) == Block.BLOCK_COLOR_NONE) graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
+				} else if(outlineType == GameEngine.BLOCK_OUTLINE_CONNECT) {
+					if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_UP))     graphics.drawLine(x2, y2, x2 + ls, y2);
+					if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_DOWN))   graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
+					if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_LEFT))   graphics.drawLine(x2, y2, x2, y2 + ls);
+					if(!blk.getAttribute(Block.BLOCK_ATTRIBUTE_CONNECT_RIGHT))  graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
+				} else if(outlineType == GameEngine.BLOCK_OUTLINE_SAMECOLOR) {
+					if(field.getBlockColor(j, i - 1) != blk.color) graphics.drawLine(x2, y2, x2 + ls, y2);
+					if(field.getBlockColor(j, i + 1) != blk.color) graphics.drawLine(x2, y2 + ls, x2 + ls, y2 + ls);
+					if(field.getBlockColor(j - 1, i) != blk.color) graphics.drawLine(x2, y2, x2, y2 + ls);
+					if(field.getBlockColor(j + 1, i) != blk.color) graphics.drawLine(x2 + ls, y2, x2 + ls, y2 + ls);
+				}
+			}
+		} else if( ((width > 10) && (height > 20)) || (!showfieldbggrid) ) {
+			int sx = (((i % 2 == 0) && (j % 2 == 0)) || ((i % 2 != 0) && (j % 2 != 0))) ? 0 : 16;
+			graphics.drawImage(ResourceHolderSwing.imgFieldbg, x2, y2, x2+blksize, y2+blksize, sx, 0, sx+16, 16, null);
+		}
+	}
+
 	/**
 	 * Field frameDraw a
 	 * @param x X-coordinate
@@ -1307,9 +1463,12 @@ public class RendererSwing extends EventReceiver {
 				int bg = engine.owner.backgroundStatus.bg;
 				if(engine.owner.backgroundStatus.fadesw) bg = engine.owner.backgroundStatus.fadebg;
 
-				if((ResourceHolderSwing.imgPlayBG != null) && (bg >= 0) && (bg < ResourceHolderSwing.BACKGROUND_MAX)) {
-					graphics.drawImage(ResourceHolderSwing.imgPlayBG[bg], 0, 0, null);
+				Image img = ResourceHolderSwing.getBackgroundImage(bg);
+				if(img != null) {
+					graphics.drawImage(img, 0, 0, null);
 				}
+				// Modes usually go to the next background
+				ResourceHolderSwing.preloadBackground(bg + 1);
 			}
 		}
 
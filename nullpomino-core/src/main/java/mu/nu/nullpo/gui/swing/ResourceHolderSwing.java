@@ -37,6 +37,10 @@ import java.util.LinkedList;
 
 import javax.imageio.ImageIO;
 
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.gui.common.ResourceCache;
+
 import org.apache.log4j.Logger;
 
 /**
@@ -55,11 +59,17 @@ public class ResourceHolderSwing {
 	/** Number of gem block clear effects */
 	public static final int PERASE_MAX = 7;
 
+	/** Default number of loaded skins of each block size */
+	public static final int SKIN_CACHE_SIZE = 8;
+
+	/** Default number of loaded backgrounds */
+	public static final int BACKGROUND_CACHE_SIZE = 4;
+
 	/** Log */
 	static Logger log = Logger.getLogger(ResourceHolderSwing.class);
 
-	/** Block images */
-	public static LinkedList<Image> imgNormalBlockList, imgSmallBlockList, imgBigBlockList;
+	/** Block images (loaded when used) */
+	public static ImageCache imgNormalBlock, imgSmallBlock, imgBigBlock;
 
 	/** Block sticky flag */
 	public static LinkedList<Boolean> blockStickyFlagList;
@@ -79,8 +89,8 @@ public class ResourceHolderSwing {
 	/** Effects for clearing gem blocks */
 	public static Image[] imgPErase;
 
-	/** In playBackground */
-	public static Image[] imgPlayBG;
+	/** In playBackground (loaded when used, null if backgrounds are disabled) */
+	public static ImageCache imgPlayBG;
 
 	/** Audio file management */
 	public static WaveEngine soundManager;
@@ -104,18 +114,17 @@ public class ResourceHolderSwing {
 		}
 		log.debug(numBlocks + " block skins found");
 
-		imgNormalBlockList = new LinkedList<Image>();
-		imgSmallBlockList = new LinkedList<Image>();
-		imgBigBlockList = new LinkedList<Image>();
+		// The skins are loaded the first time they're drawn; only the sizes are read here
+		int skinCacheSize = NullpoMinoSwing.propConfig.getProperty("option.skincachesize", SKIN_CACHE_SIZE);
+		imgNormalBlock = new ImageCache(skindir + "/graphics/blockskin/normal/n", skinCacheSize);
+		imgSmallBlock = new ImageCache(skindir + "/graphics/blockskin/small/s", skinCacheSize);
+		imgBigBlock = new ImageCache(skindir + "/graphics/blockskin/big/b", skinCacheSize);
 		blockStickyFlagList = new LinkedList<Boolean>();
 
 		for(int i = 0; i < numBlocks; i++) {
-			Image imgNormal = loadImage(getURL(skindir + "/graphics/blockskin/normal/n" + i + ".png"));
-			imgNormalBlockList.add(imgNormal);
-			imgSmallBlockList.add(loadImage(getURL(skindir + "/graphics/blockskin/small/s" + i + ".png")));
-			imgBigBlockList.add(loadImage(getURL(skindir + "/graphics/blockskin/big/b" + i + ".png")));
+			int[] size = ResourceCache.readImageSize(new File(skindir + "/graphics/blockskin/normal/n" + i + ".png"));
 
-			if((imgNormal.getWidth(null) >= 400) && (imgNormal.getHeight(null) >= 304)) {
+			if((size != null) && (size[0] >= 400) && (size[1] >= 304)) {
 				blockStickyFlagList.add(Boolean.TRUE);
 			} else {
 				blockStickyFlagList.add(Boolean.FALSE);
@@ -213,16 +222,69 @@ public class ResourceHolderSwing {
 	}
 
 	/**
-	 * Load background images.
+	 * Enable background images. They're loaded the first time they're drawn.
 	 */
 	public static void loadBackgroundImages() {
 		if(imgPlayBG == null) {
-			imgPlayBG = new Image[BACKGROUND_MAX];
-
 			String skindir = NullpoMinoSwing.propConfig.getProperty("custom.skin.directory", "res");
-			for(int i = 0; i < BACKGROUND_MAX; i++) {
-				imgPlayBG[i] = loadImage(getURL(skindir + "/graphics/back" + i + ".png"));
-			}
+			imgPlayBG = new ImageCache(skindir + "/graphics/back",
+					NullpoMinoSwing.propConfig.getProperty("option.bgcachesize", BACKGROUND_CACHE_SIZE));
+		}
+	}
+
+	/**
+	 * @return Number of block skins
+	 */
+	public static int getBlockSkinCount() {
+		return blockStickyFlagList.size();
+	}
+
+	/**
+	 * Get a block skin image
+	 * @param skin Skin number
+	 * @param scale Size (0.5f, 1.0f, 2.0f)
+	 * @return Block skin image
+	 */
+	public static Image getBlockImage(int skin, float scale) {
+		if(scale == 0.5f) return imgSmallBlock.get(skin);
+		if(scale == 2.0f) return imgBigBlock.get(skin);
+		return imgNormalBlock.get(skin);
+	}
+
+	/**
+	 * Get a background image
+	 * @param bg Background number
+	 * @return Background image (null if backgrounds are disabled or there's no such background)
+	 */
+	public static Image getBackgroundImage(int bg) {
+		if((imgPlayBG == null) || (bg < 0) || (bg >= BACKGROUND_MAX)) return null;
+		return imgPlayBG.get(bg);
+	}
+
+	/**
+	 * Start loading a background in the background thread
+	 * @param bg Background number
+	 */
+	public static void preloadBackground(int bg) {
+		if((imgPlayBG != null) && (bg >= 0) && (bg < BACKGROUND_MAX)) imgPlayBG.preload(bg);
+	}
+
+	/**
+	 * Start loading the skins and backgrounds that a new game will use first in the background thread
+	 * @param manager GameManager of the game
+	 */
+	public static void preload(GameManager manager) {
+		for(int i = 0; i < manager.getPlayers(); i++) {
+			GameEngine engine = manager.engine[i];
+			int skin = engine.getSkin();
+			if((skin < 0) || (skin >= getBlockSkinCount())) skin = 0;
+			if(engine.displaysize == 1) imgBigBlock.preload(skin);
+			else imgNormalBlock.preload(skin);
+			imgSmallBlock.preload(skin);
+		}
+		if(manager.backgroundStatus != null) {
+			preloadBackground(manager.backgroundStatus.bg);
+			preloadBackground(manager.backgroundStatus.bg + 1);
 		}
 	}
 
@@ -298,4 +360,37 @@ public class ResourceHolderSwing {
 
 		return url;
 	}
+
+	/**
+	 * Images numbered from 0 that are loaded when used
+	 */
+	public static class ImageCache extends ResourceCache<BufferedImage, BufferedImage> {
+		/** Filename without the number and ".png" */
+		protected String prefix;
+
+		/**
+		 * Constructor
+		 * @param prefix Filename without the number and ".png"
+		 * @param maxSize Maximum number of images kept
+		 */
+		public ImageCache(String prefix, int maxSize) {
+			super(maxSize);
+			this.prefix = prefix;
+		}
+
+		@Override
+		protected BufferedImage decode(int id) {
+			return loadImage(getURL(prefix + id + ".png"));
+		}
+
+		@Override
+		protected BufferedImage create(int id, BufferedImage data) {
+			return data;
+		}
+
+		@Override
+		protected void dispose(int id, BufferedImage value) {
+			value.flush();
+		}
+	}
 }
@@ -28,43 +28,75 @@
 */
 package mu.nu.nullpo.gui.swing;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.Clip;
 import javax.sound.sampled.DataLine;
-import javax.sound.sampled.FloatControl;
-import javax.sound.sampled.LineEvent;
-import javax.sound.sampled.LineListener;
 import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
 import javax.sound.sampled.UnsupportedAudioFileException;
 
 import org.apache.log4j.Logger;
 
 /**
- * Sound engine
- * <a href="http://javagame.skr.jp/index.php?%A5%B5%A5%A6%A5%F3%A5%C9%A5%A8%A5%F3%A5%B8%A5%F3">Reprint yuan</a>
+ * Sound engine<br>
+ * All the sounds are converted to one format when loaded and mixed in software into a single line.
+ * Any number of sounds (up to VOICE_MAX) can be played at the same time, including the same sound,
+ * and each one starts at the sample that matches the time play was called,
+ * so every sound is delayed by the same amount whatever the timing of the mixer thread.
  */
-public class WaveEngine implements LineListener {
+public class WaveEngine {
 	/** Log */
 	static Logger log = Logger.getLogger(WaveEngine.class);
 
+	/** Sample rate of the mixer */
+	public static final float MIX_RATE = 44100f;
+
+	/** Number of frames mixed at a time (about 6ms) */
+	public static final int BLOCK_FRAMES = 256;
+
+	/** Size of the line buffer in blocks */
+	public static final int LINE_BLOCKS = 4;
+
+	/** Number of sounds that can be played at the same time */
+	public static final int VOICE_MAX = 16;
+
+	/** Format of the line (16bit signed stereo) */
+	private static final AudioFormat MIX_FORMAT = new AudioFormat(MIX_RATE, 16, 2, true, false);
+
 	/** You can registerWAVE file OfMaximumcount */
 	private int maxClips;
 
-	/** WAVE file  data (Name-> dataBody) */
-	private HashMap<String, Clip> clipMap;
+	/** WAVE file  data (Name-> 16bit stereo samples at MIX_RATE) */
+	private HashMap<String, short[]> clipMap;
 
 	/** Was registeredWAVE file count */
 	private int counter = 0;
 
 	/** Volume */
-	private double volume = 1.0;
+	private volatile double volume = 1.0;
+
+	/** Sounds to start or stop, passed to the mixer thread */
+	private ConcurrentLinkedQueue<Trigger> triggers;
+
+	/** Sounds being played (only used by the mixer thread) */
+	private Voice[] voices;
+
+	/** Output line */
+	private SourceDataLine line;
+
+	/** Mixer thread */
+	private Thread mixerThread;
+
+	/** true if the line couldn't be opened */
+	private boolean lineFailed;
 
 	/**
 	 * Constructor
@@ -79,7 +111,12 @@ public class WaveEngine implements LineListener {
 	 */
 	public WaveEngine(int maxClips) {
 		this.maxClips = maxClips;
-		clipMap = new HashMap<String, Clip>(maxClips);
+		clipMap = new HashMap<String, short[]>(maxClips);
+		triggers = new ConcurrentLinkedQueue<Trigger>();
+		voices = new Voice[VOICE_MAX];
+		for(int i = 0; i < voices.length; i++) {
+			voices[i] = new Voice();
+		}
 	}
 
 	/**
@@ -96,15 +133,6 @@ public class WaveEngine implements LineListener {
 	 */
 	public void setVolume(double vol) {
 		volume = vol;
-
-		Set<String> set = clipMap.keySet();
-		for(String name: set) {
-			try {
-				Clip clip = clipMap.get(name);
-				FloatControl ctrl = (FloatControl)clip.getControl(FloatControl.Type.MASTER_GAIN);
-				ctrl.setValue((float)Math.log10(volume) * 20);
-			} catch (Exception e) {}
-		}
 	}
 
 	/**
@@ -130,37 +158,17 @@ public class WaveEngine implements LineListener {
 		try {
 			// Open the audio stream
 			AudioInputStream stream = AudioSystem.getAudioInputStream(url);
+			short[] samples = convert(stream);
+			stream.close();
 
-			// Obtains the audio format
-			AudioFormat format = stream.getFormat();
-
-			// ULAW/ALAWIf the format isPCMChange the format
-			if((format.getEncoding() == AudioFormat.Encoding.ULAW) || (format.getEncoding() == AudioFormat.Encoding.ALAW)) {
-				AudioFormat newFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED,
-														format.getSampleRate(), format.getSampleSizeInBits() * 2,
-														format.getChannels(), format.getFrameSize() * 2, format.getFrameRate(),
-														true);
-				stream = AudioSystem.getAudioInputStream(newFormat, stream);
-				format = newFormat;
-			}
+			clipMap.put(name, samples);
+			counter++;
 
-			// LinesGet information
-			DataLine.Info info = new DataLine.Info(Clip.class, format);
-			// Create an empty clip
-			Clip clip = (Clip) AudioSystem.getLine(info);
-			// Clip event Monitoring
-			clip.addLineListener(this);
-			// Opened as a clip the audio stream
-			clip.open(stream);
-			// Submit a clip
-			clipMap.put(name, clip);
-
-			// Close the stream
-			stream.close();
-		} catch (LineUnavailableException e) {
-			log.warn(name + " : Failed to open line", e);
+			if(mixerThread == null) open();
 		} catch (UnsupportedAudioFileException e) {
 			log.warn(name + " : This is not a wave file", e);
+		} catch (IllegalArgumentException e) {
+			log.warn(name + " : Unsupported format", e);
 		} catch (IOException e) {
 			log.warn(name + " : Load failed", e);
 		}
@@ -171,15 +179,10 @@ public class WaveEngine implements LineListener {
 	 * @param name Registered name
 	 */
 	public void play(String name) {
-		Clip clip = clipMap.get(name);
+		short[] samples = clipMap.get(name);
 
-		if(clip != null) {
-			// Stop
-			clip.stop();
-			// Playback position back to the beginning
-			clip.setFramePosition(0);
-			// Playback
-			clip.start();
+		if((samples != null) && (mixerThread != null)) {
+			triggers.add(new Trigger(name, samples, System.nanoTime()));
 		}
 	}
 
@@ -188,22 +191,215 @@ public class WaveEngine implements LineListener {
 	 * @param name Registered name
 	 */
 	public void stop(String name) {
-		Clip clip = clipMap.get(name);
+		if(mixerThread != null) {
+			triggers.add(new Trigger(name, null, System.nanoTime()));
+		}
+	}
 
-		if(clip != null) {
-			clip.stop();
+	/**
+	 * Convert a sound to the format of the mixer
+	 * @param stream Audio stream
+	 * @return 16bit stereo samples at MIX_RATE
+	 * @throws IOException If it can't be read
+	 */
+	private static short[] convert(AudioInputStream stream) throws IOException {
+		// ULAW, ALAW, 8bit etc. are converted to 16bit signed little endian first
+		AudioFormat format = stream.getFormat();
+		int channels = format.getChannels();
+		AudioFormat pcmFormat = new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16,
+												channels, channels * 2, format.getSampleRate(), false);
+		if(!format.matches(pcmFormat)) {
+			stream = AudioSystem.getAudioInputStream(pcmFormat, stream);
+		}
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buf = new byte[8192];
+		int len;
+		while((len = stream.read(buf)) > 0) {
+			out.write(buf, 0, len);
+		}
+		byte[] bytes = out.toByteArray();
+
+		// To stereo (a mono sound is played on both sides, channels after the 2nd are dropped)
+		int frames = bytes.length / (channels * 2);
+		short[] stereo = new short[frames * 2];
+		for(int i = 0; i < frames; i++) {
+			int p = i * channels * 2;
+			short left = (short)((bytes[p] & 0xFF) | (bytes[p + 1] << 8));
+			short right = left;
+			if(channels >= 2) right = (short)((bytes[p + 2] & 0xFF) | (bytes[p + 3] << 8));
+			stereo[i * 2] = left;
+			stereo[(i * 2) + 1] = right;
 		}
+
+		// To the sample rate of the mixer (linear interpolation)
+		float rate = format.getSampleRate();
+		if((rate == MIX_RATE) || (frames == 0)) return stereo;
+
+		double step = rate / MIX_RATE;
+		int newFrames = (int)((frames - 1) / step) + 1;
+		short[] resampled = new short[newFrames * 2];
+		for(int i = 0; i < newFrames; i++) {
+			double pos = i * step;
+			int p = (int)pos;
+			double frac = pos - p;
+			int q = Math.min(p + 1, frames - 1);
+			resampled[i * 2] = (short)Math.round(stereo[p * 2] + ((stereo[q * 2] - stereo[p * 2]) * frac));
+			resampled[(i * 2) + 1] = (short)Math.round(stereo[(p * 2) + 1] + ((stereo[(q * 2) + 1] - stereo[(p * 2) + 1]) * frac));
+		}
+		return resampled;
 	}
 
-	/*
-	 * Lines stateChange
+	/**
+	 * Open the line and start the mixer thread
 	 */
-	public void update(LineEvent event) {
-		// If you stop playback or to the end
-		if(event.getType() == LineEvent.Type.STOP) {
-			Clip clip = (Clip) event.getSource();
-			clip.stop();
-			clip.setFramePosition(0); // Playback position back to the beginning
+	private void open() {
+		if(lineFailed) return;
+
+		try {
+			DataLine.Info info = new DataLine.Info(SourceDataLine.class, MIX_FORMAT);
+			line = (SourceDataLine) AudioSystem.getLine(info);
+			line.open(MIX_FORMAT, BLOCK_FRAMES * LINE_BLOCKS * MIX_FORMAT.getFrameSize());
+			line.start();
+		} catch (LineUnavailableException e) {
+			log.warn("Failed to open line", e);
+			lineFailed = true;
+			return;
+		} catch (IllegalArgumentException e) {
+			log.warn("Failed to open line", e);
+			lineFailed = true;
+			return;
+		}
+
+		mixerThread = new Thread(new Runnable() {
+			public void run() {
+				runMixer();
+			}
+		}, "WaveEngine");
+		mixerThread.setDaemon(true);
+		mixerThread.setPriority(Thread.MAX_PRIORITY);
+		mixerThread.start();
+	}
+
+	/**
+	 * Mixer thread: mix a block and write it to the line, which blocks until there's room for it
+	 */
+	private void runMixer() {
+		int[] mixBuffer = new int[BLOCK_FRAMES * 2];
+		byte[] lineBuffer = new byte[BLOCK_FRAMES * 4];
+		long blockTime = System.nanoTime();
+
+		while(true) {
+			long now = System.nanoTime();
+			mix(mixBuffer, blockTime, now);
+			blockTime = now;
+
+			double vol = volume;
+			for(int i = 0; i < mixBuffer.length; i++) {
+				int v = (int)(mixBuffer[i] * vol);
+				if(v > Short.MAX_VALUE) v = Short.MAX_VALUE;
+				if(v < Short.MIN_VALUE) v = Short.MIN_VALUE;
+				lineBuffer[i * 2] = (byte)v;
+				lineBuffer[(i * 2) + 1] = (byte)(v >> 8);
+			}
+			line.write(lineBuffer, 0, lineBuffer.length);
+		}
+	}
+
+	/**
+	 * Mix a block.<br>
+	 * The sounds played between the start of the previous block and now start at the same position in this block,
+	 * so they're all delayed by one block whenever they were played.
+	 * @param mixBuffer Buffer (BLOCK_FRAMES stereo frames)
+	 * @param prevTime Time the previous block was mixed (System.nanoTime)
+	 * @param now Current time (System.nanoTime)
+	 */
+	protected void mix(int[] mixBuffer, long prevTime, long now) {
+		Arrays.fill(mixBuffer, 0);
+
+		Trigger t;
+		while((t = triggers.poll()) != null) {
+			if(t.samples == null) {
+				for(Voice v: voices) {
+					if(t.name.equals(v.name)) v.samples = null;
+				}
+			} else {
+				int offset = (int)(((t.time - prevTime) * (double)MIX_RATE) / 1000000000L);
+				if(offset < 0) offset = 0;
+				if(offset >= BLOCK_FRAMES) offset = BLOCK_FRAMES - 1;
+				getFreeVoice().start(t.name, t.samples, -offset);
+			}
+		}
+
+		for(Voice v: voices) {
+			if(v.samples == null) continue;
+
+			int frames = v.samples.length / 2;
+			int i = 0;
+			if(v.pos < 0) {
+				i = -v.pos;
+				v.pos = 0;
+			}
+			int n = Math.min(BLOCK_FRAMES - i, frames - v.pos);
+			int p = v.pos * 2;
+			for(int j = i * 2; j < (i + n) * 2; j++) {
+				mixBuffer[j] += v.samples[p++];
+			}
+			v.pos += n;
+			if(v.pos >= frames) v.samples = null;
+		}
+	}
+
+	/**
+	 * Get a voice to play a new sound (the one which has played the longest if all are in use)
+	 * @return Voice
+	 */
+	private Voice getFreeVoice() {
+		Voice oldest = voices[0];
+		for(Voice v: voices) {
+			if(v.samples == null) return v;
+			if(v.pos > oldest.pos) oldest = v;
+		}
+		return oldest;
+	}
+
+	/**
+	 * Sound to start or stop
+	 */
+	private static class Trigger {
+		/** Registered name */
+		String name;
+
+		/** Samples (null to stop the sound) */
+		short[] samples;
+
+		/** Time play or stop was called (System.nanoTime) */
+		long time;
+
+		Trigger(String name, short[] samples, long time) {
+			this.name = name;
+			this.samples = samples;
+			this.time = time;
+		}
+	}
+
+	/**
+	 * Sound being played
+	 */
+	private static class Voice {
+		/** Registered name */
+		String name;
+
+		/** Samples (null if not in use) */
+		short[] samples;
+
+		/** Position in frames (negative until the sound starts) */
+		int pos;
+
+		void start(String name, short[] samples, int pos) {
+			this.name = name;
+			this.samples = samples;
+			this.pos = pos;
 		}
 	}
 }
@@ -1,77 +1,424 @@
 package mu.nu.nullpo.tool.airankstool;
 
-import java.util.Random;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.subsystem.ai.RanksAI;
+import mu.nu.nullpo.util.CustomProperties;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.*;
 
+import org.apache.log4j.PropertyConfigurator;
 
+/**
+ * Benchmark of RanksAI with one or more ranks files.<br>
+ * Plays fictitious games on all the processors, with the seeds seed, seed+1, ... so every ranks file
+ * gets the same pieces, and reports the mean, median and percentiles of the lines cleared with 95% confidence intervals.
+ * With several ranks files, each one is also compared to the first one game by game.<br>
+ * Usage: AIRanksTester [options] [ranks file...] (default: the ranks file of the config file)<br>
+ * Options: -games &lt;n&gt;, -seed &lt;n&gt;, -threads &lt;n&gt; (0 = all the processors),
+ * -previews &lt;n&gt;, -hold, -maxpieces &lt;n&gt; (0 = no limit),
+ * -output &lt;file&gt; (every game), -summary &lt;file&gt; (one line per ranks file).
+ * Output files are CSV, or JSON Lines if their name ends with ".jsonl".
+ */
 public class AIRanksTester {
-	private Randomizer randomizer;
-	private int numTries;
-	private RanksAI ranksAI;
-	private int [] pieces;
-	private int totalPieces;
-	public AIRanksTester(int numTries){
-		this.numTries=numTries;
-
-		this.totalPieces=0;
-		this.ranksAI=new RanksAI();
-	}
-	public static void main(String[] args) {
+	/** Output format: CSV */
+	public static final int FORMAT_CSV = 0;
+
+	/** Output format: JSON Lines */
+	public static final int FORMAT_JSONL = 1;
+
+	/** Quantile of the normal distribution for 95% confidence intervals */
+	private static final double Z_95 = 1.959964;
 
-		AIRanksTester tester=new AIRanksTester(25 );
-		tester.test();
+	private String ranksName;
+	private Ranks ranks;
+	private int numPreviews;
+	private boolean allowHold;
+	private int maxPieces;
+
+	/**
+	 * Result of a game
+	 */
+	public static class GameResult {
+		public int number;
+		public long seed;
+		public int pieces;
+		public int lines;
+		/** true if the game was stopped by the pieces limit instead of a game over */
+		public boolean limit;
 	}
-	private void init(){
-		boolean [] pieceEnable= new boolean[Piece.PIECE_COUNT];
-		for (int i=0;i<Piece.PIECE_STANDARD_COUNT;i++){
-			pieceEnable[i]=true;
+
+	/**
+	 * Statistics of the games of a ranks file
+	 */
+	public static class Summary {
+		public int games;
+		public double mean;
+		public double stdDev;
+		public double meanLow;
+		public double meanHigh;
+		public double median;
+		public double medianLow;
+		public double medianHigh;
+		public double p10;
+		public double p25;
+		public double p75;
+		public double p90;
+		public int min;
+		public int max;
+		public double meanPieces;
+
+		/**
+		 * Constructor
+		 * @param lines Lines cleared of every game
+		 * @param pieces Pieces of every game
+		 */
+		public Summary(int [] lines, int [] pieces) {
+			games = lines.length;
+			if (games == 0) return;
+
+			int [] sorted = Arrays.copyOf(lines, games);
+			Arrays.sort(sorted);
+			mean = mean(lines);
+			stdDev = stdDev(lines, mean);
+			double margin = Z_95 * stdDev / Math.sqrt(games);
+			meanLow = mean - margin;
+			meanHigh = mean + margin;
+
+			median = percentile(sorted, 50);
+			// Order statistics around the median (normal approximation of the binomial distribution)
+			int k = (int)Math.floor(Z_95 * Math.sqrt(games) / 2);
+			medianLow = sorted[Math.max((games - 1) / 2 - k, 0)];
+			medianHigh = sorted[Math.min(games / 2 + k, games - 1)];
+
+			p10 = percentile(sorted, 10);
+			p25 = percentile(sorted, 25);
+			p75 = percentile(sorted, 75);
+			p90 = percentile(sorted, 90);
+			min = sorted[0];
+			max = sorted[games - 1];
+			meanPieces = mean(pieces);
 		}
-		long seed=new Random().nextLong();
+	}
+
+	/**
+	 * Constructor
+	 * @param ranksName Name of the ranks (for the output)
+	 * @param ranks Ranks (shared by all the games)
+	 * @param numPreviews Number of previews used by the AI
+	 * @param allowHold true if the AI can use the hold
+	 * @param maxPieces Maximum number of pieces of a game (0 for no limit)
+	 */
+	public AIRanksTester(String ranksName, Ranks ranks, int numPreviews, boolean allowHold, int maxPieces) {
+		this.ranksName = ranksName;
+		this.ranks = ranks;
+		this.numPreviews = numPreviews;
+		this.allowHold = allowHold;
+		this.maxPieces = maxPieces;
+	}
 
-		randomizer =new History4RollsRandomizer(pieceEnable,seed);
+	public String getRanksName() {
+		return ranksName;
+	}
+
+	/**
+	 * Play a fictitious game. It can be called from several threads at the same time.
+	 * @param number Game number
+	 * @param seed Random seed
+	 * @return Result
+	 */
+	public GameResult playGame(int number, long seed) {
+		boolean [] pieceEnable = new boolean[Piece.PIECE_COUNT];
+		for (int i = 0; i < Piece.PIECE_STANDARD_COUNT; i++) {
+			pieceEnable[i] = true;
+		}
+		Randomizer randomizer = new History4RollsRandomizer(pieceEnable, seed);
 		randomizer.init();
 
-		 pieces=new int[6];
-		for (int i=0;i<6;i++){
-			pieces[i]=randomizer.next();
+		int [] pieces = new int[6];
+		for (int i = 0; i < pieces.length; i++) {
+			pieces[i] = randomizer.next();
 		}
 
-		ranksAI.initRanks();
+		RanksAI ranksAI = new RanksAI();
+		ranksAI.initRanks(ranks, numPreviews, allowHold);
+
+		GameResult result = new GameResult();
+		result.number = number;
+		result.seed = seed;
+
+		int [] heights = new int[ranks.getStackWidth()];
+		int [] holdPiece = {-1};
+		boolean [] holdOK = {true};
+		while (!ranksAI.isGameOver()) {
+			if ((maxPieces > 0) && (result.pieces >= maxPieces)) {
+				result.limit = true;
+				break;
+			}
+			result.pieces++;
+			int height = heights[0];
+			ranksAI.playFictitiousMove(heights, pieces, holdPiece, holdOK);
+			// Lines are only cleared by an I piece in the well, then the whole stack goes down 4 lines
+			if (heights[0] < height) {
+				result.lines += height - heights[0];
+			}
+
+			for (int i = 0; i < pieces.length - 1; i++) {
+				pieces[i] = pieces[i + 1];
+			}
+			pieces[pieces.length - 1] = randomizer.next();
+		}
+		return result;
 	}
-	private void incrementPieces(){
 
-		for (int i=0;i<5;i++){
-			pieces[i]=pieces[i+1];
+	public static void main(String[] args) {
+		PropertyConfigurator.configure("config/etc/log.cfg");
+
+		CustomProperties propRanksAI = new CustomProperties();
+		try {
+			FileInputStream in = new FileInputStream(AIRanksConstants.RANKSAI_CONFIG_FILE);
+			propRanksAI.load(in);
+			in.close();
+		} catch (IOException e) {}
+
+		int numGames = 1000;
+		long seed = 0;
+		int numThreads = 0;
+		int numPreviews = propRanksAI.getProperty("ranksai.numpreviews", 2);
+		boolean allowHold = propRanksAI.getProperty("ranksai.allowhold", false);
+		int maxPieces = 0;
+		String output = null;
+		String summaryOutput = null;
+		List<String> ranksFiles = new ArrayList<String>();
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-games")) {
+					numGames = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-seed")) {
+					seed = Long.parseLong(args[++i]);
+				} else if (args[i].equals("-threads")) {
+					numThreads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-previews")) {
+					numPreviews = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-hold")) {
+					allowHold = true;
+				} else if (args[i].equals("-maxpieces")) {
+					maxPieces = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-output")) {
+					output = args[++i];
+				} else if (args[i].equals("-summary")) {
+					summaryOutput = args[++i];
+				} else if (args[i].startsWith("-")) {
+					throw new IllegalArgumentException(args[i]);
+				} else {
+					ranksFiles.add(args[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			System.err.println("Usage: AIRanksTester [-games <n>] [-seed <n>] [-threads <n>] [-previews <n>] [-hold] " +
+				"[-maxpieces <n>] [-output <file>] [-summary <file>] [ranks file...]");
+			System.exit(1);
+		}
+		if (ranksFiles.isEmpty()) {
+			ranksFiles.add(propRanksAI.getProperty("ranksai.file", AIRanksConstants.DEFAULT_RANKS_FILE));
 		}
-		pieces[5]=randomizer.next();
+		if (numThreads <= 0) numThreads = Runtime.getRuntime().availableProcessors();
 
+		List<AIRanksTester> testers = new ArrayList<AIRanksTester>();
+		for (String file : ranksFiles) {
+			try {
+				testers.add(new AIRanksTester(file, RanksFile.load(AIRanksConstants.RANKSAI_DIR + file), numPreviews, allowHold, maxPieces));
+			} catch (IOException e) {
+				System.err.println("Couldn't load ranks file " + AIRanksConstants.RANKSAI_DIR + file + ": " + e);
+				System.exit(1);
+			}
+		}
+
+		try {
+			run(testers, numGames, seed, numThreads, output, summaryOutput);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
 	}
-	public void test(){
-		for (int i=0;i<numTries;i++){
-			int tempTotalPieces=totalPieces;
-			playGame();
-			System.out.println("Game : " +i+ " Pieces : "+(totalPieces-tempTotalPieces)+ " Cumulated average : "+totalPieces/(i+1) );
+
+	/**
+	 * Play the games of every ranks file and report the statistics
+	 * @param testers Testers (one per ranks file)
+	 * @param numGames Number of games per ranks file
+	 * @param seed Seed of the first game
+	 * @param numThreads Number of games played at the same time
+	 * @param output File for the result of every game (null for none)
+	 * @param summaryOutput File for the statistics of every ranks file (null for none)
+	 * @throws IOException When an output file can't be written
+	 * @throws InterruptedException When interrupted while waiting for a game
+	 * @throws ExecutionException When a game fails
+	 */
+	public static void run(List<AIRanksTester> testers, int numGames, long seed, int numThreads, String output,
+		String summaryOutput) throws IOException, InterruptedException, ExecutionException
+	{
+		System.out.println("Playing " + numGames + " games per ranks file on " + numThreads + " threads");
+		long startTime = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+		List<List<Future<GameResult>>> futures = new ArrayList<List<Future<GameResult>>>();
+		for (final AIRanksTester tester : testers) {
+			List<Future<GameResult>> testerFutures = new ArrayList<Future<GameResult>>(numGames);
+			for (int i = 0; i < numGames; i++) {
+				final int number = i;
+				final long gameSeed = seed + i;
+				testerFutures.add(executor.submit(new Callable<GameResult>() {
+					public GameResult call() {
+						return tester.playGame(number, gameSeed);
+					}
+				}));
+			}
+			futures.add(testerFutures);
 		}
+
+		PrintWriter out = null;
+		int format = getFormat(output);
+		List<int []> allLines = new ArrayList<int []>();
+		try {
+			if (output != null) {
+				out = openOutput(output);
+				if (format == FORMAT_CSV) out.println("ranks,game,seed,pieces,lines,limit");
+			}
+
+			// Results are written in game order whatever order the games finish in
+			for (int t = 0; t < testers.size(); t++) {
+				AIRanksTester tester = testers.get(t);
+				int [] lines = new int[numGames];
+				int [] pieces = new int[numGames];
+				int limited = 0;
+				for (int i = 0; i < numGames; i++) {
+					GameResult result = futures.get(t).get(i).get();
+					lines[i] = result.lines;
+					pieces[i] = result.pieces;
+					if (result.limit) limited++;
+					if (out != null) {
+						if (format == FORMAT_CSV) {
+							out.println(csvString(tester.ranksName) + "," + result.number + "," + result.seed + "," +
+								result.pieces + "," + result.lines + "," + result.limit);
+						} else {
+							out.println("{\"ranks\":" + jsonString(tester.ranksName) + ",\"game\":" + result.number +
+								",\"seed\":" + result.seed + ",\"pieces\":" + result.pieces + ",\"lines\":" + result.lines +
+								",\"limit\":" + result.limit + "}");
+						}
+					}
+				}
+				allLines.add(lines);
+
+				Summary summary = new Summary(lines, pieces);
+				System.out.println(String.format(Locale.US,
+					"%s: lines mean %.1f [%.1f, %.1f] sd %.1f, median %.1f [%.1f, %.1f], " +
+					"p10 %.1f p25 %.1f p75 %.1f p90 %.1f, min %d max %d, pieces mean %.1f%s",
+					tester.ranksName, summary.mean, summary.meanLow, summary.meanHigh, summary.stdDev,
+					summary.median, summary.medianLow, summary.medianHigh,
+					summary.p10, summary.p25, summary.p75, summary.p90, summary.min, summary.max, summary.meanPieces,
+					(limited > 0) ? " (" + limited + " games stopped at the pieces limit)" : ""));
+				if (t > 0) {
+					// Same seeds: the difference of each game is compared to the first ranks file
+					int [] diff = new int[numGames];
+					for (int i = 0; i < numGames; i++) diff[i] = lines[i] - allLines.get(0)[i];
+					double diffMean = mean(diff);
+					double margin = Z_95 * stdDev(diff, diffMean) / Math.sqrt(numGames);
+					System.out.println(String.format(Locale.US, "  vs %s: lines %+.1f [%+.1f, %+.1f]",
+						testers.get(0).ranksName, diffMean, diffMean - margin, diffMean + margin));
+				}
+
+				if (summaryOutput != null) {
+					writeSummary(summaryOutput, t == 0, tester.ranksName, summary);
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			if (out != null) out.close();
+		}
+
+		System.out.println("Finished in " + (System.currentTimeMillis() - startTime) + "ms");
 	}
-	private void playGame(){
-		init();
-		/*if ((pieces[0]==Piece.PIECE_S) || (pieces[0]==Piece.PIECE_Z) || (pieces[0]==Piece.PIECE_O)){
-			//System.out.println("Suchec !!");
-		}*/
-		int [] heights=new int[9];
-		int [] holdPiece={-1};
-		boolean [] holdOK ={true};
-		while (!ranksAI.isGameOver()){
-			//holdOK[0]=false;
-			totalPieces++;
-			//System.out.println(Arrays.toString(heights));
-			ranksAI.playFictitiousMove(heights,pieces,holdPiece,holdOK);
-			incrementPieces();
 
+	private static void writeSummary(String summaryOutput, boolean first, String ranksName, Summary s) throws IOException {
+		PrintWriter out = first ? openOutput(summaryOutput) : new PrintWriter(new BufferedWriter(new FileWriter(summaryOutput, true)));
+		try {
+			if (getFormat(summaryOutput) == FORMAT_CSV) {
+				if (first) {
+					out.println("ranks,games,mean,stddev,mean_low,mean_high,median,median_low,median_high,p10,p25,p75,p90,min,max,mean_pieces");
+				}
+				out.println(String.format(Locale.US, "%s,%d,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%f,%d,%d,%f",
+					csvString(ranksName), s.games, s.mean, s.stdDev, s.meanLow, s.meanHigh, s.median, s.medianLow, s.medianHigh,
+					s.p10, s.p25, s.p75, s.p90, s.min, s.max, s.meanPieces));
+			} else {
+				out.println(String.format(Locale.US, "{\"ranks\":%s,\"games\":%d,\"mean\":%f,\"stddev\":%f,\"mean_low\":%f," +
+					"\"mean_high\":%f,\"median\":%f,\"median_low\":%f,\"median_high\":%f,\"p10\":%f,\"p25\":%f,\"p75\":%f," +
+					"\"p90\":%f,\"min\":%d,\"max\":%d,\"mean_pieces\":%f}",
+					jsonString(ranksName), s.games, s.mean, s.stdDev, s.meanLow, s.meanHigh, s.median, s.medianLow, s.medianHigh,
+					s.p10, s.p25, s.p75, s.p90, s.min, s.max, s.meanPieces));
+			}
+		} finally {
+			out.close();
 		}
 	}
-}
 
+	private static PrintWriter openOutput(String filename) throws IOException {
+		File parent = new File(filename).getAbsoluteFile().getParentFile();
+		if ((parent != null) && !parent.exists()) parent.mkdirs();
+		return new PrintWriter(new BufferedWriter(new FileWriter(filename)));
+	}
+
+	private static int getFormat(String filename) {
+		return ((filename != null) && filename.toLowerCase().endsWith(".jsonl")) ? FORMAT_JSONL : FORMAT_CSV;
+	}
+
+	private static String csvString(String str) {
+		if ((str.indexOf(',') < 0) && (str.indexOf('"') < 0)) return str;
+		return "\"" + str.replace("\"", "\"\"") + "\"";
+	}
+
+	private static String jsonString(String str) {
+		return "\"" + str.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+	}
+
+	private static double mean(int [] values) {
+		if (values.length == 0) return 0;
+		long sum = 0;
+		for (int v : values) sum += v;
+		return (double)sum / values.length;
+	}
+
+	private static double stdDev(int [] values, double mean) {
+		if (values.length < 2) return 0;
+		double sum = 0;
+		for (int v : values) sum += (v - mean) * (v - mean);
+		return Math.sqrt(sum / (values.length - 1));
+	}
+
+	/**
+	 * Percentile with linear interpolation between the closest ranks
+	 * @param sorted Sorted values
+	 * @param p Percentile (0-100)
+	 * @return Value
+	 */
+	private static double percentile(int [] sorted, double p) {
+		double pos = (sorted.length - 1) * p / 100;
+		int i = (int)Math.floor(pos);
+		if (i >= sorted.length - 1) return sorted[sorted.length - 1];
+		return sorted[i] + (pos - i) * (sorted[i + 1] - sorted[i]);
+	}
+}
@@ -9,8 +9,8 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.FilenameFilter;
 import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.util.Locale;
 
 import javax.swing.BorderFactory;
@@ -146,7 +146,12 @@ public class AIRanksTool extends JFrame implements ActionListener {
 		int speedLimit=propRanksAI.getProperty("ranksai.speedlimit", 0);
 
 		// Loads the ranks file list from the ranksAI directory (/res/ranksai)
-		String [] children=new File(AIRanksConstants.RANKSAI_DIR).list();
+		// (Work files of unfinished iterations are not ranks files)
+		String [] children=new File(AIRanksConstants.RANKSAI_DIR).list(new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				return !name.endsWith(RanksFile.WORK_FILE_SUFFIX) && !name.endsWith(".tmp");
+			}
+		});
 
 		int fileIndex=-1;
 
@@ -441,26 +446,17 @@ public class AIRanksTool extends JFrame implements ActionListener {
 				setEnabledBWButtons(false);
 				Ranks ranks = null;
 
-				FileInputStream fis = null;
-				ObjectInputStream in = null;
-
 				if (inputFile.trim().length() == 0)
 					ranks = new Ranks(4, 9);
 				else {
 					try {
-						fis = new FileInputStream(AIRanksConstants.RANKSAI_DIR+inputFile);
-						in = new ObjectInputStream(fis);
-						ranks = (Ranks) in.readObject();
-						in.close();
+						ranks = RanksFile.load(AIRanksConstants.RANKSAI_DIR+inputFile);
 					} catch (FileNotFoundException e1) {
 						ranks = new Ranks(4, 9);
 					} catch (IOException e1) {
 						// TODO Auto-generated catch block
 						e1.printStackTrace();
 
-					} catch (ClassNotFoundException e1) {
-						// TODO Auto-generated catch block
-						e1.printStackTrace();
 					}
 
 				}
@@ -1,5 +1,9 @@
 package mu.nu.nullpo.tool.airankstool;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 
 import mu.nu.nullpo.game.component.Piece;
@@ -99,43 +103,20 @@ public class Ranks implements Serializable{
 	};
 private int  [] ranks;
 
+//Storage of the ranks. It wraps the ranks array, or maps a RanksFile (then ranks is null)
+private transient IntBuffer ranksBuffer;
+
 private int stackWidth;
 private int size;
 private Ranks ranksFrom;
 private int maxJump;
-private int error;
-private int  maxError;
 private int rankMin;
 private int rankMax;
 
-public float getMaxError() {
-	return maxError;
-}
-
-private int completion;
+//Progress and error of an iteration are counted by RanksIteration, so that setRank needs no lock
 private int base;
 private int surfaceWidth;
 
-public int getCompletionPercentage(){
-	long completionPercentage;
-	completionPercentage= ((long)completion+1) *100;
-	completionPercentage/=size;
-	return (int)completionPercentage;
-
-}
-public boolean completionPercentageIncrease(){
-	return (0==(completion % (size/100)) && completion!=0);
-}
-public float  getErrorPercentage(){
-	long  errorLong= error/completion;
-	  long maxErrorPossible=((long)Integer.MAX_VALUE-(long)Integer.MIN_VALUE);
-	   float errorPercentage= ((float)errorLong/(float)maxErrorPossible);
-	   errorPercentage*=100;
-	return  errorPercentage;
-}
-public  int getError() {
-	return error;
-}
 public int getMaxJump() {
 	return maxJump;
 }
@@ -153,15 +134,30 @@ public Ranks(int maxJump,int stackWidth){
 
 	 size=(int) Math.pow(base,surfaceWidth);
 	ranks=new int[size];
-	completion=0;
-	error=0;
-	maxError=0;
 	rankMin=Integer.MAX_VALUE;
 	rankMax=0;
 	Arrays.fill(ranks,Integer.MAX_VALUE);
+	ranksBuffer=IntBuffer.wrap(ranks);
 
 }
 
+/**
+ * Ranks stored in a buffer instead of the heap (used by RanksFile)
+ * @param maxJump Maximum height difference between two columns
+ * @param stackWidth Stack width
+ * @param ranksBuffer Buffer holding (2*maxJump+1)^(stackWidth-1) ranks
+ */
+public Ranks(int maxJump,int stackWidth,IntBuffer ranksBuffer){
+	this.maxJump=maxJump;
+	base=2*maxJump+1;
+	this.stackWidth=stackWidth;
+	surfaceWidth=stackWidth-1;
+	size=(int) Math.pow(base,surfaceWidth);
+	this.ranksBuffer=ranksBuffer;
+	rankMin=Integer.MAX_VALUE;
+	rankMax=0;
+}
+
 public Ranks(Ranks rankFrom){
 
 	this.ranksFrom=rankFrom;
@@ -172,9 +168,7 @@ public Ranks(Ranks rankFrom){
 	 surfaceWidth=stackWidth-1;
 	 size=(int) Math.pow(2*maxJump+1,stackWidth-1);
 	ranks=new int[size];
-	completion=0;
-	error=0;
-	maxError=0;
+	ranksBuffer=IntBuffer.wrap(ranks);
 	rankMin=Integer.MAX_VALUE;
 	rankMax=0;
 
@@ -182,9 +176,6 @@ public Ranks(Ranks rankFrom){
 
 public void setRanksFrom(Ranks ranksfrom){
 	this.ranksFrom=ranksfrom;
-	error=0;
-	maxError=0;
-    completion=0;
     rankMin=Integer.MAX_VALUE;
 	rankMax=0;
 
@@ -198,8 +189,11 @@ public void freeRanksFrom(){
 public int getSize(){
 	return size;
 }
+public IntBuffer getRanksBuffer(){
+	return ranksBuffer;
+}
 public int getRankValue(int surface){
-		return ranks[surface];
+		return ranksBuffer.get(surface);
 }
 public int encode(int [] surface){
 	int surfaceNum=0;
@@ -213,25 +207,54 @@ public int encode(int [] surface){
 
 private void setRankValue(int surface,int value){
 
-	ranks[surface]= value;
+	ranksBuffer.put(surface,value);
 
 }
 
 public void setRank(int [] surface, int []surfaceDecodedWork){
 	int currentSurfaceNum=encode(surface);
 	setRankValue(currentSurfaceNum,getRank(surface,surfaceDecodedWork));
-	synchronized(this){
-		completion++;
-		int errorCurrent=Math.abs(ranks[currentSurfaceNum]-ranksFrom.getRankValue(currentSurfaceNum));
-	    if (errorCurrent==0)
-	    	errorCurrent=0;
-		if (errorCurrent>maxError)
-			maxError=errorCurrent;
-		error+=errorCurrent;
-	}
 }
 
 public void scaleRanks(){
+	findRankBounds();
+	scaleRanksInto(this);
+}
+
+/**
+ * Take the bounds used by scaleRanksInto from the table
+ * (so that they are right when the iteration has been resumed)
+ */
+public void findRankBounds(){
+	rankMin=Integer.MAX_VALUE;
+	rankMax=0;
+	for (int i=0;i<size;i++){
+		int value=getRankValue(i);
+		if (value>rankMax){
+			rankMax=value;
+		}
+		if (value<rankMin){
+			rankMin=value;
+		}
+	}
+}
+public int getRankMin(){
+	return rankMin;
+}
+public int getRankMax(){
+	return rankMax;
+}
+public void setRankBounds(int rankMin,int rankMax){
+	this.rankMin=rankMin;
+	this.rankMax=rankMax;
+}
+
+/**
+ * Write the ranks of this table, scaled with its bounds, into another table of the same size.
+ * When dest is another table, this table is not changed, so the scaling can be done again if it's interrupted.
+ * @param dest Table receiving the scaled ranks (can be this table)
+ */
+public void scaleRanksInto(Ranks dest){
 	/*int pas =(Integer.MAX_VALUE-rankMin)/4;
 	 int n1=0;
 	 int n2=0;
@@ -239,7 +262,7 @@ public void scaleRanks(){
 	 int n4=0;*/
 
 	for (int i=0;i<size;i++){
-		long newValue=((long)(ranks[i]-rankMin))*((long)(Integer.MAX_VALUE-rankMin));
+		long newValue=((long)(getRankValue(i)-rankMin))*((long)(Integer.MAX_VALUE-rankMin));
 		newValue=newValue/(rankMax-rankMin);
 
 		newValue=Math.max(Math.min(newValue,Integer.MAX_VALUE-rankMin),0);
@@ -260,7 +283,7 @@ public void scaleRanks(){
 			n4++;
 
 		}*/
-		ranks[i]=(int)newValue;
+		dest.setRankValue(i,(int)newValue);
 	}
 	//System.out.println("n1 = "+n1+" n2 = "+n2+" n3 = "+n3+" n4 = "+n4);
 }
@@ -306,14 +329,6 @@ private int getRank(int [] surface,int [] surfaceDecodedWork){
 	}
 	int result=0;
 	result=(int) (sum/Piece.PIECE_STANDARD_COUNT);
-	synchronized(this){
-	if (result>rankMax){
-		rankMax=result;
-	}
-	if (result<rankMin){
-		 rankMin=result;
-	}
-	}
 
 	if (result<0){
 		result=0;
@@ -462,6 +477,26 @@ private int getRankPieceRotation( int [] surface,int [] surfaceDecodedWork,int p
 
 return bestRank;
 }
+
+private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+	in.defaultReadObject();
+	ranksBuffer=IntBuffer.wrap(ranks);
+}
+
+private void writeObject(ObjectOutputStream out) throws IOException{
+	if (ranks!=null){
+		out.defaultWriteObject();
+	}
+	else {
+		//Buffer-backed ranks are written in the same format as heap ones
+		ranks=new int[size];
+		for (int i=0;i<size;i++){
+			ranks[i]=ranksBuffer.get(i);
+		}
+		out.defaultWriteObject();
+		ranks=null;
+	}
+}
 }
 
 
@@ -0,0 +1,423 @@
+package mu.nu.nullpo.tool.airankstool;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Ranks stored in a memory-mapped file.<br>
+ * A work file holds two tables: the ranks of the last complete iteration and the ranks being computed.
+ * The surfaces are processed in chunks, and the finished chunks are recorded at every checkpoint,
+ * so an interrupted iteration resumes where it stopped. A ranks file holds only one table.
+ */
+public class RanksFile {
+	/** Log */
+	static Logger log = Logger.getLogger(RanksFile.class);
+
+	/** Magic number at the start of the file ("NRNK") */
+	public static final int MAGIC = 0x4E524E4B;
+
+	/** File format version */
+	public static final int VERSION = 1;
+
+	/** Suffix of the work file of an output file */
+	public static final String WORK_FILE_SUFFIX = ".work";
+
+	/** Number of surfaces in a chunk */
+	public static final int CHUNK_SIZE = 1 << 16;
+
+	/** Minimum time between two automatic checkpoints (ms) */
+	public static final long CHECKPOINT_INTERVAL = 60 * 1000;
+
+	/** Header size (bytes). The chunk flags follow the header. */
+	private static final int HEADER_SIZE = 64;
+
+	/** Header offsets */
+	private static final int OFFSET_MAGIC = 0, OFFSET_VERSION = 4, OFFSET_MAX_JUMP = 8, OFFSET_STACK_WIDTH = 12,
+		OFFSET_NUM_TABLES = 16, OFFSET_CURRENT_TABLE = 20, OFFSET_ITERATION = 24, OFFSET_NUM_CHUNKS = 28,
+		OFFSET_SCALING = 32, OFFSET_RANK_MIN = 36, OFFSET_RANK_MAX = 40;
+
+	private RandomAccessFile file;
+	private FileChannel channel;
+	private MappedByteBuffer header;
+	private MappedByteBuffer [] tables;
+
+	private int maxJump;
+	private int stackWidth;
+	private int size;
+	private int numChunks;
+	private int currentTable;
+	private int iteration;
+
+	/** Finished chunks of the current iteration (only in work files) */
+	private boolean [] chunkDone;
+	private int numChunksDone;
+	private long lastCheckpoint;
+
+	private RanksFile(String filename, boolean readOnly) throws IOException {
+		file = new RandomAccessFile(filename, readOnly ? "r" : "rw");
+		channel = file.getChannel();
+	}
+
+	/**
+	 * Create a work file
+	 * @param filename Filename
+	 * @param initial Ranks of iteration 0 (null to start from a table filled with Integer.MAX_VALUE)
+	 * @param maxJump Maximum height difference between two columns (used if initial is null)
+	 * @param stackWidth Stack width (used if initial is null)
+	 * @return Work file
+	 * @throws IOException When the file can't be created
+	 */
+	public static RanksFile createWorkFile(String filename, Ranks initial, int maxJump, int stackWidth) throws IOException {
+		if (initial != null) {
+			maxJump = initial.getMaxJump();
+			stackWidth = initial.getStackWidth();
+		}
+
+		RanksFile ranksFile = new RanksFile(filename, false);
+		ranksFile.channel.truncate(0);
+		ranksFile.init(maxJump, stackWidth, 2, 0, 0, false);
+
+		IntBuffer table = ranksFile.tables[0].asIntBuffer();
+		if (initial == null) {
+			for (int i = 0; i < ranksFile.size; i++) {
+				table.put(i, Integer.MAX_VALUE);
+			}
+		} else {
+			for (int i = 0; i < ranksFile.size; i++) {
+				table.put(i, initial.getRankValue(i));
+			}
+		}
+		ranksFile.checkpoint();
+
+		return ranksFile;
+	}
+
+	/**
+	 * Open an existing work file to resume it. If it was closed while the ranks were being scaled,
+	 * the scaling is finished first, so {@link #getRanks()} always holds a complete iteration.
+	 * @param filename Filename
+	 * @return Work file
+	 * @throws IOException When the file can't be read or isn't a work file
+	 */
+	public static RanksFile openWorkFile(String filename) throws IOException {
+		RanksFile ranksFile = new RanksFile(filename, false);
+		try {
+			ranksFile.open(false);
+			if (ranksFile.tables.length != 2) {
+				throw new IOException(filename + " is not a work file");
+			}
+			if (ranksFile.isScaling()) {
+				ranksFile.finishIteration();
+			}
+		} catch (IOException e) {
+			ranksFile.close();
+			throw e;
+		}
+		return ranksFile;
+	}
+
+	/**
+	 * Load a ranks file. Files written by RanksFile are mapped; older serialized Ranks files are read into the heap.
+	 * @param filename Filename
+	 * @return Ranks
+	 * @throws IOException When the file can't be read
+	 */
+	public static Ranks load(String filename) throws IOException {
+		DataInputStream in = new DataInputStream(new FileInputStream(filename));
+		int magic;
+		try {
+			magic = in.readInt();
+		} finally {
+			in.close();
+		}
+
+		if (Integer.reverseBytes(magic) == MAGIC) {
+			RanksFile ranksFile = new RanksFile(filename, true);
+			try {
+				ranksFile.open(true);
+			} catch (IOException e) {
+				ranksFile.close();
+				throw e;
+			}
+			// The mapping stays valid after the channel is closed
+			Ranks ranks = ranksFile.getRanks();
+			ranksFile.close();
+			return ranks;
+		}
+
+		ObjectInputStream oin = new ObjectInputStream(new FileInputStream(filename));
+		try {
+			return (Ranks)oin.readObject();
+		} catch (ClassNotFoundException e) {
+			throw new IOException("Invalid ranks file: " + filename, e);
+		} finally {
+			oin.close();
+		}
+	}
+
+	/**
+	 * Write a ranks file
+	 * @param ranks Ranks
+	 * @param filename Filename
+	 * @throws IOException When the file can't be written
+	 */
+	public static void save(Ranks ranks, String filename) throws IOException {
+		File tmpFile = new File(filename + ".tmp");
+		RandomAccessFile out = new RandomAccessFile(tmpFile, "rw");
+		try {
+			out.setLength(0);
+			FileChannel outChannel = out.getChannel();
+
+			ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+			writeHeader(buf, ranks.getMaxJump(), ranks.getStackWidth(), 1, 0, 0, 0);
+			buf.rewind();
+			while (buf.hasRemaining()) outChannel.write(buf);
+
+			buf = ByteBuffer.allocate(CHUNK_SIZE * 4).order(ByteOrder.LITTLE_ENDIAN);
+			IntBuffer ibuf = buf.asIntBuffer();
+			for (int s = 0; s < ranks.getSize(); s += CHUNK_SIZE) {
+				int count = Math.min(CHUNK_SIZE, ranks.getSize() - s);
+				ibuf.clear();
+				for (int i = 0; i < count; i++) {
+					ibuf.put(ranks.getRankValue(s + i));
+				}
+				buf.clear();
+				buf.limit(count * 4);
+				while (buf.hasRemaining()) outChannel.write(buf);
+			}
+			outChannel.force(true);
+		} finally {
+			out.close();
+		}
+
+		// Replace the old file only when the new one is complete
+		File outFile = new File(filename);
+		if (outFile.exists() && !outFile.delete()) {
+			throw new IOException("Can't replace " + filename);
+		}
+		if (!tmpFile.renameTo(outFile)) {
+			throw new IOException("Can't rename " + tmpFile + " to " + filename);
+		}
+	}
+
+	private static void writeHeader(ByteBuffer buf, int maxJump, int stackWidth, int numTables, int currentTable,
+			int iteration, int numChunks) {
+		buf.putInt(OFFSET_MAGIC, MAGIC);
+		buf.putInt(OFFSET_VERSION, VERSION);
+		buf.putInt(OFFSET_MAX_JUMP, maxJump);
+		buf.putInt(OFFSET_STACK_WIDTH, stackWidth);
+		buf.putInt(OFFSET_NUM_TABLES, numTables);
+		buf.putInt(OFFSET_CURRENT_TABLE, currentTable);
+		buf.putInt(OFFSET_ITERATION, iteration);
+		buf.putInt(OFFSET_NUM_CHUNKS, numChunks);
+	}
+
+	/**
+	 * Read the header of an existing file and map it
+	 */
+	private void open(boolean readOnly) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		while (buf.hasRemaining()) {
+			if (channel.read(buf) < 0) throw new IOException("Ranks file is too short");
+		}
+		if (buf.getInt(OFFSET_MAGIC) != MAGIC) throw new IOException("Not a ranks file");
+		if (buf.getInt(OFFSET_VERSION) != VERSION) throw new IOException("Unsupported ranks file version " + buf.getInt(OFFSET_VERSION));
+
+		init(buf.getInt(OFFSET_MAX_JUMP), buf.getInt(OFFSET_STACK_WIDTH), buf.getInt(OFFSET_NUM_TABLES),
+				buf.getInt(OFFSET_CURRENT_TABLE), buf.getInt(OFFSET_ITERATION), readOnly);
+	}
+
+	/**
+	 * Map the header and the tables (the file is extended if needed)
+	 */
+	private void init(int maxJump, int stackWidth, int numTables, int currentTable, int iteration, boolean readOnly)
+			throws IOException {
+		this.maxJump = maxJump;
+		this.stackWidth = stackWidth;
+		this.currentTable = currentTable;
+		this.iteration = iteration;
+
+		long longSize = 1;
+		for (int i = 0; i < stackWidth - 1; i++) longSize *= 2 * maxJump + 1;
+		if ((maxJump < 0) || (stackWidth < 2) || (longSize * 4 > Integer.MAX_VALUE) || (numTables < 1) || (numTables > 2) ||
+			(currentTable < 0) || (currentTable >= numTables)) {
+			throw new IOException("Invalid ranks file header (maxJump " + maxJump + ", stackWidth " + stackWidth + ")");
+		}
+		size = (int)longSize;
+		numChunks = (size + CHUNK_SIZE - 1) / CHUNK_SIZE;
+
+		// Chunk flags are only needed by work files
+		int headerLength = HEADER_SIZE + ((numTables == 2) ? numChunks : 0);
+		long tableOffset = (headerLength + 63) & ~63;
+		long tableLength = (long)size * 4;
+
+		FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY : FileChannel.MapMode.READ_WRITE;
+		if (readOnly && (channel.size() < tableOffset + tableLength * numTables)) {
+			throw new IOException("Ranks file is too short");
+		}
+
+		header = channel.map(mode, 0, headerLength);
+		header.order(ByteOrder.LITTLE_ENDIAN);
+		tables = new MappedByteBuffer[numTables];
+		for (int i = 0; i < numTables; i++) {
+			tables[i] = channel.map(mode, tableOffset + tableLength * i, tableLength);
+			tables[i].order(ByteOrder.LITTLE_ENDIAN);
+		}
+
+		if (!readOnly) {
+			writeHeader(header, maxJump, stackWidth, numTables, currentTable, iteration, numChunks);
+		}
+
+		if (numTables == 2) {
+			chunkDone = new boolean[numChunks];
+			numChunksDone = 0;
+			for (int i = 0; i < numChunks; i++) {
+				chunkDone[i] = (header.get(HEADER_SIZE + i) != 0);
+				if (chunkDone[i]) numChunksDone++;
+			}
+		}
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return Ranks of the last complete iteration
+	 */
+	public Ranks getRanks() {
+		return new Ranks(maxJump, stackWidth, tables[currentTable].asIntBuffer());
+	}
+
+	/**
+	 * @return Ranks being computed by the current iteration, reading from {@link #getRanks()}
+	 */
+	public Ranks getNextRanks() {
+		Ranks ranks = new Ranks(maxJump, stackWidth, tables[1 - currentTable].asIntBuffer());
+		ranks.setRanksFrom(getRanks());
+		return ranks;
+	}
+
+	/**
+	 * @return Number of complete iterations
+	 */
+	public int getIteration() {
+		return iteration;
+	}
+
+	public int getNumChunks() {
+		return numChunks;
+	}
+
+	/**
+	 * @return Number of finished chunks of the current iteration
+	 */
+	public synchronized int getNumChunksDone() {
+		return numChunksDone;
+	}
+
+	public synchronized boolean isChunkDone(int chunk) {
+		return chunkDone[chunk];
+	}
+
+	/**
+	 * Mark a chunk of the current iteration as finished. A checkpoint is made if the last one is old enough.
+	 * @param chunk Chunk number
+	 * @throws IOException When the checkpoint fails
+	 */
+	public synchronized void setChunkDone(int chunk) throws IOException {
+		if (!chunkDone[chunk]) {
+			chunkDone[chunk] = true;
+			numChunksDone++;
+		}
+		if (System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL) {
+			checkpoint();
+		}
+	}
+
+	/**
+	 * Write the tables to the disk, then record the finished chunks.
+	 * The order matters: a chunk is never recorded as finished before its ranks are on the disk.
+	 * @throws IOException When the file can't be written
+	 */
+	public synchronized void checkpoint() throws IOException {
+		for (MappedByteBuffer table : tables) {
+			table.force();
+		}
+		if (chunkDone != null) {
+			for (int i = 0; i < numChunks; i++) {
+				header.put(HEADER_SIZE + i, (byte)(chunkDone[i] ? 1 : 0));
+			}
+		}
+		header.force();
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	/**
+	 * @return true if the work file was closed while the ranks were being scaled
+	 */
+	public synchronized boolean isScaling() {
+		return header.getInt(OFFSET_SCALING) != 0;
+	}
+
+	/**
+	 * Finish the current iteration: the ranks being computed are scaled and become the current ranks.
+	 * Call it once all the chunks are finished.<br>
+	 * The computed ranks are never changed: their bounds are recorded in the header, then they are scaled
+	 * into the table of the last iteration, which isn't needed anymore. If this is interrupted,
+	 * the header still says that the ranks are being scaled, and the scaling is done again
+	 * from the same ranks and bounds on resume.
+	 * @throws IOException When the file can't be written
+	 */
+	public synchronized void finishIteration() throws IOException {
+		Ranks computed = new Ranks(maxJump, stackWidth, tables[1 - currentTable].asIntBuffer());
+
+		if (!isScaling()) {
+			// The computed ranks and the bounds have to be on the disk before the last iteration is overwritten
+			tables[1 - currentTable].force();
+			computed.findRankBounds();
+			header.putInt(OFFSET_RANK_MIN, computed.getRankMin());
+			header.putInt(OFFSET_RANK_MAX, computed.getRankMax());
+			header.putInt(OFFSET_SCALING, 1);
+			header.force();
+		} else {
+			computed.setRankBounds(header.getInt(OFFSET_RANK_MIN), header.getInt(OFFSET_RANK_MAX));
+		}
+
+		computed.scaleRanksInto(getRanks());
+		tables[currentTable].force();
+
+		// The scaled ranks stay in the current table, and the next iteration is computed over the other one
+		iteration++;
+		Arrays.fill(chunkDone, false);
+		numChunksDone = 0;
+		header.putInt(OFFSET_ITERATION, iteration);
+		header.putInt(OFFSET_SCALING, 0);
+		for (int i = 0; i < numChunks; i++) {
+			header.put(HEADER_SIZE + i, (byte)0);
+		}
+		header.force();
+		lastCheckpoint = System.currentTimeMillis();
+	}
+
+	/**
+	 * Close the file. Ranks obtained from it stay usable.
+	 */
+	public void close() {
+		try {
+			channel.close();
+			file.close();
+		} catch (IOException e) {
+			log.error("Couldn't close the ranks file", e);
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package mu.nu.nullpo.tool.airankstool;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Iterations of a RanksFile on a fork-join pool.<br>
+ * The surfaces are split into ranges of chunks ({@link RanksIteratorPart}); idle threads steal the ranges of busy ones.
+ * The progress and the error are counted with atomic counters once per chunk, so no lock is taken per surface.
+ * Used by the RanksIterator dialog and by the command-line RanksIteratorCLI.
+ */
+public class RanksIteration {
+	/** Interval between two progress reports (ms) */
+	public static final long PROGRESS_INTERVAL = 250;
+
+	/** Number of surfaces between two checks of the cancel flag */
+	static final int CANCEL_CHECK_INTERVAL = 4096;
+
+	private RanksFile ranksFile;
+	private ForkJoinPool pool;
+
+	/** Ranks being computed */
+	private Ranks ranks;
+	private int size;
+
+	private volatile boolean cancelled;
+
+	/** Number of surfaces done in the current iteration (including the ones done before a resume) */
+	private AtomicLong surfacesDone = new AtomicLong();
+
+	/** Number of surfaces computed in the current iteration, and the sum and maximum of their rank changes */
+	private AtomicLong surfacesComputed = new AtomicLong();
+	private AtomicLong errorSum = new AtomicLong();
+	private AtomicInteger maxError = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 * @param ranksFile Work file
+	 * @param numThreads Number of threads (0 to use all the processors)
+	 */
+	public RanksIteration(RanksFile ranksFile, int numThreads) {
+		this.ranksFile = ranksFile;
+		if (numThreads <= 0) numThreads = Runtime.getRuntime().availableProcessors();
+		pool = new ForkJoinPool(numThreads);
+	}
+
+	/**
+	 * Run the current iteration of the work file, skipping the chunks already finished.
+	 * The new ranks are scaled and the iteration is finished, unless it's cancelled;
+	 * in this case a checkpoint is made so that the next run resumes from here.
+	 * @param progressListener Called every {@link #PROGRESS_INTERVAL} ms while the iteration runs (can be null)
+	 * @return true if the iteration is finished, false if it's cancelled
+	 * @throws IOException When the work file can't be written
+	 */
+	public boolean run(Runnable progressListener) throws IOException {
+		ranks = ranksFile.getNextRanks();
+		size = ranks.getSize();
+
+		long done = 0;
+		for (int chunk = 0; chunk < ranksFile.getNumChunks(); chunk++) {
+			if (ranksFile.isChunkDone(chunk)) done += getChunkEnd(chunk) - getChunkStart(chunk);
+		}
+		surfacesDone.set(done);
+		surfacesComputed.set(0);
+		errorSum.set(0);
+		maxError.set(0);
+
+		ForkJoinTask<Void> task = pool.submit(new RanksIteratorPart(this, 0, ranksFile.getNumChunks()));
+		while (true) {
+			try {
+				task.get(PROGRESS_INTERVAL, TimeUnit.MILLISECONDS);
+				break;
+			} catch (TimeoutException e) {
+				if (progressListener != null) progressListener.run();
+			} catch (InterruptedException e) {
+				cancel();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof UncheckedIOException) {
+					throw ((UncheckedIOException)e.getCause()).getCause();
+				}
+				throw new IOException(e.getCause());
+			}
+		}
+		if (progressListener != null) progressListener.run();
+
+		if (cancelled) {
+			ranksFile.checkpoint();
+			return false;
+		}
+		ranksFile.finishIteration();
+		return true;
+	}
+
+	/**
+	 * Stop the current iteration. The chunks being processed are dropped and computed again on resume.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Stop the threads of the pool. Call it once all the iterations are done.
+	 */
+	public void shutdown() {
+		pool.shutdown();
+	}
+
+	/**
+	 * @return Completion of the current iteration (0-100)
+	 */
+	public int getCompletionPercentage() {
+		if (size == 0) return 0;
+		return (int)(surfacesDone.get() * 100 / size);
+	}
+
+	/**
+	 * @return Average rank change of the surfaces computed in the current iteration
+	 */
+	public double getAverageError() {
+		long n = surfacesComputed.get();
+		return (n == 0) ? 0 : (double)errorSum.get() / n;
+	}
+
+	/**
+	 * @return Maximum rank change of the surfaces computed in the current iteration
+	 */
+	public int getMaxError() {
+		return maxError.get();
+	}
+
+	Ranks getRanks() {
+		return ranks;
+	}
+
+	RanksFile getRanksFile() {
+		return ranksFile;
+	}
+
+	int getChunkStart(int chunk) {
+		return chunk * RanksFile.CHUNK_SIZE;
+	}
+
+	int getChunkEnd(int chunk) {
+		return Math.min(getChunkStart(chunk) + RanksFile.CHUNK_SIZE, size);
+	}
+
+	/**
+	 * Count a finished chunk
+	 * @param numSurfaces Number of surfaces in the chunk
+	 * @param chunkErrorSum Sum of the rank changes in the chunk
+	 * @param chunkMaxError Maximum rank change in the chunk
+	 */
+	void addChunk(int numSurfaces, long chunkErrorSum, int chunkMaxError) {
+		surfacesDone.addAndGet(numSurfaces);
+		surfacesComputed.addAndGet(numSurfaces);
+		errorSum.addAndGet(chunkErrorSum);
+		int max;
+		do {
+			max = maxError.get();
+		} while (chunkMaxError > max && !maxError.compareAndSet(max, chunkMaxError));
+	}
+}
@@ -4,16 +4,10 @@ import java.awt.BorderLayout;
 import java.awt.GridLayout;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.beans.PropertyChangeEvent;
-import java.beans.PropertyChangeListener;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.util.concurrent.ExecutionException;
+import java.util.List;
 
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
@@ -25,89 +19,32 @@ import javax.swing.JProgressBar;
 
 import org.jdesktop.swingworker.SwingWorker;
 
-public class RanksIterator extends JDialog implements PropertyChangeListener,ActionListener {
+public class RanksIterator extends JDialog implements ActionListener {
 	/**
 	 *
 	 */
 	private static final long serialVersionUID = 1L;
 
-	private Ranks ranks;
-	private Ranks ranksFrom;
+	private RanksFile ranksFile;
 	private String outputFile;
 	private int numIterations;
-	private int iteration;
+	private volatile int iteration;
 
 	private JLabel progressLabel;
 	private JProgressBar progressBar;
 	private JButton cancelButton;
 	 private AllIterations allIterations;
-	 private OneIteration oneIteration;
-	  class OneIteration extends SwingWorker<Void, String>{
-		  private int totalParts;
-		  private RanksIteratorPart [] ranksIteratorPart;
-		  private boolean cancelled;
-		  private Ranks ranks;
-
-		  public OneIteration(int totalParts, Ranks ranks){
-			  this.ranks=ranks;
-			  this.totalParts=totalParts;
-			  cancelled=false;
-
-		  }
-		  public void iterate(){
-
-
-	        	if (ranks.completionPercentageIncrease()){
-
-	        	  this.setProgress(ranks.getCompletionPercentage());
-	        	}
-	        }
-		@Override
-		protected Void doInBackground() throws Exception {
-			ranksIteratorPart=new RanksIteratorPart[totalParts];
-
-     	   for (int i=0;i<totalParts;i++){
-        	   ranksIteratorPart[i]=new RanksIteratorPart(this,ranks,i,totalParts);	;
-        	   ranksIteratorPart[i].start();
-        	   }
-        	for (int i=0;i<totalParts;i++){
-        		try {
-					ranksIteratorPart[i].join();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-        	}
-
-        	if (cancelled){
-        		//System.out.println("cancelled !");
-        		ranks=ranks.getRanksFrom();
-        		allIterations.cancelTask();
-
-        	}
-        	setProgress(100);
-			return null;
-		}
-	    public void cancelTask(){
-        	cancelled=true;
-        	for (int i=0;i<totalParts;i++){
-        		 ranksIteratorPart[i].interrupt();
-        	}
-        }
+    class AllIterations extends SwingWorker<Void, Integer> {
 
-	  }
-    class AllIterations extends SwingWorker<Void, String> {
-
-    private int totalParts;
-    private RanksIterator ranksIterator;
+    private int numThreads;
 
     private String inputFile;
-    boolean cancelled;
+    private volatile RanksIteration ranksIteration;
+    volatile boolean cancelled;
 
-        public AllIterations( int totalParts, RanksIterator ranksIterator, String inputFile) {
+        public AllIterations( int numThreads, String inputFile) {
 
-        	this.totalParts=totalParts;
-        	this.ranksIterator=ranksIterator;
+        	this.numThreads=numThreads;
         	this.inputFile=inputFile;
         	cancelled=false;
             setProgress(0);
@@ -120,86 +57,73 @@ public class RanksIterator extends JDialog implements PropertyChangeListener,Act
         public Void doInBackground() {
         	progressLabel.setText(AIRanksTool.getUIText("Progress_Note_Load_File"));
 
-        	FileInputStream fis = null;
-        	ObjectInputStream in = null;
-        	if (inputFile.trim().length() == 0)
-        		ranksFrom=new Ranks(4,9);
-        	else {
-        		  try {
-        			fis = new FileInputStream(AIRanksConstants.RANKSAI_DIR+inputFile);
-        			   in = new ObjectInputStream(fis);
-        			   ranksFrom = (Ranks)in.readObject();
-        			   in.close();
-
-        		} catch (FileNotFoundException e) {
-        			ranksFrom=new Ranks(4,9);
-        		} catch (IOException e) {
-        			// TODO Auto-generated catch block
-        			e.printStackTrace();
-        		} catch (ClassNotFoundException e) {
-        			// TODO Auto-generated catch block
-        			e.printStackTrace();
-        		}
-
+        	File ranksAIDir=new File(AIRanksConstants.RANKSAI_DIR);
+        	if (!ranksAIDir.exists()){
+        		ranksAIDir.mkdirs();
         	}
-        	ranks=new Ranks(ranksFrom);
-
 
+        	// Resume the work file of an interrupted run, or start a new one
+        	String workFile=AIRanksConstants.RANKSAI_DIR+outputFile+RanksFile.WORK_FILE_SUFFIX;
+        	try {
+        		if (new File(workFile).exists()){
+        			ranksFile=RanksFile.openWorkFile(workFile);
+        		}
+        		else {
+        			Ranks ranksFrom=null;
+        			if (inputFile.trim().length() != 0){
+        				try {
+        					ranksFrom=RanksFile.load(AIRanksConstants.RANKSAI_DIR+inputFile);
+        				} catch (FileNotFoundException e) {
+        					ranksFrom=null;
+        				}
+        			}
+        			ranksFile=RanksFile.createWorkFile(workFile,ranksFrom,4,9);
+        			ranksFrom=null;
+        		}
+        	} catch (IOException e) {
+        		e.printStackTrace();
+        		setProgress(100);
+        		return null;
+        	}
 
-        	 for (int n=0;n<numIterations;n++){
+        	 ranksIteration=new RanksIteration(ranksFile,numThreads);
+        	 if (cancelled) ranksIteration.cancel();
+        	 Runnable progressListener=new Runnable(){
+        		 public void run(){
+        			 publish(ranksIteration.getCompletionPercentage());
+        		 }
+        	 };
+        	 for (int n=ranksFile.getIteration();n<numIterations;n++){
         		 iteration=n;
 
-
-        		 oneIteration=new OneIteration(totalParts,ranks);
-        		 oneIteration.addPropertyChangeListener(ranksIterator);
-        		 oneIteration.execute();
+        		 // When cancelled, the finished chunks are kept so that the next run resumes from here
         		 try {
-					oneIteration.get();
-				} catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				} catch (ExecutionException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
-				if (cancelled){
-	        		//System.out.println("cancelled !");
-	        		//ranks=ranks.getRanksFrom();
-	        		//allIterations.cancelTask();
-	        		break;
-	        	}
-
-        	ranks.scaleRanks();
-        	//lastError=ranks.getErrorPercentage();
-        	//lastErrorMax=ranks.getMaxError();
-        	if (n!=numIterations-1){
-        	  ranksFrom=ranks.getRanksFrom();
-        	  ranksFrom.setRanksFrom(ranks);
-        	  ranks=ranksFrom;
-        	}
-
+        			 if (!ranksIteration.run(progressListener)){
+        				 break;
+        			 }
+        		 } catch (IOException e) {
+        			 e.printStackTrace();
+        			 cancelled=true;
+        			 break;
+        		 }
+        		 //lastError=ranksIteration.getAverageError();
+        		 //lastErrorMax=ranksIteration.getMaxError();
         	}
+        	 ranksIteration.shutdown();
          	//System.out.println("save file !");
        	 progressLabel.setText(AIRanksTool.getUIText("Progress_Note_Save_File"));
 
+           // The output is the last complete iteration (also when cancelled)
            try {
-           	File ranksAIDir=new File(AIRanksConstants.RANKSAI_DIR);
-           	if (!ranksAIDir.exists()){
-           		ranksAIDir.mkdirs();
-           	}
-               FileOutputStream fos=null;
-               ObjectOutputStream out=null;
-               fos=new FileOutputStream(AIRanksConstants.RANKSAI_DIR+ outputFile);
-               out = new ObjectOutputStream(fos);
-               ranks.freeRanksFrom();
-               out.writeObject(ranks);
-               out.close();
-
+               RanksFile.save(ranksFile.getRanks(), AIRanksConstants.RANKSAI_DIR+ outputFile);
            } catch(Exception e) {
                e.printStackTrace();
            }
-           ranks=null;
-           ranksFrom=null;
+           ranksFile.close();
+           if (!cancelled && !new File(workFile).delete()){
+        	   new File(workFile).deleteOnExit();
+           }
+           ranksFile=null;
            setProgress(100);
 
             return null;
@@ -207,7 +131,20 @@ public class RanksIterator extends JDialog implements PropertyChangeListener,Act
 
         public void cancelTask(){
         	cancelled=true;
+        	if (ranksIteration!=null){
+        		ranksIteration.cancel();
+        	}
+        }
 
+        @Override
+        protected void process(List<Integer> chunks) {
+        	int completion=chunks.get(chunks.size()-1);
+        	int totalCompletion=(100*iteration+completion)/numIterations;
+        	progressBar.setValue(totalCompletion);
+
+        	String message =
+        		String.format(AIRanksTool.getUIText("Progress_Note"), iteration+1,completion,numIterations,totalCompletion);
+        	progressLabel.setText(message);
         }
 
         @Override
@@ -255,26 +192,13 @@ public RanksIterator(JFrame parent,String inputFile,String outputFile, int numIt
 	int numProcessors=Runtime.getRuntime().availableProcessors();
 	//System.out.println(numProcessors);
 
-	allIterations =this.new AllIterations(numProcessors,this,inputFile);
+	allIterations =this.new AllIterations(numProcessors,inputFile);
 	//allIterations.addPropertyChangeListener(this);
 	allIterations.execute();
 
-}
-public void propertyChange(PropertyChangeEvent evt) {
-	 if ("progress" == evt.getPropertyName() ) {
-		 ;
-           int totalCompletion=(100*iteration+ranks.getCompletionPercentage())/numIterations;
-           progressBar.setValue(totalCompletion);
-
-           String message =
-               String.format(AIRanksTool.getUIText("Progress_Note"), iteration+1,ranks.getCompletionPercentage(),numIterations,totalCompletion);
-          progressLabel.setText(message);
-
-	 }
-
 }
 public void actionPerformed(ActionEvent arg0) {
-	this.oneIteration.cancelTask();
+	this.allIterations.cancelTask();
 }
 
 }
@@ -0,0 +1,148 @@
+package mu.nu.nullpo.tool.airankstool;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Command-line ranks generator.<br>
+ * Usage: RanksIteratorCLI [options] &lt;output&gt; &lt;iterations&gt;<br>
+ * Options: -input &lt;file&gt; (ranks to start from), -threads &lt;n&gt; (0 = all the processors),
+ * -maxjump &lt;n&gt; and -stackwidth &lt;n&gt; (size of new ranks).<br>
+ * Files are in {@link AIRanksConstants#RANKSAI_DIR}. Like the RanksIterator dialog, it resumes the work file
+ * of an interrupted run, and Ctrl+C stops at the next chunk and keeps the work file.
+ */
+public class RanksIteratorCLI {
+	public static void main(String[] args) {
+		String inputFile = "";
+		int numThreads = 0;
+		int maxJump = 4;
+		int stackWidth = 9;
+		String outputFile = null;
+		int numIterations = -1;
+
+		try {
+			for (int i = 0; i < args.length; i++) {
+				if (args[i].equals("-input")) {
+					inputFile = args[++i];
+				} else if (args[i].equals("-threads")) {
+					numThreads = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-maxjump")) {
+					maxJump = Integer.parseInt(args[++i]);
+				} else if (args[i].equals("-stackwidth")) {
+					stackWidth = Integer.parseInt(args[++i]);
+				} else if (outputFile == null) {
+					outputFile = args[i];
+				} else {
+					numIterations = Integer.parseInt(args[i]);
+				}
+			}
+		} catch (RuntimeException e) {
+			numIterations = -1;
+		}
+		if ((outputFile == null) || (numIterations < 0)) {
+			System.err.println("Usage: RanksIteratorCLI [-input <file>] [-threads <n>] [-maxjump <n>] [-stackwidth <n>] <output> <iterations>");
+			System.exit(1);
+		}
+
+		// Not System.exit after an interruption: the shutdown hook waits for this thread
+		try {
+			run(inputFile, outputFile, numIterations, numThreads, maxJump, stackWidth);
+		} catch (IOException e) {
+			e.printStackTrace();
+			System.exit(1);
+		}
+	}
+
+	/**
+	 * Run the iterations
+	 * @param inputFile Ranks to start from ("" for new ranks)
+	 * @param outputFile Output ranks
+	 * @param numIterations Number of iterations
+	 * @param numThreads Number of threads (0 to use all the processors)
+	 * @param maxJump Maximum height difference between two columns of new ranks
+	 * @param stackWidth Stack width of new ranks
+	 * @return true if all the iterations are done, false if it's interrupted
+	 * @throws IOException When a file can't be read or written
+	 */
+	public static boolean run(String inputFile, String outputFile, int numIterations, int numThreads,
+		int maxJump, int stackWidth) throws IOException
+	{
+		File ranksAIDir = new File(AIRanksConstants.RANKSAI_DIR);
+		if (!ranksAIDir.exists()) {
+			ranksAIDir.mkdirs();
+		}
+
+		String workFile = AIRanksConstants.RANKSAI_DIR + outputFile + RanksFile.WORK_FILE_SUFFIX;
+		final RanksFile ranksFile;
+		if (new File(workFile).exists()) {
+			ranksFile = RanksFile.openWorkFile(workFile);
+			System.out.println("Resuming " + workFile + " at iteration " + (ranksFile.getIteration() + 1) +
+				" (" + ranksFile.getNumChunksDone() + "/" + ranksFile.getNumChunks() + " chunks done)");
+		} else {
+			Ranks ranksFrom = null;
+			if (inputFile.length() != 0) {
+				ranksFrom = RanksFile.load(AIRanksConstants.RANKSAI_DIR + inputFile);
+			}
+			ranksFile = RanksFile.createWorkFile(workFile, ranksFrom, maxJump, stackWidth);
+		}
+
+		final RanksIteration ranksIteration = new RanksIteration(ranksFile, numThreads);
+		final Thread mainThread = Thread.currentThread();
+		Thread shutdownHook = new Thread() {
+			@Override
+			public void run() {
+				ranksIteration.cancel();
+				try {
+					mainThread.join();
+				} catch (InterruptedException e) {}
+			}
+		};
+		Runtime.getRuntime().addShutdownHook(shutdownHook);
+
+		boolean finished = true;
+		try {
+			for (int n = ranksFile.getIteration(); n < numIterations; n++) {
+				final int iteration = n;
+				long startTime = System.currentTimeMillis();
+				Runnable progressListener = new Runnable() {
+					private int lastCompletion = -1;
+
+					public void run() {
+						int completion = ranksIteration.getCompletionPercentage();
+						if (completion != lastCompletion) {
+							lastCompletion = completion;
+							System.out.print("\rIteration " + (iteration + 1) + "/" + numIterations + ": " + completion + "%");
+						}
+					}
+				};
+				if (!ranksIteration.run(progressListener)) {
+					System.out.println();
+					finished = false;
+					break;
+				}
+				System.out.println(String.format("\rIteration %d/%d done in %.1fs (average error %.0f, max error %d)",
+					iteration + 1, numIterations, (System.currentTimeMillis() - startTime) / 1000.0,
+					ranksIteration.getAverageError(), ranksIteration.getMaxError()));
+			}
+		} finally {
+			ranksIteration.shutdown();
+		}
+
+		if (finished) {
+			RanksFile.save(ranksFile.getRanks(), AIRanksConstants.RANKSAI_DIR + outputFile);
+			ranksFile.close();
+			if (!new File(workFile).delete()) {
+				new File(workFile).deleteOnExit();
+			}
+			System.out.println("Saved " + AIRanksConstants.RANKSAI_DIR + outputFile);
+		} else {
+			ranksFile.close();
+			System.out.println("Interrupted; run again to resume " + workFile);
+		}
+
+		try {
+			Runtime.getRuntime().removeShutdownHook(shutdownHook);
+		} catch (IllegalStateException e) {}
+		return finished;
+	}
+}
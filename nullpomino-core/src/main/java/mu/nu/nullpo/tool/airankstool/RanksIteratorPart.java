@@ -1,51 +1,70 @@
 package mu.nu.nullpo.tool.airankstool;
 
-import mu.nu.nullpo.tool.airankstool.RanksIterator.OneIteration;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.RecursiveAction;
 
-public class RanksIteratorPart extends Thread {
+/**
+ * A range of chunks of an iteration. It's split in two until it holds one chunk,
+ * so the idle threads of the pool can steal the halves of the busy ones.
+ */
+public class RanksIteratorPart extends RecursiveAction {
+	private static final long serialVersionUID = 1L;
 
-private OneIteration oneIteration;
-private Ranks ranks;
+	private RanksIteration iteration;
 
-private int sMin;
-private int sMax;
-private int size;
-private int  [] surface;
-private int [] surfaceDecodedWork;
+	/** Chunks of this part (chunkMin included, chunkMax excluded) */
+	private int chunkMin;
+	private int chunkMax;
 
-	public RanksIteratorPart(OneIteration oneIteration, Ranks ranks, int i,
-			int totalParts) {
-
-      this.oneIteration=oneIteration;
-      this.ranks=ranks;
-
-     size=this.ranks.getSize();
-		  sMin=i*size/totalParts;
-		 sMax=(i==totalParts-1)?size:(i+1)*size/totalParts;
-		surface=new int [this.ranks.getStackWidth()-1];
-		this.ranks.decode(sMin,surface);
-		 surfaceDecodedWork=new int [ranks.getStackWidth()-1];
-		 this.ranks.decode(sMin,surfaceDecodedWork);
-		 this.setPriority(MIN_PRIORITY);
+	public RanksIteratorPart(RanksIteration iteration, int chunkMin, int chunkMax) {
+		this.iteration = iteration;
+		this.chunkMin = chunkMin;
+		this.chunkMax = chunkMax;
 	}
 
 	@Override
-	public void run(){
+	protected void compute() {
+		if (chunkMax - chunkMin > 1) {
+			int chunkMid = (chunkMin + chunkMax) >>> 1;
+			invokeAll(new RanksIteratorPart(iteration, chunkMin, chunkMid), new RanksIteratorPart(iteration, chunkMid, chunkMax));
+		} else if (chunkMax > chunkMin) {
+			iterateChunk(chunkMin);
+		}
+	}
 
-		for (int s=sMin;s<sMax;s++){
-			ranks.iterateSurface(surface,surfaceDecodedWork);
+	private void iterateChunk(int chunk) {
+		RanksFile ranksFile = iteration.getRanksFile();
+		// Chunks finished before a resume are skipped
+		if (iteration.isCancelled() || ranksFile.isChunkDone(chunk)) return;
 
-		   synchronized(this){
-			 oneIteration.iterate();
-		  }
-		   if (Thread.interrupted()){
+		Ranks ranks = iteration.getRanks();
+		Ranks ranksFrom = ranks.getRanksFrom();
+		int sMin = iteration.getChunkStart(chunk);
+		int sMax = iteration.getChunkEnd(chunk);
+		int [] surface = new int[ranks.getStackWidth() - 1];
+		int [] surfaceDecodedWork = new int[ranks.getStackWidth() - 1];
+		ranks.decode(sMin, surface);
+		ranks.decode(sMin, surfaceDecodedWork);
 
-			   ranks=null;
-				break;
+		long errorSum = 0;
+		int maxError = 0;
+		for (int s = sMin; s < sMax; s++) {
+			ranks.iterateSurface(surface, surfaceDecodedWork);
 
-		   }
+			int error = (int)Math.abs((long)ranks.getRankValue(s) - ranksFrom.getRankValue(s));
+			errorSum += error;
+			if (error > maxError) maxError = error;
 
-	    }
+			// An unfinished chunk is computed again on resume
+			if (((s - sMin) % RanksIteration.CANCEL_CHECK_INTERVAL == 0) && iteration.isCancelled()) return;
+		}
 
-   }
+		try {
+			ranksFile.setChunkDone(chunk);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		iteration.addChunk(sMax - sMin, errorSum, maxError);
+	}
 }
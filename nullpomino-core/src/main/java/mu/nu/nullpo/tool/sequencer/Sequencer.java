@@ -68,6 +68,7 @@ import org.apache.log4j.Logger;
 import org.apache.log4j.PropertyConfigurator;
 
 import mu.nu.nullpo.game.component.Piece;
+import mu.nu.nullpo.game.component.ReplayReader;
 import mu.nu.nullpo.util.CustomProperties;
 import net.omegaboshi.nullpomino.game.subsystem.randomizer.Randomizer;
 
@@ -358,13 +359,8 @@ public class Sequencer extends JFrame implements ActionListener {
 
 	public CustomProperties load(String filename) throws IOException {
 		log.info("Loading replay file from " + filename);
-		CustomProperties prop = new CustomProperties();
-
-		FileInputStream in = new FileInputStream(filename);
-		prop.load(in);
-		in.close();
-
-		return prop;
+		// The piece sequence only needs the rule and the random seed
+		return ReplayReader.load(filename, null);
 	}
 
 	public void save(String filename) throws IOException {
@@ -0,0 +1,196 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.tool.simulator;
+
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import mu.nu.nullpo.game.component.RuleOptions;
+import mu.nu.nullpo.game.component.Statistics;
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.play.GameManager;
+import mu.nu.nullpo.game.subsystem.ai.DummyAI;
+import mu.nu.nullpo.game.subsystem.mode.GameMode;
+import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.GeneralUtil;
+
+/**
+ * One game played by AI players without a renderer.
+ * <p>
+ * The game runs as a re-recorded replay with no inputs: the mode reads its
+ * settings from the replay properties and starts by itself, nothing is saved
+ * (rankings, mode settings or replays), and the AI players take over the
+ * controllers. Frames are updated back to back until every player has finished
+ * or the frame limit is reached.
+ */
+public class SimulationGame implements Callable<SimulationGame> {
+	/** Settings of the whole simulation */
+	protected final Simulator simulator;
+
+	/** Game number */
+	public final int number;
+
+	/** Random seed */
+	public final long seed;
+
+	/** Number of frames updated */
+	public int frames;
+
+	/** true if the frame limit was reached before the game ended */
+	public boolean timeout;
+
+	/** Winner player ID (-1 in single player games, -2 if tied or timed out) */
+	public int winner;
+
+	/** Status of each player at the end */
+	public GameEngine.Status[] status;
+
+	/** Statistics of each player */
+	public Statistics[] statistics;
+
+	/**
+	 * Constructor
+	 * @param simulator Settings of the whole simulation
+	 * @param number Game number
+	 * @param seed Random seed
+	 */
+	public SimulationGame(Simulator simulator, int number, long seed) {
+		this.simulator = simulator;
+		this.number = number;
+		this.seed = seed;
+	}
+
+	/**
+	 * Play the game
+	 * @return this
+	 * @throws Exception When the mode, rule or AI could not be created
+	 */
+	public SimulationGame call() throws Exception {
+		GameManager gameManager = createGame(simulator.modeClass, simulator.ruleopt, simulator.aiName, simulator.aiMoveDelay,
+											 simulator.modeSetting, seed);
+
+		try {
+			// Play
+			boolean started = false;
+			while(frames < simulator.maxFrames) {
+				gameManager.updateAll();
+				frames++;
+
+				if(gameManager.getQuitFlag()) break;
+				for(int i = 0; i < gameManager.getPlayers(); i++) {
+					if(gameManager.engine[i].gameStarted) started = true;
+				}
+				if(started && !gameManager.isGameActive()) break;
+			}
+
+			timeout = gameManager.isGameActive() || !started;
+			winner = timeout ? -2 : gameManager.getWinner();
+			status = new GameEngine.Status[gameManager.getPlayers()];
+			statistics = new Statistics[gameManager.getPlayers()];
+			for(int i = 0; i < gameManager.getPlayers(); i++) {
+				status[i] = gameManager.engine[i].stat;
+				statistics[i] = gameManager.engine[i].statistics;
+			}
+		} finally {
+			gameManager.shutdown();
+		}
+
+		return this;
+	}
+
+	/**
+	 * Create a game played by AI players that is ready to be updated
+	 * @param modeClass Mode class
+	 * @param ruleopt Rule (Copied for every player)
+	 * @param aiName AI class name
+	 * @param aiMoveDelay AI move delay
+	 * @param modeSetting Mode settings
+	 * @param seed Random seed
+	 * @return GameManager (Call shutdown() when finished)
+	 * @throws Exception When the mode or AI could not be created
+	 */
+	public static GameManager createGame(Class<? extends GameMode> modeClass, RuleOptions ruleopt, String aiName, int aiMoveDelay,
+										 CustomProperties modeSetting, long seed) throws Exception
+	{
+		GameManager gameManager = new GameManager();
+		gameManager.mode = modeClass.newInstance();
+		gameManager.replayMode = true;
+		gameManager.replayProp = createReplayProperty(modeSetting);
+		gameManager.init();
+		gameManager.replayRerecord = true;
+
+		for(int i = 0; i < gameManager.getPlayers(); i++) {
+			GameEngine engine = gameManager.engine[i];
+			gameManager.replayProp.setProperty(i + ".replay.randSeed", Long.toString(seed, 16));
+
+			// Rule
+			engine.ruleopt = new RuleOptions(ruleopt);
+			if((ruleopt.strRandomizer != null) && (ruleopt.strRandomizer.length() > 0)) {
+				engine.randomizer = GeneralUtil.loadRandomizer(ruleopt.strRandomizer);
+			}
+			if((ruleopt.strWallkick != null) && (ruleopt.strWallkick.length() > 0)) {
+				engine.wallkick = GeneralUtil.loadWallkick(ruleopt.strWallkick);
+			}
+
+			// AI (Thinks on the game thread, so a game plays the same every time)
+			DummyAI aiObj = GeneralUtil.loadAIPlayer(aiName);
+			if(aiObj == null) {
+				gameManager.shutdown();
+				throw new IllegalArgumentException("Couldn't load AI " + aiName);
+			}
+			engine.ai = aiObj;
+			engine.aiMoveDelay = aiMoveDelay;
+			engine.aiThinkDelay = 0;
+			engine.aiUseThread = false;
+
+			engine.init();
+		}
+
+		return gameManager;
+	}
+
+	/**
+	 * Create the replay properties a game starts from
+	 * @param modeSetting Mode settings
+	 * @return Replay properties (Mode settings and the current version)
+	 */
+	protected static CustomProperties createReplayProperty(CustomProperties modeSetting) {
+		CustomProperties prop = new CustomProperties();
+
+		for(Map.Entry<Object, Object> e : modeSetting.entrySet()) {
+			prop.setProperty((String)e.getKey(), (String)e.getValue());
+		}
+
+		prop.setProperty("version.core.major", GameManager.getVersionMajor());
+		prop.setProperty("version.core.minor", GameManager.getVersionMinor());
+		prop.setProperty("version.core.dev", GameManager.isDevBuild());
+
+		return prop;
+	}
+}
@@ -0,0 +1,304 @@
+/*
+    Copyright (c) 2010, NullNoname
+    All rights reserved.
+
+    Redistribution and use in source and binary forms, with or without
+    modification, are permitted provided that the following conditions are met:
+
+        * Redistributions of source code must retain the above copyright
+          notice, this list of conditions and the following disclaimer.
+        * Redistributions in binary form must reproduce the above copyright
+          notice, this list of conditions and the following disclaimer in the
+          documentation and/or other materials provided with the distribution.
+        * Neither the name of NullNoname nor the names of its
+          contributors may be used to endorse or promote products derived from
+          this software without specific prior written permission.
+
+    THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+    AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+    IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+    ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE
+    LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+    CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+    SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+    INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+    CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+    ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+    POSSIBILITY OF SUCH DAMAGE.
+*/
+package mu.nu.nullpo.tool.simulator;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mu.nu.nullpo.game.component.RuleOptions;
+import mu.nu.nullpo.game.component.Statistics;
+import mu.nu.nullpo.game.play.GameEngine;
+import mu.nu.nullpo.game.subsystem.mode.GameMode;
+import mu.nu.nullpo.util.CustomProperties;
+import mu.nu.nullpo.util.GeneralUtil;
+import mu.nu.nullpo.util.ModeManager;
+
+import org.apache.log4j.Logger;
+import org.apache.log4j.PropertyConfigurator;
+
+/**
+ * Headless batch simulation: plays many AI games as fast as the CPU allows and
+ * writes the statistics of every player to a CSV or JSONL file.
+ * <p>
+ * Settings are read from a config file (config/etc/simulator.cfg by default).
+ * Keys starting with "simulator." configure the run; every other key is handed
+ * to the mode as its settings (the same keys the mode stores in mode.cfg).
+ */
+public class Simulator {
+	/** Log */
+	static Logger log = Logger.getLogger(Simulator.class);
+
+	/** Default config file */
+	public static final String DEFAULT_CONFIG = "config/etc/simulator.cfg";
+
+	/** Output format: CSV */
+	public static final int FORMAT_CSV = 0;
+
+	/** Output format: JSON Lines */
+	public static final int FORMAT_JSONL = 1;
+
+	/** Mode class */
+	protected Class<? extends GameMode> modeClass;
+
+	/** Rule (Copied for every player) */
+	protected RuleOptions ruleopt;
+
+	/** AI class name */
+	protected String aiName;
+
+	/** AI move delay */
+	protected int aiMoveDelay;
+
+	/** Frame limit of a game */
+	protected int maxFrames;
+
+	/** Number of games played at the same time */
+	protected int threads;
+
+	/** Random seed of each game */
+	protected long[] seeds;
+
+	/** Output file */
+	protected String output;
+
+	/** Output format */
+	protected int format;
+
+	/** Mode settings */
+	protected CustomProperties modeSetting;
+
+	/**
+	 * Main (Entry point)
+	 * @param args optional command-line arguments (0: config file path  1: output file path)
+	 */
+	public static void main(String[] args) {
+		PropertyConfigurator.configure("config/etc/log_simulator.cfg");
+
+		String cfg = (args.length >= 1) ? args[0] : DEFAULT_CONFIG;
+		CustomProperties prop = new CustomProperties();
+		try {
+			FileInputStream in = new FileInputStream(cfg);
+			prop.load(in);
+			in.close();
+		} catch (IOException e) {
+			log.error("Failed to load config file " + cfg, e);
+			return;
+		}
+		if(args.length >= 2) prop.setProperty("simulator.output", args[1]);
+
+		ModeManager modeManager = new ModeManager();
+		try {
+			BufferedReader txtMode = new BufferedReader(new FileReader("config/list/mode.lst"));
+			modeManager.loadGameModes(txtMode);
+			txtMode.close();
+		} catch (IOException e) {
+			log.error("Mode list load failed", e);
+			return;
+		}
+
+		try {
+			new Simulator(prop, modeManager).run();
+		} catch (Exception e) {
+			log.error("Simulation failed", e);
+		}
+	}
+
+	/**
+	 * Constructor
+	 * @param prop Settings
+	 * @param modeManager Available modes
+	 * @throws IllegalArgumentException When a setting is invalid
+	 */
+	public Simulator(CustomProperties prop, ModeManager modeManager) {
+		String modeName = prop.getProperty("simulator.mode", "");
+		GameMode modeObj = modeManager.getMode(modeName);
+		if(modeObj == null) throw new IllegalArgumentException("Couldn't find mode:" + modeName);
+		modeClass = modeObj.getClass();
+
+		String rulename = prop.getProperty("simulator.rule", "");
+		if(rulename.length() > 0) {
+			ruleopt = GeneralUtil.loadRule(rulename);
+		} else {
+			ruleopt = new RuleOptions();
+		}
+
+		aiName = prop.getProperty("simulator.ai", "");
+		if(aiName.length() == 0) throw new IllegalArgumentException("No AI (simulator.ai) specified");
+		aiMoveDelay = prop.getProperty("simulator.aiMoveDelay", 0);
+		maxFrames = prop.getProperty("simulator.maxframes", 60 * 60 * 60);
+
+		threads = prop.getProperty("simulator.threads", 0);
+		if(threads <= 0) threads = Runtime.getRuntime().availableProcessors();
+
+		String strSeeds = prop.getProperty("simulator.seeds", "").trim();
+		if(strSeeds.length() > 0) {
+			String[] array = strSeeds.split(",");
+			seeds = new long[array.length];
+			for(int i = 0; i < array.length; i++) seeds[i] = Long.parseLong(array[i].trim());
+		} else {
+			int games = prop.getProperty("simulator.games", 1);
+			long seed = prop.getProperty("simulator.seed", 0L);
+			seeds = new long[games];
+			for(int i = 0; i < games; i++) seeds[i] = seed + i;
+		}
+
+		output = prop.getProperty("simulator.output", "log/simulation.csv");
+		String strFormat = prop.getProperty("simulator.format", "");
+		if(strFormat.length() == 0) strFormat = output.toLowerCase().endsWith(".jsonl") ? "jsonl" : "csv";
+		if(strFormat.equalsIgnoreCase("csv")) format = FORMAT_CSV;
+		else if(strFormat.equalsIgnoreCase("jsonl")) format = FORMAT_JSONL;
+		else throw new IllegalArgumentException("Unknown output format:" + strFormat);
+
+		modeSetting = new CustomProperties();
+		for(String key : prop.stringPropertyNames()) {
+			if(!key.startsWith("simulator.")) modeSetting.setProperty(key, prop.getProperty(key));
+		}
+	}
+
+	/**
+	 * Play every game and write the results
+	 * @throws IOException When the output file could not be written
+	 * @throws InterruptedException When interrupted while waiting for a game
+	 */
+	public void run() throws IOException, InterruptedException {
+		log.info("Simulating " + seeds.length + " games on " + threads + " threads, output:" + output);
+		long startTime = System.currentTimeMillis();
+
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Future<SimulationGame>> futures = new ArrayList<Future<SimulationGame>>(seeds.length);
+		for(int i = 0; i < seeds.length; i++) {
+			futures.add(executor.submit(new SimulationGame(this, i, seeds[i])));
+		}
+
+		File parent = new File(output).getAbsoluteFile().getParentFile();
+		if((parent != null) && !parent.exists()) parent.mkdirs();
+		PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(output)));
+		int failed = 0;
+
+		try {
+			if(format == FORMAT_CSV) writeCSVHeader(out);
+
+			// Results are written in game order whatever order the games finish in
+			for(Future<SimulationGame> f : futures) {
+				try {
+					SimulationGame game = f.get();
+					if(format == FORMAT_CSV) writeCSV(out, game);
+					else writeJSON(out, game);
+				} catch (ExecutionException e) {
+					log.error("Game failed", e.getCause());
+					failed++;
+				}
+			}
+		} finally {
+			executor.shutdownNow();
+			out.close();
+		}
+
+		long time = System.currentTimeMillis() - startTime;
+		log.info("Finished " + (seeds.length - failed) + " games (" + failed + " failed) in " + time + "ms");
+	}
+
+	/**
+	 * Write the CSV header line
+	 * @param out Output
+	 */
+	protected void writeCSVHeader(PrintWriter out) {
+		StringBuilder sb = new StringBuilder("game,seed,player,frames,result,winner");
+		for(String name : Statistics.EXPORT_NAMES) sb.append(',').append(name);
+		out.println(sb);
+	}
+
+	/**
+	 * Write one CSV line for every player of a game
+	 * @param out Output
+	 * @param game Finished game
+	 */
+	protected void writeCSV(PrintWriter out, SimulationGame game) {
+		for(int i = 0; i < game.statistics.length; i++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append(game.number).append(',').append(game.seed).append(',').append(i).append(',');
+			sb.append(game.frames).append(',').append(getResult(game, i)).append(',').append(game.winner);
+			for(String value : game.statistics[i].exportStringArray()) sb.append(',').append(value);
+			out.println(sb);
+		}
+	}
+
+	/**
+	 * Write one JSON object line for every player of a game
+	 * @param out Output
+	 * @param game Finished game
+	 */
+	protected void writeJSON(PrintWriter out, SimulationGame game) {
+		for(int i = 0; i < game.statistics.length; i++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("{\"game\":").append(game.number).append(",\"seed\":").append(game.seed);
+			sb.append(",\"player\":").append(i).append(",\"frames\":").append(game.frames);
+			sb.append(",\"result\":\"").append(getResult(game, i)).append("\",\"winner\":").append(game.winner);
+			sb.append(",\"statistics\":{");
+
+			String[] values = game.statistics[i].exportStringArray();
+			for(int j = 0; j < values.length; j++) {
+				if(j > 0) sb.append(',');
+				sb.append('"').append(Statistics.EXPORT_NAMES[j]).append("\":");
+				// NaN and Infinity are not valid JSON numbers
+				boolean finite = !values[j].contains("N") && !values[j].contains("I");
+				sb.append(finite ? values[j] : "null");
+			}
+
+			sb.append("}}");
+			out.println(sb);
+		}
+	}
+
+	/**
+	 * Get how a player's game ended
+	 * @param game Finished game
+	 * @param player Player ID
+	 * @return "TIMEOUT" if the frame limit was reached, "GAMEOVER" if the player topped out, "END" otherwise
+	 */
+	protected String getResult(SimulationGame game, int player) {
+		if(game.timeout) return "TIMEOUT";
+		if((game.status[player] == GameEngine.Status.GAMEOVER) || (game.status[player] == GameEngine.Status.RESULT)) {
+			return "GAMEOVER";
+		}
+		return "END";
+	}
+}
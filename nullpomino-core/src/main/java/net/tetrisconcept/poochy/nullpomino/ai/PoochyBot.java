@@ -1,7 +1,13 @@
 package net.tetrisconcept.poochy.nullpomino.ai;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
 import mu.nu.nullpo.game.component.Controller;
 import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.FieldBitboard;
 import mu.nu.nullpo.game.component.Piece;
 import mu.nu.nullpo.game.component.SpeedParam;
 import mu.nu.nullpo.game.component.WallkickResult;
@@ -9,6 +15,8 @@ import mu.nu.nullpo.game.event.EventReceiver;
 import mu.nu.nullpo.game.play.GameEngine;
 import mu.nu.nullpo.game.play.GameManager;
 import mu.nu.nullpo.game.subsystem.ai.DummyAI;
+import mu.nu.nullpo.game.subsystem.ai.ThinkCandidate;
+import mu.nu.nullpo.game.subsystem.ai.TranspositionTable;
 import mu.nu.nullpo.util.GeneralUtil;
 
 import org.apache.log4j.Logger;
@@ -58,6 +66,18 @@ public class PoochyBot extends DummyAI implements Runnable {
 	/** Thread for executing the think routine */
 	public Thread thread;
 
+	/** Scratch field for the think routine (reused for every think) */
+	public FieldBitboard searchField = new FieldBitboard();
+
+	/** true if this AI still overrides the Field version of thinkMain */
+	protected final boolean legacyThinkMain = overridesFieldThinkMain();
+
+	/** Field before placement (for the Field version of thinkMain) */
+	protected Field thinkField;
+
+	/** Field given to the Field version of thinkMain */
+	protected Field thinkWorkField;
+
 	/** Number of frames for which piece has been stuck */
 	protected int stuckDelay;
 
@@ -115,6 +135,9 @@ public class PoochyBot extends DummyAI implements Runnable {
 		thinkSuccess = false;
 		inARE = false;
 
+		if(thinkCache == null) thinkCache = new TranspositionTable(THINK_CACHE_SIZE);
+		else thinkCache.clear();
+
 		if( ((thread == null) || !thread.isAlive()) && (engine.aiUseThread) ) {
 			thread = new Thread(this, "AI_" + playerID);
 			thread.setDaemon(true);
@@ -800,6 +823,17 @@ public class PoochyBot extends DummyAI implements Runnable {
 					engine.fieldHiddenHeight, engine.ruleopt.fieldCeiling);
 		else
 			fld = new Field(engine.field);
+		// Candidates are searched on a bitboard copy of the current field
+		Field fldSearch = (engine.stat == GameEngine.Status.READY) ? new Field(engine.field) : fld;
+		FieldBitboard sfld = searchField;
+		sfld.sync(fldSearch);
+		int base = sfld.mark();
+		if (legacyThinkMain)
+		{
+			thinkField = fldSearch;
+			if (thinkWorkField == null)
+				thinkWorkField = new Field(fldSearch);
+		}
 		Piece pieceNow = engine.nowPieceObject;
 		Piece pieceHold = engine.holdPieceObject;
 		/*
@@ -856,7 +890,31 @@ public class PoochyBot extends DummyAI implements Runnable {
 		if (engine.big)
 			move = 2;
 
+		ForkJoinPool pool = legacyThinkMain ? null : getThinkPool(engine);
+		List<ThinkCandidate> candidates = new ArrayList<ThinkCandidate>();
+
+		//Bonus for holding an I piece, penalty for holding an S or Z.
+		int holdPts = 0;
+		if (pieceHold != null)
+		{
+			int holdType = pieceHold.id;
+			if (holdType == Piece.PIECE_I)
+				holdPts -= 30;
+			else if (holdType == Piece.PIECE_S || holdType == Piece.PIECE_Z)
+				holdPts += 30;
+			else if (holdType == Piece.PIECE_O)
+				holdPts += 10;
+			int nowType = pieceNow.id;
+			if (nowType == Piece.PIECE_I)
+				holdPts += 30;
+			else if (nowType == Piece.PIECE_S || nowType == Piece.PIECE_Z)
+				holdPts -= 30;
+			else if (nowType == Piece.PIECE_O)
+				holdPts -= 10;
+		}
+
 		for(int depth = 0; depth < MAX_THINK_DEPTH; depth++) {
+			candidates.clear();
 			/*
 			int dirCount = Piece.DIRECTION_COUNT;
 			if (pieceNow.id == Piece.PIECE_I || pieceNow.id == Piece.PIECE_S || pieceNow.id == Piece.PIECE_Z)
@@ -882,185 +940,8 @@ public class PoochyBot extends DummyAI implements Runnable {
 					int spawnY = engine.getSpawnPosY(pieceNow);
 					spawnOK = !pieceNow.checkCollision(spawnX, spawnY, fld);
 				}
-				for(int x = minX; x <= maxX && spawnOK; x+=move) {
-					fld.copy(engine.field);
-					int y = pieceNow.getBottom(x, tempY, rt, fld);
-
-					if(!pieceNow.checkCollision(x, y, rt, fld)) {
-						// As it is
-						int pts = thinkMain(x, y, rt, -1, fld, pieceNow, depth);
-
-						if(pts >= bestPts) {
-							bestHold = false;
-							bestX = x;
-							bestY = y;
-							bestRt = rt;
-							bestXSub = x;
-							bestYSub = y;
-							bestRtSub = -1;
-							bestPts = pts;
-							if (DEBUG_ALL)
-								logBest(1);
-							thinkSuccess = true;
-						}
-						//Check regardless
-						//if((depth > 0) || (bestPts <= 10) || (pieceNow.id == Piece.PIECE_T)) {
-						// Left shift
-						fld.copy(engine.field);
-						if(!pieceNow.checkCollision(x - move, y, rt, fld) && pieceNow.checkCollision(x - move, y - 1, rt, fld)) {
-							pts = thinkMain(x - move, y, rt, -1, fld, pieceNow, depth);
-
-							if(pts > bestPts) {
-								bestHold = false;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestXSub = x - move;
-								bestYSub = y;
-								bestRtSub = -1;
-								bestPts = pts;
-								if (DEBUG_ALL)
-									logBest(2);
-								thinkSuccess = true;
-							}
-						}
-
-						// Right shift
-						fld.copy(engine.field);
-						if(!pieceNow.checkCollision(x + move, y, rt, fld) && pieceNow.checkCollision(x + 1, y - move, rt, fld)) {
-							pts = thinkMain(x + move, y, rt, -1, fld, pieceNow, depth);
-
-							if(pts > bestPts) {
-								bestHold = false;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestXSub = x + 1;
-								bestYSub = y;
-								bestRtSub = -1;
-								bestPts = pts;
-								if (DEBUG_ALL)
-									logBest(3);
-								thinkSuccess = true;
-							}
-						}
-
-						// Left rotation
-						if(!engine.ruleopt.rotateButtonDefaultRight || engine.ruleopt.rotateButtonAllowReverse) {
-							int rot = pieceNow.getRotateDirection(-1, rt);
-							int newX = x;
-							int newY = y;
-							fld.copy(engine.field);
-							pts = Integer.MIN_VALUE;
-
-							if(!pieceNow.checkCollision(x, y, rot, fld)) {
-								pts = thinkMain(x, y, rot, rt, fld, pieceNow, depth);
-							} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-								boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-													  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-								WallkickResult kick = engine.wallkick.executeWallkick(x, y, -1, rt, rot,
-													  allowUpward, pieceNow, fld, null);
-
-								if(kick != null) {
-									newX = x + kick.offsetX;
-									newY = y + kick.offsetY;
-									pts = thinkMain(newX, newY, rot, rt, fld, pieceNow, depth);
-								}
-							}
-
-							if(pts > bestPts) {
-								bestHold = false;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestXSub = newX;
-								bestYSub = newY;
-								bestRtSub = rot;
-								bestPts = pts;
-								if (DEBUG_ALL)
-									logBest(4);
-								thinkSuccess = true;
-							}
-						}
-
-						// Right rotation
-						if(engine.ruleopt.rotateButtonDefaultRight || engine.ruleopt.rotateButtonAllowReverse) {
-							int rot = pieceNow.getRotateDirection(1, rt);
-							int newX = x;
-							int newY = y;
-							fld.copy(engine.field);
-							pts = Integer.MIN_VALUE;
-
-							if(!pieceNow.checkCollision(x, y, rot, fld)) {
-								pts = thinkMain(x, y, rot, rt, fld, pieceNow, depth);
-							} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-								boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-													  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-								WallkickResult kick = engine.wallkick.executeWallkick(x, y, 1, rt, rot,
-													  allowUpward, pieceNow, fld, null);
-
-								if(kick != null) {
-									newX = x + kick.offsetX;
-									newY = y + kick.offsetY;
-									pts = thinkMain(newX, newY, rot, rt, fld, pieceNow, depth);
-								}
-							}
-
-							if(pts > bestPts) {
-								bestHold = false;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestXSub = newX;
-								bestYSub = newY;
-								bestRtSub = rot;
-								bestPts = pts;
-								if (DEBUG_ALL)
-									logBest(5);
-								thinkSuccess = true;
-							}
-						}
-
-						// 180-degree rotation
-						if(engine.ruleopt.rotateButtonAllowDouble) {
-							int rot = pieceNow.getRotateDirection(2, rt);
-							int newX = x;
-							int newY = y;
-							fld.copy(engine.field);
-							pts = Integer.MIN_VALUE;
-
-							if(!pieceNow.checkCollision(x, y, rot, fld)) {
-								pts = thinkMain(x, y, rot, rt, fld, pieceNow, depth);
-							} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-								boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-													  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-								WallkickResult kick = engine.wallkick.executeWallkick(x, y, 2, rt, rot,
-													  allowUpward, pieceNow, fld, null);
-
-								if(kick != null) {
-									newX = x + kick.offsetX;
-									newY = y + kick.offsetY;
-									pts = thinkMain(newX, newY, rot, rt, fld, pieceNow, depth);
-								}
-							}
-
-							if(pts > bestPts) {
-								bestHold = false;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestXSub = newX;
-								bestYSub = newY;
-								bestRtSub = rot;
-								bestPts = pts;
-								if (DEBUG_ALL)
-									logBest(6);
-								thinkSuccess = true;
-							}
-						}
-						//}
-					}
-				}
+				for(int x = minX; x <= maxX && spawnOK; x+=move)
+					candidates.add(new ThinkCandidate(pieceNow, x, tempY, rt, null, pieceHold, false));
 
 				// Hold piece
 				if((holdOK == true) && (pieceHold != null)) {
@@ -1071,207 +952,52 @@ public class PoochyBot extends DummyAI implements Runnable {
 					int maxHoldX = Math.min(mostMovableX(spawnX, spawnY, 1, engine, engine.field, pieceHold, rt),
 							pieceHold.getMostMovableRight(spawnX, spawnY, rt, engine.field));
 
-					//Bonus for holding an I piece, penalty for holding an S or Z.
-					int holdType = pieceHold.id;
-					int holdPts = 0;
-					if (holdType == Piece.PIECE_I)
-						holdPts -= 30;
-					else if (holdType == Piece.PIECE_S || holdType == Piece.PIECE_Z)
-						holdPts += 30;
-					else if (holdType == Piece.PIECE_O)
-						holdPts += 10;
-					int nowType = pieceNow.id;
-					if (nowType == Piece.PIECE_I)
-						holdPts += 30;
-					else if (nowType == Piece.PIECE_S || nowType == Piece.PIECE_Z)
-						holdPts -= 30;
-					else if (nowType == Piece.PIECE_O)
-						holdPts -= 10;
-
 					for(int x = minHoldX; x <= maxHoldX; x+=move)
-					{
-						fld.copy(engine.field);
-						int y = pieceHold.getBottom(x, spawnY, rt, fld);
-
-						if(!pieceHold.checkCollision(x, y, rt, fld)) {
-							// As it is
-							int pts = thinkMain(x, y, rt, -1, fld, pieceHold, depth);
-							if (pts > Integer.MIN_VALUE+30)
-								pts += holdPts;
-							if(pts >= bestPts) {
-								bestHold = true;
-								bestX = x;
-								bestY = y;
-								bestRt = rt;
-								bestXSub = x;
-								bestYSub = y;
-								bestRtSub = -1;
-								bestPts = pts;
-								if (DEBUG_ALL)
-									logBest(7);
-								thinkSuccess = true;
-							}
-							//Check regardless
-							//if((depth > 0) || (bestPts <= 10) || (pieceHold.id == Piece.PIECE_T)) {
-							// Left shift
-							fld.copy(engine.field);
-							if(!pieceHold.checkCollision(x - move, y, rt, fld) && pieceHold.checkCollision(x - move, y - 1, rt, fld)) {
-								pts = thinkMain(x - move, y, rt, -1, fld, pieceHold, depth);
-								if (pts > Integer.MIN_VALUE+30)
-									pts += holdPts;
-								if(pts > bestPts) {
-									bestHold = true;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = x - move;
-									bestYSub = y;
-									bestRtSub = -1;
-									bestPts = pts;
-									if (DEBUG_ALL)
-										logBest(8);
-									thinkSuccess = true;
-								}
-							}
-
-							// Right shift
-							fld.copy(engine.field);
-							if(!pieceHold.checkCollision(x + move, y, rt, fld) && pieceHold.checkCollision(x + move, y - 1, rt, fld)) {
-								pts = thinkMain(x + move, y, rt, -1, fld, pieceHold, depth);
-								if (pts > Integer.MIN_VALUE+30)
-									pts += holdPts;
-								if(pts > bestPts) {
-									bestHold = true;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = x + move;
-									bestYSub = y;
-									bestRtSub = -1;
-									bestPts = pts;
-									if (DEBUG_ALL)
-										logBest(9);
-									thinkSuccess = true;
-								}
-							}
-
-							// Left rotation
-							if(!engine.ruleopt.rotateButtonDefaultRight || engine.ruleopt.rotateButtonAllowReverse) {
-								int rot = pieceHold.getRotateDirection(-1, rt);
-								int newX = x;
-								int newY = y;
-								fld.copy(engine.field);
-								pts = Integer.MIN_VALUE;
-
-								if(!pieceHold.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(x, y, rot, rt, fld, pieceHold, depth);
-								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-									WallkickResult kick = engine.wallkick.executeWallkick(x, y, -1, rt, rot,
-														  allowUpward, pieceHold, fld, null);
-
-									if(kick != null) {
-										newX = x + kick.offsetX;
-										newY = y + kick.offsetY;
-										pts = thinkMain(newX, newY, rot, rt, fld, pieceHold, depth);
-									}
-								}
-								if (pts > Integer.MIN_VALUE+30)
-									pts += holdPts;
-								if(pts > bestPts) {
-									bestHold = true;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = newX;
-									bestYSub = newY;
-									bestRtSub = rot;
-									bestPts = pts;
-									if (DEBUG_ALL)
-										logBest(10);
-									thinkSuccess = true;
-								}
-							}
+						candidates.add(new ThinkCandidate(pieceHold, x, spawnY, rt, null, null, true));
+				}
+			}
 
-							// Right rotation
-							if(engine.ruleopt.rotateButtonDefaultRight || engine.ruleopt.rotateButtonAllowReverse) {
-								int rot = pieceHold.getRotateDirection(1, rt);
-								int newX = x;
-								int newY = y;
-								fld.copy(engine.field);
-								pts = Integer.MIN_VALUE;
-
-								if(!pieceHold.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(x, y, rot, rt, fld, pieceHold, depth);
-								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-									WallkickResult kick = engine.wallkick.executeWallkick(x, y, 1, rt, rot,
-														  allowUpward, pieceHold, fld, null);
-
-									if(kick != null) {
-										newX = x + kick.offsetX;
-										newY = y + kick.offsetY;
-										pts = thinkMain(newX, newY, rot, rt, fld, pieceHold, depth);
-									}
-								}
-								if (pts > Integer.MIN_VALUE+30)
-									pts += holdPts;
-								if(pts > bestPts) {
-									bestHold = true;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = newX;
-									bestYSub = newY;
-									bestRtSub = rot;
-									bestPts = pts;
-									if (DEBUG_ALL)
-										logBest(11);
-									thinkSuccess = true;
-								}
-							}
+			// Score everything up front on the AI pool, the choice below stays sequential
+			if (pool != null)
+			{
+				sfld.rollback(base);
+				try {
+					thinkParallel(engine, pool, candidates, fldSearch, sfld, depth, move);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
 
-							// 180-degree rotation
-							if(engine.ruleopt.rotateButtonAllowDouble) {
-								int rot = pieceHold.getRotateDirection(2, rt);
-								int newX = x;
-								int newY = y;
-								fld.copy(engine.field);
-								pts = Integer.MIN_VALUE;
-
-								if(!pieceHold.checkCollision(x, y, rot, fld)) {
-									pts = thinkMain(x, y, rot, rt, fld, pieceHold, depth);
-								} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
-									boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
-														  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
-									WallkickResult kick = engine.wallkick.executeWallkick(x, y, 2, rt, rot,
-														  allowUpward, pieceHold, fld, null);
-
-									if(kick != null) {
-										newX = x + kick.offsetX;
-										newY = y + kick.offsetY;
-										pts = thinkMain(newX, newY, rot, rt, fld, pieceHold, depth);
-									}
-								}
-								if (pts > Integer.MIN_VALUE+30)
-									pts += holdPts;
-								if(pts > bestPts) {
-									bestHold = true;
-									bestX = x;
-									bestY = y;
-									bestRt = rt;
-									bestXSub = newX;
-									bestYSub = newY;
-									bestRtSub = rot;
-									bestPts = pts;
-									if (DEBUG_ALL)
-										logBest(12);
-									thinkSuccess = true;
-								}
-							}
-						}
+			for(ThinkCandidate c : candidates) {
+				if (pool == null)
+				{
+					thinkDrop(c, sfld, base, depth);
+					if (c.valid)
+						thinkMoves(engine, c, fldSearch, sfld, base, depth, move);
+				}
+				if (!c.valid)
+					continue;
+
+				//Check regardless
+				//if((depth > 0) || (bestPts <= 10) || (pieceNow.id == Piece.PIECE_T)) {
+				for(int m = 0; m < ThinkCandidate.MOVE_COUNT; m++) {
+					int pts = c.pts[m];
+					if (c.hold && pts > Integer.MIN_VALUE+30)
+						pts += holdPts;
+
+					if((m == ThinkCandidate.MOVE_DROP) ? (pts >= bestPts) : (pts > bestPts)) {
+						bestHold = c.hold;
+						bestX = c.x;
+						bestY = c.y;
+						bestRt = c.rt;
+						bestXSub = c.subX[m];
+						bestYSub = c.subY[m];
+						bestRtSub = c.subRt[m];
+						bestPts = pts;
+						if (DEBUG_ALL)
+							logBest(c.hold ? m+7 : m+1);
+						thinkSuccess = true;
 					}
 				}
 			}
@@ -1295,7 +1021,184 @@ public class PoochyBot extends DummyAI implements Runnable {
 	}
 
 	/**
-	 * Think routine
+	 * Score every candidate of one compromise level on the AI pool
+	 * @param engine GameEngine
+	 * @param pool AI pool
+	 * @param candidates Candidates
+	 * @param fldKick Field for wallkick checks
+	 * @param sfld Search field (Copied by each task, not modified)
+	 * @param depth Compromise level
+	 * @param move Shift distance (2 for big pieces)
+	 * @throws InterruptedException When interrupted while waiting
+	 */
+	protected void thinkParallel(final GameEngine engine, ForkJoinPool pool, List<ThinkCandidate> candidates,
+			final Field fldKick, final FieldBitboard sfld, final int depth, final int move) throws InterruptedException
+	{
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+		int size = getThinkTaskSize(pool, candidates.size());
+
+		for(int i = 0; i < candidates.size(); i += size) {
+			final List<ThinkCandidate> part = candidates.subList(i, Math.min(i + size, candidates.size()));
+
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					FieldBitboard fld = workerSearchField.get();
+					fld.copy(sfld);
+					int base = fld.mark();
+
+					for(ThinkCandidate c : part) {
+						thinkDrop(c, fld, base, depth);
+						if (c.valid)
+							thinkMoves(engine, c, fldKick, fld, base, depth, move);
+					}
+					return null;
+				}
+			});
+		}
+
+		invokeThinkTasks(pool, tasks);
+	}
+
+	/**
+	 * Drop a candidate and score it as it is
+	 * @param c Candidate
+	 * @param fld Search field
+	 * @param base Mark of the field before placement
+	 * @param depth Compromise level
+	 */
+	protected void thinkDrop(ThinkCandidate c, FieldBitboard fld, int base, int depth) {
+		fld.rollback(base);
+		c.y = c.piece.getBottom(c.x, c.startY, c.rt, fld);
+		c.valid = !c.piece.checkCollision(c.x, c.y, c.rt, fld);
+
+		if(c.valid)
+			c.setMove(ThinkCandidate.MOVE_DROP, thinkMainCached(c.x, c.y, c.rt, -1, fld, c.piece, depth), c.x, c.y, -1);
+	}
+
+	/**
+	 * Score the shifts and rotations that can be made after a candidate lands
+	 * @param engine GameEngine
+	 * @param c Candidate (Already dropped)
+	 * @param fldKick Field for wallkick checks
+	 * @param fld Search field
+	 * @param base Mark of the field before placement
+	 * @param depth Compromise level
+	 * @param move Shift distance (2 for big pieces)
+	 */
+	protected void thinkMoves(GameEngine engine, ThinkCandidate c, Field fldKick, FieldBitboard fld, int base, int depth, int move) {
+		Piece piece = c.piece;
+		int x = c.x;
+		int y = c.y;
+		int rt = c.rt;
+		c.movesDone = true;
+
+		// Left shift
+		fld.rollback(base);
+		if(!piece.checkCollision(x - move, y, rt, fld) && piece.checkCollision(x - move, y - 1, rt, fld))
+			c.setMove(ThinkCandidate.MOVE_SHIFT_LEFT, thinkMainCached(x - move, y, rt, -1, fld, piece, depth), x - move, y, -1);
+
+		// Right shift
+		fld.rollback(base);
+		if (c.hold)
+		{
+			if(!piece.checkCollision(x + move, y, rt, fld) && piece.checkCollision(x + move, y - 1, rt, fld))
+				c.setMove(ThinkCandidate.MOVE_SHIFT_RIGHT, thinkMainCached(x + move, y, rt, -1, fld, piece, depth), x + move, y, -1);
+		}
+		else
+		{
+			if(!piece.checkCollision(x + move, y, rt, fld) && piece.checkCollision(x + 1, y - move, rt, fld))
+				c.setMove(ThinkCandidate.MOVE_SHIFT_RIGHT, thinkMainCached(x + move, y, rt, -1, fld, piece, depth), x + 1, y, -1);
+		}
+
+		// Left rotation
+		if(!engine.ruleopt.rotateButtonDefaultRight || engine.ruleopt.rotateButtonAllowReverse)
+			thinkRotation(engine, c, -1, ThinkCandidate.MOVE_ROTATE_LEFT, fldKick, fld, base, depth);
+
+		// Right rotation
+		if(engine.ruleopt.rotateButtonDefaultRight || engine.ruleopt.rotateButtonAllowReverse)
+			thinkRotation(engine, c, 1, ThinkCandidate.MOVE_ROTATE_RIGHT, fldKick, fld, base, depth);
+
+		// 180-degree rotation
+		if(engine.ruleopt.rotateButtonAllowDouble)
+			thinkRotation(engine, c, 2, ThinkCandidate.MOVE_ROTATE_180, fldKick, fld, base, depth);
+	}
+
+	/**
+	 * Score a rotation (with wallkick) after a candidate lands
+	 * @param engine GameEngine
+	 * @param c Candidate (Already dropped)
+	 * @param dir Rotation direction (-1: Left 1: Right 2: 180 degrees)
+	 * @param m Move to record the result as (ThinkCandidate.MOVE_*)
+	 * @param fldKick Field for wallkick checks
+	 * @param fld Search field
+	 * @param base Mark of the field before placement
+	 * @param depth Compromise level
+	 */
+	protected void thinkRotation(GameEngine engine, ThinkCandidate c, int dir, int m, Field fldKick, FieldBitboard fld, int base, int depth) {
+		Piece piece = c.piece;
+		int rot = piece.getRotateDirection(dir, c.rt);
+		int newX = c.x;
+		int newY = c.y;
+		int pts = Integer.MIN_VALUE;
+		fld.rollback(base);
+
+		if(!piece.checkCollision(c.x, c.y, rot, fld)) {
+			pts = thinkMainCached(c.x, c.y, rot, c.rt, fld, piece, depth);
+		} else if((engine.wallkick != null) && (engine.ruleopt.rotateWallkick)) {
+			boolean allowUpward = (engine.ruleopt.rotateMaxUpwardWallkick < 0) ||
+								  (engine.nowUpwardWallkickCount < engine.ruleopt.rotateMaxUpwardWallkick);
+			WallkickResult kick = engine.wallkick.executeWallkick(c.x, c.y, dir, c.rt, rot,
+								  allowUpward, piece, fldKick, null);
+
+			if(kick != null) {
+				newX = c.x + kick.offsetX;
+				newY = c.y + kick.offsetY;
+				pts = thinkMainCached(newX, newY, rot, c.rt, fld, piece, depth);
+			}
+		}
+
+		c.setMove(m, pts, newX, newY, rot);
+	}
+
+	/**
+	 * Call {@link #thinkMain} through {@link #thinkCache}
+	 * (Same parameters and return value as thinkMain)
+	 */
+	protected int thinkMainCached(int x, int y, int rt, int rtOld, FieldBitboard fld, Piece piece, int depth) {
+		// Older AIs get a fresh copy of the field before placement, and are never cached
+		if (legacyThinkMain)
+		{
+			thinkWorkField.copy(thinkField);
+			return thinkMain(x, y, rt, rtOld, thinkWorkField, piece, depth);
+		}
+
+		TranspositionTable cache = thinkCache;
+		if(cache == null) return thinkMain(x, y, rt, rtOld, fld, piece, depth);
+
+		long key = getThinkKey(fld, x, y, rt, rtOld, piece, depth);
+		long cached = cache.get(key);
+		if(cached != TranspositionTable.MISS) return (int)cached;
+
+		int pts = thinkMain(x, y, rt, rtOld, fld, piece, depth);
+		cache.put(key, pts);
+		return pts;
+	}
+
+	/**
+	 * Check if a subclass overrides the Field version of thinkMain
+	 * @return true if thinkMain(..., Field, ...) is overridden
+	 */
+	private boolean overridesFieldThinkMain() {
+		try {
+			return getClass().getMethod("thinkMain", int.class, int.class, int.class, int.class,
+					Field.class, Piece.class, int.class).getDeclaringClass() != PoochyBot.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Think routine on a Field
 	 * @param x X-coordinate
 	 * @param y Y-coordinate
 	 * @param rt Direction
@@ -1304,8 +1207,26 @@ public class PoochyBot extends DummyAI implements Runnable {
 	 * @param piece Piece
 	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
 	 * @return Evaluation score
+	 * @deprecated Override the {@link FieldBitboard} version instead.
+	 * AIs that still override this one are searched without the cache and the AI pool.
 	 */
+	@Deprecated
 	public int thinkMain(int x, int y, int rt, int rtOld, Field fld, Piece piece, int depth) {
+		return thinkMain(x, y, rt, rtOld, new FieldBitboard(fld), piece, depth);
+	}
+
+	/**
+	 * Think routine
+	 * @param x X-coordinate
+	 * @param y Y-coordinate
+	 * @param rt Direction
+	 * @param rtOld Direction before rotation (-1: None)
+	 * @param fld Search field (Can be modified without problems)
+	 * @param piece Piece
+	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
+	 * @return Evaluation score
+	 */
+	public int thinkMain(int x, int y, int rt, int rtOld, FieldBitboard fld, Piece piece, int depth) {
 		int pts = 0;
 
 		boolean big = piece.big;
@@ -1783,6 +1704,11 @@ public class PoochyBot extends DummyAI implements Runnable {
 			result[x] = fld.getHighestBlockY(x);
 		return result;
 	}
+
+	public static int[] getColumnDepths (FieldBitboard fld)
+	{
+		return fld.getHighestBlockYAll(new int[fld.getWidth()]);
+	}
 	/**
 	 * Returns the farthest x position the piece can move.
 	 * @param x X coord
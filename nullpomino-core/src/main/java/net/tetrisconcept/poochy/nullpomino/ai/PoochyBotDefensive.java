@@ -1,6 +1,6 @@
 package net.tetrisconcept.poochy.nullpomino.ai;
 
-import mu.nu.nullpo.game.component.Field;
+import mu.nu.nullpo.game.component.FieldBitboard;
 import mu.nu.nullpo.game.component.Piece;
 
 public class PoochyBotDefensive extends PoochyBot {
@@ -18,13 +18,13 @@ public class PoochyBotDefensive extends PoochyBot {
 	 * @param y Y-coordinate
 	 * @param rt Direction
 	 * @param rtOld Direction before rotation (-1: None)
-	 * @param fld Field (Can be modified without problems)
+	 * @param fld Search field (Can be modified without problems)
 	 * @param piece Piece
 	 * @param depth Compromise level (ranges from 0 through getMaxThinkDepth-1)
 	 * @return Evaluation score
 	 */
 	@Override
-	public int thinkMain(int x, int y, int rt, int rtOld, Field fld, Piece piece, int depth) {
+	public int thinkMain(int x, int y, int rt, int rtOld, FieldBitboard fld, Piece piece, int depth) {
 		int pts = 0;
 
 		// Add points for being adjacent to other blocks